@@ -13,6 +13,10 @@ public class Camera implements CameraInterface {
 	private Vector3d position;
 	private Vector3d lookPoint;
 
+	// the rounding error lost from position as it has been moved, which added to position places the camera more precisely than a double can. Deep zooms
+	// move the camera by steps too small to change position on their own.
+	private Vector3d positionError;
+
 	// normalized vectors pointing in the direction the camera is looking in and directly "upwards" from the camera
 	private Vector3d lookVector;
 	private Vector3d upVector;
@@ -36,6 +40,7 @@ public class Camera implements CameraInterface {
 	public Camera(CameraInterface cameraToCopy) {
 		// construct fields from copied CameraInterface object
 		position = cameraToCopy.getPosition();
+		positionError = cameraToCopy.getPositionError();
 		lookPoint = cameraToCopy.getLookPoint();
 		lookVector = cameraToCopy.getLookVector();
 		upVector = cameraToCopy.getUpVector();
@@ -50,6 +55,7 @@ public class Camera implements CameraInterface {
 	public Camera() {
 		// construct fields
 		position = new Vector3d();
+		positionError = new Vector3d();
 		lookPoint = new Vector3d();
 		lookVector = new Vector3d();
 		upVector = new Vector3d();
@@ -65,6 +71,7 @@ public class Camera implements CameraInterface {
 
 		// sets position of camera in 3D space and points it in the required direction
 		position = positionParam;
+		positionError = new Vector3d();
 		lookPoint = lookpointParam;
 
 		// generates lookVector and initializes basic y-axis upVector
@@ -95,15 +102,44 @@ public class Camera implements CameraInterface {
 		Vector3d offset = new Vector3d();
 		offset.sub(newPosition, position);
 		moveCameraBy(offset);
+
+		// the new position is exact, so it has no rounding error
+		position.set(newPosition);
+		positionError.set(0d, 0d, 0d);
 	}
 
 	@Override
 	public void moveCameraBy(Vector3d offset) {
-		// only need to move the position and lookPoint and everything else is relative
-		position.add(offset);
+		// only need to move the position and lookPoint and everything else is relative, keeping what the position loses to rounding in positionError
+		Vector3d sum = new Vector3d();
+		sum.add(position, offset);
+		Vector3d error = new Vector3d(roundingError(position.x, offset.x, sum.x), roundingError(position.y, offset.y, sum.y), roundingError(position.z,
+				offset.z, sum.z));
+		error.add(positionError);
+
+		// fold the error back into the position so that it stays the nearest double, and keep the rest
+		position.add(sum, error);
+		positionError.sub(position, sum);
+		positionError.sub(error, positionError);
 		lookPoint.add(offset);
 	}
 
+	/**
+	 * Finds the rounding error of the sum of two doubles exactly (Knuth's two-sum)
+	 * 
+	 * @param a
+	 *            The first double
+	 * @param b
+	 *            The second double
+	 * @param sum
+	 *            The sum of a and b rounded to a double
+	 * @return The amount by which sum is less than the exact sum of a and b
+	 */
+	private static double roundingError(double a, double b, double sum) {
+		double bRounded = sum - a;
+		return (a - (sum - bRounded)) + (b - bRounded);
+	}
+
 	@Override
 	public void rotate(Axis axis, double angle) {
 		// use rotateAround with the camera position
@@ -165,6 +201,7 @@ public class Camera implements CameraInterface {
 
 		// apply transformations to fields
 		rotMatrix.transform(position);
+		rotMatrix.transform(positionError);
 		rotMatrix.transform(lookPoint);
 		rotMatrix.transform(lookVector);
 		rotMatrix.transform(upVector);
@@ -182,6 +219,7 @@ public class Camera implements CameraInterface {
 
 		// apply transformations to fields
 		m.transform(position);
+		m.transform(positionError);
 		m.transform(lookPoint);
 		m.transform(lookVector);
 		m.transform(upVector);
@@ -248,6 +286,11 @@ public class Camera implements CameraInterface {
 		return new Vector3d(position);
 	}
 
+	@Override
+	public Vector3d getPositionError() {
+		return new Vector3d(positionError);
+	}
+
 	@Override
 	public Vector3d getLookPoint() {
 		return new Vector3d(lookPoint);
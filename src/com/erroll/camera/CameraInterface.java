@@ -133,6 +133,11 @@ public interface CameraInterface {
 	 */
 	Vector3d getPosition();
 
+	/**
+	 * @return The rounding error of getPosition(), which added to it gives the position of the camera more precisely than a double can
+	 */
+	Vector3d getPositionError();
+
 	/**
 	 * @return The point in space the camera is pointing at
 	 */
@@ -70,6 +70,13 @@ public abstract class FlightPath {
 		}
 	}
 
+	/**
+	 * @return Whether the flight path has been started and has since moved the camera through every frame of its tour and infinite zoom
+	 */
+	public boolean isFinished() {
+		return started && !(currentSeg != null && t < currentSeg.getTMax()) && t >= tMaxInfZoom;
+	}
+
 	/**
 	 * Starts the flight path
 	 */
@@ -16,6 +16,7 @@ import com.erroll.octree.scaleadaptation.BrickManager;
 import com.erroll.octree.scaleadaptation.Subdivider;
 import com.erroll.properties.Parameters;
 import com.erroll.renderer.Renderer;
+import com.erroll.renderer.ResolutionController;
 import com.erroll.renderer.effects.ColorUtils;
 
 public class RenderFrame extends JFrame {
@@ -41,6 +42,9 @@ public class RenderFrame extends JFrame {
 	// Metrics object to record rendering data
 	private static Metrics metrics;
 
+	// controller to scale the render resolution to hold a target frame rate, null to always render at the screen size
+	private static ResolutionController resolutionController;
+
 	public RenderFrame() {
 		// load properties
 		props = Parameters.get();
@@ -81,6 +85,29 @@ public class RenderFrame extends JFrame {
 		renderer.setBrickManager(bm);
 		renderer.setMetrics(metrics);
 		renderer.setRecording(props.getProperty("RECORDING").equals("true"));
+		renderer.setRecordingQueue(Integer.parseInt(props.getProperty("RECORDING_QUEUE_SIZE", "8")),
+				Integer.parseInt(props.getProperty("RECORDING_THREADS", "1")), props.getProperty("RECORDING_DROP_FRAMES", "false").equals("true"));
+		renderer.setRecordingFormat(props.getProperty("RECORDING_FORMAT", "png"), Integer.parseInt(props.getProperty("RECORDING_RAW_FRAMES", "1000")),
+				props.getProperty("RECORDING_DEPTH", "false").equals("true"));
+		renderer.setPacketSize(Integer.parseInt(props.getProperty("PACKET_SIZE", "1")));
+		renderer.setTraversal(props.getProperty("TRAVERSAL", "double"));
+		renderer.setPackedStorage(props.getProperty("PACKED_STORAGE", "heap"));
+		renderer.setRebaseDepth(Integer.parseInt(props.getProperty("REBASE_DEPTH", "16")));
+		renderer.setBeamSize(Integer.parseInt(props.getProperty("BEAM_SIZE", "1")));
+		renderer.setReprojection(props.getProperty("REPROJECTION", "false").equals("true"));
+		renderer.setReprojectionRefreshPeriod(Integer.parseInt(props.getProperty("REPROJECTION_REFRESH_PERIOD", "16")));
+		renderer.setCheckerboard(props.getProperty("CHECKERBOARD", "false").equals("true"));
+		renderer.setStartNodeCaching(props.getProperty("START_NODE_CACHE", "false").equals("true"));
+		renderer.setSsaoResolution(props.getProperty("SSAO_RESOLUTION", "full"));
+		renderer.setFrameBudget(Integer.parseInt(props.getProperty("FRAME_BUDGET", "0")));
+		renderer.setFovea(Double.parseDouble(props.getProperty("FOVEA_RADIUS", "0")), Integer.parseInt(props.getProperty("FOVEA_MAX_STRIDE", "4")));
+		renderer.setPipelined(props.getProperty("PIPELINED", "false").equals("true"));
+
+		// if a target frame rate is set, scale the render resolution between a minimum and the screen size to hold it
+		double targetFps = Double.parseDouble(props.getProperty("TARGET_FPS", "0"));
+		if (targetFps > 0)
+			resolutionController = new ResolutionController(targetFps, Integer.parseInt(props.getProperty("MIN_SCREEN_SIZE", "" + screenSize / 4)),
+					screenSize);
 
 		// add a root node to the renderer for starting rendering
 		OctreeNode rootNode = new OctreeNode();
@@ -121,11 +148,25 @@ public class RenderFrame extends JFrame {
 			}
 			renderFrame.getBufferStrategy().show();
 
+			// adjust the render resolution using the time taken by recent frames
+			if (resolutionController != null) {
+				int resolution = resolutionController.update(metrics.getFrameTime());
+				renderer.setRenderSize(resolution, resolution);
+			}
+
 			// update the camera position using the flight path if one has been loaded
 			if (path != null)
 				path.updatePosition(camera, renderer, metrics);
 
-			renderFrame.setTitle("FPS: " + metrics.getFps());
+			// show how the recorder is keeping up if recording
+			if (renderer.isRecording())
+				renderFrame.setTitle("FPS: " + metrics.getFps() + " | recording queue: " + metrics.getRecordQueueDepth() + " dropped: " + metrics.getDroppedFrames()
+						+ " stalled: " + metrics.getStalledFrames() + " encode: " + (int) metrics.getEncodeTime() + "ms");
+			else if (renderer.isPipelined())
+				renderFrame.setTitle("FPS: " + metrics.getFps() + " | trace: " + (int) metrics.getStageTime("trace") + "ms shade: "
+						+ (int) metrics.getStageTime("shade") + "ms present: " + (int) metrics.getStageTime("present") + "ms");
+			else
+				renderFrame.setTitle("FPS: " + metrics.getFps());
 		}
 	}
 }
@@ -13,11 +13,30 @@ public class Metrics {
 	private int fps;
 	private int totalFrames;
 
+	// fields for tracking the time taken by each frame, smoothed over recent frames
+	private long lastFrameTime;
+	private double frameTime;
+
+	// the weight of the newest frame in the smoothed frame time and encode time
+	private static final double FRAME_TIME_SMOOTHING = 0.2d;
+
+	// fields for tracking frames recorded: frames waiting to be encoded, frames dropped or stalled on because the queue was full, and the time taken to
+	// encode each frame, smoothed over recent frames
+	private int recordQueueDepth;
+	private int droppedFrames;
+	private int stalledFrames;
+	private int encodedFrames;
+	private double encodeTime;
+
+	// the time in milliseconds taken by each stage of recent frames (smoothed), by the name of the stage
+	private HashMap<String, Double> stageTimes = new HashMap<String, Double>();
+
 	// this HashMap can be used for other data being tracked
 	private HashMap<String, Double> data = new HashMap<String, Double>();
 
 	/**
-	 * Construct the FpsCounter, initializing all fields
+	 * Construct the FpsCounter, initializing all fields. Every method may be called from any thread, so frames can be recorded by threads other than the
+	 * one rendering them.
 	 */
 	public Metrics() {
 		startTime = System.currentTimeMillis();
@@ -25,12 +44,22 @@ public class Metrics {
 		fpsAccumulator = 0;
 		fps = 0;
 		timeSince = 0;
+		lastFrameTime = 0;
+		frameTime = 0d;
 	}
 
 	/**
 	 * Called by the panel once it draws a frame. This increases the frames-per-second counter during the second for which it is counted
 	 */
-	public void registerFrameRender() {
+	public synchronized void registerFrameRender() {
+		// update the smoothed time between frames
+		long now = System.nanoTime();
+		if (lastFrameTime != 0) {
+			double time = (now - lastFrameTime) / 1000000d;
+			frameTime = frameTime == 0d ? time : frameTime + (time - frameTime) * FRAME_TIME_SMOOTHING;
+		}
+		lastFrameTime = now;
+
 		totalFrames++;
 		if (System.currentTimeMillis() - timeSince >= 1000) {
 			fps = fpsAccumulator;
@@ -44,16 +73,23 @@ public class Metrics {
 	/**
 	 * @return The current frames rendered per second
 	 */
-	public int getFps() {
+	public synchronized int getFps() {
 		return fps;
 	}
 
+	/**
+	 * @return The time in milliseconds between recent frames (smoothed so a single slow frame does not dominate), 0 until two frames have been drawn
+	 */
+	public synchronized double getFrameTime() {
+		return frameTime;
+	}
+
 	/**
 	 * @param id
 	 *            The identifier of the particular value being requested
 	 * @return the value of the arbitrary data being requested or Integer.MIN_VALUE if no data exists
 	 */
-	public Double getData(String id) {
+	public synchronized Double getData(String id) {
 		if (data.containsKey(id))
 			return data.get(id);
 		else
@@ -66,7 +102,7 @@ public class Metrics {
 	 * @param id
 	 *            The identifier of the value
 	 */
-	public void incrementData(String id, double d) {
+	public synchronized void incrementData(String id, double d) {
 		if (data.containsKey(id))
 			data.put(id, data.get(id) + d);
 		else
@@ -76,7 +112,101 @@ public class Metrics {
 	/**
 	 * @return The total frames rendered / time taken so far
 	 */
-	public double getAvgFps() {
+	public synchronized double getAvgFps() {
 		return (totalFrames / ((System.currentTimeMillis() - startTime) / 1000d));
 	}
+
+	/**
+	 * Called by a frame recorder once it queues a frame to be encoded or finishes encoding one
+	 * 
+	 * @param queueDepth
+	 *            The number of frames waiting to be encoded
+	 */
+	public synchronized void setRecordQueueDepth(int queueDepth) {
+		recordQueueDepth = queueDepth;
+	}
+
+	/**
+	 * Called by a frame recorder when its queue is full and a frame is not recorded
+	 */
+	public synchronized void registerFrameDropped() {
+		droppedFrames++;
+	}
+
+	/**
+	 * Called by a frame recorder when its queue is full and the renderer has to wait for a frame to be encoded before it can record another
+	 */
+	public synchronized void registerFrameStalled() {
+		stalledFrames++;
+	}
+
+	/**
+	 * Called by a frame recorder once it has encoded and saved a frame
+	 * 
+	 * @param time
+	 *            The time in milliseconds taken to encode and save the frame
+	 */
+	public synchronized void registerFrameEncoded(double time) {
+		encodeTime = encodedFrames == 0 ? time : encodeTime + (time - encodeTime) * FRAME_TIME_SMOOTHING;
+		encodedFrames++;
+	}
+
+	/**
+	 * @return The number of recorded frames waiting to be encoded
+	 */
+	public synchronized int getRecordQueueDepth() {
+		return recordQueueDepth;
+	}
+
+	/**
+	 * @return The number of frames not recorded because the recording queue was full
+	 */
+	public synchronized int getDroppedFrames() {
+		return droppedFrames;
+	}
+
+	/**
+	 * @return The number of frames for which the renderer waited for the recording queue to have room
+	 */
+	public synchronized int getStalledFrames() {
+		return stalledFrames;
+	}
+
+	/**
+	 * @return The number of recorded frames encoded and saved
+	 */
+	public synchronized int getEncodedFrames() {
+		return encodedFrames;
+	}
+
+	/**
+	 * @return The time in milliseconds taken to encode and save recent frames (smoothed), 0 until a frame has been encoded
+	 */
+	public synchronized double getEncodeTime() {
+		return encodeTime;
+	}
+
+	/**
+	 * Called by a renderer once a stage of a frame is done. Comparing the stage times with the frame time shows how much pipelined stages overlap: the sum
+	 * of the stage times exceeds the frame time by the time they overlapped.
+	 * 
+	 * @param stage
+	 *            The name of the stage, e.g. "trace", "shade" or "present"
+	 * @param time
+	 *            The time in milliseconds taken by the stage
+	 */
+	public synchronized void registerStageTime(String stage, double time) {
+		Double stageTime = stageTimes.get(stage);
+		stageTimes.put(stage, stageTime == null ? time : stageTime + (time - stageTime) * FRAME_TIME_SMOOTHING);
+	}
+
+	/**
+	 * @param stage
+	 *            The name of the stage
+	 * @return The time in milliseconds taken by the stage in recent frames (smoothed), 0 until the stage has been done
+	 */
+	public synchronized double getStageTime(String stage) {
+		Double stageTime = stageTimes.get(stage);
+		return stageTime == null ? 0d : stageTime;
+	}
 }
@@ -0,0 +1,81 @@
+package com.erroll.octree;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+public class DirectPackedOctree extends PackedOctree {
+
+	// the number of nodes in a chunk is 2 ^ CHUNK_BITS, so the low bits of a node's index are its offset in its chunk and the high bits are the chunk
+	private static final int CHUNK_BITS = 16;
+	private static final int CHUNK_NODES = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_NODES - 1;
+
+	// the descriptors and colors of the nodes in each chunk, as views of a block of memory outside the Java heap
+	private List<LongBuffer> descriptors = new ArrayList<LongBuffer>();
+	private List<IntBuffer> colors = new ArrayList<IntBuffer>();
+
+	// the number of nodes made room for, which is the index the next child group is allocated at
+	private int allocated;
+
+	/**
+	 * Creates a packed octree in an arena of direct ByteBuffers outside the Java heap, so that the garbage collector neither traces nor copies its nodes.
+	 * Only packed octrees are held here: the OctreeNodes the renderer subdivides stay on the heap. The arena grows a chunk of 2 ^ CHUNK_BITS nodes at a
+	 * time, and a node's index is its offset in the arena, so chunks never move once allocated. A chunk holds the descriptors of its nodes followed by
+	 * their colors in the native byte order, which are only read and written with absolute gets and puts. Child groups never span two chunks, and groups
+	 * freed by unification are reused by later subdivisions rather than returned to the operating system.
+	 */
+	public DirectPackedOctree() {
+		allocated = 1;
+		addChunk();
+	}
+
+	/**
+	 * Allocates another chunk of memory at the end of the arena
+	 */
+	private void addChunk() {
+		ByteBuffer memory = ByteBuffer.allocateDirect(CHUNK_NODES * 12).order(ByteOrder.nativeOrder());
+		descriptors.add(memory.asLongBuffer());
+		memory.position(CHUNK_NODES * 8);
+		colors.add(memory.slice().order(ByteOrder.nativeOrder()).asIntBuffer());
+	}
+
+	@Override
+	protected int allocateGroup(int count) {
+		// start a new chunk if the group does not fit in the rest of the last one
+		if (allocated + count > descriptors.size() << CHUNK_BITS) {
+			allocated = descriptors.size() << CHUNK_BITS;
+			addChunk();
+		}
+		allocated += count;
+		return allocated - count;
+	}
+
+	@Override
+	protected void clearGroups() {
+		allocated = 1;
+	}
+
+	@Override
+	protected long getDescriptor(int node) {
+		return descriptors.get(node >>> CHUNK_BITS).get(node & CHUNK_MASK);
+	}
+
+	@Override
+	protected void setDescriptor(int node, long descriptor) {
+		descriptors.get(node >>> CHUNK_BITS).put(node & CHUNK_MASK, descriptor);
+	}
+
+	@Override
+	public int getColor(int node) {
+		return colors.get(node >>> CHUNK_BITS).get(node & CHUNK_MASK);
+	}
+
+	@Override
+	public void setColor(int node, int color) {
+		colors.get(node >>> CHUNK_BITS).put(node & CHUNK_MASK, color);
+	}
+}
@@ -0,0 +1,61 @@
+package com.erroll.octree;
+
+import java.util.Arrays;
+
+public class HeapPackedOctree extends PackedOctree {
+
+	// the descriptor and color of each node, indexed by the node's index
+	private long[] descriptors;
+	private int[] colors;
+
+	// the number of nodes made room for, which is the index the next child group is allocated at
+	private int allocated;
+
+	/**
+	 * Creates a packed octree in arrays on the Java heap
+	 *
+	 * @param capacity
+	 *            The number of nodes to make room for, which grows as nodes are added
+	 */
+	public HeapPackedOctree(int capacity) {
+		descriptors = new long[Math.max(1, capacity)];
+		colors = new int[Math.max(1, capacity)];
+		allocated = 1;
+	}
+
+	@Override
+	protected int allocateGroup(int count) {
+		if (allocated + count > descriptors.length) {
+			int capacity = Math.max(allocated + count, descriptors.length * 2);
+			descriptors = Arrays.copyOf(descriptors, capacity);
+			colors = Arrays.copyOf(colors, capacity);
+		}
+		allocated += count;
+		return allocated - count;
+	}
+
+	@Override
+	protected void clearGroups() {
+		allocated = 1;
+	}
+
+	@Override
+	protected long getDescriptor(int node) {
+		return descriptors[node];
+	}
+
+	@Override
+	protected void setDescriptor(int node, long descriptor) {
+		descriptors[node] = descriptor;
+	}
+
+	@Override
+	public int getColor(int node) {
+		return colors[node];
+	}
+
+	@Override
+	public void setColor(int node, int color) {
+		colors[node] = color;
+	}
+}
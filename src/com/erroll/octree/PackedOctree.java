@@ -0,0 +1,301 @@
+package com.erroll.octree;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+public abstract class PackedOctree {
+
+	// the index of the root node
+	public static final int ROOT = 0;
+
+	// the positions of the fields of a node's descriptor: the index of its first child in the low 32 bits, then the valid mask and depth
+	private static final int VALID_SHIFT = 32;
+	private static final int DEPTH_SHIFT = 48;
+
+	// the first free child group of each number of children, -1 if there is none. Each free group holds the index of the next in its first descriptor.
+	private int[] freeGroups = new int[9];
+
+	// the number of nodes in the octree, not counting those in free child groups
+	private int nodeCount;
+
+	// the OctreeNode each node was packed from, indexed by the node's index, null for nodes added by subdivide
+	private OctreeNode[] sources = new OctreeNode[1];
+
+	/**
+	 * Creates an octree whose nodes are held in primitive storage rather than as OctreeNode objects. A node is an index into the storage, holding a 12 byte
+	 * record: a long descriptor and an int color. The descriptor gives the index of the node's first child, 0 for a leaf, a valid mask with a bit set for
+	 * each of its children which is not an empty leaf, and the node's depth. Only valid children are stored, next to each other in octant order, so a child
+	 * is found by counting the valid bits below its octant and there are no pointers to parents, neighbors or bricks. Whether a node is a leaf is only held
+	 * in its own descriptor, never in its parent's, so a node can be unified and subdivided again without knowing its parent. The octree starts with a
+	 * single root node which is a leaf that is not empty, whose record subclasses must make room for at index 0 and clear. The octree may be read by any
+	 * number of threads, but only one thread may change it, and not while it is read. Nodes packed from OctreeNodes remember them in an array on the heap,
+	 * so that rays can visit and subdivide the nodes the renderer keeps.
+	 */
+	protected PackedOctree() {
+		Arrays.fill(freeGroups, -1);
+		nodeCount = 1;
+	}
+
+	/**
+	 * Makes room for a group of nodes after every node made room for so far
+	 *
+	 * @param count
+	 *            The number of nodes in the group, from 1 to 8
+	 * @return The index of the first node of the group
+	 */
+	protected abstract int allocateGroup(int count);
+
+	/**
+	 * Forgets every group made room for, keeping the memory to make room for them again
+	 */
+	protected abstract void clearGroups();
+
+	/**
+	 * @param node
+	 *            A node
+	 * @return The descriptor of the node
+	 */
+	protected abstract long getDescriptor(int node);
+
+	/**
+	 * @param node
+	 *            A node
+	 * @param descriptor
+	 *            The new descriptor of the node
+	 */
+	protected abstract void setDescriptor(int node, long descriptor);
+
+	/**
+	 * @param node
+	 *            A node
+	 * @return The color of the node as an RGB int
+	 */
+	public abstract int getColor(int node);
+
+	/**
+	 * @param node
+	 *            A node
+	 * @param color
+	 *            The new color of the node as an RGB int
+	 */
+	public abstract void setColor(int node, int color);
+
+	/**
+	 * Packs an octree of OctreeNodes into arrays on the Java heap
+	 *
+	 * @param rootNode
+	 *            The root node of the octree, which is not empty
+	 * @return The packed octree, with the same nodes at the same positions and with the same colors
+	 */
+	public static PackedOctree pack(OctreeNode rootNode) {
+		return pack(rootNode, new HeapPackedOctree(1024));
+	}
+
+	/**
+	 * Packs an octree of OctreeNodes, which must not be unified while it is packed. Nodes subdivided while it is packed are packed as the rays of a frame
+	 * would find them, as leaves or with their children.
+	 *
+	 * @param rootNode
+	 *            The root node of the octree, which is not empty
+	 * @param octree
+	 *            The octree to pack it into, which has only its root node
+	 * @return The packed octree, with the same nodes at the same positions and with the same colors
+	 */
+	public static PackedOctree pack(OctreeNode rootNode, PackedOctree octree) {
+		octree.setColor(ROOT, rootNode.getColor());
+		octree.setDescriptor(ROOT, (long) rootNode.getDepth() << DEPTH_SHIFT);
+		octree.setSource(ROOT, rootNode);
+
+		// pack the octree a level at a time, so that each node's children are allocated together
+		Deque<OctreeNode> nodes = new ArrayDeque<OctreeNode>();
+		Deque<Integer> indices = new ArrayDeque<Integer>();
+		nodes.add(rootNode);
+		indices.add(ROOT);
+		while (!nodes.isEmpty()) {
+			OctreeNode node = nodes.poll();
+			int index = indices.poll();
+			if (node.isLeaf())
+				continue;
+
+			// children which are empty leaves are left out
+			int validMask = 0;
+			for (int octant = 0; octant < 8; octant++) {
+				OctreeNode child = node.getChild(octant >> 2, (octant >> 1) & 1, octant & 1);
+				if (!(child.isLeaf() && child.isEmpty()))
+					validMask |= 1 << octant;
+			}
+
+			int child = octree.subdivide(index, validMask);
+			for (int octant = 0; octant < 8; octant++) {
+				if ((validMask & (1 << octant)) == 0)
+					continue;
+				OctreeNode childNode = node.getChild(octant >> 2, (octant >> 1) & 1, octant & 1);
+				octree.setColor(child, childNode.getColor());
+				octree.setSource(child, childNode);
+				nodes.add(childNode);
+				indices.add(child++);
+			}
+		}
+		return octree;
+	}
+
+	/**
+	 * Adds children to a leaf node, giving each of them the node's color. The children are leaves until they are subdivided in turn.
+	 *
+	 * @param node
+	 *            The leaf node to subdivide
+	 * @param validMask
+	 *            A bit for each octant, set if the child there is not an empty leaf
+	 * @return The index of the first child added
+	 */
+	public int subdivide(int node, int validMask) {
+		// take a free group of the right size if there is one. A node without valid children still needs a child index to show it is not a leaf.
+		int childCount = Integer.bitCount(validMask);
+		int child;
+		if (childCount == 0) {
+			child = -1;
+		} else if (freeGroups[childCount] != -1) {
+			child = freeGroups[childCount];
+			freeGroups[childCount] = (int) getDescriptor(child);
+		} else {
+			child = allocateGroup(childCount);
+		}
+		nodeCount += childCount;
+
+		// the children are leaves of the next depth until they are subdivided
+		int depth = getDepth(node);
+		for (int i = 0; i < childCount; i++) {
+			setDescriptor(child + i, (long) (depth + 1) << DEPTH_SHIFT);
+			setColor(child + i, getColor(node));
+			setSource(child + i, null);
+		}
+
+		setDescriptor(node, (child & 0xFFFFFFFFL) | ((long) validMask << VALID_SHIFT) | ((long) depth << DEPTH_SHIFT));
+		return child;
+	}
+
+	/**
+	 * Makes a child of a node into a leaf, keeping its color, and puts the groups of its descendants on the free list to be reused by subdivide
+	 *
+	 * @param node
+	 *            A node which is not a leaf
+	 * @param octant
+	 *            The octant of the child to unify
+	 */
+	public void unify(int node, int octant) {
+		int child = getChild(node, octant);
+		if (child == -1 || isLeaf(child))
+			return;
+
+		freeChildren(child);
+		setDescriptor(child, (long) getDepth(child) << DEPTH_SHIFT);
+	}
+
+	/**
+	 * Removes every node but the root, which becomes a leaf that is not empty again, so that the octree can be packed again without making room for its
+	 * nodes again
+	 */
+	public void clear() {
+		clearGroups();
+		Arrays.fill(freeGroups, -1);
+		Arrays.fill(sources, null);
+		nodeCount = 1;
+		setDescriptor(ROOT, 0L);
+		setColor(ROOT, 0);
+	}
+
+	/**
+	 * Puts the group of a node's children, and the groups of all their descendants, on the free list
+	 *
+	 * @param node
+	 *            A node which is not a leaf
+	 */
+	private void freeChildren(int node) {
+		int childCount = Integer.bitCount(getValidMask(node));
+		if (childCount == 0)
+			return;
+		int child = (int) getDescriptor(node);
+		for (int i = 0; i < childCount; i++)
+			if (!isLeaf(child + i))
+				freeChildren(child + i);
+
+		setDescriptor(child, freeGroups[childCount] & 0xFFFFFFFFL);
+		freeGroups[childCount] = child;
+		nodeCount -= childCount;
+	}
+
+	/**
+	 * @param node
+	 *            A node which is not a leaf
+	 * @param octant
+	 *            The octant of a child, x * 4 + y * 2 + z for the child at (x*size/2, y*size/2, z*size/2) from the node's minimum position
+	 * @return The index of the child, or -1 if it is an empty leaf
+	 */
+	public int getChild(int node, int octant) {
+		long descriptor = getDescriptor(node);
+		int validMask = (int) (descriptor >>> VALID_SHIFT) & 0xFF;
+		if ((validMask & (1 << octant)) == 0)
+			return -1;
+		return (int) descriptor + Integer.bitCount(validMask & ((1 << octant) - 1));
+	}
+
+	/**
+	 * @param node
+	 *            A node
+	 * @return True if the node has no children
+	 */
+	public boolean isLeaf(int node) {
+		return (int) getDescriptor(node) == 0;
+	}
+
+	/**
+	 * @param node
+	 *            A node
+	 * @return The bits of the octants whose children are not empty leaves, 0 for a leaf
+	 */
+	public int getValidMask(int node) {
+		return (int) (getDescriptor(node) >>> VALID_SHIFT) & 0xFF;
+	}
+
+	/**
+	 * @param node
+	 *            A node
+	 * @return The depth of the node from the root node (0)
+	 */
+	public int getDepth(int node) {
+		return (int) (getDescriptor(node) >>> DEPTH_SHIFT) & 0xFF;
+	}
+
+	/**
+	 * @param node
+	 *            A node
+	 * @return The OctreeNode the node was packed from, or null if it was added by subdivide
+	 */
+	public OctreeNode getSource(int node) {
+		return node < sources.length ? sources[node] : null;
+	}
+
+	/**
+	 * @param node
+	 *            A node
+	 * @param source
+	 *            The OctreeNode the node was packed from, null if it was not
+	 */
+	private void setSource(int node, OctreeNode source) {
+		if (node >= sources.length) {
+			if (source == null)
+				return;
+			sources = Arrays.copyOf(sources, Math.max(node + 1, sources.length * 2));
+		}
+		sources[node] = source;
+	}
+
+	// ----------------------------------------------------------------------------
+	// Getters & Setters
+	// ----------------------------------------------------------------------------
+
+	public int getNodeCount() {
+		return nodeCount;
+	}
+}
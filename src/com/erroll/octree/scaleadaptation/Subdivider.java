@@ -32,18 +32,41 @@ public class Subdivider implements Runnable {
 	// The number of subdivider node threads
 	private final int NTHREADS = 100;
 
+	// the depth of the deepest nodes subdivided. Children's positions are found in space with doubles, which can only hold the centres of the children of
+	// nodes this deep in the root node's [-1, 1] space exactly: a node of depth d has children centred on multiples of 2 ^ (-1 - d), and a double has 53 bits.
+	public static final int SUBDIVISION_DEPTH = 52;
+
 	public Subdivider() {
 		// load properties and determine fractal type
 		Properties props = Parameters.get();
-		String fractalName = props.getProperty("FRACTAL_TYPE");
+		f = getFractal(props.getProperty("FRACTAL_TYPE"));
+	}
+
+	/**
+	 * Creates a Subdivider which subdivides nodes against the given fractal rather than the one set in the properties file
+	 * 
+	 * @param f
+	 *            The fractal to be rendered
+	 */
+	public Subdivider(FractalInterface f) {
+		this.f = f;
+	}
+
+	/**
+	 * @param fractalName
+	 *            The name of a fractal as used by FRACTAL_TYPE in the properties file, e.g. "MengerSponge"
+	 * @return A new instance of the named fractal, or null if there is no fractal of that name
+	 */
+	public static FractalInterface getFractal(String fractalName) {
 		if (fractalName.equals("Mandelbox"))
-			f = new Mandelbox();
+			return new Mandelbox();
 		else if (fractalName.equals("Mandelbulb"))
-			f = new Mandelbulb();
+			return new Mandelbulb();
 		else if (fractalName.equals("MengerSponge"))
-			f = new MengerSponge();
-		if (fractalName.equals("SierpinskiGasket"))
-			f = new SierpinskiGasket();
+			return new MengerSponge();
+		else if (fractalName.equals("SierpinskiGasket"))
+			return new SierpinskiGasket();
+		return null;
 	}
 
 	/**
@@ -60,6 +83,11 @@ public class Subdivider implements Runnable {
 		try {
 			if (!node.isQueuedSubdiv()) {
 				node.setQueuedSubdiv(true);
+
+				// nodes whose children doubles cannot place stay leaves, marked as queued so they are not queued again
+				if (node.getDepth() > SUBDIVISION_DEPTH)
+					return;
+
 				subdivNodeQueue.put(node);
 				subdivBoxMinQueue.put(boxMin);
 				subdivBoxDimQueue.put(boxDim);
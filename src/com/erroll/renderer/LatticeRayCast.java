@@ -0,0 +1,320 @@
+package com.erroll.renderer;
+
+import javax.vecmath.Vector3d;
+
+import com.erroll.octree.OctreeNode;
+import com.erroll.octree.scaleadaptation.Subdivider;
+
+public class LatticeRayCast extends RayCast {
+
+	// the depth of the finest lattice, on which a node of this depth is one unit wide. Nodes cannot be any deeper.
+	public static final int LATTICE_DEPTH = 60;
+
+	// the width in space of one unit of the finest lattice (the root node is 2 wide) and its reciprocal
+	public static final double UNIT = 2d / (1L << LATTICE_DEPTH);
+	private static final double INV_UNIT = (1L << LATTICE_DEPTH) / 2d;
+
+	// the minimum lattice coordinates of the node found by the last cast
+	protected long hitX;
+	protected long hitY;
+	protected long hitZ;
+
+	/**
+	 * Creates a LatticeRayCast which casts rays like RayCast, but addresses nodes by long coordinates on the finest lattice rather than by double bounds. A
+	 * node of depth d is 2 ^ (LATTICE_DEPTH - d) units wide and its coordinates are a multiple of its width, so descending into a child sets one bit of
+	 * each coordinate and snapping onto a coarser neighbor masks off low bits, both exactly. The ray itself stays in floating point: the bounds of a node
+	 * are only converted to doubles in the ray's frame (exactly, as they are dyadic) to find where the ray leaves it. A ray entering a node through a face
+	 * always enters the children on that face, and its other coordinates are compared on the lattice, so positions no longer need nudging along the ray.
+	 */
+	public LatticeRayCast(Subdivider subdivider, double voxelSizeConstantA, double voxelSizeConstantB) {
+		super(subdivider, voxelSizeConstantA, voxelSizeConstantB);
+	}
+
+	@Override
+	public void cast(OctreeNode startNode, double startBoxMinX, double startBoxMinY, double startBoxMinZ, double startBoxDim) {
+
+		// calculate t values for the faces of the start node nearest and furthest along each axis
+		double tx0 = ((invDirX > 0 ? startBoxMinX : startBoxMinX + startBoxDim) - originX) * invDirX;
+		double tx1 = ((invDirX > 0 ? startBoxMinX + startBoxDim : startBoxMinX) - originX) * invDirX;
+		double ty0 = ((invDirY > 0 ? startBoxMinY : startBoxMinY + startBoxDim) - originY) * invDirY;
+		double ty1 = ((invDirY > 0 ? startBoxMinY + startBoxDim : startBoxMinY) - originY) * invDirY;
+		double tz0 = ((invDirZ > 0 ? startBoxMinZ : startBoxMinZ + startBoxDim) - originZ) * invDirZ;
+		double tz1 = ((invDirZ > 0 ? startBoxMinZ + startBoxDim : startBoxMinZ) - originZ) * invDirZ;
+		double tmin = tx0 > ty0 ? tx0 > tz0 ? tx0 : tz0 : ty0 > tz0 ? ty0 : tz0;
+		double tmax = tx1 < ty1 ? tx1 < tz1 ? tx1 : tz1 : ty1 < tz1 ? ty1 : tz1;
+
+		// the ray enters through the face furthest along it, or starts inside the node if tmin is negative
+		int entryAxis = tmin < 0 ? -1 : tmin == tx0 ? 0 : tmin == ty0 ? 1 : 2;
+		tmin = tmin < 0 ? 0 : tmin;
+
+		// if ray misses bounding box stop and return black.
+		if (tmin > tmax) {
+			color = 0;
+			depth = Double.MAX_VALUE;
+			hitNode = null;
+			return;
+		}
+
+		// mark node and its bricks as having been visited by a ray
+		startNode.visit();
+
+		long x = frame.toLattice(startBoxMinX, 0);
+		long y = frame.toLattice(startBoxMinY, 1);
+		long z = frame.toLattice(startBoxMinZ, 2);
+		traverse(startNode, x, y, z, getNodeSize(startNode.getDepth()), tmin, entryAxis);
+	}
+
+	@Override
+	public boolean castFrom(OctreeNode node, double boxMinX, double boxMinY, double boxMinZ, double boxDim, double tStart) {
+		double pX = tStart * dirX + originX;
+		double pY = tStart * dirY + originY;
+		double pZ = tStart * dirZ + originZ;
+
+		if (!(pX > boxMinX && pX < (boxMinX + boxDim) && pY > boxMinY && pY < (boxMinY + boxDim) && pZ > boxMinZ && pZ < (boxMinZ + boxDim)))
+			return false;
+
+		// mark node and its bricks as having been visited by a ray
+		node.visit();
+
+		// descend hierarchy until a leaf is reached or the node is small enough to terminate the hierarchy at tStart
+		long x = frame.toLattice(boxMinX, 0);
+		long y = frame.toLattice(boxMinY, 1);
+		long z = frame.toLattice(boxMinZ, 2);
+		long size = getNodeSize(node.getDepth());
+		long pointX = frame.toLattice(pX, 0);
+		long pointY = frame.toLattice(pY, 1);
+		long pointZ = frame.toLattice(pZ, 2);
+		while (!node.isLeaf() && (frame.getWidth(size) * voxelSizeConstantA) >= (tStart * voxelSizeConstantB)) {
+			size >>= 1;
+			int sX = pointX >= x + size ? 1 : 0;
+			int sY = pointY >= y + size ? 1 : 0;
+			int sZ = pointZ >= z + size ? 1 : 0;
+			x += sX * size;
+			y += sY * size;
+			z += sZ * size;
+			node = node.getChild(sX, sY, sZ);
+
+			// mark node and its bricks as having been visited by a ray
+			node.visit();
+		}
+
+		// if the ray starts in an empty leaf carry on casting from there
+		if (node.isLeaf() && node.isEmpty()) {
+			traverse(node, x, y, z, size, tStart, -1);
+			return true;
+		}
+
+		// otherwise the ray starts inside a node which is drawn, so find where it entered the node using the faces of the node facing the ray
+		boxDim = frame.getWidth(size);
+		boxMinX = frame.toLocal(x, 0);
+		boxMinY = frame.toLocal(y, 1);
+		boxMinZ = frame.toLocal(z, 2);
+		double tx0 = ((invDirX > 0 ? boxMinX : boxMinX + boxDim) - originX) * invDirX;
+		double ty0 = ((invDirY > 0 ? boxMinY : boxMinY + boxDim) - originY) * invDirY;
+		double tz0 = ((invDirZ > 0 ? boxMinZ : boxMinZ + boxDim) - originZ) * invDirZ;
+		double tmin = tx0 > ty0 ? tx0 > tz0 ? tx0 : tz0 : ty0 > tz0 ? ty0 : tz0;
+		tmin = tmin < 0 ? 0 : tmin;
+
+		// only allocate a position for the subdivider if the node is not already waiting to be subdivided
+		if (node.isLeaf() && (boxDim * voxelSizeConstantA) > (tmin * voxelSizeConstantB) && !node.isQueuedSubdiv())
+			subdivider.queueNode(node, new Vector3d(toSpace(x), toSpace(y), toSpace(z)), size * UNIT);
+
+		color = node.getColor();
+		depth = tmin;
+		hitNode = node;
+		hitX = x;
+		hitY = y;
+		hitZ = z;
+		return true;
+	}
+
+	/**
+	 * Continues casting the current ray from a node it has entered and visited, storing the color and depth found
+	 *
+	 * @param node
+	 *            The node the ray is currently in
+	 * @param x
+	 *            The minimum x lattice coordinate of node
+	 * @param y
+	 *            The minimum y lattice coordinate of node
+	 * @param z
+	 *            The minimum z lattice coordinate of node
+	 * @param size
+	 *            The width of node in lattice units
+	 * @param tmin
+	 *            The distance along the ray at which it entered node
+	 * @param entryAxis
+	 *            The axis (0 for x, 1 for y, 2 for z) of the face through which the ray entered node, or -1 if it started inside node
+	 */
+	protected void traverse(OctreeNode node, long x, long y, long z, long size, double tmin, int entryAxis) {
+
+		// the point at which the ray entered node on the lattice
+		long pointX = frame.toLattice(tmin * dirX + originX, 0);
+		long pointY = frame.toLattice(tmin * dirY + originY, 1);
+		long pointZ = frame.toLattice(tmin * dirZ + originZ, 2);
+
+		// will loop until a color is returned
+		while (true) {
+
+			// while node is not a leaf, descend hierarchy until leaf reached
+			while (!node.isLeaf()) {
+				// check if voxel is small enough to terminate hierarchy
+				if ((frame.getWidth(size) * voxelSizeConstantA) < (tmin * voxelSizeConstantB)) {
+					color = node.getColor();
+					depth = tmin;
+					hitNode = node;
+					hitX = x;
+					hitY = y;
+					hitZ = z;
+					return;
+				}
+
+				// descend hierarchy into the child containing the entry point, which is on the near side of the axis the ray entered along
+				size >>= 1;
+				int sX = entryAxis == 0 ? (dirX > 0 ? 0 : 1) : pointX >= x + size ? 1 : 0;
+				int sY = entryAxis == 1 ? (dirY > 0 ? 0 : 1) : pointY >= y + size ? 1 : 0;
+				int sZ = entryAxis == 2 ? (dirZ > 0 ? 0 : 1) : pointZ >= z + size ? 1 : 0;
+				x += sX * size;
+				y += sY * size;
+				z += sZ * size;
+				node = node.getChild(sX, sY, sZ);
+
+				// mark node and its bricks as having been visited by a ray
+				node.visit();
+			}
+
+			// the bounds of the node in the coordinates of the ray, which are exact as they are dyadic
+			double boxDim = frame.getWidth(size);
+			double boxMinX = frame.toLocal(x, 0);
+			double boxMinY = frame.toLocal(y, 1);
+			double boxMinZ = frame.toLocal(z, 2);
+
+			// a leaf node has now been reached; if node is a non-empty leaf, return its color
+			if (!node.isEmpty()) {
+				// only allocate a position for the subdivider if the node is not already waiting to be subdivided
+				if ((boxDim * voxelSizeConstantA) > (tmin * voxelSizeConstantB) && !node.isQueuedSubdiv())
+					subdivider.queueNode(node, new Vector3d(toSpace(x), toSpace(y), toSpace(z)), size * UNIT);
+
+				color = node.getColor();
+				depth = tmin;
+				hitNode = node;
+				hitX = x;
+				hitY = y;
+				hitZ = z;
+				return;
+			}
+
+			// otherwise node is empty so find where the ray leaves it using the faces of the node furthest along the ray
+			double tx1 = ((invDirX > 0 ? boxMinX + boxDim : boxMinX) - originX) * invDirX;
+			double ty1 = ((invDirY > 0 ? boxMinY + boxDim : boxMinY) - originY) * invDirY;
+			double tz1 = ((invDirZ > 0 ? boxMinZ + boxDim : boxMinZ) - originZ) * invDirZ;
+			double tmax = tx1 < ty1 ? tx1 < tz1 ? tx1 : tz1 : ty1 < tz1 ? ty1 : tz1;
+
+			// find the neighbor the ray leaves towards and step onto it
+			int neighborId;
+			if (tmax == tx1) {
+				neighborId = dirX > 0 ? 1 : 0;
+				x += dirX > 0 ? size : -size;
+				entryAxis = 0;
+			} else if (tmax == ty1) {
+				neighborId = dirY > 0 ? 3 : 2;
+				y += dirY > 0 ? size : -size;
+				entryAxis = 1;
+			} else {
+				neighborId = dirZ > 0 ? 5 : 4;
+				z += dirZ > 0 ? size : -size;
+				entryAxis = 2;
+			}
+			OctreeNode neighbor = node.getNeighbor(neighborId);
+
+			// if no neighbor node found return black
+			if (neighbor == null) {
+				color = 0;
+				depth = Double.MAX_VALUE;
+				hitNode = null;
+				return;
+			}
+
+			// if coarser neighbor node found, snap onto the coarser lattice by clearing the low bits of the coordinates
+			if (neighbor.getDepth() != node.getDepth()) {
+				long neighborSize = getNodeSize(neighbor.getDepth());
+				long half = neighborSize >> 1;
+
+				// set the neighbor to the child of the coarser neighbor next to the node once found
+				if (!neighbor.isLeaf())
+					node.setNeighbor(neighborId, neighbor.getChild((x & half) != 0 ? 1 : 0, (y & half) != 0 ? 1 : 0, (z & half) != 0 ? 1 : 0));
+
+				x &= -neighborSize;
+				y &= -neighborSize;
+				z &= -neighborSize;
+				size = neighborSize;
+			}
+
+			// finally set node to neighbor found and tmin to new position along ray
+			node = neighbor;
+			tmin = tmax;
+
+			// mark node and its bricks as having been visited by a ray
+			node.visit();
+
+			pointX = frame.toLattice(tmin * dirX + originX, 0);
+			pointY = frame.toLattice(tmin * dirY + originY, 1);
+			pointZ = frame.toLattice(tmin * dirZ + originZ, 2);
+		}
+	}
+
+	@Override
+	public long getHitX() {
+		return hitX;
+	}
+
+	@Override
+	public long getHitY() {
+		return hitY;
+	}
+
+	@Override
+	public long getHitZ() {
+		return hitZ;
+	}
+
+	/**
+	 * @param position
+	 *            A position in space along any axis, inside the root node
+	 * @return The coordinate of the position on the finest lattice, rounded down
+	 */
+	public static long toLattice(double position) {
+		return getNodeSize(1) + (long) Math.floor(position * INV_UNIT);
+	}
+
+	/**
+	 * @param position
+	 *            A position in space along any axis, inside the root node
+	 * @param positionError
+	 *            The remainder of the position which could not be held by position, as kept by Camera
+	 * @return The coordinate of the position on the finest lattice, rounded down
+	 */
+	public static long toLattice(double position, double positionError) {
+		// scaling by a power of 2 is exact, so only the fraction of a lattice unit left over needs adding to the error
+		double units = Math.floor(position * INV_UNIT);
+		return getNodeSize(1) + (long) units + (long) Math.floor(position * INV_UNIT - units + positionError * INV_UNIT);
+	}
+
+	/**
+	 * @param coordinate
+	 *            A coordinate on the finest lattice
+	 * @return The position of the coordinate in space
+	 */
+	public static double toSpace(long coordinate) {
+		return (coordinate - getNodeSize(1)) * UNIT;
+	}
+
+	/**
+	 * @param depth
+	 *            The depth of a node, no more than LATTICE_DEPTH
+	 * @return The width of a node of that depth in lattice units
+	 */
+	public static long getNodeSize(int depth) {
+		return 1L << (LATTICE_DEPTH - depth);
+	}
+}
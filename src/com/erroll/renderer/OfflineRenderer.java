@@ -0,0 +1,203 @@
+package com.erroll.renderer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.erroll.camera.Camera;
+import com.erroll.camera.paths.FlightPath;
+import com.erroll.camera.paths.mengersponge.MengerSpongeTourPath;
+import com.erroll.camera.paths.mengersponge.MengerSpongeZoomPath;
+import com.erroll.math.fractal.FractalInterface;
+import com.erroll.metrics.Metrics;
+import com.erroll.octree.OctreeNode;
+import com.erroll.octree.scaleadaptation.BrickManager;
+import com.erroll.octree.scaleadaptation.Subdivider;
+import com.erroll.properties.Parameters;
+import com.erroll.renderer.effects.ColorUtils;
+import com.erroll.renderer.gbuffer.DirectGBuffer;
+import com.erroll.renderer.gbuffer.HeapGBuffer;
+import com.erroll.renderer.recording.ParallelPngEncoder;
+
+public class OfflineRenderer {
+
+	// the renderer which traces each frame
+	private Renderer renderer;
+
+	// the camera moved along the flight path
+	private Camera camera;
+
+	// the flight path rendered
+	private FlightPath path;
+
+	// Metrics object to record rendering data
+	private Metrics metrics;
+
+	// the directory frames are saved in
+	private File outputDir;
+
+	// a single thread on which each frame is shaded and saved while the next frame is traced
+	private ExecutorService shadeExecutor = Executors.newSingleThreadExecutor();
+
+	// the encoder which saves frames, using every core
+	private ParallelPngEncoder pngEncoder = new ParallelPngEncoder();
+
+	// the G-buffer traced frames are packed into for shading, "none", "heap" or "direct", and the width and height of its tiles in pixels
+	private String gBuffer = "none";
+	private int gBufferTileSize = 16;
+
+	/**
+	 * Creates an OfflineRenderer which renders every frame of a flight path to PNG files without opening a window. Frames are pipelined: once a frame has
+	 * been traced it is swapped out of the renderer and shaded and saved on another thread, while the renderer's threads trace the next frame against the
+	 * same octree.
+	 *
+	 * @param fractal
+	 *            The fractal to render
+	 * @param pathType
+	 *            The flight path to follow, "Tour" or "Zoom"
+	 * @param resolution
+	 *            The width and height of each frame in pixels
+	 * @param outputDir
+	 *            The directory to save frames in, created if it does not exist
+	 */
+	public OfflineRenderer(FractalInterface fractal, String pathType, int resolution, File outputDir) {
+		this.outputDir = outputDir;
+		outputDir.mkdirs();
+
+		metrics = new Metrics();
+
+		// create a default camera and the flight path, which sets where the camera starts
+		camera = new Camera();
+		path = pathType.equals("Tour") ? new MengerSpongeTourPath(camera) : pathType.equals("Zoom") ? new MengerSpongeZoomPath(camera) : null;
+		if (path == null)
+			throw new IllegalArgumentException("unknown flight path: " + pathType);
+
+		// create and initialise a subdivider thread to subdivide nodes as they are found
+		BrickManager bm = new BrickManager();
+		Subdivider subdivider = new Subdivider(fractal);
+		subdivider.setBm(bm);
+		Thread subdividerThread = new Thread(subdivider);
+		subdividerThread.setDaemon(true);
+		subdividerThread.start();
+
+		// create and initialize renderer, taking its optional settings from the properties file if there is one
+		renderer = new Renderer();
+		renderer.setScreenSize(resolution, resolution);
+		renderer.setCamera(camera);
+		renderer.setSubdivider(subdivider);
+		renderer.setBrickManager(bm);
+		renderer.setMetrics(metrics);
+		if (new File("parameters.properties").exists()) {
+			Properties props = Parameters.get();
+			renderer.setPacketSize(Integer.parseInt(props.getProperty("PACKET_SIZE", "1")));
+			renderer.setTraversal(props.getProperty("TRAVERSAL", "double"));
+			renderer.setPackedStorage(props.getProperty("PACKED_STORAGE", "heap"));
+			renderer.setRebaseDepth(Integer.parseInt(props.getProperty("REBASE_DEPTH", "16")));
+			renderer.setBeamSize(Integer.parseInt(props.getProperty("BEAM_SIZE", "1")));
+			renderer.setReprojection(props.getProperty("REPROJECTION", "false").equals("true"));
+			renderer.setReprojectionRefreshPeriod(Integer.parseInt(props.getProperty("REPROJECTION_REFRESH_PERIOD", "16")));
+			renderer.setCheckerboard(props.getProperty("CHECKERBOARD", "false").equals("true"));
+			renderer.setStartNodeCaching(props.getProperty("START_NODE_CACHE", "false").equals("true"));
+			renderer.setSsaoResolution(props.getProperty("SSAO_RESOLUTION", "full"));
+			gBuffer = props.getProperty("G_BUFFER", "none");
+			gBufferTileSize = Integer.parseInt(props.getProperty("G_BUFFER_TILE_SIZE", "16"));
+		}
+
+		// add a root node to the renderer for starting rendering
+		OctreeNode rootNode = new OctreeNode();
+		rootNode.setDepth(0);
+		rootNode.setBrick(rootNode);
+		rootNode.setLeaf(true);
+		rootNode.setEmpty(false);
+		rootNode.setColor(ColorUtils.getColor(255, 0, 0));
+		renderer.setRootNode(rootNode);
+	}
+
+	/**
+	 * Renders every frame of the flight path, returning once the last frame has been saved
+	 */
+	public void renderPath() throws InterruptedException, ExecutionException {
+		// the frame being shaded and saved, which holds the buffers the renderer traces into next once it is done, or a G-buffer frames are packed into
+		TracedFrame frame;
+		if (gBuffer.equals("heap"))
+			frame = new TracedFrame(renderer.bufferWidth, renderer.bufferHeight, new HeapGBuffer(renderer.bufferWidth, renderer.bufferHeight, gBufferTileSize));
+		else if (gBuffer.equals("direct"))
+			frame = new TracedFrame(renderer.bufferWidth, renderer.bufferHeight, new DirectGBuffer(renderer.bufferWidth, renderer.bufferHeight, gBufferTileSize));
+		else
+			frame = new TracedFrame(renderer.bufferWidth, renderer.bufferHeight);
+		Future<?> pending = null;
+
+		path.start();
+		while (!path.isFinished()) {
+			renderer.traceFrame();
+
+			// the previous frame must be saved before its buffers are given back to the renderer
+			if (pending != null)
+				pending.get();
+			renderer.swapFrame(frame);
+			pending = shadeExecutor.submit(new ShadeTask(frame));
+			metrics.registerFrameRender();
+
+			// move the camera along the flight path for the next frame
+			path.updatePosition(camera, renderer, metrics);
+		}
+		if (pending != null)
+			pending.get();
+		shadeExecutor.shutdown();
+
+		System.out.println("Average FPS: " + metrics.getAvgFps());
+	}
+
+	/**
+	 * Shades a traced frame and saves it as a PNG file in the output directory
+	 */
+	private class ShadeTask implements Runnable {
+
+		private TracedFrame frame;
+
+		public ShadeTask(TracedFrame frame) {
+			this.frame = frame;
+		}
+
+		@Override
+		public void run() {
+			frame.shade();
+			try {
+				frame.save(pngEncoder, new File(outputDir, String.format("frame%05d.png", frame.getFrameIndex())));
+			} catch (IOException e) {
+				System.err.println("file write IO exception");
+			}
+		}
+	}
+
+	/**
+	 * Renders a flight path to PNG files without a display
+	 *
+	 * @param args
+	 *            The fractal (e.g. "MengerSponge"), the flight path ("Tour" or "Zoom"), the width and height of each frame in pixels and the directory to save
+	 *            frames in
+	 */
+	public static void main(String[] args) throws InterruptedException, ExecutionException {
+		System.setProperty("java.awt.headless", "true");
+
+		if (args.length != 4) {
+			System.err.println("usage: OfflineRenderer <fractal> <Tour|Zoom> <resolution> <output directory>");
+			System.exit(1);
+		}
+
+		// flight paths have only been made for the Menger sponge
+		if (!args[0].equals("MengerSponge")) {
+			System.err.println("no flight path for fractal: " + args[0]);
+			System.exit(1);
+		}
+
+		new OfflineRenderer(Subdivider.getFractal(args[0]), args[1], Integer.parseInt(args[2]), new File(args[3])).renderPath();
+
+		// the subdivider's threads never finish by themselves
+		System.exit(0);
+	}
+}
@@ -0,0 +1,286 @@
+package com.erroll.renderer;
+
+import javax.vecmath.Vector3d;
+
+import com.erroll.octree.OctreeNode;
+import com.erroll.octree.PackedOctree;
+import com.erroll.octree.scaleadaptation.Subdivider;
+
+public class PackedRayCast extends LatticeRayCast {
+
+	// the octree rays are cast into
+	private PackedOctree octree;
+
+	// the indices of the nodes the current ray has descended through, indexed by depth
+	private int[] path = new int[LATTICE_DEPTH + 1];
+
+	// the index of the node found by the last cast, -1 if the ray missed the fractal
+	private int hitIndex;
+
+	/**
+	 * Creates a PackedRayCast which casts rays through a PackedOctree as StackRayCast does through OctreeNodes, so both find the same colors and depths.
+	 * Nodes are only indices into the octree's storage: the indices of the nodes a ray descends through are kept on a stack, and when the ray leaves a leaf
+	 * it restarts from the deepest of them containing the cell on the other side of the face it left through. A packed octree has no parent pointers, so
+	 * a ray leaving the node it started from has left the octree. Rays visit the OctreeNodes the nodes they pass through were packed from, and queue the
+	 * leaves they hit for subdivision, so the octree the renderer packs each frame keeps growing.
+	 *
+	 * @param octree
+	 *            The octree to cast rays into
+	 * @param subdivider
+	 *            The subdivider to queue leaves larger than a pixel in, which is only used for nodes packed from OctreeNodes
+	 * @param voxelSizeConstantA
+	 *            The constant A for terminating traversal at nodes smaller than a pixel
+	 * @param voxelSizeConstantB
+	 *            The constant B for terminating traversal at nodes smaller than a pixel
+	 */
+	public PackedRayCast(PackedOctree octree, Subdivider subdivider, double voxelSizeConstantA, double voxelSizeConstantB) {
+		super(subdivider, voxelSizeConstantA, voxelSizeConstantB);
+		this.octree = octree;
+	}
+
+	/**
+	 * Casts the current ray from the root of the packed octree, as OctreeNodes hold no index in it to start from. This finds what casting it from startNode
+	 * would, as rays are only started from nodes they reach before meeting the fractal.
+	 */
+	@Override
+	public void cast(OctreeNode startNode, double startBoxMinX, double startBoxMinY, double startBoxMinZ, double startBoxDim) {
+		cast(PackedOctree.ROOT, frame.toLocal(0L, 0), frame.toLocal(0L, 1), frame.toLocal(0L, 2), frame.getWidth(getNodeSize(0)));
+	}
+
+	/**
+	 * Casts the current ray from the root of the packed octree rather than from tStart, finding what castFrom would
+	 *
+	 * @return True, as the ray is always cast
+	 */
+	@Override
+	public boolean castFrom(OctreeNode node, double boxMinX, double boxMinY, double boxMinZ, double boxDim, double tStart) {
+		cast(node, boxMinX, boxMinY, boxMinZ, boxDim);
+		return true;
+	}
+
+	/**
+	 * Casts the current ray through the packed octree starting at startNode, storing the color, depth and index of the node found
+	 *
+	 * @param startNode
+	 *            The index of the node to start traversal from, which must contain the start of the ray or be the root node
+	 * @param startBoxMinX
+	 *            The minimum x position in the frame of startNode
+	 * @param startBoxMinY
+	 *            The minimum y position in the frame of startNode
+	 * @param startBoxMinZ
+	 *            The minimum z position in the frame of startNode
+	 * @param startBoxDim
+	 *            The width of startNode
+	 */
+	public void cast(int startNode, double startBoxMinX, double startBoxMinY, double startBoxMinZ, double startBoxDim) {
+
+		// calculate t values for the faces of the start node nearest and furthest along each axis
+		double tx0 = ((invDirX > 0 ? startBoxMinX : startBoxMinX + startBoxDim) - originX) * invDirX;
+		double tx1 = ((invDirX > 0 ? startBoxMinX + startBoxDim : startBoxMinX) - originX) * invDirX;
+		double ty0 = ((invDirY > 0 ? startBoxMinY : startBoxMinY + startBoxDim) - originY) * invDirY;
+		double ty1 = ((invDirY > 0 ? startBoxMinY + startBoxDim : startBoxMinY) - originY) * invDirY;
+		double tz0 = ((invDirZ > 0 ? startBoxMinZ : startBoxMinZ + startBoxDim) - originZ) * invDirZ;
+		double tz1 = ((invDirZ > 0 ? startBoxMinZ + startBoxDim : startBoxMinZ) - originZ) * invDirZ;
+		double tmin = tx0 > ty0 ? tx0 > tz0 ? tx0 : tz0 : ty0 > tz0 ? ty0 : tz0;
+		double tmax = tx1 < ty1 ? tx1 < tz1 ? tx1 : tz1 : ty1 < tz1 ? ty1 : tz1;
+
+		// the ray enters through the face furthest along it, or starts inside the node if tmin is negative
+		int entryAxis = tmin < 0 ? -1 : tmin == tx0 ? 0 : tmin == ty0 ? 1 : 2;
+		tmin = tmin < 0 ? 0 : tmin;
+
+		// if ray misses bounding box stop and return black.
+		if (tmin > tmax) {
+			miss();
+			return;
+		}
+
+		long x = frame.toLattice(startBoxMinX, 0);
+		long y = frame.toLattice(startBoxMinY, 1);
+		long z = frame.toLattice(startBoxMinZ, 2);
+		traverse(startNode, x, y, z, tmin, entryAxis);
+	}
+
+	/**
+	 * Continues casting the current ray from the node it starts in, storing the color, depth and index of the node found
+	 *
+	 * @param node
+	 *            The index of the node the ray is currently in
+	 * @param x
+	 *            The minimum x lattice coordinate of node
+	 * @param y
+	 *            The minimum y lattice coordinate of node
+	 * @param z
+	 *            The minimum z lattice coordinate of node
+	 * @param tmin
+	 *            The distance along the ray at which it entered node
+	 * @param entryAxis
+	 *            The axis (0 for x, 1 for y, 2 for z) of the face through which the ray entered node, or -1 if it started inside node
+	 */
+	private void traverse(int node, long x, long y, long z, double tmin, int entryAxis) {
+		int startDepth = octree.getDepth(node);
+		int nodeDepth = startDepth;
+		long size = getNodeSize(nodeDepth);
+		boolean leaf = octree.isLeaf(node);
+		path[nodeDepth] = node;
+		visit(node);
+
+		// the point at which the ray entered node on the lattice
+		long pointX = frame.toLattice(tmin * dirX + originX, 0);
+		long pointY = frame.toLattice(tmin * dirY + originY, 1);
+		long pointZ = frame.toLattice(tmin * dirZ + originZ, 2);
+
+		// will loop until a color is returned. node is -1 while the ray is in an empty leaf, which is not stored.
+		while (true) {
+
+			// while node is not a leaf, descend hierarchy until leaf reached
+			while (!leaf) {
+				// check if voxel is small enough to terminate hierarchy
+				if ((frame.getWidth(size) * voxelSizeConstantA) < (tmin * voxelSizeConstantB)) {
+					hit(node, x, y, z, tmin);
+					return;
+				}
+
+				// descend hierarchy into the child containing the entry point, which is on the near side of the axis the ray entered along
+				size >>= 1;
+				int sX = entryAxis == 0 ? (dirX > 0 ? 0 : 1) : pointX >= x + size ? 1 : 0;
+				int sY = entryAxis == 1 ? (dirY > 0 ? 0 : 1) : pointY >= y + size ? 1 : 0;
+				int sZ = entryAxis == 2 ? (dirZ > 0 ? 0 : 1) : pointZ >= z + size ? 1 : 0;
+				x += sX * size;
+				y += sY * size;
+				z += sZ * size;
+				int child = octree.getChild(node, (sX << 2) | (sY << 1) | sZ);
+
+				// mark node and its bricks as having been visited by a ray, visiting the parent of an empty leaf which shares its brick
+				visit(child == -1 ? node : child);
+				node = child;
+				leaf = node == -1 || octree.isLeaf(node);
+				path[++nodeDepth] = node;
+			}
+
+			// a leaf node has now been reached; if node is a non-empty leaf, return its color
+			if (node != -1) {
+				// only allocate a position for the subdivider if the node is not already waiting to be subdivided
+				OctreeNode source = octree.getSource(node);
+				if (source != null && (frame.getWidth(size) * voxelSizeConstantA) > (tmin * voxelSizeConstantB) && !source.isQueuedSubdiv())
+					subdivider.queueNode(source, new Vector3d(toSpace(x), toSpace(y), toSpace(z)), size * UNIT);
+
+				hit(node, x, y, z, tmin);
+				return;
+			}
+
+			// otherwise node is empty so find where the ray leaves it using the faces of the node furthest along the ray
+			double boxDim = frame.getWidth(size);
+			double boxMinX = frame.toLocal(x, 0);
+			double boxMinY = frame.toLocal(y, 1);
+			double boxMinZ = frame.toLocal(z, 2);
+			double tx1 = ((invDirX > 0 ? boxMinX + boxDim : boxMinX) - originX) * invDirX;
+			double ty1 = ((invDirY > 0 ? boxMinY + boxDim : boxMinY) - originY) * invDirY;
+			double tz1 = ((invDirZ > 0 ? boxMinZ + boxDim : boxMinZ) - originZ) * invDirZ;
+			double tmax = tx1 < ty1 ? tx1 < tz1 ? tx1 : tz1 : ty1 < tz1 ? ty1 : tz1;
+
+			// find the cell of the same size as node on the other side of the face the ray leaves through
+			long nextX = x;
+			long nextY = y;
+			long nextZ = z;
+			if (tmax == tx1) {
+				nextX += dirX > 0 ? size : -size;
+				entryAxis = 0;
+			} else if (tmax == ty1) {
+				nextY += dirY > 0 ? size : -size;
+				entryAxis = 1;
+			} else {
+				nextZ += dirZ > 0 ? size : -size;
+				entryAxis = 2;
+			}
+
+			// the deepest ancestor containing both cells is the deepest whose width is above the highest bit in which their coordinates differ. If it is
+			// above the node the ray started from the ray has left the octree, so return black.
+			int ancestorDepth = LATTICE_DEPTH - (64 - Long.numberOfLeadingZeros((x ^ nextX) | (y ^ nextY) | (z ^ nextZ)));
+			if (ancestorDepth < startDepth) {
+				miss();
+				return;
+			}
+
+			// descend from the ancestor to the cell, stopping at a larger leaf
+			long cellSize = size;
+			nodeDepth = ancestorDepth;
+			node = path[nodeDepth];
+			size = getNodeSize(nodeDepth);
+			leaf = false;
+			while (!leaf && size > cellSize) {
+				size >>= 1;
+				int octant = ((nextX & size) != 0 ? 4 : 0) | ((nextY & size) != 0 ? 2 : 0) | ((nextZ & size) != 0 ? 1 : 0);
+				node = octree.getChild(node, octant);
+				leaf = node == -1 || octree.isLeaf(node);
+				path[++nodeDepth] = node;
+			}
+			x = nextX & -size;
+			y = nextY & -size;
+			z = nextZ & -size;
+
+			// finally set tmin to new position along ray
+			tmin = tmax;
+
+			// mark node and its bricks as having been visited by a ray
+			visit(node == -1 ? path[nodeDepth - 1] : node);
+
+			pointX = frame.toLattice(tmin * dirX + originX, 0);
+			pointY = frame.toLattice(tmin * dirY + originY, 1);
+			pointZ = frame.toLattice(tmin * dirZ + originZ, 2);
+		}
+	}
+
+	/**
+	 * Stores the color of a node the ray has hit
+	 *
+	 * @param node
+	 *            The index of the node hit
+	 * @param x
+	 *            The minimum x lattice coordinate of node
+	 * @param y
+	 *            The minimum y lattice coordinate of node
+	 * @param z
+	 *            The minimum z lattice coordinate of node
+	 * @param tmin
+	 *            The distance along the ray at which it entered node
+	 */
+	private void hit(int node, long x, long y, long z, double tmin) {
+		color = octree.getColor(node);
+		depth = tmin;
+		hitNode = octree.getSource(node);
+		hitIndex = node;
+		hitX = x;
+		hitY = y;
+		hitZ = z;
+	}
+
+	/**
+	 * Marks the OctreeNode a node was packed from and its bricks as having been visited by a ray, so the brick manager keeps them
+	 *
+	 * @param node
+	 *            The index of the node
+	 */
+	private void visit(int node) {
+		OctreeNode source = octree.getSource(node);
+		if (source != null)
+			source.visit();
+	}
+
+	/**
+	 * Stores black as the ray has missed the fractal
+	 */
+	private void miss() {
+		color = 0;
+		depth = Double.MAX_VALUE;
+		hitNode = null;
+		hitIndex = -1;
+	}
+
+	// ----------------------------------------------------------------------------
+	// Getters & Setters
+	// ----------------------------------------------------------------------------
+
+	public int getHitIndex() {
+		return hitIndex;
+	}
+}
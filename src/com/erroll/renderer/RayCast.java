@@ -1,57 +1,104 @@
 package com.erroll.renderer;
 
-import javax.vecmath.Vector3d;
-
 import com.erroll.octree.OctreeNode;
 import com.erroll.octree.scaleadaptation.Subdivider;
 
-public class RayCast implements Runnable {
-
-	private OctreeNode startNode;
-	private Vector3d startBoxMin;
-	private double startBoxDim;
-	private Ray ray;
-	private int index;
-	private int[] imageColors;
-	private double[] imageDepth;
-	private Subdivider subdivider;
-	private double voxelSizeConstantA;
-	private double voxelSizeConstantB;
+public class RayCast implements TraversalInterface {
+
+	protected Subdivider subdivider;
+	protected double voxelSizeConstantA;
+	protected double voxelSizeConstantB;
+
+	// the coordinate frame the ray and node bounds are given in, positions in space unless the renderer has rebased
+	protected RebasedFrame frame = RebasedFrame.SPACE;
+
+	// the ray being cast, P(t) = origin + t * dir, and the reciprocal of its direction
+	protected double originX;
+	protected double originY;
+	protected double originZ;
+	protected double dirX;
+	protected double dirY;
+	protected double dirZ;
+	protected double invDirX;
+	protected double invDirY;
+	protected double invDirZ;
+
+	// the color, depth and node found by the last cast, and the minimum position of the node in the frame
+	protected int color;
+	protected double depth;
+	protected OctreeNode hitNode;
+	protected double hitBoxMinX;
+	protected double hitBoxMinY;
+	protected double hitBoxMinZ;
 
 	/**
-	 * Creates a RayCast thread which will determine the color and depth of the octree for a certain pixel
+	 * Creates a RayCast which will determine the color and depth of the octree for any number of rays. All ray and box state is kept in primitive fields
+	 * and locals so that a single RayCast can be reused by a thread to trace many pixels without allocating.
 	 */
-	public RayCast(OctreeNode startNode, Vector3d startBoxMin, double startBoxDim, Ray ray, int index, int[] imageColors, double[] imageDepth,
-			Subdivider subdivider, double voxelSizeConstantA, double voxelSizeConstantB) {
-		this.startNode = startNode;
-		this.startBoxMin = startBoxMin;
-		this.startBoxDim = startBoxDim;
-		this.ray = ray;
-		this.index = index;
-		this.imageColors = imageColors;
-		this.imageDepth = imageDepth;
+	public RayCast(Subdivider subdivider, double voxelSizeConstantA, double voxelSizeConstantB) {
 		this.subdivider = subdivider;
 		this.voxelSizeConstantA = voxelSizeConstantA;
 		this.voxelSizeConstantB = voxelSizeConstantB;
 	}
 
-	@Override
-	public void run() {
+	/**
+	 * Sets the ray to be cast next
+	 *
+	 * @param originX
+	 *            The x coordinate of the starting point of the ray
+	 * @param originY
+	 *            The y coordinate of the starting point of the ray
+	 * @param originZ
+	 *            The z coordinate of the starting point of the ray
+	 * @param dirX
+	 *            The x component of the normalized direction of the ray
+	 * @param dirY
+	 *            The y component of the normalized direction of the ray
+	 * @param dirZ
+	 *            The z component of the normalized direction of the ray
+	 */
+	public void setRay(double originX, double originY, double originZ, double dirX, double dirY, double dirZ) {
+		this.originX = originX;
+		this.originY = originY;
+		this.originZ = originZ;
+		this.dirX = dirX;
+		this.dirY = dirY;
+		this.dirZ = dirZ;
+		this.invDirX = 1d / dirX;
+		this.invDirY = 1d / dirY;
+		this.invDirZ = 1d / dirZ;
+	}
+
+	/**
+	 * Casts the current ray through the octree starting at startNode, storing the color and depth found
+	 *
+	 * @param startNode
+	 *            The node to start traversal from, which must contain the start of the ray or be the root node
+	 * @param startBoxMinX
+	 *            The minimum x position in space of startNode
+	 * @param startBoxMinY
+	 *            The minimum y position in space of startNode
+	 * @param startBoxMinZ
+	 *            The minimum z position in space of startNode
+	 * @param startBoxDim
+	 *            The width of startNode
+	 */
+	public void cast(OctreeNode startNode, double startBoxMinX, double startBoxMinY, double startBoxMinZ, double startBoxDim) {
 
-		// initialize variables to be used in the loop to start with the root node of the octree
+		// initialize variables to be used in the loop to start with the start node of the octree
 		OctreeNode node = startNode;
-		Vector3d boxMin = new Vector3d(startBoxMin);
+		double boxMinX = startBoxMinX;
+		double boxMinY = startBoxMinY;
+		double boxMinZ = startBoxMinZ;
 		double boxDim = startBoxDim;
-		Vector3d pVec = ray.getDir();
-		Vector3d cPos = ray.getStart();
 
 		// calculate t values for each corner
-		double tx0 = (boxMin.x - cPos.x) / pVec.x;
-		double tx1 = ((boxMin.x + boxDim) - cPos.x) / pVec.x;
-		double ty0 = (boxMin.y - cPos.y) / pVec.y;
-		double ty1 = ((boxMin.y + boxDim) - cPos.y) / pVec.y;
-		double tz0 = (boxMin.z - cPos.z) / pVec.z;
-		double tz1 = ((boxMin.z + boxDim) - cPos.z) / pVec.z;
+		double tx0 = (boxMinX - originX) * invDirX;
+		double tx1 = ((boxMinX + boxDim) - originX) * invDirX;
+		double ty0 = (boxMinY - originY) * invDirY;
+		double ty1 = ((boxMinY + boxDim) - originY) * invDirY;
+		double tz0 = (boxMinZ - originZ) * invDirZ;
+		double tz1 = ((boxMinZ + boxDim) - originZ) * invDirZ;
 
 		// ensure t0 and t1 are in the correct order
 		if (tx1 < tx0) {
@@ -79,8 +126,9 @@ public class RayCast implements Runnable {
 
 		// if ray misses bounding box stop and return black.
 		if (tmin > tmax) {
-			imageColors[index] = 0;
-			imageDepth[index] = Double.MAX_VALUE;
+			color = 0;
+			depth = Double.MAX_VALUE;
+			hitNode = null;
 			return;
 		}
 
@@ -88,37 +136,174 @@ public class RayCast implements Runnable {
 		// We now know the ray intersects with the bounding cube of the fractal
 		// ----------------------------------------------------------------------------
 
-		// create vector for point in space where ray intersects the octree
-		Vector3d P = new Vector3d();
+		// mark node and its bricks as having been visited by a ray
+		node.visit();
 
-		// will loop until a color is returned
-		while (true) {
+		// calculate point where ray hits using current tmin value (adjust slightly to take floating point calculations into account)
+		double tP = 0.0001 * boxDim + tmin;
+		resume(node, boxMinX, boxMinY, boxMinZ, boxDim, tmin, tP * dirX + originX, tP * dirY + originY, tP * dirZ + originZ);
+	}
+
+	/**
+	 * Casts the current ray through the octree starting part way along it, skipping the space before tStart which is expected to be empty. The ray starts by
+	 * descending from node to the node containing its position at tStart, as if it had reached that node by traversal. If that node would be drawn, the ray
+	 * is taken to have hit it where it entered it.
+	 *
+	 * @param node
+	 *            The node to descend from, usually the root node
+	 * @param boxMinX
+	 *            The minimum x position in space of node
+	 * @param boxMinY
+	 *            The minimum y position in space of node
+	 * @param boxMinZ
+	 *            The minimum z position in space of node
+	 * @param boxDim
+	 *            The width of node
+	 * @param tStart
+	 *            The distance along the ray to start casting from
+	 * @return True if the ray was cast, false if its position at tStart is not inside node in which case nothing is done
+	 */
+	public boolean castFrom(OctreeNode node, double boxMinX, double boxMinY, double boxMinZ, double boxDim, double tStart) {
+		double pX = tStart * dirX + originX;
+		double pY = tStart * dirY + originY;
+		double pZ = tStart * dirZ + originZ;
+
+		if (!(pX > boxMinX && pX < (boxMinX + boxDim) && pY > boxMinY && pY < (boxMinY + boxDim) && pZ > boxMinZ && pZ < (boxMinZ + boxDim)))
+			return false;
+
+		// mark node and its bricks as having been visited by a ray
+		node.visit();
+
+		// descend hierarchy until a leaf is reached or the node is small enough to terminate the hierarchy at tStart
+		while (!node.isLeaf() && (boxDim * voxelSizeConstantA) >= (tStart * voxelSizeConstantB)) {
+			boxDim /= 2d;
+
+			// use step function to adjust boxMin ((boxMin + boxDim) is boxMid)
+			int sX = (pX >= (boxMinX + boxDim)) ? 1 : 0;
+			int sY = (pY >= (boxMinY + boxDim)) ? 1 : 0;
+			int sZ = (pZ >= (boxMinZ + boxDim)) ? 1 : 0;
+			boxMinX += sX * boxDim;
+			boxMinY += sY * boxDim;
+			boxMinZ += sZ * boxDim;
+			node = node.getChild(sX, sY, sZ);
 
 			// mark node and its bricks as having been visited by a ray
 			node.visit();
+		}
 
-			// calculate point where ray hits using current tmin value (adjust slightly to take floating point calculations into account)
-			P.scaleAdd(0.0001 * boxDim + tmin, ray.getDir(), ray.getStart());
+		// if the ray starts in an empty leaf carry on casting from there
+		if (node.isLeaf() && node.isEmpty()) {
+			resume(node, boxMinX, boxMinY, boxMinZ, boxDim, tStart, pX, pY, pZ);
+			return true;
+		}
+
+		// otherwise the ray starts inside a node which is drawn, so find where it entered the node using the faces of the node facing the ray
+		double tx0 = ((invDirX > 0 ? boxMinX : boxMinX + boxDim) - originX) * invDirX;
+		double ty0 = ((invDirY > 0 ? boxMinY : boxMinY + boxDim) - originY) * invDirY;
+		double tz0 = ((invDirZ > 0 ? boxMinZ : boxMinZ + boxDim) - originZ) * invDirZ;
+		double tmin = tx0 > ty0 ? tx0 > tz0 ? tx0 : tz0 : ty0 > tz0 ? ty0 : tz0;
+		tmin = tmin < 0 ? 0 : tmin;
+
+		// only allocate a position for the subdivider if the node is not already waiting to be subdivided
+		if (node.isLeaf() && (boxDim * voxelSizeConstantA) > (tmin * voxelSizeConstantB) && !node.isQueuedSubdiv())
+			subdivider.queueNode(node, frame.toSpace(boxMinX, boxMinY, boxMinZ), boxDim / frame.getScale());
+
+		color = node.getColor();
+		depth = tmin;
+		hitNode = node;
+		hitBoxMinX = boxMinX;
+		hitBoxMinY = boxMinY;
+		hitBoxMinZ = boxMinZ;
+		return true;
+	}
+
+	/**
+	 * @param boxMinX
+	 *            The minimum x position of a box in the frame
+	 * @param boxMinY
+	 *            The minimum y position of a box in the frame
+	 * @param boxMinZ
+	 *            The minimum z position of a box in the frame
+	 * @param boxDim
+	 *            The width of the box
+	 * @return The distance along the current ray at which it enters the box, 0 if it starts inside the box or Double.MAX_VALUE if it misses it
+	 */
+	public double getEntryDistance(double boxMinX, double boxMinY, double boxMinZ, double boxDim) {
+		double tx0 = ((invDirX > 0 ? boxMinX : boxMinX + boxDim) - originX) * invDirX;
+		double tx1 = ((invDirX > 0 ? boxMinX + boxDim : boxMinX) - originX) * invDirX;
+		double ty0 = ((invDirY > 0 ? boxMinY : boxMinY + boxDim) - originY) * invDirY;
+		double ty1 = ((invDirY > 0 ? boxMinY + boxDim : boxMinY) - originY) * invDirY;
+		double tz0 = ((invDirZ > 0 ? boxMinZ : boxMinZ + boxDim) - originZ) * invDirZ;
+		double tz1 = ((invDirZ > 0 ? boxMinZ + boxDim : boxMinZ) - originZ) * invDirZ;
+		double tmin = tx0 > ty0 ? tx0 > tz0 ? tx0 : tz0 : ty0 > tz0 ? ty0 : tz0;
+		double tmax = tx1 < ty1 ? tx1 < tz1 ? tx1 : tz1 : ty1 < tz1 ? ty1 : tz1;
+		tmin = tmin < 0 ? 0 : tmin;
+		return tmin > tmax ? Double.MAX_VALUE : tmin;
+	}
+
+	/**
+	 * @param t
+	 *            A distance along the current ray
+	 * @param axis
+	 *            The axis of the coordinate (0 for x, 1 for y, 2 for z)
+	 * @return The coordinate on the finest lattice of the position of the ray at distance t, rounded down
+	 */
+	public long getLatticePosition(double t, int axis) {
+		return axis == 0 ? frame.toLattice(t * dirX + originX, 0) : axis == 1 ? frame.toLattice(t * dirY + originY, 1) : frame.toLattice(t * dirZ + originZ, 2);
+	}
+
+	/**
+	 * Continues casting the current ray from a node it has already entered and visited, storing the color and depth found. This is used by RayPacketCast to
+	 * carry on tracing a ray individually once it diverges from the rest of its packet.
+	 *
+	 * @param node
+	 *            The node the ray is currently in
+	 * @param boxMinX
+	 *            The minimum x position in space of node
+	 * @param boxMinY
+	 *            The minimum y position in space of node
+	 * @param boxMinZ
+	 *            The minimum z position in space of node
+	 * @param boxDim
+	 *            The width of node
+	 * @param tmin
+	 *            The distance along the ray at which it entered node
+	 * @param pX
+	 *            The x coordinate of the (adjusted) point at which the ray entered node
+	 * @param pY
+	 *            The y coordinate of the (adjusted) point at which the ray entered node
+	 * @param pZ
+	 *            The z coordinate of the (adjusted) point at which the ray entered node
+	 */
+	void resume(OctreeNode node, double boxMinX, double boxMinY, double boxMinZ, double boxDim, double tmin, double pX, double pY, double pZ) {
+
+		// will loop until a color is returned
+		while (true) {
 
 			// while node is not a leaf, descend hierarchy until leaf reached
 			while (!node.isLeaf()) {
 				// check if voxel is small enough to terminate hierarcy
 				if ((boxDim * voxelSizeConstantA) < (tmin * voxelSizeConstantB)) {
-					imageColors[index] = node.getColor();
-					imageDepth[index] = tmin;
+					color = node.getColor();
+					depth = getHitDistance(boxMinX, boxMinY, boxMinZ, boxDim, tmin);
+					hitNode = node;
+					hitBoxMinX = boxMinX;
+					hitBoxMinY = boxMinY;
+					hitBoxMinZ = boxMinZ;
 					return;
 				}
 
 				// descend hierarchy
 				boxDim /= 2d;
 
-				// use step function to adjust boxMin ((boxMin.x + boxDim) is boxMid)
-				boolean[] s = { (P.x >= (boxMin.x + boxDim)) ? true : false, (P.y >= (boxMin.y + boxDim)) ? true : false,
-						(P.z >= (boxMin.z + boxDim)) ? true : false };
-				boxMin.x += s[0] ? boxDim : 0;
-				boxMin.y += s[1] ? boxDim : 0;
-				boxMin.z += s[2] ? boxDim : 0;
-				node = node.getChild(s[0] ? 1 : 0, s[1] ? 1 : 0, s[2] ? 1 : 0);
+				// use step function to adjust boxMin ((boxMin + boxDim) is boxMid)
+				int sX = (pX >= (boxMinX + boxDim)) ? 1 : 0;
+				int sY = (pY >= (boxMinY + boxDim)) ? 1 : 0;
+				int sZ = (pZ >= (boxMinZ + boxDim)) ? 1 : 0;
+				boxMinX += sX * boxDim;
+				boxMinY += sY * boxDim;
+				boxMinZ += sZ * boxDim;
+				node = node.getChild(sX, sY, sZ);
 
 				// mark node and its bricks as having been visited by a ray
 				node.visit();
@@ -126,22 +311,27 @@ public class RayCast implements Runnable {
 
 			// a leaf node has now been reached; if node is a non-empty leaf, return its color
 			if (node.isLeaf() && !node.isEmpty()) {
-				if ((boxDim * voxelSizeConstantA) > (tmin * voxelSizeConstantB))
-					subdivider.queueNode(node, boxMin, boxDim);
-
-				imageColors[index] = node.getColor();
-				imageDepth[index] = tmin;
+				// only allocate a position for the subdivider if the node is not already waiting to be subdivided
+				if ((boxDim * voxelSizeConstantA) > (tmin * voxelSizeConstantB) && !node.isQueuedSubdiv())
+					subdivider.queueNode(node, frame.toSpace(boxMinX, boxMinY, boxMinZ), boxDim / frame.getScale());
+
+				color = node.getColor();
+				depth = getHitDistance(boxMinX, boxMinY, boxMinZ, boxDim, tmin);
+				hitNode = node;
+				hitBoxMinX = boxMinX;
+				hitBoxMinY = boxMinY;
+				hitBoxMinZ = boxMinZ;
 				return;
 			}
 
 			// otherwise node is empty so we must set ray tmin to tmax of current node, so we need to calculate tmax again
 			// calculate t values for each corner
-			tx0 = (boxMin.x - cPos.x) / pVec.x;
-			tx1 = ((boxMin.x + boxDim) - cPos.x) / pVec.x;
-			ty0 = (boxMin.y - cPos.y) / pVec.y;
-			ty1 = ((boxMin.y + boxDim) - cPos.y) / pVec.y;
-			tz0 = (boxMin.z - cPos.z) / pVec.z;
-			tz1 = ((boxMin.z + boxDim) - cPos.z) / pVec.z;
+			double tx0 = (boxMinX - originX) * invDirX;
+			double tx1 = ((boxMinX + boxDim) - originX) * invDirX;
+			double ty0 = (boxMinY - originY) * invDirY;
+			double ty1 = ((boxMinY + boxDim) - originY) * invDirY;
+			double tz0 = (boxMinZ - originZ) * invDirZ;
+			double tz1 = ((boxMinZ + boxDim) - originZ) * invDirZ;
 
 			// ensure t0 and t1 are in the correct order
 			if (tx1 < tx0) {
@@ -161,54 +351,143 @@ public class RayCast implements Runnable {
 			}
 
 			// find tmax
-			tmax = tx1 < ty1 ? tx1 < tz1 ? tx1 : tz1 : ty1 < tz1 ? ty1 : tz1;
+			double tmax = tx1 < ty1 ? tx1 < tz1 ? tx1 : tz1 : ty1 < tz1 ? ty1 : tz1;
 
 			// find neighbor node if one exists and adjust boxMin position
 			OctreeNode neighbor = null;
 			int neighborId = 0;
 			synchronized (node) {
 				if (tmax == tx1) {
-					neighborId = (ray.getDir().x > 0 ? 1 : 0);
-					boxMin.x += ray.getDir().x > 0 ? boxDim : -boxDim;
+					neighborId = (dirX > 0 ? 1 : 0);
+					boxMinX += dirX > 0 ? boxDim : -boxDim;
 				} else if (tmax == ty1) {
-					neighborId = (ray.getDir().y > 0 ? 3 : 2);
-					boxMin.y += ray.getDir().y > 0 ? boxDim : -boxDim;
+					neighborId = (dirY > 0 ? 3 : 2);
+					boxMinY += dirY > 0 ? boxDim : -boxDim;
 				} else if (tmax == tz1) {
-					neighborId = (ray.getDir().z > 0 ? 5 : 4);
-					boxMin.z += ray.getDir().z > 0 ? boxDim : -boxDim;
+					neighborId = (dirZ > 0 ? 5 : 4);
+					boxMinZ += dirZ > 0 ? boxDim : -boxDim;
 				}
 			}
 			neighbor = node.getNeighbor(neighborId);
 
 			// if no neighbor node found return black
 			if (neighbor == null) {
-				imageColors[index] = 0;
-				imageDepth[index] = Double.MAX_VALUE;
+				color = 0;
+				depth = Double.MAX_VALUE;
+				hitNode = null;
 				return;
 			}
 
 			// if coarser neighbor node found, snap boxMin onto coarser grid
 			if (neighbor.getDepth() != node.getDepth()) {
 				// save old position of box for setting neighbor once found
-				double oldBoxMinX = boxMin.x;
-				double oldBoxMinY = boxMin.y;
-				double oldBoxMinZ = boxMin.z;
+				double oldBoxMinX = boxMinX;
+				double oldBoxMinY = boxMinY;
+				double oldBoxMinZ = boxMinZ;
 
-				boxDim = Math.pow(2d, -neighbor.getDepth() + 1d);
-				boxMin.x = Math.floor(boxMin.x / boxDim) * boxDim;
-				boxMin.y = Math.floor(boxMin.y / boxDim) * boxDim;
-				boxMin.z = Math.floor(boxMin.z / boxDim) * boxDim;
+				// the grid is aligned to the root node, so snap on the lattice of the frame
+				long size = LatticeRayCast.getNodeSize(neighbor.getDepth());
+				boxDim = frame.getWidth(size);
+				boxMinX = frame.toLocal(frame.toLattice(boxMinX, 0) & -size, 0);
+				boxMinY = frame.toLocal(frame.toLattice(boxMinY, 1) & -size, 1);
+				boxMinZ = frame.toLocal(frame.toLattice(boxMinZ, 2) & -size, 2);
 
 				if (!neighbor.isLeaf()) {
-					node.setNeighbor(neighborId, neighbor.getChild(oldBoxMinX >= (boxMin.x + boxDim / 2) ? 1 : 0,
-							oldBoxMinY >= (boxMin.y + boxDim / 2) ? 1 : 0, oldBoxMinZ >= (boxMin.z + boxDim / 2) ? 1 : 0));
+					node.setNeighbor(neighborId, neighbor.getChild(oldBoxMinX >= (boxMinX + boxDim / 2) ? 1 : 0, oldBoxMinY >= (boxMinY + boxDim / 2) ? 1 : 0,
+							oldBoxMinZ >= (boxMinZ + boxDim / 2) ? 1 : 0));
 				}
 			}
 
 			// finally set node to neighbor found and tmin to new position along ray
 			node = neighbor;
 			tmin = tmax;
+
+			// mark node and its bricks as having been visited by a ray
+			node.visit();
+
+			// calculate point where ray hits using current tmin value (adjust slightly to take floating point calculations into account)
+			double tP = 0.0001 * boxDim + tmin;
+			pX = tP * dirX + originX;
+			pY = tP * dirY + originY;
+			pZ = tP * dirZ + originZ;
 		}
 	}
 
+	/**
+	 * The point a ray descends by is nudged past where it entered the node it descends from, so it can select a child the ray enters slightly further
+	 * along. The distance it hits a node at is where it entered the node's box, which is never before where it entered the node it descended from.
+	 *
+	 * @param boxMinX
+	 *            The minimum x position of the box hit
+	 * @param boxMinY
+	 *            The minimum y position of the box hit
+	 * @param boxMinZ
+	 *            The minimum z position of the box hit
+	 * @param boxDim
+	 *            The width of the box hit
+	 * @param tmin
+	 *            The distance along the ray at which it entered the node it descended to the box from
+	 * @return The distance along the current ray at which it entered the box
+	 */
+	private double getHitDistance(double boxMinX, double boxMinY, double boxMinZ, double boxDim, double tmin) {
+		double tx0 = ((invDirX > 0 ? boxMinX : boxMinX + boxDim) - originX) * invDirX;
+		double ty0 = ((invDirY > 0 ? boxMinY : boxMinY + boxDim) - originY) * invDirY;
+		double tz0 = ((invDirZ > 0 ? boxMinZ : boxMinZ + boxDim) - originZ) * invDirZ;
+		double t = tx0 > ty0 ? tx0 > tz0 ? tx0 : tz0 : ty0 > tz0 ? ty0 : tz0;
+		return t > tmin ? t : tmin;
+	}
+
+	// ----------------------------------------------------------------------------
+	// Getters & Setters
+	// ----------------------------------------------------------------------------
+
+	/**
+	 * @param frame
+	 *            The coordinate frame rays and node bounds are given to this RayCast in, whose positions are converted back into space for the subdivider
+	 */
+	public void setFrame(RebasedFrame frame) {
+		this.frame = frame;
+	}
+
+	/**
+	 * @return The color found by the last cast, black if the ray missed the fractal
+	 */
+	public int getColor() {
+		return color;
+	}
+
+	/**
+	 * @return The distance along the ray to the color found by the last cast, Double.MAX_VALUE if the ray missed the fractal
+	 */
+	public double getDepth() {
+		return depth;
+	}
+
+	/**
+	 * @return The node whose color was found by the last cast, null if the ray missed the fractal
+	 */
+	public OctreeNode getHitNode() {
+		return hitNode;
+	}
+
+	/**
+	 * @return The minimum x lattice coordinate of the node found by the last cast, if the ray hit the fractal
+	 */
+	public long getHitX() {
+		return frame.toLattice(hitBoxMinX, 0);
+	}
+
+	/**
+	 * @return The minimum y lattice coordinate of the node found by the last cast, if the ray hit the fractal
+	 */
+	public long getHitY() {
+		return frame.toLattice(hitBoxMinY, 1);
+	}
+
+	/**
+	 * @return The minimum z lattice coordinate of the node found by the last cast, if the ray hit the fractal
+	 */
+	public long getHitZ() {
+		return frame.toLattice(hitBoxMinZ, 2);
+	}
 }
@@ -0,0 +1,258 @@
+package com.erroll.renderer;
+
+import javax.vecmath.Vector3d;
+
+import com.erroll.camera.CameraInterface;
+
+public class RayGenerator {
+
+	// the coordinate frame the rays are generated in
+	private RebasedFrame frame;
+
+	// the camera position every primary ray starts from
+	private double originX;
+	private double originY;
+	private double originZ;
+
+	// the vector from the camera to the top left of the viewplane
+	private double cornerX;
+	private double cornerY;
+	private double cornerZ;
+
+	// the vectors across the viewplane for one pixel column and one pixel row
+	private double colStepX;
+	private double colStepY;
+	private double colStepZ;
+	private double rowStepX;
+	private double rowStepY;
+	private double rowStepZ;
+
+	// the inverse of the matrix with columns corner, colStep and rowStep, used to project points back onto the screen
+	private double inv00;
+	private double inv01;
+	private double inv02;
+	private double inv10;
+	private double inv11;
+	private double inv12;
+	private double inv20;
+	private double inv21;
+	private double inv22;
+
+	/**
+	 * Creates a RayGenerator for the primary rays of a frame. The camera is read once here so that the rays for each pixel can be generated without
+	 * allocating any vectors.
+	 *
+	 * @param camera
+	 *            The camera snapshot to generate rays from
+	 * @param resolutionX
+	 *            The resolution of the output horizontally across the screen
+	 * @param resolutionY
+	 *            The resolution of the output vertically down the screen
+	 */
+	public RayGenerator(CameraInterface camera, int resolutionX, int resolutionY) {
+		this(camera, resolutionX, resolutionY, RebasedFrame.SPACE);
+	}
+
+	/**
+	 * Creates a RayGenerator for the primary rays of a frame, whose origins and points are given in a rebased coordinate frame rather than in space.
+	 * Directions are unchanged, but distances along the rays are in local units.
+	 *
+	 * @param camera
+	 *            The camera snapshot to generate rays from
+	 * @param resolutionX
+	 *            The resolution of the output horizontally across the screen
+	 * @param resolutionY
+	 *            The resolution of the output vertically down the screen
+	 * @param frame
+	 *            The coordinate frame to generate rays in
+	 */
+	public RayGenerator(CameraInterface camera, int resolutionX, int resolutionY, RebasedFrame frame) {
+		this.frame = frame;
+		Vector3d position = camera.getPosition();
+		Vector3d positionError = camera.getPositionError();
+		Vector3d lookVector = camera.getLookVector();
+		Vector3d viewplaneTop = camera.getViewplaneTop();
+		Vector3d viewplaneLeft = camera.getViewplaneLeft();
+		double distanceToViewplane = camera.getDistanceToViewplane();
+
+		originX = frame.toLocal(position.x, positionError.x, 0);
+		originY = frame.toLocal(position.y, positionError.y, 1);
+		originZ = frame.toLocal(position.z, positionError.z, 2);
+
+		// corner = lookVector * distanceToViewplane - (viewplaneTop + viewplaneLeft) / 2
+		cornerX = lookVector.x * distanceToViewplane - (viewplaneTop.x + viewplaneLeft.x) * 0.5d;
+		cornerY = lookVector.y * distanceToViewplane - (viewplaneTop.y + viewplaneLeft.y) * 0.5d;
+		cornerZ = lookVector.z * distanceToViewplane - (viewplaneTop.z + viewplaneLeft.z) * 0.5d;
+
+		colStepX = viewplaneTop.x / resolutionX;
+		colStepY = viewplaneTop.y / resolutionX;
+		colStepZ = viewplaneTop.z / resolutionX;
+		rowStepX = viewplaneLeft.x / resolutionY;
+		rowStepY = viewplaneLeft.y / resolutionY;
+		rowStepZ = viewplaneLeft.z / resolutionY;
+
+		// invert [corner colStep rowStep] using the cofactors of its columns (the viewplane vectors need not be perpendicular to the look vector)
+		double c00 = colStepY * rowStepZ - colStepZ * rowStepY;
+		double c01 = colStepZ * rowStepX - colStepX * rowStepZ;
+		double c02 = colStepX * rowStepY - colStepY * rowStepX;
+		double invDet = 1d / (cornerX * c00 + cornerY * c01 + cornerZ * c02);
+		inv00 = c00 * invDet;
+		inv01 = c01 * invDet;
+		inv02 = c02 * invDet;
+		inv10 = (rowStepY * cornerZ - rowStepZ * cornerY) * invDet;
+		inv11 = (rowStepZ * cornerX - rowStepX * cornerZ) * invDet;
+		inv12 = (rowStepX * cornerY - rowStepY * cornerX) * invDet;
+		inv20 = (cornerY * colStepZ - cornerZ * colStepY) * invDet;
+		inv21 = (cornerZ * colStepX - cornerX * colStepZ) * invDet;
+		inv22 = (cornerX * colStepY - cornerY * colStepX) * invDet;
+	}
+
+	/**
+	 * Sets the ray of rc to the primary ray through a position on the screen
+	 *
+	 * @param rc
+	 *            The traversal whose ray is set
+	 * @param col
+	 *            The position from the left of the screen in pixels
+	 * @param row
+	 *            The position from the top of the screen in pixels
+	 */
+	public void setPixelRay(TraversalInterface rc, double col, double row) {
+		double dirX = cornerX + col * colStepX + row * rowStepX;
+		double dirY = cornerY + col * colStepY + row * rowStepY;
+		double dirZ = cornerZ + col * colStepZ + row * rowStepZ;
+
+		// normalize the direction
+		double invLength = 1d / Math.sqrt(dirX * dirX + dirY * dirY + dirZ * dirZ);
+		rc.setRay(originX, originY, originZ, dirX * invLength, dirY * invLength, dirZ * invLength);
+	}
+
+	/**
+	 * Adds the primary ray through a position on the screen to a packet of rays
+	 *
+	 * @param packet
+	 *            The RayPacketCast the ray is added to
+	 * @param col
+	 *            The position from the left of the screen in pixels
+	 * @param row
+	 *            The position from the top of the screen in pixels
+	 * @return The index of the ray in the packet
+	 */
+	public int addPixelRay(RayPacketCast packet, double col, double row) {
+		double dirX = cornerX + col * colStepX + row * rowStepX;
+		double dirY = cornerY + col * colStepY + row * rowStepY;
+		double dirZ = cornerZ + col * colStepZ + row * rowStepZ;
+
+		// normalize the direction
+		double invLength = 1d / Math.sqrt(dirX * dirX + dirY * dirY + dirZ * dirZ);
+		return packet.addRay(originX, originY, originZ, dirX * invLength, dirY * invLength, dirZ * invLength);
+	}
+
+	/**
+	 * Finds the point a distance along the primary ray through a position on the screen
+	 *
+	 * @param col
+	 *            The position from the left of the screen in pixels
+	 * @param row
+	 *            The position from the top of the screen in pixels
+	 * @param t
+	 *            The distance along the ray
+	 * @param point
+	 *            An array of length 3 to store the x, y and z coordinates of the point in
+	 */
+	public void getPoint(double col, double row, double t, double[] point) {
+		double dirX = cornerX + col * colStepX + row * rowStepX;
+		double dirY = cornerY + col * colStepY + row * rowStepY;
+		double dirZ = cornerZ + col * colStepZ + row * rowStepZ;
+
+		// scale the direction to a length of t
+		double scale = t / Math.sqrt(dirX * dirX + dirY * dirY + dirZ * dirZ);
+		point[0] = originX + dirX * scale;
+		point[1] = originY + dirY * scale;
+		point[2] = originZ + dirZ * scale;
+	}
+
+	/**
+	 * Finds the distance along the primary ray through a position on the screen at which it enters a box
+	 *
+	 * @param col
+	 *            The position from the left of the screen in pixels
+	 * @param row
+	 *            The position from the top of the screen in pixels
+	 * @param boxMinX
+	 *            The minimum x position in space of the box
+	 * @param boxMinY
+	 *            The minimum y position in space of the box
+	 * @param boxMinZ
+	 *            The minimum z position in space of the box
+	 * @param boxDim
+	 *            The width of the box
+	 * @return The distance along the ray to the box (0 if the camera is inside it), Double.MAX_VALUE if the ray misses the box
+	 */
+	public double getEntryDistance(double col, double row, double boxMinX, double boxMinY, double boxMinZ, double boxDim) {
+		double dirX = cornerX + col * colStepX + row * rowStepX;
+		double dirY = cornerY + col * colStepY + row * rowStepY;
+		double dirZ = cornerZ + col * colStepZ + row * rowStepZ;
+
+		// normalize the direction and take its reciprocal
+		double length = Math.sqrt(dirX * dirX + dirY * dirY + dirZ * dirZ);
+		double invDirX = length / dirX;
+		double invDirY = length / dirY;
+		double invDirZ = length / dirZ;
+
+		// calculate t values for the faces of the box nearest and furthest from the camera on each axis
+		double tx0 = ((invDirX > 0 ? boxMinX : boxMinX + boxDim) - originX) * invDirX;
+		double tx1 = ((invDirX > 0 ? boxMinX + boxDim : boxMinX) - originX) * invDirX;
+		double ty0 = ((invDirY > 0 ? boxMinY : boxMinY + boxDim) - originY) * invDirY;
+		double ty1 = ((invDirY > 0 ? boxMinY + boxDim : boxMinY) - originY) * invDirY;
+		double tz0 = ((invDirZ > 0 ? boxMinZ : boxMinZ + boxDim) - originZ) * invDirZ;
+		double tz1 = ((invDirZ > 0 ? boxMinZ + boxDim : boxMinZ) - originZ) * invDirZ;
+
+		// tmin = Math.max(tx0, Math.max(ty0, tz0)); tmax = Math.min(tx1, Math.min(ty1, tz1));
+		double tmin = tx0 > ty0 ? tx0 > tz0 ? tx0 : tz0 : ty0 > tz0 ? ty0 : tz0;
+		double tmax = tx1 < ty1 ? tx1 < tz1 ? tx1 : tz1 : ty1 < tz1 ? ty1 : tz1;
+		tmin = tmin < 0 ? 0 : tmin;
+
+		return tmin > tmax ? Double.MAX_VALUE : tmin;
+	}
+
+	/**
+	 * Projects a point in space onto the screen, the inverse of getPoint
+	 *
+	 * @param x
+	 *            The x coordinate of the point
+	 * @param y
+	 *            The y coordinate of the point
+	 * @param z
+	 *            The z coordinate of the point
+	 * @param pixel
+	 *            An array of length 3 to store the position from the left of the screen, the position from the top of the screen and the distance from the
+	 *            camera of the point in
+	 * @return True if the point is in front of the camera, false if it is behind it in which case pixel is not set
+	 */
+	public boolean project(double x, double y, double z, double[] pixel) {
+		double vX = x - originX;
+		double vY = y - originY;
+		double vZ = z - originZ;
+
+		// solve v = s * (corner + col * colStep + row * rowStep), where s is the scale of the vector to the viewplane
+		double s = inv00 * vX + inv01 * vY + inv02 * vZ;
+		if (s <= 0)
+			return false;
+		pixel[0] = (inv10 * vX + inv11 * vY + inv12 * vZ) / s;
+		pixel[1] = (inv20 * vX + inv21 * vY + inv22 * vZ) / s;
+		pixel[2] = Math.sqrt(vX * vX + vY * vY + vZ * vZ);
+		return true;
+	}
+
+	// ----------------------------------------------------------------------------
+	// Getters & Setters
+	// ----------------------------------------------------------------------------
+
+	/**
+	 * @return The coordinate frame the rays, points and distances of this RayGenerator are given in
+	 */
+	public RebasedFrame getFrame() {
+		return frame;
+	}
+}
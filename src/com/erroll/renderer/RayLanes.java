@@ -0,0 +1,70 @@
+package com.erroll.renderer;
+
+public class RayLanes {
+
+	// the number of rays currently held
+	int count;
+
+	// the rays held, P(t) = origin + t * dir, and the reciprocals of their directions, stored as structure-of-arrays so that slab kernels read each
+	// field of the rays in order
+	final double[] originX;
+	final double[] originY;
+	final double[] originZ;
+	final double[] dirX;
+	final double[] dirY;
+	final double[] dirZ;
+	final double[] invDirX;
+	final double[] invDirY;
+	final double[] invDirZ;
+
+	/**
+	 * Creates an empty set of rays
+	 *
+	 * @param capacity
+	 *            The maximum number of rays that can be held
+	 */
+	public RayLanes(int capacity) {
+		originX = new double[capacity];
+		originY = new double[capacity];
+		originZ = new double[capacity];
+		dirX = new double[capacity];
+		dirY = new double[capacity];
+		dirZ = new double[capacity];
+		invDirX = new double[capacity];
+		invDirY = new double[capacity];
+		invDirZ = new double[capacity];
+	}
+
+	/**
+	 * Removes all rays so that a new set can be added
+	 */
+	public void clear() {
+		count = 0;
+	}
+
+	/**
+	 * Adds a ray
+	 *
+	 * @return The index (lane) of the new ray
+	 */
+	public int add(double originX, double originY, double originZ, double dirX, double dirY, double dirZ) {
+		int i = count++;
+		this.originX[i] = originX;
+		this.originY[i] = originY;
+		this.originZ[i] = originZ;
+		this.dirX[i] = dirX;
+		this.dirY[i] = dirY;
+		this.dirZ[i] = dirZ;
+		this.invDirX[i] = 1d / dirX;
+		this.invDirY[i] = 1d / dirY;
+		this.invDirZ[i] = 1d / dirZ;
+		return i;
+	}
+
+	/**
+	 * @return The number of rays currently held
+	 */
+	public int getCount() {
+		return count;
+	}
+}
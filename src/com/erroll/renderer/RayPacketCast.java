@@ -0,0 +1,430 @@
+package com.erroll.renderer;
+
+import com.erroll.octree.OctreeNode;
+import com.erroll.octree.scaleadaptation.Subdivider;
+
+public class RayPacketCast {
+
+	private Subdivider subdivider;
+	private double voxelSizeConstantA;
+	private double voxelSizeConstantB;
+
+	// the maximum number of rays in a packet
+	private int capacity;
+
+	// the coordinate frame the rays and node bounds are given in, positions in space unless the renderer has rebased
+	private RebasedFrame frame = RebasedFrame.SPACE;
+
+	// the rays of the packet
+	private RayLanes rays;
+
+	// the kernel used to intersect the packet's rays with nodes and select the children they enter
+	private SlabKernel slabKernel = new SlabKernel();
+
+	// the distance along each ray it entered the current node and the (adjusted) point at which it did
+	private double[] tmin;
+	private double[] pX;
+	private double[] pY;
+	private double[] pZ;
+
+	// the distance along each ray it leaves the current node, the neighbor it leaves towards and the child it enters
+	private double[] tmax;
+	private int[] neighborIds;
+	private int[] children;
+
+	// whether each ray is still being traced as part of the packet
+	private boolean[] active;
+
+	// the colors, depths and nodes found by the last cast, and the minimum lattice coordinates of the nodes
+	private int[] colors;
+	private double[] depths;
+	private OctreeNode[] hitNodes;
+	private long[] hitX;
+	private long[] hitY;
+	private long[] hitZ;
+
+	// used to finish tracing rays individually once they diverge from the packet
+	private RayCast rayCast;
+
+	/**
+	 * Creates a RayPacketCast which traverses the octree with a small block of rays together. Neighboring rays tend to pass through the same nodes, so the
+	 * packet shares every child descent, level of detail test and neighbor hop its rays agree on. As soon as they disagree the packet is split and each
+	 * ray carries on by itself from the node the packet had reached, giving the same colors and depths as tracing every ray individually.
+	 *
+	 * @param capacity
+	 *            The maximum number of rays in a packet
+	 */
+	public RayPacketCast(int capacity, Subdivider subdivider, double voxelSizeConstantA, double voxelSizeConstantB) {
+		this.subdivider = subdivider;
+		this.voxelSizeConstantA = voxelSizeConstantA;
+		this.voxelSizeConstantB = voxelSizeConstantB;
+		this.capacity = capacity;
+
+		rays = new RayLanes(capacity);
+		tmin = new double[capacity];
+		pX = new double[capacity];
+		pY = new double[capacity];
+		pZ = new double[capacity];
+		tmax = new double[capacity];
+		neighborIds = new int[capacity];
+		children = new int[capacity];
+		active = new boolean[capacity];
+		colors = new int[capacity];
+		depths = new double[capacity];
+		hitNodes = new OctreeNode[capacity];
+		hitX = new long[capacity];
+		hitY = new long[capacity];
+		hitZ = new long[capacity];
+
+		rayCast = new RayCast(subdivider, voxelSizeConstantA, voxelSizeConstantB);
+	}
+
+	/**
+	 * Empties the packet so that a new set of rays can be added
+	 */
+	public void clear() {
+		rays.clear();
+	}
+
+	/**
+	 * Adds a ray to the packet
+	 *
+	 * @return The index of the ray in the packet, used to get its results once cast
+	 */
+	public int addRay(double originX, double originY, double originZ, double dirX, double dirY, double dirZ) {
+		return rays.add(originX, originY, originZ, dirX, dirY, dirZ);
+	}
+
+	/**
+	 * Casts every ray in the packet through the octree starting at startNode, storing the colors and depths found
+	 *
+	 * @param startNode
+	 *            The node to start traversal from, which must contain the start of every ray or be the root node
+	 * @param startBoxMinX
+	 *            The minimum x position in space of startNode
+	 * @param startBoxMinY
+	 *            The minimum y position in space of startNode
+	 * @param startBoxMinZ
+	 *            The minimum z position in space of startNode
+	 * @param startBoxDim
+	 *            The width of startNode
+	 */
+	public void cast(OctreeNode startNode, double startBoxMinX, double startBoxMinY, double startBoxMinZ, double startBoxDim) {
+
+		// initialize variables to be used in the loop to start with the start node of the octree
+		OctreeNode node = startNode;
+		double boxMinX = startBoxMinX;
+		double boxMinY = startBoxMinY;
+		double boxMinZ = startBoxMinZ;
+		double boxDim = startBoxDim;
+
+		// find where every ray enters the start node, finishing rays which miss it straight away
+		int size = rays.count;
+		slabKernel.intersect(rays, boxMinX, boxMinY, boxMinZ, boxDim, tmin, tmax);
+		int activeCount = 0;
+		for (int i = 0; i < size; i++) {
+			// if ray misses bounding box it is black
+			if (tmin[i] > tmax[i]) {
+				active[i] = false;
+				colors[i] = 0;
+				depths[i] = Double.MAX_VALUE;
+				hitNodes[i] = null;
+			} else {
+				active[i] = true;
+				activeCount++;
+			}
+		}
+		if (activeCount == 0)
+			return;
+
+		// mark node and its bricks as having been visited by the rays
+		node.visit();
+		setEntryPoints(boxDim);
+
+		// will loop until every ray has a color or has left the packet
+		while (true) {
+
+			// while node is not a leaf, descend hierarchy until leaf reached or the rays disagree on which child to enter
+			while (!node.isLeaf()) {
+				// check if voxel is small enough to terminate hierarchy for each ray
+				int terminated = 0;
+				for (int i = 0; i < size; i++)
+					if (active[i] && (boxDim * voxelSizeConstantA) < (tmin[i] * voxelSizeConstantB))
+						terminated++;
+
+				if (terminated == activeCount) {
+					for (int i = 0; i < size; i++) {
+						if (active[i]) {
+							colors[i] = node.getColor();
+							depths[i] = tmin[i];
+							hitNodes[i] = node;
+						}
+					}
+					setHitPosition(boxMinX, boxMinY, boxMinZ);
+					return;
+				} else if (terminated != 0) {
+					split(node, boxMinX, boxMinY, boxMinZ, boxDim);
+					return;
+				}
+
+				// use step function to find the child each ray enters ((boxMin + boxDim / 2) is boxMid)
+				double childDim = boxDim / 2d;
+				slabKernel.selectChildren(rays, pX, pY, pZ, boxMinX + childDim, boxMinY + childDim, boxMinZ + childDim, children);
+				int child = -1;
+				for (int i = 0; i < size; i++) {
+					if (active[i]) {
+						if (child == -1) {
+							child = children[i];
+						} else if (child != children[i]) {
+							child = -2;
+							break;
+						}
+					}
+				}
+				if (child == -2) {
+					split(node, boxMinX, boxMinY, boxMinZ, boxDim);
+					return;
+				}
+
+				// descend hierarchy
+				boxDim = childDim;
+				int sX = (child >> 2) & 1;
+				int sY = (child >> 1) & 1;
+				int sZ = child & 1;
+				boxMinX += sX * boxDim;
+				boxMinY += sY * boxDim;
+				boxMinZ += sZ * boxDim;
+				node = node.getChild(sX, sY, sZ);
+
+				// mark node and its bricks as having been visited by the rays
+				node.visit();
+			}
+
+			// a leaf node has now been reached; if node is a non-empty leaf, every ray takes its color
+			if (node.isLeaf() && !node.isEmpty()) {
+				boolean queue = false;
+				for (int i = 0; i < size; i++) {
+					if (active[i]) {
+						if ((boxDim * voxelSizeConstantA) > (tmin[i] * voxelSizeConstantB))
+							queue = true;
+						colors[i] = node.getColor();
+						depths[i] = tmin[i];
+						hitNodes[i] = node;
+					}
+				}
+				setHitPosition(boxMinX, boxMinY, boxMinZ);
+
+				// only allocate a position for the subdivider if the node is not already waiting to be subdivided
+				if (queue && !node.isQueuedSubdiv())
+					subdivider.queueNode(node, frame.toSpace(boxMinX, boxMinY, boxMinZ), boxDim / frame.getScale());
+				return;
+			}
+
+			// otherwise node is empty so find where each ray leaves it and through which neighbor
+			slabKernel.exit(rays, boxMinX, boxMinY, boxMinZ, boxDim, tmax, neighborIds);
+			int neighborId = -1;
+			for (int i = 0; i < size; i++) {
+				if (!active[i])
+					continue;
+
+				// rays which cannot find an exit face are left to be handled individually
+				if (neighborIds[i] == -1 || (neighborId != -1 && neighborId != neighborIds[i])) {
+					neighborId = -2;
+					break;
+				}
+				neighborId = neighborIds[i];
+			}
+
+			// if the rays leave through different faces of the node, split the packet
+			if (neighborId == -2) {
+				split(node, boxMinX, boxMinY, boxMinZ, boxDim);
+				return;
+			}
+
+			// adjust boxMin position to the neighbor
+			switch (neighborId) {
+			case 0:
+				boxMinX -= boxDim;
+				break;
+			case 1:
+				boxMinX += boxDim;
+				break;
+			case 2:
+				boxMinY -= boxDim;
+				break;
+			case 3:
+				boxMinY += boxDim;
+				break;
+			case 4:
+				boxMinZ -= boxDim;
+				break;
+			case 5:
+				boxMinZ += boxDim;
+				break;
+			}
+			OctreeNode neighbor = node.getNeighbor(neighborId);
+
+			// if no neighbor node found every ray is black
+			if (neighbor == null) {
+				for (int i = 0; i < size; i++) {
+					if (active[i]) {
+						colors[i] = 0;
+						depths[i] = Double.MAX_VALUE;
+						hitNodes[i] = null;
+					}
+				}
+				return;
+			}
+
+			// if coarser neighbor node found, snap boxMin onto coarser grid
+			if (neighbor.getDepth() != node.getDepth()) {
+				// save old position of box for setting neighbor once found
+				double oldBoxMinX = boxMinX;
+				double oldBoxMinY = boxMinY;
+				double oldBoxMinZ = boxMinZ;
+
+				// the grid is aligned to the root node, so snap on the lattice of the frame
+				long nodeSize = LatticeRayCast.getNodeSize(neighbor.getDepth());
+				boxDim = frame.getWidth(nodeSize);
+				boxMinX = frame.toLocal(frame.toLattice(boxMinX, 0) & -nodeSize, 0);
+				boxMinY = frame.toLocal(frame.toLattice(boxMinY, 1) & -nodeSize, 1);
+				boxMinZ = frame.toLocal(frame.toLattice(boxMinZ, 2) & -nodeSize, 2);
+
+				if (!neighbor.isLeaf()) {
+					node.setNeighbor(neighborId, neighbor.getChild(oldBoxMinX >= (boxMinX + boxDim / 2) ? 1 : 0, oldBoxMinY >= (boxMinY + boxDim / 2) ? 1 : 0,
+							oldBoxMinZ >= (boxMinZ + boxDim / 2) ? 1 : 0));
+				}
+			}
+
+			// finally set node to neighbor found and tmin of each ray to its new position along the ray
+			node = neighbor;
+			for (int i = 0; i < size; i++)
+				tmin[i] = tmax[i];
+
+			// mark node and its bricks as having been visited by the rays
+			node.visit();
+			setEntryPoints(boxDim);
+		}
+	}
+
+	/**
+	 * Calculates the point where each active ray enters the current node using its tmin value (adjusted slightly to take floating point calculations into
+	 * account)
+	 *
+	 * @param boxDim
+	 *            The width of the current node
+	 */
+	private void setEntryPoints(double boxDim) {
+		for (int i = 0; i < rays.count; i++) {
+			double tP = 0.0001 * boxDim + tmin[i];
+			pX[i] = tP * rays.dirX[i] + rays.originX[i];
+			pY[i] = tP * rays.dirY[i] + rays.originY[i];
+			pZ[i] = tP * rays.dirZ[i] + rays.originZ[i];
+		}
+	}
+
+	/**
+	 * Splits the packet once its rays diverge, finishing each active ray individually from the node the packet has reached
+	 */
+	private void split(OctreeNode node, double boxMinX, double boxMinY, double boxMinZ, double boxDim) {
+		for (int i = 0; i < rays.count; i++) {
+			if (active[i]) {
+				rayCast.setRay(rays.originX[i], rays.originY[i], rays.originZ[i], rays.dirX[i], rays.dirY[i], rays.dirZ[i]);
+				rayCast.resume(node, boxMinX, boxMinY, boxMinZ, boxDim, tmin[i], pX[i], pY[i], pZ[i]);
+				colors[i] = rayCast.getColor();
+				depths[i] = rayCast.getDepth();
+				hitNodes[i] = rayCast.getHitNode();
+				hitX[i] = rayCast.getHitX();
+				hitY[i] = rayCast.getHitY();
+				hitZ[i] = rayCast.getHitZ();
+			}
+		}
+	}
+
+	/**
+	 * Stores the minimum lattice coordinates of the node every active ray hit together
+	 */
+	private void setHitPosition(double boxMinX, double boxMinY, double boxMinZ) {
+		long x = frame.toLattice(boxMinX, 0);
+		long y = frame.toLattice(boxMinY, 1);
+		long z = frame.toLattice(boxMinZ, 2);
+		for (int i = 0; i < rays.count; i++) {
+			if (active[i]) {
+				hitX[i] = x;
+				hitY[i] = y;
+				hitZ[i] = z;
+			}
+		}
+	}
+
+	// ----------------------------------------------------------------------------
+	// Getters & Setters
+	// ----------------------------------------------------------------------------
+
+	/**
+	 * @param frame
+	 *            The coordinate frame rays and node bounds are given to this packet in, also used by the rays it finishes individually
+	 */
+	public void setFrame(RebasedFrame frame) {
+		this.frame = frame;
+		rayCast.setFrame(frame);
+	}
+
+	/**
+	 * @return The color found by the last cast for the ray at index i, black if the ray missed the fractal
+	 */
+	public int getColor(int i) {
+		return colors[i];
+	}
+
+	/**
+	 * @return The distance along the ray at index i to the color found by the last cast, Double.MAX_VALUE if the ray missed the fractal
+	 */
+	public double getDepth(int i) {
+		return depths[i];
+	}
+
+	/**
+	 * @return The node whose color was found by the last cast for the ray at index i, null if the ray missed the fractal
+	 */
+	public OctreeNode getHitNode(int i) {
+		return hitNodes[i];
+	}
+
+	/**
+	 * @return The minimum x lattice coordinate of the node found by the last cast for the ray at index i, if the ray hit the fractal
+	 */
+	public long getHitX(int i) {
+		return hitX[i];
+	}
+
+	/**
+	 * @return The minimum y lattice coordinate of the node found by the last cast for the ray at index i, if the ray hit the fractal
+	 */
+	public long getHitY(int i) {
+		return hitY[i];
+	}
+
+	/**
+	 * @return The minimum z lattice coordinate of the node found by the last cast for the ray at index i, if the ray hit the fractal
+	 */
+	public long getHitZ(int i) {
+		return hitZ[i];
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public Subdivider getSubdivider() {
+		return subdivider;
+	}
+
+	public double getVoxelSizeConstantA() {
+		return voxelSizeConstantA;
+	}
+
+	public double getVoxelSizeConstantB() {
+		return voxelSizeConstantB;
+	}
+}
@@ -0,0 +1,143 @@
+package com.erroll.renderer;
+
+import javax.vecmath.Vector3d;
+
+public class RebasedFrame {
+
+	// the frame whose local coordinates are positions in space, anchored at the node from (0, 0, 0) to (1, 1, 1)
+	public static final RebasedFrame SPACE = new RebasedFrame(LatticeRayCast.getNodeSize(1), LatticeRayCast.getNodeSize(1), LatticeRayCast.getNodeSize(1), 1);
+
+	// the lattice coordinates of the minimum corner of the anchor node, which is the origin of local coordinates, indexed by axis
+	private long[] origin;
+
+	// the depth of the anchor node, which is 1 wide in local coordinates
+	private int depth;
+
+	// the number of local units in a unit of space, and the width of a lattice unit in local coordinates and its reciprocal (all powers of 2)
+	private double scale;
+	private double unit;
+	private double invUnit;
+
+	// the position of the origin in space, split into the nearest double and the remainder so that it is held exactly, indexed by axis
+	private double[] spaceOrigin;
+	private double[] spaceOriginError;
+
+	/**
+	 * Creates a RebasedFrame anchored at a node, in which positions are given relative to the minimum corner of the node and in units of its width. Deep
+	 * inside the octree positions in space need more bits than a double has to tell nearby nodes apart, but relative to a nearby anchor they are small
+	 * numbers which keep their full precision. The lattice coordinates of nodes convert exactly to local coordinates while they are within 2 ^ 53 lattice
+	 * units of the anchor, and nodes further away are coarse enough not to need the precision.
+	 *
+	 * @param originX
+	 *            The minimum x lattice coordinate of the anchor node
+	 * @param originY
+	 *            The minimum y lattice coordinate of the anchor node
+	 * @param originZ
+	 *            The minimum z lattice coordinate of the anchor node
+	 * @param depth
+	 *            The depth of the anchor node
+	 */
+	public RebasedFrame(long originX, long originY, long originZ, int depth) {
+		this.origin = new long[] { originX, originY, originZ };
+		this.depth = depth;
+		this.scale = Math.scalb(1d, depth - 1);
+		this.unit = Math.scalb(1d, depth - LatticeRayCast.LATTICE_DEPTH);
+		this.invUnit = Math.scalb(1d, LatticeRayCast.LATTICE_DEPTH - depth);
+
+		// the lattice coordinate of a position in space is 2 ^ (LATTICE_DEPTH - 1) more than the position in lattice units
+		spaceOrigin = new double[3];
+		spaceOriginError = new double[3];
+		for (int axis = 0; axis < 3; axis++) {
+			long units = origin[axis] - LatticeRayCast.getNodeSize(1);
+			spaceOrigin[axis] = (double) units * LatticeRayCast.UNIT;
+			spaceOriginError[axis] = (units - (long) (double) units) * LatticeRayCast.UNIT;
+		}
+	}
+
+	/**
+	 * @param coordinate
+	 *            A coordinate on the finest lattice
+	 * @param axis
+	 *            The axis of the coordinate (0 for x, 1 for y, 2 for z)
+	 * @return The position of the coordinate in local coordinates
+	 */
+	public double toLocal(long coordinate, int axis) {
+		return (coordinate - origin[axis]) * unit;
+	}
+
+	/**
+	 * @param size
+	 *            A width in lattice units
+	 * @return The width in local coordinates
+	 */
+	public double getWidth(long size) {
+		return size * unit;
+	}
+
+	/**
+	 * @param position
+	 *            A position in space along an axis
+	 * @param positionError
+	 *            The remainder of the position which could not be held by position, as kept by Camera
+	 * @param axis
+	 *            The axis of the position (0 for x, 1 for y, 2 for z)
+	 * @return The position in local coordinates
+	 */
+	public double toLocal(double position, double positionError, int axis) {
+		return ((position - spaceOrigin[axis]) + (positionError - spaceOriginError[axis])) * scale;
+	}
+
+	/**
+	 * @param local
+	 *            A position in local coordinates along an axis
+	 * @param axis
+	 *            The axis of the position (0 for x, 1 for y, 2 for z)
+	 * @return The coordinate of the position on the finest lattice, rounded down
+	 */
+	public long toLattice(double local, int axis) {
+		return origin[axis] + (long) Math.floor(local * invUnit);
+	}
+
+	/**
+	 * @param localX
+	 *            The x coordinate of a position in local coordinates
+	 * @param localY
+	 *            The y coordinate of a position in local coordinates
+	 * @param localZ
+	 *            The z coordinate of a position in local coordinates
+	 * @return The position in space, as near as a double can hold it
+	 */
+	public Vector3d toSpace(double localX, double localY, double localZ) {
+		return new Vector3d(spaceOrigin[0] + (spaceOriginError[0] + localX / scale), spaceOrigin[1] + (spaceOriginError[1] + localY / scale), spaceOrigin[2]
+				+ (spaceOriginError[2] + localZ / scale));
+	}
+
+	/**
+	 * @param x
+	 *            An x coordinate on the finest lattice
+	 * @param y
+	 *            A y coordinate on the finest lattice
+	 * @param z
+	 *            A z coordinate on the finest lattice
+	 * @return True if the lattice coordinates are inside the anchor node
+	 */
+	public boolean contains(long x, long y, long z) {
+		long size = LatticeRayCast.getNodeSize(depth);
+		return x >= origin[0] && x < origin[0] + size && y >= origin[1] && y < origin[1] + size && z >= origin[2] && z < origin[2] + size;
+	}
+
+	// ----------------------------------------------------------------------------
+	// Getters & Setters
+	// ----------------------------------------------------------------------------
+
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * @return The number of local units in a unit of space, by which widths and distances in space are multiplied to give them in local coordinates
+	 */
+	public double getScale() {
+		return scale;
+	}
+}
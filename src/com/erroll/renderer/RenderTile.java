@@ -0,0 +1,592 @@
+package com.erroll.renderer;
+
+import java.util.concurrent.RecursiveAction;
+
+import javax.vecmath.Vector3d;
+
+import com.erroll.octree.OctreeNode;
+import com.erroll.octree.PackedOctree;
+import com.erroll.octree.scaleadaptation.Subdivider;
+import com.erroll.renderer.temporal.StartNodeCache;
+
+public class RenderTile extends RecursiveAction {
+
+	// generated serialVersionUID
+	private static final long serialVersionUID = 4264618826245313764L;
+
+	// the width and height in pixels of the screen tiles traced by a single worker
+	public static final int TILE_SIZE = 16;
+
+	// the fraction of a distance allowed for rounding when a block's rays skip the space before the closest distance they could meet the fractal
+	private static final double BEAM_MARGIN = 1e-9d;
+
+	// each worker's packet of rays, kept between tiles and frames and replaced when the packet size, subdivider or voxel size constants change
+	private static final ThreadLocal<RayPacketCast> packets = new ThreadLocal<RayPacketCast>();
+
+	// generator of the primary rays for the frame being rendered
+	private RayGenerator rayGenerator;
+
+	// the root node of the octree, which covers (-1, -1, -1) to (1, 1, 1)
+	private OctreeNode rootNode;
+
+	// the node every ray starts its traversal from and its position and dimensions
+	private OctreeNode startNode;
+	private Vector3d startBoxMin;
+	private double startBoxDim;
+
+	// the minimum lattice coordinates and width of the start node
+	private long startX;
+	private long startY;
+	private long startZ;
+	private long startSize;
+
+	// screen size in pixels and the buffers to write results into
+	private int screenWidth;
+	private int screenHeight;
+	private int[] imageColors;
+	private double[] imageDepth;
+	private OctreeNode[] imageNodes;
+
+	// whether each pixel needs to be traced, null to trace every pixel
+	private boolean[] traceMask;
+
+	// subdivider and voxel size constants passed on to every traversal
+	private Subdivider subdivider;
+	private double voxelSizeConstantA;
+	private double voxelSizeConstantB;
+
+	// the width and height in pixels of the packets of rays traced together, 1 to trace every ray individually
+	private int packetSize;
+
+	// the name of the traversal used by individual rays, "lattice" to address nodes by integer lattice coordinates, "stack" to also find neighbors
+	// without neighbor pointers, "packed" to cast them into packedOctree, or "double"
+	private String traversal;
+
+	// the octree packed from the root node for the packed traversal, null for other traversals
+	private PackedOctree packedOctree;
+
+	// the coordinate frame the rays and start node bounds are given in
+	private RebasedFrame frame;
+
+	// the nodes individual rays can start from instead of the start node, from the nodes their pixels last hit, null to start every ray from the start node
+	private StartNodeCache startNodeCache;
+
+	// the width and height in pixels of the blocks whose rays start from the closest distance any of them could meet the fractal, 1 for no pre-pass
+	private int beamSize;
+
+	// the pass of progressive rendering this task traces: one ray is cast for each stride x stride block, skipping blocks traced by a previous pass of
+	// twice the stride if refine is set. A stride of 1 without refine traces every pixel as normal.
+	private int stride;
+	private boolean refine;
+
+	// foveated rendering: tiles within foveaRadius of the centre of the screen (as a fraction of half its width) are traced at full resolution, and
+	// further tiles with one ray per block of twice the stride for each further foveaRadius, up to foveaMaxStride. Peripheral rays terminate at nodes which
+	// project to less than a block rather than a pixel. A radius of 0 traces every tile at full resolution.
+	private double foveaRadius;
+	private int foveaMaxStride;
+
+	// the System.nanoTime() after which tiles are no longer traced, 0 for no deadline
+	private long deadline;
+
+	// the region of the screen covered by this task (min inclusive, max exclusive)
+	private int colMin;
+	private int rowMin;
+	private int colMax;
+	private int rowMax;
+
+	/**
+	 * Creates a task covering the whole screen which will recursively split itself into tiles of TILE_SIZE x TILE_SIZE pixels, each traced in a tight loop
+	 * by a single worker of a ForkJoinPool.
+	 */
+	public RenderTile(RayGenerator rayGenerator, OctreeNode rootNode, OctreeNode startNode, Vector3d startBoxMin, double startBoxDim, int screenWidth,
+			int screenHeight, int[] imageColors, double[] imageDepth, OctreeNode[] imageNodes, boolean[] traceMask, Subdivider subdivider,
+			double voxelSizeConstantA, double voxelSizeConstantB, int packetSize, String traversal, PackedOctree packedOctree, RebasedFrame frame,
+			StartNodeCache startNodeCache, int beamSize, int stride, boolean refine, double foveaRadius, int foveaMaxStride, long deadline) {
+		this.rayGenerator = rayGenerator;
+		this.rootNode = rootNode;
+		this.startNode = startNode;
+		this.startBoxMin = startBoxMin;
+		this.startBoxDim = startBoxDim;
+		this.screenWidth = screenWidth;
+		this.screenHeight = screenHeight;
+		this.imageColors = imageColors;
+		this.imageDepth = imageDepth;
+		this.imageNodes = imageNodes;
+		this.traceMask = traceMask;
+		this.subdivider = subdivider;
+		this.voxelSizeConstantA = voxelSizeConstantA;
+		this.voxelSizeConstantB = voxelSizeConstantB;
+		this.packetSize = packetSize;
+		this.traversal = traversal;
+		this.packedOctree = packedOctree;
+		this.frame = frame;
+		this.startNodeCache = startNodeCache;
+		this.beamSize = beamSize;
+		this.stride = stride;
+		this.refine = refine;
+		this.foveaRadius = foveaRadius;
+		this.foveaMaxStride = foveaMaxStride;
+		this.deadline = deadline;
+		this.colMin = 0;
+		this.rowMin = 0;
+		this.colMax = screenWidth;
+		this.rowMax = screenHeight;
+
+		startX = frame.toLattice(startBoxMin.x, 0);
+		startY = frame.toLattice(startBoxMin.y, 1);
+		startZ = frame.toLattice(startBoxMin.z, 2);
+		startSize = LatticeRayCast.getNodeSize(startNode.getDepth());
+	}
+
+	/**
+	 * Creates a task covering a sub-region of the region covered by parent, sharing all of its frame state
+	 */
+	private RenderTile(RenderTile parent, int colMin, int rowMin, int colMax, int rowMax) {
+		this(parent.rayGenerator, parent.rootNode, parent.startNode, parent.startBoxMin, parent.startBoxDim, parent.screenWidth, parent.screenHeight,
+				parent.imageColors, parent.imageDepth, parent.imageNodes, parent.traceMask, parent.subdivider, parent.voxelSizeConstantA,
+				parent.voxelSizeConstantB, parent.packetSize, parent.traversal, parent.packedOctree, parent.frame, parent.startNodeCache, parent.beamSize,
+				parent.stride, parent.refine, parent.foveaRadius, parent.foveaMaxStride, parent.deadline);
+		this.colMin = colMin;
+		this.rowMin = rowMin;
+		this.colMax = colMax;
+		this.rowMax = rowMax;
+	}
+
+	@Override
+	protected void compute() {
+		int width = colMax - colMin;
+		int height = rowMax - rowMin;
+
+		// if the region is a single tile, trace it here
+		if (width <= TILE_SIZE && height <= TILE_SIZE) {
+			traceTile();
+			return;
+		}
+
+		// otherwise split the longer side in half along a tile boundary and let idle workers steal the halves
+		if (width >= height) {
+			int colMid = colMin + ((width + TILE_SIZE - 1) / TILE_SIZE / 2) * TILE_SIZE;
+			invokeAll(new RenderTile(this, colMin, rowMin, colMid, rowMax), new RenderTile(this, colMid, rowMin, colMax, rowMax));
+		} else {
+			int rowMid = rowMin + ((height + TILE_SIZE - 1) / TILE_SIZE / 2) * TILE_SIZE;
+			invokeAll(new RenderTile(this, colMin, rowMin, colMax, rowMid), new RenderTile(this, colMin, rowMid, colMax, rowMax));
+		}
+	}
+
+	/**
+	 * Casts a ray through every pixel of this tile, writing the results into imageColors and imageDepth. A single traversal is reused for the whole tile so
+	 * that tracing a pixel allocates nothing.
+	 */
+	private void traceTile() {
+		// once the deadline has passed, leave the tile as the previous pass left it
+		if (deadline != 0 && System.nanoTime() > deadline)
+			return;
+
+		// skip tiles which have been completely reprojected
+		if (traceMask != null && !anyTraced(colMin, rowMin, colMax, rowMax))
+			return;
+
+		if (stride > 1 || refine) {
+			traceStride(stride, refine, voxelSizeConstantB);
+			return;
+		}
+
+		// tiles in the periphery of a foveated frame are traced sparsely, at a coarser level of detail
+		int foveaStride = foveaRadius > 0 ? getFoveaStride() : 1;
+		if (foveaStride > 1) {
+			traceStride(foveaStride, false, voxelSizeConstantB * foveaStride);
+			return;
+		}
+
+		if (packetSize > 1) {
+			tracePackets();
+			return;
+		}
+		if (beamSize > 1) {
+			traceBeams();
+			return;
+		}
+
+		TraversalInterface rc = newTraversal(voxelSizeConstantB);
+		for (int row = rowMin; row < rowMax; row++) {
+			for (int col = colMin; col < colMax; col++) {
+				int index = row * screenHeight + col;
+				if (traceMask != null && !traceMask[index])
+					continue;
+
+				rayGenerator.setPixelRay(rc, col, row);
+				castPixel(rc, index);
+
+				imageColors[index] = rc.getColor();
+				imageDepth[index] = rc.getDepth();
+				imageNodes[index] = rc.getHitNode();
+			}
+		}
+	}
+
+	/**
+	 * Casts one ray for each stride x stride block of this tile, through the block's top left pixel, and fills the whole block with its result. If refine is
+	 * set, blocks whose top left pixel was traced by the previous pass of twice the stride are left as they are. Blocks are aligned to the screen rather than
+	 * the tile, which always starts on a multiple of the stride. Pixels which are not in the trace mask keep their reprojected values, and blocks with none
+	 * in it are not cast.
+	 *
+	 * @param stride
+	 *            The width and height of the blocks in pixels, a power of 2 no larger than TILE_SIZE
+	 * @param refine
+	 *            Whether the blocks traced by a previous pass of twice the stride should be skipped
+	 * @param voxelSizeConstantB
+	 *            The voxel size constant B of the rays
+	 */
+	private void traceStride(int stride, boolean refine, double voxelSizeConstantB) {
+		TraversalInterface rc = newTraversal(voxelSizeConstantB);
+		for (int row = rowMin; row < rowMax; row += stride) {
+			for (int col = colMin; col < colMax; col += stride) {
+				if (refine && row % (2 * stride) == 0 && col % (2 * stride) == 0)
+					continue;
+
+				// skip blocks whose pixels have all been reprojected or are left for the next checkerboard frame
+				int rowEnd = Math.min(row + stride, rowMax);
+				int colEnd = Math.min(col + stride, colMax);
+				if (traceMask != null && !anyTraced(col, row, colEnd, rowEnd))
+					continue;
+
+				rayGenerator.setPixelRay(rc, col, row);
+				castPixel(rc, row * screenHeight + col);
+
+				// fill the pixels of the block which need tracing with the result
+				for (int blockRow = row; blockRow < rowEnd; blockRow++) {
+					for (int blockCol = col; blockCol < colEnd; blockCol++) {
+						int index = blockRow * screenHeight + blockCol;
+						if (traceMask != null && !traceMask[index])
+							continue;
+						imageColors[index] = rc.getColor();
+						imageDepth[index] = rc.getDepth();
+						imageNodes[index] = rc.getHitNode();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Casts the rays of this tile in square blocks of beamSize x beamSize pixels, starting each ray close to the surface. The pyramid from the camera
+	 * through the corners of each block, which holds all of the block's rays, is first traversed through the octree to find the closest distance at which
+	 * any of its rays could meet the fractal. The block's rays skip the empty space before that distance by descending straight from the root node to where
+	 * they are at it, so they find exactly what they would find by traversing it. Blocks whose pyramid meets nothing are traced normally.
+	 */
+	private void traceBeams() {
+		TraversalInterface rc = newTraversal(voxelSizeConstantB);
+
+		// the width of a block at a distance of 1 along its rays (a pixel is 2 * voxelSizeConstantB / voxelSizeConstantA wide)
+		double beamSpread = 2d * beamSize * voxelSizeConstantB / voxelSizeConstantA;
+
+		// the position and dimensions of the root node in the frame
+		double rootBoxMinX = frame.toLocal(0L, 0);
+		double rootBoxMinY = frame.toLocal(0L, 1);
+		double rootBoxMinZ = frame.toLocal(0L, 2);
+		double rootBoxDim = frame.getWidth(LatticeRayCast.getNodeSize(0));
+
+		double[] origin = new double[3];
+		rayGenerator.getPoint(0d, 0d, 0d, origin);
+		double[] corners = new double[12];
+		double[] planes = new double[12];
+		for (int blockRow = rowMin; blockRow < rowMax; blockRow += beamSize) {
+			for (int blockCol = colMin; blockCol < colMax; blockCol += beamSize) {
+				int rowEnd = Math.min(blockRow + beamSize, rowMax);
+				int colEnd = Math.min(blockCol + beamSize, colMax);
+				if (traceMask != null && !anyTraced(blockCol, blockRow, colEnd, rowEnd))
+					continue;
+
+				// find the closest distance at which the block's rays could meet the fractal, less a little for rounding
+				setBeamPlanes(blockCol, blockRow, origin, corners, planes);
+				double tBeam = getBeamDistance(rootNode, 0L, 0L, 0L, LatticeRayCast.getNodeSize(0), origin, planes, beamSpread, Double.MAX_VALUE);
+				double tStart = tBeam == Double.MAX_VALUE ? 0d : tBeam * (1d - BEAM_MARGIN);
+
+				for (int row = blockRow; row < rowEnd; row++) {
+					for (int col = blockCol; col < colEnd; col++) {
+						int index = row * screenHeight + col;
+						if (traceMask != null && !traceMask[index])
+							continue;
+
+						rayGenerator.setPixelRay(rc, col, row);
+
+						// rays which do not reach the root node by tStart are cast from the start node as usual
+						if (tStart <= 0d || !rc.castFrom(rootNode, rootBoxMinX, rootBoxMinY, rootBoxMinZ, rootBoxDim, tStart))
+							castPixel(rc, index);
+						else if (startNodeCache != null)
+							startNodeCache.store(index, rc.getHitNode(), rc.getHitX(), rc.getHitY(), rc.getHitZ());
+
+						imageColors[index] = rc.getColor();
+						imageDepth[index] = rc.getDepth();
+						imageNodes[index] = rc.getHitNode();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Finds the four planes through the camera which bound the pyramid of rays through a block of pixels, each stored as the x, y and z of a normal pointing
+	 * into the pyramid
+	 *
+	 * @param col
+	 *            The column of the top left pixel of the block
+	 * @param row
+	 *            The row of the top left pixel of the block
+	 * @param origin
+	 *            The position of the camera in the frame
+	 * @param corners
+	 *            An array of length 12 in which to store the points a distance of 1 along the rays through the corners of the block
+	 * @param planes
+	 *            An array of length 12 in which to store the normals
+	 */
+	private void setBeamPlanes(int col, int row, double[] origin, double[] corners, double[] planes) {
+		// the directions through the corners of the block, in order around it
+		for (int i = 0; i < 4; i++) {
+			rayGenerator.getPoint(col + (i == 1 || i == 2 ? beamSize : 0), row + (i >= 2 ? beamSize : 0), 1d, planes);
+			for (int axis = 0; axis < 3; axis++)
+				corners[i * 3 + axis] = planes[axis] - origin[axis];
+		}
+
+		// each plane holds two neighboring corner directions, and faces the centre of the block
+		for (int i = 0; i < 4; i++) {
+			int a = i * 3;
+			int b = ((i + 1) % 4) * 3;
+			double nX = corners[a + 1] * corners[b + 2] - corners[a + 2] * corners[b + 1];
+			double nY = corners[a + 2] * corners[b] - corners[a] * corners[b + 2];
+			double nZ = corners[a] * corners[b + 1] - corners[a + 1] * corners[b];
+			double facing = 0d;
+			for (int j = 0; j < 4; j++)
+				facing += nX * corners[j * 3] + nY * corners[j * 3 + 1] + nZ * corners[j * 3 + 2];
+			double sign = facing < 0 ? -1d : 1d;
+			planes[i * 3] = nX * sign;
+			planes[i * 3 + 1] = nY * sign;
+			planes[i * 3 + 2] = nZ * sign;
+		}
+	}
+
+	/**
+	 * Traverses the part of the octree inside the pyramid of a block's rays front to back, finding the closest distance from the camera of any node the rays
+	 * could meet the fractal in. Nodes no wider than two blocks at their far side are not descended, as rays stop in them at most at the level of detail of a
+	 * block, so the distance to them is the closest their contents can be. Larger nodes are never drawn by the block's rays and are descended.
+	 *
+	 * @param node
+	 *            The node to traverse
+	 * @param x
+	 *            The minimum x lattice coordinate of node
+	 * @param y
+	 *            The minimum y lattice coordinate of node
+	 * @param z
+	 *            The minimum z lattice coordinate of node
+	 * @param size
+	 *            The width of node in lattice units
+	 * @param origin
+	 *            The position of the camera in the frame
+	 * @param planes
+	 *            The normals of the planes bounding the pyramid, from setBeamPlanes
+	 * @param beamSpread
+	 *            The width of a block at a distance of 1
+	 * @param best
+	 *            The closest distance found so far, Double.MAX_VALUE if none
+	 * @return The closest distance found in node or before it, Double.MAX_VALUE if none
+	 */
+	private double getBeamDistance(OctreeNode node, long x, long y, long z, long size, double[] origin, double[] planes, double beamSpread, double best) {
+		if (node.isLeaf() && node.isEmpty())
+			return best;
+
+		double boxDim = frame.getWidth(size);
+		double vX = frame.toLocal(x, 0) - origin[0];
+		double vY = frame.toLocal(y, 1) - origin[1];
+		double vZ = frame.toLocal(z, 2) - origin[2];
+
+		// the closest distance from the camera to the node, skipping nodes no closer than the closest found
+		double dX = Math.max(Math.max(vX, -vX - boxDim), 0d);
+		double dY = Math.max(Math.max(vY, -vY - boxDim), 0d);
+		double dZ = Math.max(Math.max(vZ, -vZ - boxDim), 0d);
+		double near = Math.sqrt(dX * dX + dY * dY + dZ * dZ);
+		if (near >= best)
+			return best;
+
+		// skip nodes entirely outside one of the planes, allowing for rounding
+		for (int i = 0; i < 12; i += 3) {
+			double nX = planes[i];
+			double nY = planes[i + 1];
+			double nZ = planes[i + 2];
+			double furthest = nX * vX + nY * vY + nZ * vZ + boxDim * (Math.max(nX, 0d) + Math.max(nY, 0d) + Math.max(nZ, 0d));
+			if (furthest < -BEAM_MARGIN * boxDim * (Math.abs(nX) + Math.abs(nY) + Math.abs(nZ)))
+				return best;
+		}
+
+		// stop at leaves and at nodes no wider than two blocks at their far side
+		double fX = Math.max(Math.abs(vX), Math.abs(vX + boxDim));
+		double fY = Math.max(Math.abs(vY), Math.abs(vY + boxDim));
+		double fZ = Math.max(Math.abs(vZ), Math.abs(vZ + boxDim));
+		if (node.isLeaf() || boxDim <= 2d * beamSpread * Math.sqrt(fX * fX + fY * fY + fZ * fZ))
+			return near;
+
+		// visit the children from the one on the camera's side of the middle of the node outwards
+		long half = size >> 1;
+		int first = (vX + boxDim * 0.5d < 0 ? 4 : 0) | (vY + boxDim * 0.5d < 0 ? 2 : 0) | (vZ + boxDim * 0.5d < 0 ? 1 : 0);
+		for (int i = 0; i < 8; i++) {
+			int octant = first ^ i;
+			int sX = octant >> 2;
+			int sY = (octant >> 1) & 1;
+			int sZ = octant & 1;
+			best = getBeamDistance(node.getChild(sX, sY, sZ), x + sX * half, y + sY * half, z + sZ * half, half, origin, planes, beamSpread, best);
+		}
+		return best;
+	}
+
+	/**
+	 * Casts the rays of this tile in square packets of packetSize x packetSize pixels which traverse the octree together. Only the pixels in the trace mask
+	 * are added to a packet, so the rest keep their reprojected values.
+	 */
+	private void tracePackets() {
+		RayPacketCast packet = getPacket();
+		packet.setFrame(frame);
+		for (int packetRow = rowMin; packetRow < rowMax; packetRow += packetSize) {
+			for (int packetCol = colMin; packetCol < colMax; packetCol += packetSize) {
+				int rowEnd = Math.min(packetRow + packetSize, rowMax);
+				int colEnd = Math.min(packetCol + packetSize, colMax);
+
+				// packets with no pixels to trace are skipped
+				if (traceMask != null && !anyTraced(packetCol, packetRow, colEnd, rowEnd))
+					continue;
+
+				packet.clear();
+				for (int row = packetRow; row < rowEnd; row++) {
+					for (int col = packetCol; col < colEnd; col++) {
+						if (traceMask == null || traceMask[row * screenHeight + col])
+							rayGenerator.addPixelRay(packet, col, row);
+					}
+				}
+				packet.cast(startNode, startBoxMin.x, startBoxMin.y, startBoxMin.z, startBoxDim);
+
+				// rays were added to the packet in row order
+				int i = 0;
+				for (int row = packetRow; row < rowEnd; row++) {
+					for (int col = packetCol; col < colEnd; col++) {
+						int index = row * screenHeight + col;
+						if (traceMask != null && !traceMask[index])
+							continue;
+
+						imageColors[index] = packet.getColor(i);
+						imageDepth[index] = packet.getDepth(i);
+						imageNodes[index] = packet.getHitNode(i);
+						if (startNodeCache != null)
+							startNodeCache.store(index, packet.getHitNode(i), packet.getHitX(i), packet.getHitY(i), packet.getHitZ(i));
+						i++;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return This worker's packet of rays, replaced if it was made for another packet size, subdivider or voxel size constants
+	 */
+	private RayPacketCast getPacket() {
+		int capacity = packetSize * packetSize;
+		RayPacketCast packet = packets.get();
+		if (packet == null || packet.getCapacity() != capacity || packet.getSubdivider() != subdivider || packet.getVoxelSizeConstantA() != voxelSizeConstantA
+				|| packet.getVoxelSizeConstantB() != voxelSizeConstantB) {
+			packet = new RayPacketCast(capacity, subdivider, voxelSizeConstantA, voxelSizeConstantB);
+			packets.set(packet);
+		}
+		return packet;
+	}
+
+	/**
+	 * Casts the current ray of rc for a pixel from the start node, or if the start node cache has one from a deeper node containing the point at which the
+	 * ray enters the start node. The deeper node is only used if the ray enters it at that point too, so that no part of the ray is skipped.
+	 *
+	 * @param rc
+	 *            The traversal holding the pixel's ray
+	 * @param index
+	 *            The index of the pixel, whose node in the start node cache is replaced by the node hit
+	 */
+	private void castPixel(TraversalInterface rc, int index) {
+		if (startNodeCache == null) {
+			rc.cast(startNode, startBoxMin.x, startBoxMin.y, startBoxMin.z, startBoxDim);
+			return;
+		}
+
+		// rays starting in a leaf have nothing to descend, otherwise look for a deeper node containing the ray's entry point
+		OctreeNode node = null;
+		double tStart = rc.getEntryDistance(startBoxMin.x, startBoxMin.y, startBoxMin.z, startBoxDim);
+		long x = 0;
+		long y = 0;
+		long z = 0;
+		if (!startNode.isLeaf() && tStart != Double.MAX_VALUE) {
+			// the entry point is on the faces of the start node, so keep it inside the start node when it is rounded off them
+			x = Math.min(Math.max(rc.getLatticePosition(tStart, 0), startX), startX + startSize - 1);
+			y = Math.min(Math.max(rc.getLatticePosition(tStart, 1), startY), startY + startSize - 1);
+			z = Math.min(Math.max(rc.getLatticePosition(tStart, 2), startZ), startZ + startSize - 1);
+			node = startNodeCache.getStartNode(index, x, y, z, startNode.getDepth());
+		}
+
+		if (node != null) {
+			long size = LatticeRayCast.getNodeSize(node.getDepth());
+			double boxDim = frame.getWidth(size);
+			double boxMinX = frame.toLocal(x & -size, 0);
+			double boxMinY = frame.toLocal(y & -size, 1);
+			double boxMinZ = frame.toLocal(z & -size, 2);
+			if (rc.getEntryDistance(boxMinX, boxMinY, boxMinZ, boxDim) <= tStart)
+				rc.cast(node, boxMinX, boxMinY, boxMinZ, boxDim);
+			else
+				rc.cast(startNode, startBoxMin.x, startBoxMin.y, startBoxMin.z, startBoxDim);
+		} else {
+			rc.cast(startNode, startBoxMin.x, startBoxMin.y, startBoxMin.z, startBoxDim);
+		}
+
+		startNodeCache.store(index, rc.getHitNode(), rc.getHitX(), rc.getHitY(), rc.getHitZ());
+	}
+
+	/**
+	 * Creates the traversal to be reused by a tile: "lattice" for LatticeRayCast, "stack" for StackRayCast, "packed" for PackedRayCast or otherwise RayCast
+	 *
+	 * @param voxelSizeConstantB
+	 *            The voxel size constant B of the rays, which may be scaled up to terminate traversal at nodes larger than a pixel
+	 */
+	private TraversalInterface newTraversal(double voxelSizeConstantB) {
+		TraversalInterface rc;
+		if (traversal.equals("lattice"))
+			rc = new LatticeRayCast(subdivider, voxelSizeConstantA, voxelSizeConstantB);
+		else if (traversal.equals("stack"))
+			rc = new StackRayCast(subdivider, voxelSizeConstantA, voxelSizeConstantB);
+		else if (traversal.equals("packed"))
+			rc = new PackedRayCast(packedOctree, subdivider, voxelSizeConstantA, voxelSizeConstantB);
+		else
+			rc = new RayCast(subdivider, voxelSizeConstantA, voxelSizeConstantB);
+		rc.setFrame(frame);
+		return rc;
+	}
+
+	/**
+	 * @return The width and height of the blocks traced by a single ray in this tile of a foveated frame, from the distance of the closest pixel of the tile
+	 *         to the centre of the screen
+	 */
+	private int getFoveaStride() {
+		double centreCol = screenWidth / 2d;
+		double centreRow = screenHeight / 2d;
+		double dx = Math.max(0d, Math.max(colMin - centreCol, centreCol - colMax));
+		double dy = Math.max(0d, Math.max(rowMin - centreRow, centreRow - rowMax));
+		double distance = Math.sqrt(dx * dx + dy * dy) / centreCol;
+
+		int foveaStride = 1;
+		for (double radius = foveaRadius; distance > radius && foveaStride * 2 <= foveaMaxStride; radius += foveaRadius)
+			foveaStride *= 2;
+		return Math.min(foveaStride, TILE_SIZE);
+	}
+
+	/**
+	 * @return True if traceMask has any pixel to trace in the region from (colMin, rowMin) inclusive to (colMax, rowMax) exclusive
+	 */
+	private boolean anyTraced(int colMin, int rowMin, int colMax, int rowMax) {
+		for (int row = rowMin; row < rowMax; row++)
+			for (int col = colMin; col < colMax; col++)
+				if (traceMask[row * screenHeight + col])
+					return true;
+		return false;
+	}
+}
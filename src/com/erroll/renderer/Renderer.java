@@ -5,20 +5,36 @@ import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
-import javax.imageio.ImageIO;
 import javax.vecmath.Vector3d;
 
 import com.erroll.camera.Camera;
 import com.erroll.metrics.Metrics;
+import com.erroll.octree.DirectPackedOctree;
+import com.erroll.octree.HeapPackedOctree;
 import com.erroll.octree.OctreeNode;
+import com.erroll.octree.PackedOctree;
 import com.erroll.octree.scaleadaptation.BrickManager;
 import com.erroll.octree.scaleadaptation.Subdivider;
-import com.erroll.renderer.effects.ColorUtils;
-import com.erroll.renderer.effects.SSAO;
+import com.erroll.renderer.effects.CompositeEffect;
+import com.erroll.renderer.effects.HalfResolutionSSAOEffect;
+import com.erroll.renderer.effects.ParallelSSAO;
+import com.erroll.renderer.effects.PostProcessFrame;
+import com.erroll.renderer.effects.PostProcessPipeline;
+import com.erroll.renderer.effects.SSAOEffect;
+import com.erroll.renderer.recording.FrameSinkInterface;
+import com.erroll.renderer.recording.PngFrameRecorder;
+import com.erroll.renderer.recording.RawFrameRecorder;
+import com.erroll.renderer.temporal.CheckerboardReconstructor;
+import com.erroll.renderer.temporal.Reprojector;
+import com.erroll.renderer.temporal.StartNodeCache;
 
 public class Renderer {
 
@@ -28,16 +44,21 @@ public class Renderer {
 	// list of potential root nodes to start traversal from
 	private OctreeNode rootNode;
 
-	// screen size in pixels
+	// screen size in pixels, which is the resolution rendered at and may be smaller than the buffers
 	protected int screenWidth;
 	protected int screenHeight;
 
+	// the size in pixels the buffers are allocated at and the image is presented at
+	protected int bufferWidth;
+	protected int bufferHeight;
+
 	// BufferedImage in which to draw pixels during rendering
 	protected BufferedImage backbuffer;
 	protected int[] imagePixelData;
 	protected int[] imageColors;
 	protected int[] imageShadows;
 	protected double[] imageDepth;
+	protected OctreeNode[] imageNodes;
 
 	// Voxel size constants for checking if voxel is small enough to terminate traversal early if projected voxel size is less than 1 pixel on the screen
 	protected double voxelSizeConstantA = 0d;
@@ -59,13 +80,208 @@ public class Renderer {
 	// whether recording is enabled;
 	private boolean recording = false;
 
-	// The number of rendering node threads
-	private final int NTHREADS = 10;
+	// the sink recorded frames are handed to, created when the first frame is recorded if none has been set, and how the default PNG recorder queues
+	// frames: the number of frames it can hold waiting to be encoded, the number of threads encoding them and whether it drops frames rather than stalling
+	// when they are all in use
+	private FrameSinkInterface frameSink;
+	private int recordingQueueSize = 8;
+	private int recordingThreads = 1;
+	private boolean recordingDropFrames = false;
+
+	// the format frames are recorded in, "png" or "raw" to copy them uncompressed into a memory-mapped file, and for raw recordings the number of frames
+	// the file has room for and whether depths are recorded too
+	private String recordingFormat = "png";
+	private int recordingRawCapacity = 1000;
+	private boolean recordingDepth = false;
+
+	// the width and height in pixels of the packets of rays traced together, 1 to trace every ray individually
+	private int packetSize = 1;
+
+	// the traversal used by individual rays, "lattice" to address nodes by integer lattice coordinates, "stack" to also find neighbors from the nodes
+	// descended through rather than neighbor pointers, "packed" to do so in a copy of the octree packed into primitive storage, or "double" to track their
+	// bounds as doubles
+	private String traversal = "double";
+
+	// the copy of the octree the packed traversal casts rays into, packed again at the start of every frame, and where it is stored: "heap" in arrays or
+	// "direct" in direct buffers outside the Java heap
+	private PackedOctree packedOctree;
+	private String packedStorage = "heap";
+
+	// the width and height in pixels of the blocks whose rays start from the closest distance any of them could meet the fractal, 1 for no pre-pass
+	private int beamSize = 1;
+
+	// the coordinate frame rays are traced in, positions in space until the skipNode is rebaseDepth deep. The frame is then anchored at the skipNode, and
+	// anchored again whenever the camera leaves the anchor node or the skipNode is rebaseDepth deeper than it. 0 to always trace in space.
+	private RebasedFrame frame = RebasedFrame.SPACE;
+	private int rebaseDepth = 16;
+
+	// whether pixels are reprojected from the previous frame rather than traced again, and how many frames it takes to trace every pixel again anyway
+	private boolean reprojection = false;
+	private int reprojectionRefreshPeriod = 16;
+	private Reprojector reprojector;
+
+	// whether each frame only traces the pixels of one color of a checkerboard, filling in the rest from the previous frame or their neighbors
+	private boolean checkerboard = false;
+	private CheckerboardReconstructor checkerboardReconstructor;
+
+	// whether individually traced rays start from the deepest ancestor of the node their pixel last hit which contains where they start, rather than
+	// descending from the skipNode, and the cache of those nodes
+	private boolean startNodeCaching = false;
+	private StartNodeCache startNodeCache;
+
+	// the time in milliseconds a frame has to refine its image progressively, starting from one ray per PROGRESSIVE_STRIDE x PROGRESSIVE_STRIDE block, 0
+	// to trace every pixel every frame
+	private int frameBudget = 0;
+	private static final int PROGRESSIVE_STRIDE = 8;
+
+	// the radius of the centre of the screen traced at full resolution as a fraction of half the screen width, beyond which rays are twice as sparse for
+	// each further radius up to one ray per foveaMaxStride x foveaMaxStride block, and traced at a coarser level of detail to match. 0 to trace every pixel.
+	private double foveaRadius = 0d;
+	private int foveaMaxStride = 4;
+
+	// the resolution SSAO is calculated at: "full" for every pixel, or "half" for 2x2 blocks of pixels upsampled with a depth-aware filter
+	private String ssaoResolution = "full";
+
+	// the effects which shade traced frames with full or half resolution SSAO, fused into a single parallel sweep over the frame
+	private static final PostProcessPipeline fullResolutionEffects = new PostProcessPipeline(new SSAOEffect(), new CompositeEffect());
+	private static final PostProcessPipeline halfResolutionEffects = new PostProcessPipeline(new HalfResolutionSSAOEffect(), new CompositeEffect());
+
+	// whether frames are pipelined, each frame being shaded and recorded on the post-processing thread while the next frame is traced. The frame being
+	// post-processed has its own buffers, exchanged with the renderer's by swapFrame, and is drawn once the next frame is traced.
+	private boolean pipelined = false;
+	private ExecutorService postProcessExecutor;
+	private TracedFrame postProcessFrame;
+	private Future<?> postProcessing;
+
+	// long-lived work-stealing pool of rendering threads, one for each core, shared with post-processing and recording
+	private final ForkJoinPool renderPool = WorkerPool.get();
 
 	// the number of frames that have elapsed since starting the renderer
 	private int frameIndex;
 
+	/**
+	 * Renders a frame from the camera and draws it onto the graphics, by tracing, shading and then presenting it
+	 * 
+	 * @param g
+	 *            The graphics to draw the frame onto
+	 */
 	public void render(Graphics g) {
+		if (pipelined) {
+			renderPipelined(g);
+			return;
+		}
+
+		// trace the frame into imageColors and imageDepth
+		long stageStart = System.nanoTime();
+		traceFrame();
+		metrics.registerStageTime("trace", (System.nanoTime() - stageStart) / 1000000d);
+
+		// shade the traced frame into the top left of the backbuffer
+		stageStart = System.nanoTime();
+		shade(imageColors, imageDepth, imageShadows, screenWidth, screenHeight, imagePixelData, bufferWidth, ssaoResolution);
+		metrics.registerStageTime("shade", (System.nanoTime() - stageStart) / 1000000d);
+
+		// record and draw the shaded frame
+		stageStart = System.nanoTime();
+		presentFrame(g);
+		metrics.registerStageTime("present", (System.nanoTime() - stageStart) / 1000000d);
+	}
+
+	/**
+	 * Traces a frame while the previous frame is shaded and recorded on the post-processing thread, then draws the previous frame and hands the new one to
+	 * the post-processing thread. Each frame is drawn one call after it is traced, and the time taken by a call is that of the slower of tracing and
+	 * post-processing rather than their sum. Bricks are unified while the new frame is post-processed rather than while a frame is traced, as unification
+	 * deletes nodes which rays may be traversing.
+	 * 
+	 * @param g
+	 *            The graphics to draw the previous frame onto
+	 */
+	private void renderPipelined(Graphics g) {
+		if (postProcessExecutor == null) {
+			postProcessExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "post-processing");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		if (postProcessFrame == null)
+			postProcessFrame = new TracedFrame(bufferWidth, bufferHeight);
+
+		// trace the frame into imageColors and imageDepth
+		long stageStart = System.nanoTime();
+		traceFrame();
+		metrics.registerStageTime("trace", (System.nanoTime() - stageStart) / 1000000d);
+
+		// wait for the previous frame to be post-processed and draw it
+		if (postProcessing != null) {
+			stageStart = System.nanoTime();
+			finishPostProcessing();
+			postProcessFrame.draw(g);
+			metrics.registerFrameRender();
+			metrics.registerStageTime("present", (System.nanoTime() - stageStart) / 1000000d);
+		}
+
+		// hand the frame to the post-processing thread, taking the buffers of the previous frame to trace the next frame into
+		swapFrame(postProcessFrame);
+		postProcessing = postProcessExecutor.submit(new PostProcessTask(postProcessFrame));
+
+		// unify the bricks every 10 frames
+		if (frameIndex % 10 == 0)
+			brickManager.unifyBricks();
+	}
+
+	/**
+	 * Waits for the frame being post-processed, if there is one, to be shaded and recorded
+	 */
+	private void finishPostProcessing() {
+		if (postProcessing == null)
+			return;
+		try {
+			postProcessing.get();
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		} catch (ExecutionException e) {
+			e.printStackTrace();
+		}
+		postProcessing = null;
+	}
+
+	/**
+	 * Shades a traced frame and records it if recording is enabled, on the post-processing thread
+	 */
+	private class PostProcessTask implements Runnable {
+
+		private TracedFrame frame;
+
+		public PostProcessTask(TracedFrame frame) {
+			this.frame = frame;
+		}
+
+		@Override
+		public void run() {
+			// shading and recording are timed together as the shade stage
+			long stageStart = System.nanoTime();
+			frame.shade();
+			if (isRecording()) {
+				if (frameSink == null)
+					createFrameSink();
+				if (frameSink != null)
+					frame.record(frameSink);
+			}
+			metrics.registerStageTime("shade", (System.nanoTime() - stageStart) / 1000000d);
+		}
+	}
+
+	/**
+	 * Traces a frame from a snapshot of the camera, leaving its colors in imageColors and depths in imageDepth, and sets the optimal tmin of the frame. The
+	 * traced frame can either be shaded and presented by this Renderer or swapped out with swapFrame to be shaded elsewhere.
+	 */
+	public void traceFrame() {
+		long frameStart = System.nanoTime();
+
 		// make a copy of the camera to prevent artefacts from moving the camera during rendering
 		Camera cameraFrame = new Camera(camera);
 
@@ -77,180 +293,325 @@ public class Renderer {
 		voxelSizeConstantA = cameraFrame.getDistanceToViewplane() * screenWidth;
 		voxelSizeConstantB = cameraFrame.getViewplaneTop().length() * 0.5d;
 
-		// set the skipNode for this frame
-		setSkipNode(cameraFrame.getPosition());
-
-		// make a thread executor to execute node rendering threads - one for each pixel
-		ExecutorService rendererExecutor = Executors.newFixedThreadPool(NTHREADS);
-
-		// for every pixel on the screen, cast a ray through it at the octreeModel
-		for (int row = 0; row < screenHeight; row++) {
-			for (int col = 0; col < screenWidth; col++) {
-				Ray cameraRay = new Ray(cameraFrame.getPosition(), cameraFrame.getVectorToPixel(col, row, screenWidth, screenHeight));
-
-				if (skipNode != null) {
-					RayCast rc = new RayCast(skipNode, skipNodeBoxMin, skipNodeBoxDim, cameraRay, row * screenHeight + col, imageColors, imageDepth,
-							subdivider, voxelSizeConstantA, voxelSizeConstantB);
-					rendererExecutor.execute(rc);
-				} else {
-					RayCast rc = new RayCast(rootNode, new Vector3d(-1, -1, -1), 2, cameraRay, row * screenHeight + col, imageColors, imageDepth, subdivider,
-							voxelSizeConstantA, voxelSizeConstantB);
-					rendererExecutor.execute(rc);
+		// set the skipNode and the coordinate frame for this frame
+		setSkipNode(cameraFrame.getPosition(), cameraFrame.getPositionError());
+		setFrame(cameraFrame.getPosition(), cameraFrame.getPositionError());
+
+		// the start node cache is sized for the buffers, so it lasts until they are reallocated
+		if (startNodeCaching && startNodeCache == null)
+			startNodeCache = new StartNodeCache(bufferWidth, bufferHeight);
+
+		// the packed traversal needs the octree as the subdivider has left it, packed into the storage of the last frame's copy
+		if (traversal.equals("packed")) {
+			if (packedOctree == null)
+				packedOctree = packedStorage.equals("direct") ? new DirectPackedOctree() : new HeapPackedOctree(1024);
+			packedOctree.clear();
+			PackedOctree.pack(rootNode, packedOctree);
+		}
+
+		// generate the primary rays from the camera snapshot
+		RayGenerator rayGenerator = new RayGenerator(cameraFrame, screenWidth, screenHeight, frame);
+
+		if (frameBudget > 0) {
+			// trace a coarse image which always completes, then refine it in passes of half the stride until the frame budget runs out
+			long deadline = frameStart + frameBudget * 1000000L;
+			renderPool.invoke(newRenderTile(rayGenerator, null, PROGRESSIVE_STRIDE, false, 0));
+			for (int stride = PROGRESSIVE_STRIDE / 2; stride >= 1 && System.nanoTime() < deadline; stride /= 2)
+				renderPool.invoke(newRenderTile(rayGenerator, null, stride, true, deadline));
+		} else {
+			// if reprojection or checkerboard rendering is enabled, reuse what can be reused of the previous frame and find which pixels still need tracing
+			boolean[] traceMask = null;
+			if (reprojection || checkerboard) {
+				if (reprojector == null) {
+					reprojector = new Reprojector(bufferWidth, bufferHeight, reprojectionRefreshPeriod);
+					reprojector.resize(screenWidth, screenHeight);
+				}
+				traceMask = reprojector.reproject(rayGenerator, imageColors, imageDepth, imageNodes, voxelSizeConstantA, voxelSizeConstantB);
+			}
+
+			// checkerboard frames trace every pixel of this frame's half of the checkerboard, and keep the reprojected pixels of the other half
+			if (checkerboard) {
+				if (checkerboardReconstructor == null) {
+					checkerboardReconstructor = new CheckerboardReconstructor(bufferWidth, bufferHeight);
+					checkerboardReconstructor.resize(screenWidth, screenHeight);
 				}
+				traceMask = checkerboardReconstructor.select(traceMask, frameIndex);
 			}
+
+			// split the screen into tiles and cast a ray through every pixel of each tile at the octreeModel
+			renderPool.invoke(newRenderTile(rayGenerator, traceMask, 1, false, 0));
+
+			// fill in the half of the checkerboard which was not traced, so that SSAO has a complete depth buffer
+			if (checkerboard)
+				checkerboardReconstructor.reconstruct(imageColors, imageDepth, imageNodes);
+
+			// keep the finished frame to reproject into the next one
+			if (reprojection || checkerboard)
+				reprojector.store(rayGenerator, imageDepth, imageNodes);
 		}
 
-		// shutdown the executor and wait for all threads to terminate
-		rendererExecutor.shutdown();
-		try {
-			rendererExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
-		} catch (InterruptedException e) {
-			e.printStackTrace();
+		// depths traced in a rebased frame are in its local units, so scale them back into space (exactly, as the scale is a power of 2)
+		if (frame != RebasedFrame.SPACE) {
+			double invScale = 1d / frame.getScale();
+			for (int i = 0; i < screenHeight * screenWidth; i++)
+				if (imageDepth[i] != Double.MAX_VALUE)
+					imageDepth[i] *= invScale;
 		}
 
-		// do SSAO calculations and put results in imageShadows and get minimum tMin
-		optTmin = SSAO.setOcclusion(imageDepth, screenHeight, screenWidth, imageShadows);
+		// set the optimal tmin value to be used by camera movement, the depth at the centre of the screen or the minimum depth if the centre ray missed
+		int centre = (screenWidth / 2) * screenHeight + (screenWidth / 2);
+		optTmin = imageDepth[centre] == Double.MAX_VALUE ? ParallelSSAO.getMinDepth(imageDepth, screenHeight, screenWidth) : imageDepth[centre];
 
-		// set the optimal tmin value to be used by camera movement
-		optTmin = imageDepth[(screenWidth / 2) * screenHeight + (screenWidth / 2)] == Double.MAX_VALUE ? optTmin : imageDepth[(screenWidth / 2) * screenHeight
-				+ (screenWidth / 2)];
+		// unify the bricks every 10 frames, which pipelined frames do once the frame is traced
+		if (!pipelined && frameIndex % 10 == 0)
+			brickManager.unifyBricks();
+	}
 
-		// adjust the colors in imageColors by the lighting in imageShadows to output the final colors in imagePixelData
-		for (int row = 0; row < screenHeight; row++)
-			for (int col = 0; col < screenWidth; col++)
-				imagePixelData[row * screenHeight + col] = ColorUtils
-						.adjustLight(imageColors[row * screenHeight + col], imageShadows[row * screenHeight + col]);
+	/**
+	 * Shades a traced frame by calculating SSAO from its depths and darkening its colors by it
+	 * 
+	 * @param imageColors
+	 *            The colors of the traced frame
+	 * @param imageDepth
+	 *            The depths of the traced frame
+	 * @param imageShadows
+	 *            The array in which to store the SSAO of the frame
+	 * @param screenWidth
+	 *            The width of the traced frame in pixels
+	 * @param screenHeight
+	 *            The height of the traced frame in pixels
+	 * @param pixelData
+	 *            The array in which to store the final colors, with the frame in its top left
+	 * @param pixelStride
+	 *            The width in pixels of a row of pixelData
+	 * @param ssaoResolution
+	 *            The resolution to calculate SSAO at, "full" or "half"
+	 */
+	public static void shade(int[] imageColors, double[] imageDepth, int[] imageShadows, int screenWidth, int screenHeight, int[] pixelData, int pixelStride,
+			String ssaoResolution) {
+		// do SSAO calculations and put results in imageShadows, then adjust the colors in imageColors by the lighting in imageShadows to output the final
+		// colors in the top left of pixelData, strip by strip
+		PostProcessFrame frame = new PostProcessFrame(imageColors, imageDepth, imageShadows, screenWidth, screenHeight, pixelData, pixelStride);
+		if (ssaoResolution.equals("half"))
+			halfResolutionEffects.run(frame);
+		else
+			fullResolutionEffects.run(frame);
+	}
 
-		// save image if recording is enabled
+	/**
+	 * Records the shaded frame in the backbuffer if recording is enabled and draws it onto the graphics
+	 * 
+	 * @param g
+	 *            The graphics to draw the frame onto
+	 */
+	public void presentFrame(Graphics g) {
+		// if recording is enabled, hand the frame to the recorder, which copies it so that it is encoded and saved off the render thread
 		if (isRecording()) {
-			try {
-				File outputfile = new File("images/screenshot" + frameIndex + ".png");
-				ImageIO.write(backbuffer, "png", outputfile);
-			} catch (IOException e) {
-				System.err.println("file write IO exception");
-			}
+			if (frameSink == null)
+				createFrameSink();
+			if (frameSink != null)
+				frameSink.record(imagePixelData, bufferWidth, imageDepth, screenWidth, screenHeight, frameIndex);
 		}
 
-		// draw the image onto the graphics
-		g.drawImage(backbuffer, 0, 0, null);
+		// draw the rendered part of the image onto the graphics, scaled up to the buffer size
+		g.drawImage(backbuffer, 0, 0, bufferWidth, bufferHeight, 0, 0, screenWidth, screenHeight, null);
 		backbuffer.flush();
 
 		// register that a frame has been drawn
 		metrics.registerFrameRender();
+	}
 
-		// unify the bricks every 10 frames
-		if (frameIndex % 10 == 0)
-			brickManager.unifyBricks();
+	/**
+	 * Creates the sink to record frames to in the recording format, turning recording off if it cannot be created
+	 */
+	private void createFrameSink() {
+		if (recordingFormat.equals("raw")) {
+			try {
+				frameSink = new RawFrameRecorder(new File("images/recording.raw"), bufferWidth, bufferHeight, recordingRawCapacity, recordingDepth, metrics);
+			} catch (IOException e) {
+				System.err.println("could not create raw recording file");
+				recording = false;
+			}
+		} else {
+			frameSink = new PngFrameRecorder(new File("images"), bufferWidth, bufferHeight, recordingQueueSize, recordingThreads, recordingDropFrames, metrics);
+		}
+	}
+
+	/**
+	 * Exchanges the colors and depths of the last traced frame with the buffers of frame, so that the traced frame can be shaded and saved on another
+	 * thread while the next frame is traced into the buffers frame held before. Every pixel of a frame is traced or reprojected, so nothing is lost from the
+	 * buffers given to the Renderer. A frame with a G-buffer has no buffers to exchange, so the traced frame is packed into its G-buffer instead.
+	 * 
+	 * @param frame
+	 *            The frame to take the traced frame, whose buffers must be the same size as this Renderer's
+	 */
+	public void swapFrame(TracedFrame frame) {
+		frame.width = screenWidth;
+		frame.height = screenHeight;
+		frame.frameIndex = frameIndex;
+		frame.ssaoResolution = ssaoResolution;
+		if (frame.gBuffer != null) {
+			frame.gBuffer.store(imageColors, imageDepth, screenWidth, screenHeight);
+			return;
+		}
+
+		int[] colors = frame.colors;
+		double[] depth = frame.depth;
+		frame.colors = imageColors;
+		frame.depth = imageDepth;
+		imageColors = colors;
+		imageDepth = depth;
+	}
+
+	/**
+	 * Creates a task to trace the whole screen for the current frame, starting at the skipNode if there is one
+	 *
+	 * @param rayGenerator
+	 *            The primary rays of the frame
+	 * @param traceMask
+	 *            Whether each pixel needs to be traced, null to trace every pixel
+	 * @param stride
+	 *            The width and height of the blocks traced by a single ray, 1 to trace every pixel
+	 * @param refine
+	 *            Whether the blocks traced by a previous pass of twice the stride should be skipped
+	 * @param deadline
+	 *            The System.nanoTime() after which no more tiles are traced, 0 for no deadline
+	 */
+	private RenderTile newRenderTile(RayGenerator rayGenerator, boolean[] traceMask, int stride, boolean refine, long deadline) {
+		if (skipNode != null)
+			return new RenderTile(rayGenerator, rootNode, skipNode, skipNodeBoxMin, skipNodeBoxDim, screenWidth, screenHeight, imageColors, imageDepth,
+					imageNodes, traceMask, subdivider, voxelSizeConstantA, voxelSizeConstantB, packetSize, traversal, packedOctree, frame, startNodeCache,
+					beamSize, stride, refine, foveaRadius, foveaMaxStride, deadline);
+		else
+			return new RenderTile(rayGenerator, rootNode, rootNode, new Vector3d(-1, -1, -1), 2, screenWidth, screenHeight, imageColors, imageDepth,
+					imageNodes, traceMask, subdivider, voxelSizeConstantA, voxelSizeConstantB, packetSize, traversal, packedOctree, frame, startNodeCache,
+					beamSize, stride, refine, foveaRadius, foveaMaxStride, deadline);
 	}
 
-	// the node we can skip to during rendering
+	// the node we can skip to during rendering, its position and dimensions in the frame rays are traced in and its minimum coordinates and width on the
+	// lattice used by LatticeRayCast
 	private OctreeNode skipNode;
 	private Vector3d skipNodeBoxMin;
 	private double skipNodeBoxDim;
+	private long skipNodeX;
+	private long skipNodeY;
+	private long skipNodeZ;
+	private long skipNodeSize;
 
 	/**
-	 * Sets the skipNode for each frame. The skipNode should be the smallest node in which the camera's rays start from (its position)
+	 * Sets the skipNode for each frame. The skipNode should be the smallest node in which the camera's rays start from (its position). The skipNode is
+	 * tracked by its lattice coordinates so that descending and snapping onto coarser neighbors is exact at any depth.
 	 * 
 	 * @param cameraPos
 	 *            The position of the camera in space.
+	 * @param cameraPosError
+	 *            The rounding error of the position of the camera
 	 */
-	private void setSkipNode(Vector3d cameraPos) {
+	private void setSkipNode(Vector3d cameraPos, Vector3d cameraPosError) {
+
+		// there is no skipNode while the camera is outside the bounding box
+		if (!(cameraPos.x < 1 && cameraPos.x > -1 && cameraPos.y < 1 && cameraPos.y > -1 && cameraPos.z < 1 && cameraPos.z > -1)) {
+			skipNode = null;
+			return;
+		}
+
+		// the position of the camera on the lattice
+		long cameraX = LatticeRayCast.toLattice(cameraPos.x, cameraPosError.x);
+		long cameraY = LatticeRayCast.toLattice(cameraPos.y, cameraPosError.y);
+		long cameraZ = LatticeRayCast.toLattice(cameraPos.z, cameraPosError.z);
 
-		// if the skipNode has not been set yet, check if the camera is inside the bounding box
 		if (skipNode == null) {
-			if (cameraPos.x < 1 && cameraPos.x > -1 && cameraPos.y < 1 && cameraPos.y > -1 && cameraPos.z < 1 && cameraPos.z > -1) {
-
-				// if it is, descend hierarchy from root node until leaf reached
-				OctreeNode node = rootNode;
-				double boxDim = 2d;
-				Vector3d boxMin = new Vector3d(-1, -1, -1);
-
-				while (!node.isLeaf()) {
-					boxDim /= 2d;
-					boolean[] s = { (cameraPos.x >= (boxMin.x + boxDim)) ? true : false, (cameraPos.y >= (boxMin.y + boxDim)) ? true : false,
-							(cameraPos.z >= (boxMin.z + boxDim)) ? true : false };
-					boxMin.x += s[0] ? boxDim : 0;
-					boxMin.y += s[1] ? boxDim : 0;
-					boxMin.z += s[2] ? boxDim : 0;
-					node = node.getChild(s[0] ? 1 : 0, s[1] ? 1 : 0, s[2] ? 1 : 0);
-				}
+			// if the skipNode has not been set yet, start from the root node
+			skipNode = rootNode;
+			skipNodeX = 0;
+			skipNodeY = 0;
+			skipNodeZ = 0;
+			skipNodeSize = LatticeRayCast.getNodeSize(0);
+		} else if (!(cameraX >= skipNodeX && cameraX < skipNodeX + skipNodeSize && cameraY >= skipNodeY && cameraY < skipNodeY + skipNodeSize
+				&& cameraZ >= skipNodeZ && cameraZ < skipNodeZ + skipNodeSize)) {
+
+			// otherwise if the camera has left the current skipNode a new one must be found, first find the possibly correct neighbor
+			OctreeNode oldSkipNode = skipNode;
+			if (cameraX < skipNodeX) {
+				skipNode = skipNode.getNeighbor(0);
+				skipNodeX -= skipNodeSize;
+			} else if (cameraX >= skipNodeX + skipNodeSize) {
+				skipNode = skipNode.getNeighbor(1);
+				skipNodeX += skipNodeSize;
+			} else if (cameraY < skipNodeY) {
+				skipNode = skipNode.getNeighbor(2);
+				skipNodeY -= skipNodeSize;
+			} else if (cameraY >= skipNodeY + skipNodeSize) {
+				skipNode = skipNode.getNeighbor(3);
+				skipNodeY += skipNodeSize;
+			} else if (cameraZ < skipNodeZ) {
+				skipNode = skipNode.getNeighbor(4);
+				skipNodeZ -= skipNodeSize;
+			} else {
+				skipNode = skipNode.getNeighbor(5);
+				skipNodeZ += skipNodeSize;
+			}
+
+			// if no neighbor node found, just return null skipNode for worst case scenario
+			if (skipNode == null)
+				return;
 
-				// once skipNode has been found for next frame, set it and record it's position and dimensions
-				skipNode = node;
-				skipNodeBoxMin = boxMin;
-				skipNodeBoxDim = boxDim;
+			// if coarser neighbor node found, snap onto coarser lattice
+			if (skipNode.getDepth() != oldSkipNode.getDepth()) {
+				skipNodeSize = LatticeRayCast.getNodeSize(skipNode.getDepth());
+				skipNodeX &= -skipNodeSize;
+				skipNodeY &= -skipNodeSize;
+				skipNodeZ &= -skipNodeSize;
 			}
-		} else {
 
-			// otherwise check the camera's position is still within the skipNode, if it is, possibly descend further down the hierarchy
-			if (cameraPos.x > skipNodeBoxMin.x && cameraPos.x < (skipNodeBoxMin.x + skipNodeBoxDim) && cameraPos.y > skipNodeBoxMin.y
-					&& cameraPos.y < (skipNodeBoxMin.y + skipNodeBoxDim) && cameraPos.z > skipNodeBoxMin.z && cameraPos.z < (skipNodeBoxMin.z + skipNodeBoxDim)) {
-
-				if (!skipNode.isLeaf()) {
-					// take current skipNode values and descend hierarchy
-					OctreeNode node = skipNode;
-					double boxDim = skipNodeBoxDim;
-					Vector3d boxMin = new Vector3d(skipNodeBoxMin);
-
-					while (!node.isLeaf()) {
-						boxDim /= 2d;
-						boolean[] s = { (cameraPos.x >= (boxMin.x + boxDim)) ? true : false, (cameraPos.y >= (boxMin.y + boxDim)) ? true : false,
-								(cameraPos.z >= (boxMin.z + boxDim)) ? true : false };
-						boxMin.x += s[0] ? boxDim : 0;
-						boxMin.y += s[1] ? boxDim : 0;
-						boxMin.z += s[2] ? boxDim : 0;
-						node = node.getChild(s[0] ? 1 : 0, s[1] ? 1 : 0, s[2] ? 1 : 0);
-					}
-
-					// once new skipNode has been found inside old one, set it and record it's position and dimensions
-					skipNode = node;
-					skipNodeBoxMin = boxMin;
-					skipNodeBoxDim = boxDim;
-				}
+			// now do one last check that the camera is inside the new skipNode. If not, set it to null
+			if (!(cameraX >= skipNodeX && cameraX < skipNodeX + skipNodeSize && cameraY >= skipNodeY && cameraY < skipNodeY + skipNodeSize
+					&& cameraZ >= skipNodeZ && cameraZ < skipNodeZ + skipNodeSize)) {
+				skipNode = null;
+				return;
+			}
+		}
 
-			} else {
+		// descend hierarchy from the skipNode until leaf reached
+		while (!skipNode.isLeaf()) {
+			skipNodeSize >>= 1;
+			int sX = cameraX >= skipNodeX + skipNodeSize ? 1 : 0;
+			int sY = cameraY >= skipNodeY + skipNodeSize ? 1 : 0;
+			int sZ = cameraZ >= skipNodeZ + skipNodeSize ? 1 : 0;
+			skipNodeX += sX * skipNodeSize;
+			skipNodeY += sY * skipNodeSize;
+			skipNodeZ += sZ * skipNodeSize;
+			skipNode = skipNode.getChild(sX, sY, sZ);
+		}
+	}
 
-				// otherwise the camera has left the current skipNode and a new one must be found
-				// first find the possibly correct neighbor
-				OctreeNode oldSkipNode = skipNode;
-				if (cameraPos.x < skipNodeBoxMin.x) {
-					skipNode = skipNode.getNeighbor(0);
-					skipNodeBoxMin.x -= skipNodeBoxDim;
-				} else if (cameraPos.x > (skipNodeBoxMin.x + skipNodeBoxDim)) {
-					skipNode = skipNode.getNeighbor(1);
-					skipNodeBoxMin.x += skipNodeBoxDim;
-				} else if (cameraPos.y < skipNodeBoxMin.y) {
-					skipNode = skipNode.getNeighbor(2);
-					skipNodeBoxMin.y -= skipNodeBoxDim;
-				} else if (cameraPos.y > (skipNodeBoxMin.y + skipNodeBoxDim)) {
-					skipNode = skipNode.getNeighbor(3);
-					skipNodeBoxMin.y += skipNodeBoxDim;
-				} else if (cameraPos.z < skipNodeBoxMin.z) {
-					skipNode = skipNode.getNeighbor(4);
-					skipNodeBoxMin.z -= skipNodeBoxDim;
-				} else if (cameraPos.z > (skipNodeBoxMin.z + skipNodeBoxDim)) {
-					skipNode = skipNode.getNeighbor(5);
-					skipNodeBoxMin.z += skipNodeBoxDim;
-				}
+	/**
+	 * Sets the coordinate frame rays are traced in for each frame, once the skipNode has been set. Near the root node rays are traced in space, but deeper
+	 * down positions in space run out of precision, so the frame is rebased onto the skipNode and traversal carries on relative to it. The frame is kept
+	 * until the camera leaves its anchor node or zooms rebaseDepth levels deeper, so that reprojection is only interrupted when it is rebased.
+	 * 
+	 * @param cameraPos
+	 *            The position of the camera in space.
+	 * @param cameraPosError
+	 *            The rounding error of the position of the camera
+	 */
+	private void setFrame(Vector3d cameraPos, Vector3d cameraPosError) {
 
-				// if no neighbor node found, just retun null skipNode for worst case scenario
-				if (skipNode != null) {
-
-					// if coarser neighbor node found, snap skipNodeBoxMin onto coarser grid
-					if (skipNode.getDepth() != oldSkipNode.getDepth()) {
-						skipNodeBoxDim = Math.pow(2d, -skipNode.getDepth() + 1d);
-						skipNodeBoxMin.x = Math.floor(skipNodeBoxMin.x / skipNodeBoxDim) * skipNodeBoxDim;
-						skipNodeBoxMin.y = Math.floor(skipNodeBoxMin.y / skipNodeBoxDim) * skipNodeBoxDim;
-						skipNodeBoxMin.z = Math.floor(skipNodeBoxMin.z / skipNodeBoxDim) * skipNodeBoxDim;
-					}
-
-					// now do one last check that the camera is inside the new skipNode. If not, set it to null
-					if (!(cameraPos.x > skipNodeBoxMin.x && cameraPos.x < (skipNodeBoxMin.x + skipNodeBoxDim) && cameraPos.y > skipNodeBoxMin.y
-							&& cameraPos.y < (skipNodeBoxMin.y + skipNodeBoxDim) && cameraPos.z > skipNodeBoxMin.z && cameraPos.z < (skipNodeBoxMin.z + skipNodeBoxDim)))
-						skipNode = null;
-				}
-			}
+		// trace in space while there is no skipNode or it is not deep enough to need rebasing
+		if (skipNode == null || rebaseDepth <= 0 || skipNode.getDepth() < rebaseDepth) {
+			frame = RebasedFrame.SPACE;
+		} else {
+			long cameraX = LatticeRayCast.toLattice(cameraPos.x, cameraPosError.x);
+			long cameraY = LatticeRayCast.toLattice(cameraPos.y, cameraPosError.y);
+			long cameraZ = LatticeRayCast.toLattice(cameraPos.z, cameraPosError.z);
+			if (frame == RebasedFrame.SPACE || !frame.contains(cameraX, cameraY, cameraZ) || skipNode.getDepth() >= frame.getDepth() + rebaseDepth)
+				frame = new RebasedFrame(skipNodeX, skipNodeY, skipNodeZ, skipNode.getDepth());
+		}
 
+		// record the skipNode's position and dimensions in the frame for starting rays from it
+		if (skipNode != null) {
+			skipNodeBoxMin = new Vector3d(frame.toLocal(skipNodeX, 0), frame.toLocal(skipNodeY, 1), frame.toLocal(skipNodeZ, 2));
+			skipNodeBoxDim = frame.getWidth(skipNodeSize);
 		}
 	}
 
@@ -267,21 +628,69 @@ public class Renderer {
 	}
 
 	public void setScreenSize(int screenWidthParam, int screenHeightParam) {
+		// the frame being post-processed is dropped, as its buffers are the old size
+		finishPostProcessing();
+		postProcessFrame = null;
+
 		screenWidth = screenWidthParam;
 		screenHeight = screenHeightParam;
+		bufferWidth = screenWidthParam;
+		bufferHeight = screenHeightParam;
 
 		// create back buffered image with which to draw pixels
-		backbuffer = new BufferedImage(screenWidth, screenHeight, BufferedImage.TYPE_INT_RGB);
+		backbuffer = new BufferedImage(bufferWidth, bufferHeight, BufferedImage.TYPE_INT_RGB);
 		imagePixelData = ((DataBufferInt) backbuffer.getRaster().getDataBuffer()).getData();
 
 		// create color and SSAO arrays
-		imageColors = new int[screenHeight * screenWidth];
-		imageDepth = new double[screenHeight * screenWidth];
-		imageShadows = new int[screenHeight * screenWidth];
+		imageColors = new int[bufferHeight * bufferWidth];
+		imageDepth = new double[bufferHeight * bufferWidth];
+		imageShadows = new int[bufferHeight * bufferWidth];
+		imageNodes = new OctreeNode[bufferHeight * bufferWidth];
+
+		// the previous frame can no longer be reprojected, nor its nodes started from
+		reprojector = null;
+		checkerboardReconstructor = null;
+		startNodeCache = null;
+
+		// the recorder's frame buffers may be too small for the new screen size
+		if (frameSink != null) {
+			frameSink.close();
+			frameSink = null;
+		}
+	}
+
+	/**
+	 * Changes the resolution rendered at without reallocating any buffers. The rendered image is scaled up to the screen size set by setScreenSize when it is
+	 * drawn.
+	 *
+	 * @param renderWidth
+	 *            The width to render at in pixels, no larger than the screen width
+	 * @param renderHeight
+	 *            The height to render at in pixels, no larger than the screen height
+	 */
+	public void setRenderSize(int renderWidth, int renderHeight) {
+		if (renderWidth == screenWidth && renderHeight == screenHeight)
+			return;
+
+		screenWidth = renderWidth;
+		screenHeight = renderHeight;
+
+		// SSAO does not set the edges of the screen, so clear any shadows left from the previous resolution
+		Arrays.fill(imageShadows, 0);
+
+		// the previous frame can no longer be reprojected
+		if (reprojector != null)
+			reprojector.resize(screenWidth, screenHeight);
+		if (checkerboardReconstructor != null)
+			checkerboardReconstructor.resize(screenWidth, screenHeight);
 	}
 
 	public void setRootNode(OctreeNode node) {
 		rootNode = node;
+
+		// nodes of the old octree cannot be started from
+		if (startNodeCache != null)
+			startNodeCache.clear();
 	}
 
 	public void setSubdivider(Subdivider subdivider) {
@@ -307,4 +716,233 @@ public class Renderer {
 	public void setRecording(boolean recording) {
 		this.recording = recording;
 	}
+
+	public boolean isPipelined() {
+		return pipelined;
+	}
+
+	/**
+	 * @param pipelined
+	 *            Whether to shade and record each frame on a separate thread while the next frame is traced, so that rendering is as fast as the slower of
+	 *            the two rather than their sum, at the cost of each frame being drawn one frame later
+	 */
+	public void setPipelined(boolean pipelined) {
+		// draw nothing of a frame left being post-processed when pipelining is turned off
+		finishPostProcessing();
+		this.pipelined = pipelined;
+	}
+
+	/**
+	 * @param frameSink
+	 *            The sink to hand recorded frames to, which must be able to hold frames of the screen size, or null to save them with a PngFrameRecorder
+	 */
+	public void setFrameSink(FrameSinkInterface frameSink) {
+		this.frameSink = frameSink;
+	}
+
+	/**
+	 * @param recordingQueueSize
+	 *            The number of recorded frames which can wait to be encoded before frames are dropped or rendering stalls
+	 * @param recordingThreads
+	 *            The number of threads encoding recorded frames
+	 * @param recordingDropFrames
+	 *            Whether to drop frames rather than stall rendering when the queue is full
+	 */
+	public void setRecordingQueue(int recordingQueueSize, int recordingThreads, boolean recordingDropFrames) {
+		this.recordingQueueSize = recordingQueueSize;
+		this.recordingThreads = recordingThreads;
+		this.recordingDropFrames = recordingDropFrames;
+	}
+
+	/**
+	 * @param recordingFormat
+	 *            The format to record frames in: "png" to encode each frame as a PNG file, or "raw" to copy frames uncompressed into images/recording.raw to be
+	 *            converted to PNGs later by RawFrameConverter
+	 * @param recordingRawCapacity
+	 *            The number of frames a raw recording has room for, after which frames are dropped
+	 * @param recordingDepth
+	 *            Whether a raw recording also records the depth of every pixel
+	 */
+	public void setRecordingFormat(String recordingFormat, int recordingRawCapacity, boolean recordingDepth) {
+		this.recordingFormat = recordingFormat;
+		this.recordingRawCapacity = recordingRawCapacity;
+		this.recordingDepth = recordingDepth;
+	}
+
+	public int getPacketSize() {
+		return packetSize;
+	}
+
+	/**
+	 * @param packetSize
+	 *            The width and height in pixels of the packets of rays traced together through the octree (e.g. 2 or 4), 1 to trace every ray individually
+	 */
+	public void setPacketSize(int packetSize) {
+		this.packetSize = packetSize;
+	}
+
+	public String getTraversal() {
+		return traversal;
+	}
+
+	/**
+	 * @param traversal
+	 *            The traversal used by individual rays, "lattice" to address nodes by integer lattice coordinates, "stack" to address them on the lattice
+	 *            and find neighbors from the nodes descended through rather than neighbor pointers, "packed" to do so in a copy of the octree packed into
+	 *            primitive storage at the start of every frame, or "double" to track their bounds as doubles. Ray packets always use double bounds and
+	 *            neighbor pointers.
+	 */
+	public void setTraversal(String traversal) {
+		this.traversal = traversal;
+	}
+
+	public String getPackedStorage() {
+		return packedStorage;
+	}
+
+	/**
+	 * @param packedStorage
+	 *            Where the octree the packed traversal casts rays into is stored, "heap" in arrays on the Java heap or "direct" in direct buffers outside it
+	 */
+	public void setPackedStorage(String packedStorage) {
+		this.packedStorage = packedStorage;
+		packedOctree = null;
+	}
+
+	public int getBeamSize() {
+		return beamSize;
+	}
+
+	/**
+	 * @param beamSize
+	 *            The width and height in pixels of the blocks whose rays start from the closest distance any of them could meet the fractal (e.g. 4 or 8),
+	 *            1 for no pre-pass. Only used when rays are traced individually.
+	 */
+	public void setBeamSize(int beamSize) {
+		this.beamSize = beamSize;
+	}
+
+	public int getRebaseDepth() {
+		return rebaseDepth;
+	}
+
+	/**
+	 * @param rebaseDepth
+	 *            The depth of skipNode at which rays start being traced relative to it rather than in space, and the number of levels the camera can zoom
+	 *            deeper before they are rebased again, 0 to always trace in space
+	 */
+	public void setRebaseDepth(int rebaseDepth) {
+		this.rebaseDepth = rebaseDepth;
+	}
+
+	/**
+	 * @return The coordinate frame the last frame was traced in
+	 */
+	public RebasedFrame getFrame() {
+		return frame;
+	}
+
+	public boolean isReprojection() {
+		return reprojection;
+	}
+
+	/**
+	 * @param reprojection
+	 *            Whether pixels are reprojected from the previous frame where possible rather than traced again
+	 */
+	public void setReprojection(boolean reprojection) {
+		this.reprojection = reprojection;
+		reprojector = null;
+	}
+
+	public boolean isCheckerboard() {
+		return checkerboard;
+	}
+
+	/**
+	 * @param checkerboard
+	 *            Whether each frame traces only half of its pixels in a checkerboard, alternating between frames, and fills in the other half from the
+	 *            previous frame where it agrees with the traced pixels around it or from them where it does not. Only used when frames are not progressive.
+	 */
+	public void setCheckerboard(boolean checkerboard) {
+		this.checkerboard = checkerboard;
+		reprojector = null;
+	}
+
+	public int getReprojectionRefreshPeriod() {
+		return reprojectionRefreshPeriod;
+	}
+
+	/**
+	 * @param reprojectionRefreshPeriod
+	 *            The number of frames in which every pixel is traced again at least once when reprojection is enabled
+	 */
+	public void setReprojectionRefreshPeriod(int reprojectionRefreshPeriod) {
+		this.reprojectionRefreshPeriod = reprojectionRefreshPeriod;
+		reprojector = null;
+	}
+
+	public boolean isStartNodeCaching() {
+		return startNodeCaching;
+	}
+
+	/**
+	 * @param startNodeCaching
+	 *            Whether individually traced rays start from a node near the node their pixel hit last time it was traced, rather than descending from the
+	 *            skipNode. Rays traced in packets always start from the skipNode.
+	 */
+	public void setStartNodeCaching(boolean startNodeCaching) {
+		this.startNodeCaching = startNodeCaching;
+		startNodeCache = null;
+	}
+
+	public double getFoveaRadius() {
+		return foveaRadius;
+	}
+
+	public int getFoveaMaxStride() {
+		return foveaMaxStride;
+	}
+
+	/**
+	 * @param foveaRadius
+	 *            The radius of the centre of the screen traced at full resolution, as a fraction of half the screen width (e.g. 0.3), 0 to trace every
+	 *            pixel. Further from the centre one ray is traced for each block of pixels, twice as wide for each further foveaRadius.
+	 * @param foveaMaxStride
+	 *            The width and height in pixels of the largest blocks traced by a single ray at the edges of the screen, a power of 2 (e.g. 4)
+	 */
+	public void setFovea(double foveaRadius, int foveaMaxStride) {
+		this.foveaRadius = foveaRadius;
+		this.foveaMaxStride = foveaMaxStride;
+	}
+
+	public String getSsaoResolution() {
+		return ssaoResolution;
+	}
+
+	/**
+	 * @param ssaoResolution
+	 *            The resolution to calculate SSAO at: "full" to calculate it for every pixel, or "half" to calculate it for 2x2 blocks of pixels and upsample
+	 *            it with a depth-aware filter, which is about a quarter of the work but spreads shadows further from creases
+	 */
+	public void setSsaoResolution(String ssaoResolution) {
+		this.ssaoResolution = ssaoResolution;
+
+		// half resolution SSAO sets the edges of the screen, which full resolution SSAO does not
+		if (imageShadows != null)
+			Arrays.fill(imageShadows, 0);
+	}
+
+	public int getFrameBudget() {
+		return frameBudget;
+	}
+
+	/**
+	 * @param frameBudget
+	 *            The time in milliseconds after the start of a frame until which its image is progressively refined towards full resolution, 0 to trace every
+	 *            pixel every frame. Progressive frames trace every ray individually and are not reprojected.
+	 */
+	public void setFrameBudget(int frameBudget) {
+		this.frameBudget = frameBudget;
+	}
 }
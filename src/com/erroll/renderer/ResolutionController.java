@@ -0,0 +1,82 @@
+package com.erroll.renderer;
+
+public class ResolutionController {
+
+	// the resolution is changed at most once in this many frames, so that the frame times measured reflect the current resolution
+	private static final int SETTLE_FRAMES = 8;
+
+	// the relative change in resolution below which the resolution is left as it is
+	private static final double DEAD_BAND = 0.05d;
+
+	// the largest relative change in resolution made at once
+	private static final double MAX_STEP = 0.25d;
+
+	// resolutions are rounded to a multiple of this so that progressive blocks stay aligned
+	private static final int GRANULARITY = 8;
+
+	// the frame time in milliseconds to aim for
+	private double targetFrameTime;
+
+	// the range the resolution is kept within
+	private int minResolution;
+	private int maxResolution;
+
+	// the current resolution and the number of frames since it was changed
+	private int resolution;
+	private int framesSinceChange;
+
+	/**
+	 * Creates a ResolutionController which adjusts the width and height of the square render resolution to hold a target frame rate, starting at the maximum
+	 * resolution
+	 *
+	 * @param targetFps
+	 *            The frames per second to aim for
+	 * @param minResolution
+	 *            The smallest resolution to render at
+	 * @param maxResolution
+	 *            The largest resolution to render at, usually the size of the window
+	 */
+	public ResolutionController(double targetFps, int minResolution, int maxResolution) {
+		this.targetFrameTime = 1000d / targetFps;
+		this.minResolution = minResolution;
+		this.maxResolution = maxResolution;
+		this.resolution = maxResolution;
+		this.framesSinceChange = 0;
+	}
+
+	/**
+	 * Called once a frame with the latest measured frame time to find the resolution of the next frame
+	 *
+	 * @param frameTime
+	 *            The recent time between frames in milliseconds, as given by Metrics.getFrameTime()
+	 * @return The resolution to render the next frame at
+	 */
+	public int update(double frameTime) {
+		framesSinceChange++;
+		if (frameTime <= 0d || framesSinceChange < SETTLE_FRAMES)
+			return resolution;
+
+		// the time to render a frame is roughly proportional to its number of pixels, so scale each side by the square root of the ratio of times
+		double scale = Math.sqrt(targetFrameTime / frameTime);
+		if (Math.abs(scale - 1d) < DEAD_BAND)
+			return resolution;
+		scale = scale > 1d + MAX_STEP ? 1d + MAX_STEP : scale < 1d - MAX_STEP ? 1d - MAX_STEP : scale;
+
+		// round to the granularity and keep within range
+		int newResolution = (int) Math.round(resolution * scale / GRANULARITY) * GRANULARITY;
+		newResolution = newResolution > maxResolution ? maxResolution : newResolution < minResolution ? minResolution : newResolution;
+
+		if (newResolution != resolution) {
+			resolution = newResolution;
+			framesSinceChange = 0;
+		}
+		return resolution;
+	}
+
+	/**
+	 * @return The current resolution
+	 */
+	public int getResolution() {
+		return resolution;
+	}
+}
@@ -0,0 +1,141 @@
+package com.erroll.renderer;
+
+public class SlabKernel {
+
+	/**
+	 * For every ray, calculates the distances along it at which it enters and leaves an axis aligned box using the slab method. The entry distance is
+	 * clamped to be positive, so a ray misses the box if tmin > tmax.
+	 *
+	 * @param rays
+	 *            The rays to be tested
+	 * @param boxMinX
+	 *            The minimum x position in space of the box
+	 * @param boxMinY
+	 *            The minimum y position in space of the box
+	 * @param boxMinZ
+	 *            The minimum z position in space of the box
+	 * @param boxDim
+	 *            The width of the box
+	 * @param tmin
+	 *            The array in which to store the entry distance of each ray
+	 * @param tmax
+	 *            The array in which to store the exit distance of each ray
+	 */
+	public void intersect(RayLanes rays, double boxMinX, double boxMinY, double boxMinZ, double boxDim, double[] tmin, double[] tmax) {
+		for (int i = 0; i < rays.count; i++)
+			intersectLane(rays, i, boxMinX, boxMinY, boxMinZ, boxDim, tmin, tmax);
+	}
+
+	/**
+	 * For every ray, calculates the distance along it at which it leaves an axis aligned box and the face neighbor it leaves towards (0 to 5, as used by
+	 * OctreeNode.getNeighbor), or -1 if no exit face could be found
+	 *
+	 * @param rays
+	 *            The rays to be tested
+	 * @param boxMinX
+	 *            The minimum x position in space of the box
+	 * @param boxMinY
+	 *            The minimum y position in space of the box
+	 * @param boxMinZ
+	 *            The minimum z position in space of the box
+	 * @param boxDim
+	 *            The width of the box
+	 * @param tmax
+	 *            The array in which to store the exit distance of each ray
+	 * @param neighborIds
+	 *            The array in which to store the exit neighbor of each ray
+	 */
+	public void exit(RayLanes rays, double boxMinX, double boxMinY, double boxMinZ, double boxDim, double[] tmax, int[] neighborIds) {
+		for (int i = 0; i < rays.count; i++) {
+			// calculate t values for each corner
+			double tx0 = (boxMinX - rays.originX[i]) * rays.invDirX[i];
+			double tx1 = ((boxMinX + boxDim) - rays.originX[i]) * rays.invDirX[i];
+			double ty0 = (boxMinY - rays.originY[i]) * rays.invDirY[i];
+			double ty1 = ((boxMinY + boxDim) - rays.originY[i]) * rays.invDirY[i];
+			double tz0 = (boxMinZ - rays.originZ[i]) * rays.invDirZ[i];
+			double tz1 = ((boxMinZ + boxDim) - rays.originZ[i]) * rays.invDirZ[i];
+
+			// only the larger of each pair is needed for tmax
+			tx1 = tx1 < tx0 ? tx0 : tx1;
+			ty1 = ty1 < ty0 ? ty0 : ty1;
+			tz1 = tz1 < tz0 ? tz0 : tz1;
+
+			// find tmax and the neighbor in that direction
+			double t1 = tx1 < ty1 ? tx1 < tz1 ? tx1 : tz1 : ty1 < tz1 ? ty1 : tz1;
+			int id = -1;
+			if (t1 == tx1)
+				id = rays.dirX[i] > 0 ? 1 : 0;
+			else if (t1 == ty1)
+				id = rays.dirY[i] > 0 ? 3 : 2;
+			else if (t1 == tz1)
+				id = rays.dirZ[i] > 0 ? 5 : 4;
+
+			tmax[i] = t1;
+			neighborIds[i] = id;
+		}
+	}
+
+	/**
+	 * For every ray, selects the octant of a box containing a point on the ray, as (x << 2) | (y << 1) | z where each of x, y and z is 1 if the point is in
+	 * the upper half of the box along that axis
+	 *
+	 * @param rays
+	 *            The rays the points belong to
+	 * @param pX
+	 *            The x coordinate of the point on each ray
+	 * @param pY
+	 *            The y coordinate of the point on each ray
+	 * @param pZ
+	 *            The z coordinate of the point on each ray
+	 * @param midX
+	 *            The x coordinate of the middle of the box
+	 * @param midY
+	 *            The y coordinate of the middle of the box
+	 * @param midZ
+	 *            The z coordinate of the middle of the box
+	 * @param children
+	 *            The array in which to store the octant of each point
+	 */
+	public void selectChildren(RayLanes rays, double[] pX, double[] pY, double[] pZ, double midX, double midY, double midZ, int[] children) {
+		for (int i = 0; i < rays.count; i++)
+			children[i] = ((pX[i] >= midX) ? 4 : 0) | ((pY[i] >= midY) ? 2 : 0) | ((pZ[i] >= midZ) ? 1 : 0);
+	}
+
+	/**
+	 * Calculates the entry and exit distances of a single ray with a box, exactly as RayCast does
+	 */
+	static void intersectLane(RayLanes rays, int i, double boxMinX, double boxMinY, double boxMinZ, double boxDim, double[] tmin, double[] tmax) {
+		// calculate t values for each corner
+		double tx0 = (boxMinX - rays.originX[i]) * rays.invDirX[i];
+		double tx1 = ((boxMinX + boxDim) - rays.originX[i]) * rays.invDirX[i];
+		double ty0 = (boxMinY - rays.originY[i]) * rays.invDirY[i];
+		double ty1 = ((boxMinY + boxDim) - rays.originY[i]) * rays.invDirY[i];
+		double tz0 = (boxMinZ - rays.originZ[i]) * rays.invDirZ[i];
+		double tz1 = ((boxMinZ + boxDim) - rays.originZ[i]) * rays.invDirZ[i];
+
+		// ensure t0 and t1 are in the correct order
+		if (tx1 < tx0) {
+			double temp = tx0;
+			tx0 = tx1;
+			tx1 = temp;
+		}
+		if (ty1 < ty0) {
+			double temp = ty0;
+			ty0 = ty1;
+			ty1 = temp;
+		}
+		if (tz1 < tz0) {
+			double temp = tz0;
+			tz0 = tz1;
+			tz1 = temp;
+		}
+
+		// tmin = Math.max(tx0, Math.max(ty0, tz0)); tmax = Math.min(tx1, Math.min(ty1, tz1));
+		double t0 = tx0 > ty0 ? tx0 > tz0 ? tx0 : tz0 : ty0 > tz0 ? ty0 : tz0;
+		double t1 = tx1 < ty1 ? tx1 < tz1 ? tx1 : tz1 : ty1 < tz1 ? ty1 : tz1;
+
+		// make sure tmin is positive
+		tmin[i] = t0 < 0 ? 0 : t0;
+		tmax[i] = t1;
+	}
+}
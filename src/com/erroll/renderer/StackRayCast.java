@@ -0,0 +1,154 @@
+package com.erroll.renderer;
+
+import javax.vecmath.Vector3d;
+
+import com.erroll.octree.OctreeNode;
+import com.erroll.octree.scaleadaptation.Subdivider;
+
+public class StackRayCast extends LatticeRayCast {
+
+	// the nodes the current ray has descended through, indexed by depth, and the shallowest depth held
+	private OctreeNode[] path = new OctreeNode[LATTICE_DEPTH + 1];
+	private int pathDepth;
+
+	/**
+	 * Creates a StackRayCast which casts rays like LatticeRayCast, but never follows neighbor pointers. The nodes a ray descends through are kept on a
+	 * stack, and when the ray leaves a leaf it restarts from the deepest of them containing the cell of the same size on the other side of the face it left
+	 * through. That ancestor is found exactly from the highest bit in which the lattice coordinates of the two cells differ, and parent pointers are
+	 * followed if it is above the node the ray started from. The ray then descends back to the node a neighbor pointer would have led to (the node of the
+	 * same size, or a larger leaf) and carries on as LatticeRayCast does, so both produce the same images. Render threads only read shared nodes.
+	 */
+	public StackRayCast(Subdivider subdivider, double voxelSizeConstantA, double voxelSizeConstantB) {
+		super(subdivider, voxelSizeConstantA, voxelSizeConstantB);
+	}
+
+	@Override
+	protected void traverse(OctreeNode node, long x, long y, long z, long size, double tmin, int entryAxis) {
+		pathDepth = node.getDepth();
+		path[pathDepth] = node;
+
+		// the point at which the ray entered node on the lattice
+		long pointX = frame.toLattice(tmin * dirX + originX, 0);
+		long pointY = frame.toLattice(tmin * dirY + originY, 1);
+		long pointZ = frame.toLattice(tmin * dirZ + originZ, 2);
+
+		// will loop until a color is returned
+		while (true) {
+
+			// while node is not a leaf, descend hierarchy until leaf reached
+			while (!node.isLeaf()) {
+				// check if voxel is small enough to terminate hierarchy
+				if ((frame.getWidth(size) * voxelSizeConstantA) < (tmin * voxelSizeConstantB)) {
+					color = node.getColor();
+					depth = tmin;
+					hitNode = node;
+					hitX = x;
+					hitY = y;
+					hitZ = z;
+					return;
+				}
+
+				// descend hierarchy into the child containing the entry point, which is on the near side of the axis the ray entered along
+				size >>= 1;
+				int sX = entryAxis == 0 ? (dirX > 0 ? 0 : 1) : pointX >= x + size ? 1 : 0;
+				int sY = entryAxis == 1 ? (dirY > 0 ? 0 : 1) : pointY >= y + size ? 1 : 0;
+				int sZ = entryAxis == 2 ? (dirZ > 0 ? 0 : 1) : pointZ >= z + size ? 1 : 0;
+				x += sX * size;
+				y += sY * size;
+				z += sZ * size;
+				node = node.getChild(sX, sY, sZ);
+				path[node.getDepth()] = node;
+
+				// mark node and its bricks as having been visited by a ray
+				node.visit();
+			}
+
+			// the bounds of the node in the coordinates of the ray, which are exact as they are dyadic
+			double boxDim = frame.getWidth(size);
+			double boxMinX = frame.toLocal(x, 0);
+			double boxMinY = frame.toLocal(y, 1);
+			double boxMinZ = frame.toLocal(z, 2);
+
+			// a leaf node has now been reached; if node is a non-empty leaf, return its color
+			if (!node.isEmpty()) {
+				// only allocate a position for the subdivider if the node is not already waiting to be subdivided
+				if ((boxDim * voxelSizeConstantA) > (tmin * voxelSizeConstantB) && !node.isQueuedSubdiv())
+					subdivider.queueNode(node, new Vector3d(toSpace(x), toSpace(y), toSpace(z)), size * UNIT);
+
+				color = node.getColor();
+				depth = tmin;
+				hitNode = node;
+				hitX = x;
+				hitY = y;
+				hitZ = z;
+				return;
+			}
+
+			// otherwise node is empty so find where the ray leaves it using the faces of the node furthest along the ray
+			double tx1 = ((invDirX > 0 ? boxMinX + boxDim : boxMinX) - originX) * invDirX;
+			double ty1 = ((invDirY > 0 ? boxMinY + boxDim : boxMinY) - originY) * invDirY;
+			double tz1 = ((invDirZ > 0 ? boxMinZ + boxDim : boxMinZ) - originZ) * invDirZ;
+			double tmax = tx1 < ty1 ? tx1 < tz1 ? tx1 : tz1 : ty1 < tz1 ? ty1 : tz1;
+
+			// find the cell of the same size as node on the other side of the face the ray leaves through
+			long nextX = x;
+			long nextY = y;
+			long nextZ = z;
+			if (tmax == tx1) {
+				nextX += dirX > 0 ? size : -size;
+				entryAxis = 0;
+			} else if (tmax == ty1) {
+				nextY += dirY > 0 ? size : -size;
+				entryAxis = 1;
+			} else {
+				nextZ += dirZ > 0 ? size : -size;
+				entryAxis = 2;
+			}
+
+			// the deepest ancestor containing both cells is the deepest whose width is above the highest bit in which their coordinates differ. If the
+			// cell is outside the root node the ray has left the octree, so return black.
+			int ancestorDepth = LATTICE_DEPTH - (64 - Long.numberOfLeadingZeros((x ^ nextX) | (y ^ nextY) | (z ^ nextZ)));
+			if (ancestorDepth < 0) {
+				color = 0;
+				depth = Double.MAX_VALUE;
+				hitNode = null;
+				return;
+			}
+
+			// restart from the ancestor, following parent pointers above the nodes descended through (a deleted node has no parent)
+			while (pathDepth > ancestorDepth) {
+				OctreeNode parent = path[pathDepth].getParent();
+				if (parent == null) {
+					color = 0;
+					depth = Double.MAX_VALUE;
+					hitNode = null;
+					return;
+				}
+				path[--pathDepth] = parent;
+			}
+			node = path[ancestorDepth];
+			long nodeSize = size;
+			size = getNodeSize(ancestorDepth);
+
+			// descend to the cell, stopping at a larger leaf, which is where a neighbor pointer of node would have led
+			while (!node.isLeaf() && size > nodeSize) {
+				size >>= 1;
+				node = node.getChild((nextX & size) != 0 ? 1 : 0, (nextY & size) != 0 ? 1 : 0, (nextZ & size) != 0 ? 1 : 0);
+				path[node.getDepth()] = node;
+			}
+			x = nextX & -size;
+			y = nextY & -size;
+			z = nextZ & -size;
+
+			// finally set tmin to new position along ray
+			tmin = tmax;
+
+			// mark node and its bricks as having been visited by a ray
+			node.visit();
+
+			pointX = frame.toLattice(tmin * dirX + originX, 0);
+			pointY = frame.toLattice(tmin * dirY + originY, 1);
+			pointZ = frame.toLattice(tmin * dirZ + originZ, 2);
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package com.erroll.renderer;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.erroll.renderer.gbuffer.GBufferInterface;
+import com.erroll.renderer.recording.FrameSinkInterface;
+import com.erroll.renderer.recording.ParallelPngEncoder;
+
+public class TracedFrame {
+
+	// the size in pixels of the frame traced, which may be smaller than the buffers
+	int width;
+	int height;
+
+	// the index of the frame among the frames traced by the renderer
+	int frameIndex;
+
+	// the resolution to calculate SSAO of the frame at, "full" or "half"
+	String ssaoResolution = "full";
+
+	// the colors and depths of the traced frame, exchanged with the renderer's by Renderer.swapFrame
+	int[] colors;
+	double[] depth;
+
+	// the G-buffer the traced frame is packed into by Renderer.swapFrame instead of exchanging colors and depths, null to exchange them
+	GBufferInterface gBuffer;
+
+	// the size of the buffers in pixels
+	private int bufferWidth;
+	private int bufferHeight;
+
+	// the SSAO of the frame, and the image holding the final colors of the shaded frame
+	private int[] shadows;
+	private BufferedImage image;
+	private int[] pixelData;
+
+	// the size in pixels and SSAO resolution of the last frame shaded, whose SSAO may be left at the edges of shadows
+	private int shadedWidth;
+	private int shadedHeight;
+	private String shadedSsaoResolution = "full";
+
+	/**
+	 * Creates a TracedFrame with buffers to hold a frame from a Renderer, so it can be shaded and saved while the Renderer traces the next frame
+	 *
+	 * @param bufferWidth
+	 *            The width of the Renderer's buffers in pixels
+	 * @param bufferHeight
+	 *            The height of the Renderer's buffers in pixels
+	 */
+	public TracedFrame(int bufferWidth, int bufferHeight) {
+		this(bufferWidth, bufferHeight, null);
+	}
+
+	/**
+	 * Creates a TracedFrame which packs a frame from a Renderer into a G-buffer, so it can be shaded and saved while the Renderer traces the next frame.
+	 * The G-buffer holds the frame's colors, depths and SSAO, so the frame has no buffers of its own for them and is always shaded with full resolution
+	 * SSAO.
+	 *
+	 * @param bufferWidth
+	 *            The width of the Renderer's buffers in pixels
+	 * @param bufferHeight
+	 *            The height of the Renderer's buffers in pixels
+	 * @param gBuffer
+	 *            The G-buffer to pack the frame into, at least as large as the Renderer's buffers, null to exchange buffers with the Renderer
+	 */
+	public TracedFrame(int bufferWidth, int bufferHeight, GBufferInterface gBuffer) {
+		this.bufferWidth = bufferWidth;
+		this.bufferHeight = bufferHeight;
+		this.gBuffer = gBuffer;
+		if (gBuffer == null) {
+			colors = new int[bufferHeight * bufferWidth];
+			depth = new double[bufferHeight * bufferWidth];
+			shadows = new int[bufferHeight * bufferWidth];
+		}
+		image = new BufferedImage(bufferWidth, bufferHeight, BufferedImage.TYPE_INT_RGB);
+		pixelData = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+	}
+
+	/**
+	 * Shades the frame into its image using SSAO
+	 */
+	public void shade() {
+		if (gBuffer != null) {
+			gBuffer.shade(pixelData, bufferWidth);
+			return;
+		}
+
+		// full resolution SSAO does not set the edges of the frame, so clear any shadows left from a frame of another size or SSAO resolution
+		if (width != shadedWidth || height != shadedHeight || !ssaoResolution.equals(shadedSsaoResolution)) {
+			Arrays.fill(shadows, 0);
+			shadedWidth = width;
+			shadedHeight = height;
+			shadedSsaoResolution = ssaoResolution;
+		}
+
+		Renderer.shade(colors, depth, shadows, width, height, pixelData, bufferWidth, ssaoResolution);
+	}
+
+	/**
+	 * Saves the shaded frame as a PNG file
+	 *
+	 * @param pngEncoder
+	 *            The encoder to encode the frame with
+	 * @param file
+	 *            The file to save the frame in
+	 */
+	public void save(ParallelPngEncoder pngEncoder, File file) throws IOException {
+		pngEncoder.write(pixelData, bufferWidth, width, height, file);
+	}
+
+	/**
+	 * Hands the shaded frame to a frame sink to be recorded
+	 *
+	 * @param frameSink
+	 *            The sink to record the frame in
+	 */
+	public void record(FrameSinkInterface frameSink) {
+		// a frame in a G-buffer has no depths in the layout the sink expects
+		frameSink.record(pixelData, bufferWidth, gBuffer == null ? depth : null, width, height, frameIndex);
+	}
+
+	/**
+	 * Draws the shaded frame onto the graphics, scaled up to the buffer size
+	 *
+	 * @param g
+	 *            The graphics to draw the frame onto
+	 */
+	public void draw(Graphics g) {
+		g.drawImage(image, 0, 0, bufferWidth, bufferHeight, 0, 0, width, height, null);
+		image.flush();
+	}
+
+	// ----------------------------------------------------------------------------
+	// Getters & Setters
+	// ----------------------------------------------------------------------------
+
+	public int getFrameIndex() {
+		return frameIndex;
+	}
+}
@@ -0,0 +1,117 @@
+package com.erroll.renderer;
+
+import com.erroll.octree.OctreeNode;
+
+public interface TraversalInterface {
+
+	/**
+	 * Sets the ray to be cast next
+	 *
+	 * @param originX
+	 *            The x coordinate of the starting point of the ray
+	 * @param originY
+	 *            The y coordinate of the starting point of the ray
+	 * @param originZ
+	 *            The z coordinate of the starting point of the ray
+	 * @param dirX
+	 *            The x component of the normalized direction of the ray
+	 * @param dirY
+	 *            The y component of the normalized direction of the ray
+	 * @param dirZ
+	 *            The z component of the normalized direction of the ray
+	 */
+	void setRay(double originX, double originY, double originZ, double dirX, double dirY, double dirZ);
+
+	/**
+	 * Casts the current ray through the octree starting at startNode, storing the color and depth found
+	 *
+	 * @param startNode
+	 *            The node to start traversal from, which must contain the start of the ray or be the root node
+	 * @param startBoxMinX
+	 *            The minimum x position in the frame of startNode
+	 * @param startBoxMinY
+	 *            The minimum y position in the frame of startNode
+	 * @param startBoxMinZ
+	 *            The minimum z position in the frame of startNode
+	 * @param startBoxDim
+	 *            The width of startNode
+	 */
+	void cast(OctreeNode startNode, double startBoxMinX, double startBoxMinY, double startBoxMinZ, double startBoxDim);
+
+	/**
+	 * Casts the current ray through the octree starting part way along it, skipping the space before tStart which is expected to be empty
+	 *
+	 * @param node
+	 *            The node to descend from, usually the root node
+	 * @param boxMinX
+	 *            The minimum x position in the frame of node
+	 * @param boxMinY
+	 *            The minimum y position in the frame of node
+	 * @param boxMinZ
+	 *            The minimum z position in the frame of node
+	 * @param boxDim
+	 *            The width of node
+	 * @param tStart
+	 *            The distance along the ray to start casting from
+	 * @return True if the ray was cast, false if its position at tStart is not inside node in which case nothing is done
+	 */
+	boolean castFrom(OctreeNode node, double boxMinX, double boxMinY, double boxMinZ, double boxDim, double tStart);
+
+	/**
+	 * @param boxMinX
+	 *            The minimum x position of a box in the frame
+	 * @param boxMinY
+	 *            The minimum y position of a box in the frame
+	 * @param boxMinZ
+	 *            The minimum z position of a box in the frame
+	 * @param boxDim
+	 *            The width of the box
+	 * @return The distance along the current ray at which it enters the box, 0 if it starts inside the box or Double.MAX_VALUE if it misses it
+	 */
+	double getEntryDistance(double boxMinX, double boxMinY, double boxMinZ, double boxDim);
+
+	/**
+	 * @param t
+	 *            A distance along the current ray
+	 * @param axis
+	 *            The axis of the coordinate (0 for x, 1 for y, 2 for z)
+	 * @return The coordinate on the finest lattice of the position of the ray at distance t, rounded down
+	 */
+	long getLatticePosition(double t, int axis);
+
+	/**
+	 * @param frame
+	 *            The coordinate frame rays and node bounds are given in
+	 */
+	void setFrame(RebasedFrame frame);
+
+	/**
+	 * @return The color found by the last cast, black if the ray missed the fractal
+	 */
+	int getColor();
+
+	/**
+	 * @return The distance along the ray to the color found by the last cast, Double.MAX_VALUE if the ray missed the fractal
+	 */
+	double getDepth();
+
+	/**
+	 * @return The node whose color was found by the last cast, null if the ray missed the fractal
+	 */
+	OctreeNode getHitNode();
+
+	/**
+	 * @return The minimum x lattice coordinate of the node found by the last cast, if the ray hit the fractal
+	 */
+	long getHitX();
+
+	/**
+	 * @return The minimum y lattice coordinate of the node found by the last cast, if the ray hit the fractal
+	 */
+	long getHitY();
+
+	/**
+	 * @return The minimum z lattice coordinate of the node found by the last cast, if the ray hit the fractal
+	 */
+	long getHitZ();
+}
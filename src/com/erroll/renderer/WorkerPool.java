@@ -0,0 +1,17 @@
+package com.erroll.renderer;
+
+import java.util.concurrent.ForkJoinPool;
+
+public class WorkerPool {
+
+	// the pool of threads, one for each core, shared by tracing, post-processing and PNG encoding. Frames are post-processed and saved on other threads
+	// while the next frame is traced, so separate pools for each would start several threads for every core.
+	private static final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+	/**
+	 * @return The work-stealing pool every parallel stage of the renderer runs its tasks on. Its threads are daemon threads so it is never shut down.
+	 */
+	public static final ForkJoinPool get() {
+		return pool;
+	}
+}
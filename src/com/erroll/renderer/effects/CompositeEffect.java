@@ -0,0 +1,41 @@
+package com.erroll.renderer.effects;
+
+public class CompositeEffect implements PostProcessEffectInterface {
+
+	/**
+	 * Creates an effect which darkens the colors of a frame by its shadows with ColorUtils.adjustLight to give its final colors
+	 */
+	public CompositeEffect() {
+	}
+
+	@Override
+	public int getInputs() {
+		return PostProcessFrame.COLORS | PostProcessFrame.SHADOWS;
+	}
+
+	@Override
+	public int getOutputs() {
+		return PostProcessFrame.PIXELS;
+	}
+
+	@Override
+	public int getRadius() {
+		return 0;
+	}
+
+	@Override
+	public void begin(PostProcessFrame frame) {
+	}
+
+	@Override
+	public void apply(PostProcessFrame frame, int rowMin, int rowMax) {
+		int[] colors = frame.getColors();
+		int[] shadows = frame.getShadows();
+		int[] pixelData = frame.getPixelData();
+		int height = frame.getHeight();
+		int pixelStride = frame.getPixelStride();
+		for (int row = rowMin; row < rowMax; row++)
+			for (int col = 0; col < frame.getWidth(); col++)
+				pixelData[row * pixelStride + col] = ColorUtils.adjustLight(colors[row * height + col], shadows[row * height + col]);
+	}
+}
@@ -0,0 +1,162 @@
+package com.erroll.renderer.effects;
+
+import java.util.Arrays;
+
+import com.erroll.renderer.effects.RowStrips.StripTask;
+
+public class HalfResolutionSSAO {
+
+	// the relative difference in depth within which a half resolution sample is on the same surface as a pixel, and contributes to its occlusion
+	private static final double DEPTH_TOLERANCE = SSAO.CUT_OFF_DIST;
+
+	// the instance used by the static setOcclusion
+	private static final HalfResolutionSSAO shared = new HalfResolutionSSAO();
+
+	// the depths of the image at half resolution and their occlusion, kept between frames and grown as needed
+	private double[] halfDepth = new double[0];
+	private int[] halfOcclusion = new int[0];
+
+	// the size in pixels of the image at half resolution
+	private int halfHeight;
+	private int halfWidth;
+
+	/**
+	 * Performs SSAO at half the resolution of the image and upsamples it to full resolution. Each 2x2 block of pixels is represented by its closest depth,
+	 * SSAO is calculated on those depths with ParallelSSAO, and each pixel's occlusion is the bilinear blend of the 4 half resolution samples around it
+	 * weighted by how close their depths are to the pixel's. Samples on another surface are left out of the blend, so silhouettes stay sharp, and a pixel
+	 * with no sample on its surface takes the occlusion of the sample closest to it in depth. The kernel spans twice as many pixels as that of
+	 * SSAO.setOcclusion, so shadows spread twice as far from creases. Unlike SSAO.setOcclusion, the occlusion of every pixel of the image is set.
+	 *
+	 * @param imageDepth
+	 *            The array of depths for each pixel in the image
+	 * @param screenHeight
+	 *            The height of the screen in pixels
+	 * @param screenWidth
+	 *            The width of the screen in pixels
+	 * @param occlusion
+	 *            The array in which to store the occlusion as a number between 0 (full) and 255 (none)
+	 * @return The minimum depth of the half resolution pixels whose occlusion is calculated
+	 */
+	public static double setOcclusion(final double[] imageDepth, final int screenHeight, final int screenWidth, final int[] occlusion) {
+		synchronized (shared) {
+			double minTmin = shared.prepare(imageDepth, screenHeight, screenWidth);
+			RowStrips.invoke(0, screenHeight, 1, new StripTask() {
+				@Override
+				public double run(int rowMin, int rowMax) {
+					shared.upsample(imageDepth, screenHeight, screenWidth, occlusion, rowMin, rowMax);
+					return Double.MAX_VALUE;
+				}
+			});
+			return minTmin;
+		}
+	}
+
+	/**
+	 * Calculates the occlusion of the image at half resolution, ready to be upsampled
+	 *
+	 * @param imageDepth
+	 *            The array of depths for each pixel in the image
+	 * @param screenHeight
+	 *            The height of the screen in pixels
+	 * @param screenWidth
+	 *            The width of the screen in pixels
+	 * @return The minimum depth of the half resolution pixels whose occlusion is calculated
+	 */
+	double prepare(final double[] imageDepth, final int screenHeight, int screenWidth) {
+		halfHeight = screenHeight / 2;
+		halfWidth = screenWidth / 2;
+
+		// grow the buffers if the screen has grown
+		if (halfDepth.length < halfHeight * halfWidth) {
+			halfDepth = new double[halfHeight * halfWidth];
+			halfOcclusion = new int[halfHeight * halfWidth];
+		}
+
+		// represent each 2x2 block of pixels by its closest depth
+		RowStrips.invoke(0, halfHeight, 1, new StripTask() {
+			@Override
+			public double run(int rowMin, int rowMax) {
+				for (int row = rowMin; row < rowMax; row++) {
+					for (int col = 0; col < halfWidth; col++) {
+						int index = 2 * row * screenHeight + 2 * col;
+						halfDepth[row * halfHeight + col] = Math.min(Math.min(imageDepth[index], imageDepth[index + 1]),
+								Math.min(imageDepth[index + screenHeight], imageDepth[index + screenHeight + 1]));
+					}
+				}
+				return Double.MAX_VALUE;
+			}
+		});
+
+		// SSAO does not set the edges of the screen, so they are left unshadowed
+		Arrays.fill(halfOcclusion, 0);
+		return ParallelSSAO.setOcclusion(halfDepth, halfHeight, halfWidth, halfOcclusion);
+	}
+
+	/**
+	 * Upsamples the occlusion calculated by prepare to the pixels of a strip of rows
+	 *
+	 * @param imageDepth
+	 *            The array of depths for each pixel in the image
+	 * @param screenHeight
+	 *            The height of the screen in pixels
+	 * @param screenWidth
+	 *            The width of the screen in pixels
+	 * @param occlusion
+	 *            The array in which to store the occlusion
+	 * @param rowMin
+	 *            The first row of the strip
+	 * @param rowMax
+	 *            The row after the last row of the strip
+	 */
+	void upsample(double[] imageDepth, int screenHeight, int screenWidth, int[] occlusion, int rowMin, int rowMax) {
+		for (int row = rowMin; row < rowMax; row++)
+			for (int col = 0; col < screenWidth; col++)
+				occlusion[row * screenHeight + col] = halfHeight < 1 || halfWidth < 1 ? 0 : upsample(imageDepth[row * screenHeight + col], row, col);
+	}
+
+	/**
+	 * Blends the half resolution occlusion around a pixel into its occlusion
+	 *
+	 * @param depth
+	 *            The depth of the pixel
+	 * @param row
+	 *            The row of the pixel
+	 * @param col
+	 *            The column of the pixel
+	 * @return The occlusion of the pixel
+	 */
+	private int upsample(double depth, int row, int col) {
+		// if depth is maximum return 0
+		if (depth == Double.MAX_VALUE)
+			return 0;
+
+		// the half resolution samples above and below, and left and right of the pixel's centre, and how far the centre is between them
+		int row0 = Math.max(0, Math.min(halfHeight - 1, (row - 1) >> 1));
+		int row1 = Math.min(halfHeight - 1, row0 + 1);
+		int col0 = Math.max(0, Math.min(halfWidth - 1, (col - 1) >> 1));
+		int col1 = Math.min(halfWidth - 1, col0 + 1);
+		double rowFraction = Math.max(0d, Math.min(1d, (row - 0.5d) / 2d - row0));
+		double colFraction = Math.max(0d, Math.min(1d, (col - 0.5d) / 2d - col0));
+
+		// blend the samples on the same surface as the pixel, keeping the sample closest in depth in case there are none
+		double sum = 0d;
+		double weights = 0d;
+		double closestDifference = Double.MAX_VALUE;
+		int closestOcclusion = 0;
+		for (int i = 0; i < 4; i++) {
+			int sample = ((i & 2) == 0 ? row0 : row1) * halfHeight + ((i & 1) == 0 ? col0 : col1);
+			double difference = Math.abs(depth - halfDepth[sample]) / depth;
+			if (difference < closestDifference) {
+				closestDifference = difference;
+				closestOcclusion = halfOcclusion[sample];
+			}
+			if (difference > DEPTH_TOLERANCE)
+				continue;
+			double weight = ((i & 2) == 0 ? 1d - rowFraction : rowFraction) * ((i & 1) == 0 ? 1d - colFraction : colFraction)
+					* (1d - difference / DEPTH_TOLERANCE);
+			sum += weight * halfOcclusion[sample];
+			weights += weight;
+		}
+		return weights > 0d ? (int) (sum / weights + 0.5d) : closestOcclusion;
+	}
+}
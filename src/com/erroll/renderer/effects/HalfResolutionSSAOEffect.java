@@ -0,0 +1,40 @@
+package com.erroll.renderer.effects;
+
+public class HalfResolutionSSAOEffect implements PostProcessEffectInterface {
+
+	// the half resolution SSAO of the frame being post-processed
+	private HalfResolutionSSAO ssao = new HalfResolutionSSAO();
+
+	/**
+	 * Creates an effect which calculates the SSAO of a frame from its depths into its shadows at half resolution, as HalfResolutionSSAO.setOcclusion does.
+	 * The half resolution SSAO of the whole frame is calculated in begin and upsampled strip by strip.
+	 */
+	public HalfResolutionSSAOEffect() {
+	}
+
+	@Override
+	public int getInputs() {
+		return PostProcessFrame.DEPTH;
+	}
+
+	@Override
+	public int getOutputs() {
+		return PostProcessFrame.SHADOWS;
+	}
+
+	@Override
+	public int getRadius() {
+		// the frame is downsampled in begin, and each pixel reads the 2x2 blocks of pixels around it
+		return 2;
+	}
+
+	@Override
+	public void begin(PostProcessFrame frame) {
+		ssao.prepare(frame.getDepth(), frame.getHeight(), frame.getWidth());
+	}
+
+	@Override
+	public void apply(PostProcessFrame frame, int rowMin, int rowMax) {
+		ssao.upsample(frame.getDepth(), frame.getHeight(), frame.getWidth(), frame.getShadows(), rowMin, rowMax);
+	}
+}
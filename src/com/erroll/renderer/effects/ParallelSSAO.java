@@ -0,0 +1,293 @@
+package com.erroll.renderer.effects;
+
+import com.erroll.renderer.effects.RowStrips.StripTask;
+
+public class ParallelSSAO {
+
+	// the width and height in pixels of the window of pixels sampled around each pixel
+	private static final int WINDOW = 2 * SSAO.KERNEL + 1;
+
+	// how close to a whole number a sum of differences found from the sum of depths must be for it to be summed again pixel by pixel, as it could then
+	// round differently from SSAO's. This is far above the rounding error of either sum, which is around 1e-12 for a window of 49 pixels.
+	private static final double ROUNDING_TOLERANCE = 1e-9;
+
+	// the smallest number of rows in a strip, as the KERNEL rows above and below each strip are summed again by the strip
+	static final int MIN_STRIP_ROWS = 32;
+
+	// each thread's buffers for the minimum, maximum and sum of the depths in the windows of a strip, kept between frames and grown as needed
+	private static final ThreadLocal<StripBuffers> stripBuffers = new ThreadLocal<StripBuffers>();
+
+	/**
+	 * Performs the same SSAO as SSAO.setOcclusion in strips of rows on every core, at a cost per pixel which does not grow with the kernel on smooth
+	 * surfaces.
+	 * The minimum, maximum and sum of the depths in the window around every pixel are found with van Herk/Gil-Werman running sums: the rows are split into
+	 * blocks the width of the window, so every window is the end of one block and the start of the next, whose running minimums, maximums and sums from
+	 * the edges of the blocks are each found with one pass over the blocks. The same is then done down the columns. If every depth in the window is within
+	 * the cut off distance of the pixel's depth, every pixel in the window occludes it and the sum of differences is MULTIPLE * (WINDOW^2 - sum / depth).
+	 * Otherwise, at silhouettes and next to pixels whose rays missed, the sum of differences is calculated pixel by pixel as in SSAO.setOcclusion, which
+	 * still costs KERNEL^2 per pixel, so frames with many silhouettes gain less. The sum of depths is added in a different order to SSAO's, so a sum of
+	 * differences found from it which is within ROUNDING_TOLERANCE of a whole number, where truncating it or clamping it could go either way, is also
+	 * calculated pixel by pixel. The occlusion and minimum depth are then exactly those of SSAO.setOcclusion.
+	 *
+	 * @param imageDepth
+	 *            The array of depths for each pixel in the image
+	 * @param screenHeight
+	 *            The height of the screen in pixels
+	 * @param screenWidth
+	 *            The width of the screen in pixels
+	 * @param occlusion
+	 *            The array in which to store the occlusion as a number between 0 (full) and 255 (none)
+	 * @return The minimum depth of the pixels whose occlusion is calculated, the same as returned by SSAO.setOcclusion
+	 */
+	public static double setOcclusion(final double[] imageDepth, final int screenHeight, final int screenWidth, final int[] occlusion) {
+		return RowStrips.invoke(0, screenHeight, MIN_STRIP_ROWS, new StripTask() {
+			@Override
+			public double run(int rowMin, int rowMax) {
+				return setOcclusion(imageDepth, screenHeight, screenWidth, occlusion, rowMin, rowMax);
+			}
+		});
+	}
+
+	/**
+	 * Finds the minimum depth of the pixels which setOcclusion calculates occlusion for in strips of rows on every core, without calculating it
+	 *
+	 * @param imageDepth
+	 *            The array of depths for each pixel in the image
+	 * @param screenHeight
+	 *            The height of the screen in pixels
+	 * @param screenWidth
+	 *            The width of the screen in pixels
+	 * @return The same minimum depth as returned by SSAO.getMinDepth, Double.MAX_VALUE if every ray missed
+	 */
+	public static double getMinDepth(final double[] imageDepth, final int screenHeight, final int screenWidth) {
+		return RowStrips.invoke(SSAO.KERNEL, screenHeight - SSAO.KERNEL, MIN_STRIP_ROWS, new StripTask() {
+			@Override
+			public double run(int rowMin, int rowMax) {
+				double minTmin = Double.MAX_VALUE;
+				for (int row = rowMin; row < rowMax; row++)
+					for (int col = SSAO.KERNEL; col < screenWidth - SSAO.KERNEL; col++)
+						minTmin = minTmin < imageDepth[row * screenHeight + col] ? minTmin : imageDepth[row * screenHeight + col];
+				return minTmin;
+			}
+		});
+	}
+
+	/**
+	 * Calculates the occlusion of the pixels in a strip of rows, reading the depths of the KERNEL rows above and below it. Strips are independent, so they
+	 * can be calculated on any threads in any order.
+	 *
+	 * @param rowMin
+	 *            The first row of the strip
+	 * @param rowMax
+	 *            The row after the last row of the strip
+	 * @return The minimum depth of the pixels in the strip whose occlusion is calculated
+	 */
+	static double setOcclusion(double[] imageDepth, int screenHeight, int screenWidth, int[] occlusion, int rowMin, int rowMax) {
+		// only pixels with enough kernel space are calculated
+		rowMin = Math.max(rowMin, SSAO.KERNEL);
+		rowMax = Math.min(rowMax, screenHeight - SSAO.KERNEL);
+		if (rowMax <= rowMin || screenWidth < WINDOW)
+			return Double.MAX_VALUE;
+
+		// the rows read by the strip, which are numbered from the first in the buffers
+		int firstRow = rowMin - SSAO.KERNEL;
+		int rows = rowMax - rowMin + 2 * SSAO.KERNEL;
+		StripBuffers buffers = stripBuffers.get();
+		if (buffers == null || buffers.windowMin.length < rows * screenWidth) {
+			buffers = new StripBuffers(rows * screenWidth, screenWidth);
+			stripBuffers.set(buffers);
+		} else if (buffers.rowPrefixMin.length < screenWidth) {
+			buffers = new StripBuffers(buffers.windowMin.length, screenWidth);
+			stripBuffers.set(buffers);
+		}
+
+		// find the minimum, maximum and sum of the depths across the rows of every window, then running down blocks of rows
+		for (int row = 0; row < rows; row++)
+			sumRow(imageDepth, screenHeight, screenWidth, firstRow + row, row * screenWidth, buffers);
+		for (int blockRow = 0; blockRow < rows; blockRow += WINDOW)
+			sumBlock(screenWidth, blockRow, Math.min(blockRow + WINDOW, rows) - 1, buffers);
+
+		double minTmin = Double.MAX_VALUE;
+		for (int row = rowMin; row < rowMax; row++) {
+			int start = (row - SSAO.KERNEL - firstRow) * screenWidth;
+			int end = (row + SSAO.KERNEL - firstRow) * screenWidth;
+			boolean wholeBlock = (row - SSAO.KERNEL - firstRow) % WINDOW == 0;
+
+			for (int col = SSAO.KERNEL; col < screenWidth - SSAO.KERNEL; col++) {
+				int index = row * screenHeight + col;
+				double depth = imageDepth[index];
+
+				// if depth is maximum return 0
+				if (depth == Double.MAX_VALUE) {
+					occlusion[index] = 0;
+					continue;
+				}
+
+				// a window starting at a block is the whole block, otherwise it is the end of one block and the start of the next
+				double min;
+				double max;
+				double sum;
+				if (wholeBlock) {
+					min = buffers.windowMin[start + col];
+					max = buffers.windowMax[start + col];
+					sum = buffers.windowSum[start + col];
+				} else {
+					min = Math.min(buffers.windowMin[start + col], buffers.prefixMin[end + col]);
+					max = Math.max(buffers.windowMax[start + col], buffers.prefixMax[end + col]);
+					sum = buffers.windowSum[start + col] + buffers.prefixSum[end + col];
+				}
+
+				// the ratio of differences falls as the other depth rises, so if the closest and furthest pixels in the window occlude the pixel then all of
+				// them do and the sum of differences follows from the sum of depths. Otherwise, or if that sum is close enough to a whole number to be
+				// truncated differently from SSAO's, sum the pixels that do one by one.
+				boolean occludedByWindow = Math.abs((depth - min) / depth) <= SSAO.CUT_OFF_DIST && Math.abs((depth - max) / depth) <= SSAO.CUT_OFF_DIST;
+				double sumOfDifferences = occludedByWindow ? (WINDOW * WINDOW - sum / depth) * SSAO.MULTIPLE : 0;
+				if (!occludedByWindow || Math.abs(sumOfDifferences - Math.rint(sumOfDifferences)) < ROUNDING_TOLERANCE)
+					sumOfDifferences = SSAO.getSumOfDifferences(imageDepth, screenHeight, row, col);
+
+				// set the SSAO occlusion of that point
+				occlusion[index] = SSAO.getShadow(sumOfDifferences);
+				minTmin = minTmin < depth ? minTmin : depth;
+			}
+		}
+		return minTmin;
+	}
+
+	/**
+	 * Finds the minimum, maximum and sum of the depths across the rows of the windows of the pixels in a row, putting them in windowMin, windowMax and
+	 * windowSum
+	 *
+	 * @param row
+	 *            The row of the image to sum
+	 * @param bufferStart
+	 *            The index of the row in the buffers
+	 */
+	private static void sumRow(double[] imageDepth, int screenHeight, int screenWidth, int row, int bufferStart, StripBuffers buffers) {
+		int rowStart = row * screenHeight;
+
+		// the running minimum, maximum and sum of each block from its start
+		for (int col = 0; col < screenWidth; col++) {
+			double depth = imageDepth[rowStart + col];
+			if (col % WINDOW == 0) {
+				buffers.rowPrefixMin[col] = depth;
+				buffers.rowPrefixMax[col] = depth;
+				buffers.rowPrefixSum[col] = depth;
+			} else {
+				buffers.rowPrefixMin[col] = Math.min(buffers.rowPrefixMin[col - 1], depth);
+				buffers.rowPrefixMax[col] = Math.max(buffers.rowPrefixMax[col - 1], depth);
+				buffers.rowPrefixSum[col] = buffers.rowPrefixSum[col - 1] + depth;
+			}
+		}
+
+		// and from its end
+		for (int col = screenWidth - 1; col >= 0; col--) {
+			double depth = imageDepth[rowStart + col];
+			if (col % WINDOW == WINDOW - 1 || col == screenWidth - 1) {
+				buffers.rowSuffixMin[col] = depth;
+				buffers.rowSuffixMax[col] = depth;
+				buffers.rowSuffixSum[col] = depth;
+			} else {
+				buffers.rowSuffixMin[col] = Math.min(buffers.rowSuffixMin[col + 1], depth);
+				buffers.rowSuffixMax[col] = Math.max(buffers.rowSuffixMax[col + 1], depth);
+				buffers.rowSuffixSum[col] = buffers.rowSuffixSum[col + 1] + depth;
+			}
+		}
+
+		// a window starting at a block is the whole block, otherwise it is the end of one block and the start of the next
+		for (int col = SSAO.KERNEL; col < screenWidth - SSAO.KERNEL; col++) {
+			int start = col - SSAO.KERNEL;
+			int end = col + SSAO.KERNEL;
+			if (start % WINDOW == 0) {
+				buffers.windowMin[bufferStart + col] = buffers.rowSuffixMin[start];
+				buffers.windowMax[bufferStart + col] = buffers.rowSuffixMax[start];
+				buffers.windowSum[bufferStart + col] = buffers.rowSuffixSum[start];
+			} else {
+				buffers.windowMin[bufferStart + col] = Math.min(buffers.rowSuffixMin[start], buffers.rowPrefixMin[end]);
+				buffers.windowMax[bufferStart + col] = Math.max(buffers.rowSuffixMax[start], buffers.rowPrefixMax[end]);
+				buffers.windowSum[bufferStart + col] = buffers.rowSuffixSum[start] + buffers.rowPrefixSum[end];
+			}
+		}
+	}
+
+	/**
+	 * Finds the running minimums, maximums and sums of windowMin, windowMax and windowSum down a block of rows, from its start into prefixMin, prefixMax and
+	 * prefixSum, and from its end into windowMin, windowMax and windowSum themselves
+	 *
+	 * @param firstRow
+	 *            The first row of the block in the buffers
+	 * @param lastRow
+	 *            The last row of the block in the buffers
+	 */
+	private static void sumBlock(int screenWidth, int firstRow, int lastRow, StripBuffers buffers) {
+		for (int row = firstRow; row <= lastRow; row++) {
+			for (int col = SSAO.KERNEL; col < screenWidth - SSAO.KERNEL; col++) {
+				int index = row * screenWidth + col;
+				if (row == firstRow) {
+					buffers.prefixMin[index] = buffers.windowMin[index];
+					buffers.prefixMax[index] = buffers.windowMax[index];
+					buffers.prefixSum[index] = buffers.windowSum[index];
+				} else {
+					buffers.prefixMin[index] = Math.min(buffers.prefixMin[index - screenWidth], buffers.windowMin[index]);
+					buffers.prefixMax[index] = Math.max(buffers.prefixMax[index - screenWidth], buffers.windowMax[index]);
+					buffers.prefixSum[index] = buffers.prefixSum[index - screenWidth] + buffers.windowSum[index];
+				}
+			}
+		}
+
+		for (int row = lastRow - 1; row >= firstRow; row--) {
+			for (int col = SSAO.KERNEL; col < screenWidth - SSAO.KERNEL; col++) {
+				int index = row * screenWidth + col;
+				buffers.windowMin[index] = Math.min(buffers.windowMin[index + screenWidth], buffers.windowMin[index]);
+				buffers.windowMax[index] = Math.max(buffers.windowMax[index + screenWidth], buffers.windowMax[index]);
+				buffers.windowSum[index] = buffers.windowSum[index + screenWidth] + buffers.windowSum[index];
+			}
+		}
+	}
+
+	/**
+	 * The buffers a thread sums the windows of a strip in
+	 */
+	private static class StripBuffers {
+
+		// the minimum, maximum and sum of the depths in the window of each pixel, first across the rows of the window and then down from the pixel to the
+		// end of its block of WINDOW rows
+		private double[] windowMin;
+		private double[] windowMax;
+		private double[] windowSum;
+
+		// the minimum, maximum and sum of the depths across the rows of the window of each pixel, from the start of its block of WINDOW rows down to the
+		// pixel
+		private double[] prefixMin;
+		private double[] prefixMax;
+		private double[] prefixSum;
+
+		// the running minimum, maximum and sum of the depths along a row, from the start and from the end of each block of WINDOW pixels
+		private double[] rowPrefixMin;
+		private double[] rowPrefixMax;
+		private double[] rowPrefixSum;
+		private double[] rowSuffixMin;
+		private double[] rowSuffixMax;
+		private double[] rowSuffixSum;
+
+		/**
+		 * @param size
+		 *            The number of pixels in the largest strip
+		 * @param rowSize
+		 *            The number of pixels in the longest row
+		 */
+		public StripBuffers(int size, int rowSize) {
+			windowMin = new double[size];
+			windowMax = new double[size];
+			windowSum = new double[size];
+			prefixMin = new double[size];
+			prefixMax = new double[size];
+			prefixSum = new double[size];
+			rowPrefixMin = new double[rowSize];
+			rowPrefixMax = new double[rowSize];
+			rowPrefixSum = new double[rowSize];
+			rowSuffixMin = new double[rowSize];
+			rowSuffixMax = new double[rowSize];
+			rowSuffixSum = new double[rowSize];
+		}
+	}
+}
@@ -0,0 +1,41 @@
+package com.erroll.renderer.effects;
+
+public interface PostProcessEffectInterface {
+
+	/**
+	 * @return The buffers the effect reads, as PostProcessFrame flags
+	 */
+	public int getInputs();
+
+	/**
+	 * @return The buffers the effect writes, as PostProcessFrame flags
+	 */
+	public int getOutputs();
+
+	/**
+	 * @return The number of rows above and below a pixel whose inputs the effect reads to write the pixel, 0 if it reads only the pixel's own inputs. An
+	 *         effect which reads its inputs in begin must have a radius greater than 0.
+	 */
+	public int getRadius();
+
+	/**
+	 * Prepares the effect for a frame, once before any strip of the frame is applied. The inputs of the effect are complete, so an effect can do work which
+	 * needs the whole frame here.
+	 *
+	 * @param frame
+	 *            The frame to be post-processed
+	 */
+	public void begin(PostProcessFrame frame);
+
+	/**
+	 * Applies the effect to a strip of rows of a frame, writing the effect's outputs for those rows only. Strips are applied on many threads at once.
+	 *
+	 * @param frame
+	 *            The frame being post-processed
+	 * @param rowMin
+	 *            The first row of the strip
+	 * @param rowMax
+	 *            The row after the last row of the strip
+	 */
+	public void apply(PostProcessFrame frame, int rowMin, int rowMax);
+}
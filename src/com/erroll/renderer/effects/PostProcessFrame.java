@@ -0,0 +1,82 @@
+package com.erroll.renderer.effects;
+
+public class PostProcessFrame {
+
+	// the buffers of a frame which effects can read and write, as flags combined into the inputs and outputs of an effect
+	public static final int COLORS = 1;
+	public static final int DEPTH = 2;
+	public static final int SHADOWS = 4;
+	public static final int PIXELS = 8;
+
+	// the colors and depths of the traced frame, its SSAO and its final colors
+	private int[] colors;
+	private double[] depth;
+	private int[] shadows;
+	private int[] pixelData;
+
+	// the size in pixels of the frame, and the width in pixels of a row of pixelData
+	private int width;
+	private int height;
+	private int pixelStride;
+
+	/**
+	 * Creates a PostProcessFrame holding the buffers of a traced frame for effects to post-process. Pixels of colors, depth and shadows are indexed by
+	 * row * height + col, as the renderer indexes them, and pixels of pixelData by row * pixelStride + col.
+	 *
+	 * @param colors
+	 *            The colors of the traced frame
+	 * @param depth
+	 *            The depths of the traced frame
+	 * @param shadows
+	 *            The array in which to store the SSAO of the frame
+	 * @param width
+	 *            The width of the frame in pixels
+	 * @param height
+	 *            The height of the frame in pixels
+	 * @param pixelData
+	 *            The array in which to store the final colors, with the frame in its top left
+	 * @param pixelStride
+	 *            The width in pixels of a row of pixelData
+	 */
+	public PostProcessFrame(int[] colors, double[] depth, int[] shadows, int width, int height, int[] pixelData, int pixelStride) {
+		this.colors = colors;
+		this.depth = depth;
+		this.shadows = shadows;
+		this.width = width;
+		this.height = height;
+		this.pixelData = pixelData;
+		this.pixelStride = pixelStride;
+	}
+
+	// ----------------------------------------------------------------------------
+	// Getters & Setters
+	// ----------------------------------------------------------------------------
+
+	public int[] getColors() {
+		return colors;
+	}
+
+	public double[] getDepth() {
+		return depth;
+	}
+
+	public int[] getShadows() {
+		return shadows;
+	}
+
+	public int[] getPixelData() {
+		return pixelData;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getPixelStride() {
+		return pixelStride;
+	}
+}
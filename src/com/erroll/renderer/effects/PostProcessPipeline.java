@@ -0,0 +1,118 @@
+package com.erroll.renderer.effects;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.erroll.renderer.effects.RowStrips.StripTask;
+
+public class PostProcessPipeline {
+
+	// the smallest number of rows in a strip, so that the rows an effect reads around a strip are few compared to the rows of the strip
+	private static final int MIN_STRIP_ROWS = 32;
+
+	// the effects in the order they are applied
+	private List<PostProcessEffectInterface> effects = new ArrayList<PostProcessEffectInterface>();
+
+	// the effects grouped into passes, each pass applying all of its effects to a strip before moving on to the next. Null until the passes are scheduled.
+	private List<List<PostProcessEffectInterface>> passes;
+
+	/**
+	 * Creates a PostProcessPipeline which applies effects to a frame in as few sweeps over its buffers as it can. The frame is split into strips of rows
+	 * which are post-processed in parallel, and consecutive effects are fused into one pass which applies every effect to a strip while it is in the cache.
+	 * An effect is fused into the pass before it unless it reads the neighbors of a pixel in a buffer written in that pass, which other strips may not have
+	 * written yet, or writes a buffer whose neighbors an earlier effect in that pass reads.
+	 *
+	 * @param effects
+	 *            The effects in the order they are applied
+	 */
+	public PostProcessPipeline(PostProcessEffectInterface... effects) {
+		for (PostProcessEffectInterface effect : effects)
+			this.effects.add(effect);
+	}
+
+	/**
+	 * Adds an effect to be applied after the effects already in the pipeline
+	 *
+	 * @param effect
+	 *            The effect to add
+	 */
+	public synchronized void add(PostProcessEffectInterface effect) {
+		effects.add(effect);
+		passes = null;
+	}
+
+	/**
+	 * Post-processes a frame by applying every effect to it
+	 *
+	 * @param frame
+	 *            The frame to post-process
+	 */
+	public synchronized void run(final PostProcessFrame frame) {
+		if (passes == null)
+			passes = schedule(effects);
+
+		for (final List<PostProcessEffectInterface> pass : passes) {
+			for (PostProcessEffectInterface effect : pass)
+				effect.begin(frame);
+
+			// apply every effect of the pass to each strip in turn
+			RowStrips.invoke(0, frame.getHeight(), MIN_STRIP_ROWS, new StripTask() {
+				@Override
+				public double run(int rowMin, int rowMax) {
+					for (PostProcessEffectInterface effect : pass)
+						effect.apply(frame, rowMin, rowMax);
+					return Double.MAX_VALUE;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Groups effects into passes, fusing each effect into the pass before it where its inputs and outputs allow
+	 *
+	 * @param effects
+	 *            The effects in the order they are applied
+	 * @return The passes in the order they are applied
+	 */
+	static List<List<PostProcessEffectInterface>> schedule(List<PostProcessEffectInterface> effects) {
+		List<List<PostProcessEffectInterface>> passes = new ArrayList<List<PostProcessEffectInterface>>();
+		List<PostProcessEffectInterface> pass = null;
+
+		// the buffers written in the current pass, and those whose neighbors are read in it
+		int written = 0;
+		int readAround = 0;
+
+		for (PostProcessEffectInterface effect : effects) {
+			boolean fuse = pass != null;
+			if (effect.getRadius() > 0 && (effect.getInputs() & written) != 0)
+				fuse = false;
+			if ((effect.getOutputs() & readAround) != 0)
+				fuse = false;
+
+			if (!fuse) {
+				pass = new ArrayList<PostProcessEffectInterface>();
+				passes.add(pass);
+				written = 0;
+				readAround = 0;
+			}
+			pass.add(effect);
+			written |= effect.getOutputs();
+			if (effect.getRadius() > 0)
+				readAround |= effect.getInputs();
+		}
+		return passes;
+	}
+
+	// ----------------------------------------------------------------------------
+	// Getters & Setters
+	// ----------------------------------------------------------------------------
+
+	/**
+	 * @return The number of sweeps over the frame made by run
+	 */
+	public synchronized int getPassCount() {
+		if (passes == null)
+			passes = schedule(effects);
+		return passes.size();
+	}
+}
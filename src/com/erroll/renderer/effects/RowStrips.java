@@ -0,0 +1,77 @@
+package com.erroll.renderer.effects;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import com.erroll.renderer.WorkerPool;
+
+public class RowStrips {
+
+	// the number of strips of rows given to each thread, so that threads which finish early can take more
+	private static final int STRIPS_PER_THREAD = 4;
+
+	/**
+	 * Splits a range of rows into strips and runs a task on each strip on the renderer's worker pool
+	 *
+	 * @param min
+	 *            The first row of the range
+	 * @param max
+	 *            The row after the last row of the range
+	 * @param minStripRows
+	 *            The smallest number of rows in a strip, so that work done once a strip is worth splitting the range for
+	 * @param task
+	 *            The task to run on each strip
+	 * @return The minimum of the values returned by the task for each strip, Double.MAX_VALUE if the range is empty
+	 */
+	public static double invoke(int min, int max, int minStripRows, final StripTask task) {
+		if (max <= min)
+			return Double.MAX_VALUE;
+		ForkJoinPool pool = WorkerPool.get();
+
+		// choose how many rows are in each strip
+		int strips = Math.max(1, Math.min(pool.getParallelism() * STRIPS_PER_THREAD, (max - min) / minStripRows));
+		int rowsPerStrip = (max - min + strips - 1) / strips;
+
+		List<Callable<Double>> tasks = new ArrayList<Callable<Double>>();
+		for (int stripMin = min; stripMin < max; stripMin += rowsPerStrip) {
+			final int rowMin = stripMin;
+			final int rowMax = Math.min(max, stripMin + rowsPerStrip);
+			tasks.add(new Callable<Double>() {
+				@Override
+				public Double call() {
+					return task.run(rowMin, rowMax);
+				}
+			});
+		}
+
+		double result = Double.MAX_VALUE;
+		try {
+			for (Future<Double> future : pool.invokeAll(tasks))
+				result = Math.min(result, future.get());
+		} catch (InterruptedException e) {
+			throw new RuntimeException("interrupted while post-processing", e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("could not post-process", e.getCause());
+		}
+		return result;
+	}
+
+	/**
+	 * A calculation on a strip of rows
+	 */
+	public static abstract class StripTask {
+
+		/**
+		 * @param rowMin
+		 *            The first row of the strip
+		 * @param rowMax
+		 *            The row after the last row of the strip
+		 * @return A value whose minimum over every strip is returned by invoke
+		 */
+		public abstract double run(int rowMin, int rowMax);
+	}
+}
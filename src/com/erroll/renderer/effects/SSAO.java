@@ -3,19 +3,19 @@ package com.erroll.renderer.effects;
 public class SSAO {
 
 	// the size/2 of the number of pixels to sample over
-	private static final int KERNEL = 3;
+	public static final int KERNEL = 3;
 
 	// the maximum distance away a point can be as a multiple of the difference between depths before being cut off
-	private static final double CUT_OFF_DIST = 0.05d;
+	static final double CUT_OFF_DIST = 0.05d;
 
 	// the amount to multiply the ratio of depths by to get the occlusion
-	private static final double MULTIPLE = 128d * 1d;
+	static final double MULTIPLE = 128d * 1d;
 
 	// the amount to tone down salient screen edge detection
-	private static final double SALIENT_SCALE = 0.5d;
+	static final double SALIENT_SCALE = 0.5d;
 
 	// the maximum amount of shadow allowed by SSAO
-	private static final int CUT_OFF_SHADOW = 200;
+	static final int CUT_OFF_SHADOW = 200;
 
 	/**
 	 * Performs simple SSAO using a depth buffer only and stores calculated shadows in the occlusion array. Also stores information about minimum, average and
@@ -49,26 +49,78 @@ public class SSAO {
 					continue;
 				}
 
-				// otherwise calculate the total sum of ratio differences to get occlusion
-				double sumOfDifferences = 0;
-				for (int i = -KERNEL; i < KERNEL + 1; i++) {
-					for (int j = -KERNEL; j < KERNEL + 1; j++) {
-						double d = (imageDepth[index] - imageDepth[(row + i) * screenHeight + (col + j)]) / imageDepth[index];
-						sumOfDifferences += d * ((Math.abs(d) > CUT_OFF_DIST) ? 0 : MULTIPLE);
-					}
-				}
+				// otherwise calculate the total sum of ratio differences to get the SSAO occlusion of that point
+				occlusion[index] = getShadow(getSumOfDifferences(imageDepth, screenHeight, row, col));
 				minTmin = minTmin < imageDepth[index] ? minTmin : imageDepth[index];
-
-				// cut off the amount of shadow to be between 0 and CUT_OFF_SHADOW
-				if (sumOfDifferences < 0)
-					sumOfDifferences *= SALIENT_SCALE;
-				if (sumOfDifferences > CUT_OFF_SHADOW)
-					sumOfDifferences = CUT_OFF_SHADOW;
-
-				// set the SSAO occlusion of that point
-				occlusion[index] = (int) (sumOfDifferences);
 			}
 		}
 		return minTmin;
 	}
+
+	/**
+	 * Sums the differences in depth between a pixel and every pixel in the kernel around it which is close enough to it to occlude it
+	 * 
+	 * @param imageDepth
+	 *            The array of depths for each pixel in the image
+	 * @param screenHeight
+	 *            The height of the screen in pixels
+	 * @param row
+	 *            The row of the pixel, at least KERNEL pixels from the edge of the screen
+	 * @param col
+	 *            The column of the pixel, at least KERNEL pixels from the edge of the screen
+	 * @return The sum of the ratios of differences in depth, each multiplied by MULTIPLE
+	 */
+	static final double getSumOfDifferences(double[] imageDepth, int screenHeight, int row, int col) {
+		int index = row * screenHeight + col;
+		double sumOfDifferences = 0;
+		for (int i = -KERNEL; i < KERNEL + 1; i++) {
+			for (int j = -KERNEL; j < KERNEL + 1; j++)
+				sumOfDifferences += getDifference(imageDepth[index], imageDepth[(row + i) * screenHeight + (col + j)]);
+		}
+		return sumOfDifferences;
+	}
+
+	/**
+	 * @param depth
+	 *            The depth of a pixel
+	 * @param otherDepth
+	 *            The depth of a pixel in the kernel around it
+	 * @return The ratio of the difference in depth multiplied by MULTIPLE, or 0 if the other pixel is too far away to occlude the pixel
+	 */
+	public static final double getDifference(double depth, double otherDepth) {
+		double d = (depth - otherDepth) / depth;
+		return d * ((Math.abs(d) > CUT_OFF_DIST) ? 0 : MULTIPLE);
+	}
+
+	/**
+	 * @param sumOfDifferences
+	 *            The sum of the ratios of differences in depth around a pixel, as returned by getSumOfDifferences
+	 * @return The occlusion of the pixel, the amount of shadow cut off to be between 0 and CUT_OFF_SHADOW
+	 */
+	public static final int getShadow(double sumOfDifferences) {
+		if (sumOfDifferences < 0)
+			sumOfDifferences *= SALIENT_SCALE;
+		if (sumOfDifferences > CUT_OFF_SHADOW)
+			sumOfDifferences = CUT_OFF_SHADOW;
+		return (int) (sumOfDifferences);
+	}
+
+	/**
+	 * Finds the minimum depth of the pixels which setOcclusion calculates occlusion for, without calculating it
+	 * 
+	 * @param imageDepth
+	 *            The array of depths for each pixel in the image
+	 * @param screenHeight
+	 *            The height of the screen in pixels
+	 * @param screenWidth
+	 *            The width of the screen in pixels
+	 * @return The same minimum depth as returned by setOcclusion, Double.MAX_VALUE if every ray missed
+	 */
+	public static final double getMinDepth(double[] imageDepth, int screenHeight, int screenWidth) {
+		double minTmin = Double.MAX_VALUE;
+		for (int row = KERNEL; row < screenHeight - KERNEL; row++)
+			for (int col = KERNEL; col < screenWidth - KERNEL; col++)
+				minTmin = minTmin < imageDepth[row * screenHeight + col] ? minTmin : imageDepth[row * screenHeight + col];
+		return minTmin;
+	}
 }
@@ -0,0 +1,34 @@
+package com.erroll.renderer.effects;
+
+public class SSAOEffect implements PostProcessEffectInterface {
+
+	/**
+	 * Creates an effect which calculates the SSAO of a frame from its depths into its shadows, as ParallelSSAO.setOcclusion does
+	 */
+	public SSAOEffect() {
+	}
+
+	@Override
+	public int getInputs() {
+		return PostProcessFrame.DEPTH;
+	}
+
+	@Override
+	public int getOutputs() {
+		return PostProcessFrame.SHADOWS;
+	}
+
+	@Override
+	public int getRadius() {
+		return SSAO.KERNEL;
+	}
+
+	@Override
+	public void begin(PostProcessFrame frame) {
+	}
+
+	@Override
+	public void apply(PostProcessFrame frame, int rowMin, int rowMax) {
+		ParallelSSAO.setOcclusion(frame.getDepth(), frame.getHeight(), frame.getWidth(), frame.getShadows(), rowMin, rowMax);
+	}
+}
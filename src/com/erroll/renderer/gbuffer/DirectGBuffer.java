@@ -0,0 +1,67 @@
+package com.erroll.renderer.gbuffer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+public class DirectGBuffer extends TiledGBuffer {
+
+	// the depth, color and occlusion of each pixel, as views of one block of memory outside the Java heap
+	private FloatBuffer depth;
+	private IntBuffer color;
+	private ShortBuffer occlusion;
+
+	/**
+	 * Creates a tiled G-buffer in a direct ByteBuffer outside the Java heap, so that large frames neither count towards the heap size nor are copied by the
+	 * garbage collector. The depths are followed by the colors and then the occlusions, in the native byte order, and are only read and written with
+	 * absolute gets and puts, so any number of threads can use different pixels at once.
+	 *
+	 * @param bufferWidth
+	 *            The largest width of a frame in pixels
+	 * @param bufferHeight
+	 *            The largest height of a frame in pixels
+	 * @param tileSize
+	 *            The width and height of a tile in pixels (e.g. 16)
+	 */
+	public DirectGBuffer(int bufferWidth, int bufferHeight, int tileSize) {
+		super(bufferWidth, bufferHeight, tileSize);
+		ByteBuffer memory = ByteBuffer.allocateDirect(getCapacity() * 10).order(ByteOrder.nativeOrder());
+		depth = memory.asFloatBuffer();
+		memory.position(getCapacity() * 4);
+		color = memory.slice().order(ByteOrder.nativeOrder()).asIntBuffer();
+		memory.position(getCapacity() * 8);
+		occlusion = memory.slice().order(ByteOrder.nativeOrder()).asShortBuffer();
+	}
+
+	@Override
+	public float getDepth(int index) {
+		return depth.get(index);
+	}
+
+	@Override
+	protected void setDepth(int index, float depth) {
+		this.depth.put(index, depth);
+	}
+
+	@Override
+	public int getColor(int index) {
+		return color.get(index);
+	}
+
+	@Override
+	protected void setColor(int index, int color) {
+		this.color.put(index, color);
+	}
+
+	@Override
+	public int getOcclusion(int index) {
+		return occlusion.get(index);
+	}
+
+	@Override
+	protected void setOcclusion(int index, int occlusion) {
+		this.occlusion.put(index, (short) occlusion);
+	}
+}
@@ -0,0 +1,68 @@
+package com.erroll.renderer.gbuffer;
+
+public interface GBufferInterface {
+
+	/**
+	 * @param row
+	 *            The row of a pixel
+	 * @param col
+	 *            The column of a pixel
+	 * @return The index of the pixel in the G-buffer
+	 */
+	public int getIndex(int row, int col);
+
+	/**
+	 * @param index
+	 *            The index of a pixel
+	 * @return The depth of the pixel, Float.MAX_VALUE if its ray missed
+	 */
+	public float getDepth(int index);
+
+	/**
+	 * @param index
+	 *            The index of a pixel
+	 * @return The color of the pixel as a 0xRRGGBB int
+	 */
+	public int getColor(int index);
+
+	/**
+	 * @param index
+	 *            The index of a pixel
+	 * @return The occlusion of the pixel as calculated by SSAO, set by shade
+	 */
+	public int getOcclusion(int index);
+
+	/**
+	 * Packs a traced frame into the G-buffer
+	 *
+	 * @param colors
+	 *            The colors of the traced frame, indexed row * height + col as in the renderer
+	 * @param depth
+	 *            The depths of the traced frame, indexed row * height + col as in the renderer
+	 * @param width
+	 *            The width of the frame in pixels, no larger than the width of the G-buffer
+	 * @param height
+	 *            The height of the frame in pixels, no larger than the height of the G-buffer
+	 */
+	public void store(int[] colors, double[] depth, int width, int height);
+
+	/**
+	 * Shades the frame in the G-buffer by calculating SSAO from its depths, storing it as the occlusion of each pixel and darkening its colors by it
+	 *
+	 * @param pixelData
+	 *            The array in which to store the final colors, with the frame in its top left
+	 * @param pixelStride
+	 *            The width in pixels of a row of pixelData
+	 */
+	public void shade(int[] pixelData, int pixelStride);
+
+	/**
+	 * @return The width in pixels of the frame in the G-buffer
+	 */
+	public int getWidth();
+
+	/**
+	 * @return The height in pixels of the frame in the G-buffer
+	 */
+	public int getHeight();
+}
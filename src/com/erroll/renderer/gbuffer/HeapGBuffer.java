@@ -0,0 +1,56 @@
+package com.erroll.renderer.gbuffer;
+
+public class HeapGBuffer extends TiledGBuffer {
+
+	// the depth, color and occlusion of each pixel
+	private float[] depth;
+	private int[] color;
+	private short[] occlusion;
+
+	/**
+	 * Creates a tiled G-buffer in arrays on the Java heap
+	 *
+	 * @param bufferWidth
+	 *            The largest width of a frame in pixels
+	 * @param bufferHeight
+	 *            The largest height of a frame in pixels
+	 * @param tileSize
+	 *            The width and height of a tile in pixels (e.g. 16)
+	 */
+	public HeapGBuffer(int bufferWidth, int bufferHeight, int tileSize) {
+		super(bufferWidth, bufferHeight, tileSize);
+		depth = new float[getCapacity()];
+		color = new int[getCapacity()];
+		occlusion = new short[getCapacity()];
+	}
+
+	@Override
+	public float getDepth(int index) {
+		return depth[index];
+	}
+
+	@Override
+	protected void setDepth(int index, float depth) {
+		this.depth[index] = depth;
+	}
+
+	@Override
+	public int getColor(int index) {
+		return color[index];
+	}
+
+	@Override
+	protected void setColor(int index, int color) {
+		this.color[index] = color;
+	}
+
+	@Override
+	public int getOcclusion(int index) {
+		return occlusion[index];
+	}
+
+	@Override
+	protected void setOcclusion(int index, int occlusion) {
+		this.occlusion[index] = (short) occlusion;
+	}
+}
@@ -0,0 +1,205 @@
+package com.erroll.renderer.gbuffer;
+
+import com.erroll.renderer.effects.ColorUtils;
+import com.erroll.renderer.effects.RowStrips;
+import com.erroll.renderer.effects.RowStrips.StripTask;
+import com.erroll.renderer.effects.SSAO;
+
+public abstract class TiledGBuffer implements GBufferInterface {
+
+	// the width and height of a tile in pixels, and the number of tiles across the buffer
+	private int tileSize;
+	private int tilesAcross;
+	private int tilesDown;
+
+	// the size in pixels of the frame in the buffer
+	private int width;
+	private int height;
+
+	/**
+	 * Creates a G-buffer which keeps 10 bytes a pixel in separate arrays: a float depth, an int color and a short occlusion, which can be negative where
+	 * SSAO brightens edges so does not fit in the unused byte of the color. Pixels are stored tile by tile, so the pixels in a tile are next to each other
+	 * in memory and a kernel around a pixel touches only a few tiles.
+	 *
+	 * @param bufferWidth
+	 *            The largest width of a frame in pixels
+	 * @param bufferHeight
+	 *            The largest height of a frame in pixels
+	 * @param tileSize
+	 *            The width and height of a tile in pixels (e.g. 16)
+	 */
+	public TiledGBuffer(int bufferWidth, int bufferHeight, int tileSize) {
+		this.tileSize = tileSize;
+		tilesAcross = (bufferWidth + tileSize - 1) / tileSize;
+		tilesDown = (bufferHeight + tileSize - 1) / tileSize;
+	}
+
+	/**
+	 * @return The number of pixels the storage of the buffer must hold, a whole number of tiles
+	 */
+	protected int getCapacity() {
+		return tilesAcross * tilesDown * tileSize * tileSize;
+	}
+
+	/**
+	 * @param index
+	 *            The index of a pixel
+	 * @param depth
+	 *            The depth of the pixel
+	 */
+	protected abstract void setDepth(int index, float depth);
+
+	/**
+	 * @param index
+	 *            The index of a pixel
+	 * @param color
+	 *            The color of the pixel as a 0xRRGGBB int
+	 */
+	protected abstract void setColor(int index, int color);
+
+	/**
+	 * @param index
+	 *            The index of a pixel
+	 * @param occlusion
+	 *            The occlusion of the pixel
+	 */
+	protected abstract void setOcclusion(int index, int occlusion);
+
+	@Override
+	public int getIndex(int row, int col) {
+		int tile = (row / tileSize) * tilesAcross + col / tileSize;
+		return (tile * tileSize + row % tileSize) * tileSize + col % tileSize;
+	}
+
+	@Override
+	public void store(final int[] colors, final double[] depth, final int width, final int height) {
+		this.width = width;
+		this.height = height;
+
+		// pack a row of tiles at a time
+		RowStrips.invoke(0, (height + tileSize - 1) / tileSize, 1, new StripTask() {
+			@Override
+			public double run(int tileRowMin, int tileRowMax) {
+				for (int row = tileRowMin * tileSize; row < Math.min(height, tileRowMax * tileSize); row++) {
+					for (int col = 0; col < width; col++) {
+						int index = getIndex(row, col);
+						setDepth(index, depth[row * height + col] == Double.MAX_VALUE ? Float.MAX_VALUE : (float) depth[row * height + col]);
+						setColor(index, colors[row * height + col]);
+					}
+				}
+				return Double.MAX_VALUE;
+			}
+		});
+	}
+
+	@Override
+	public void shade(final int[] pixelData, final int pixelStride) {
+		// shade a row of tiles at a time, tile by tile, gathering the depths of each tile and the kernel space around it into a buffer for the strip
+		RowStrips.invoke(0, (height + tileSize - 1) / tileSize, 1, new StripTask() {
+			@Override
+			public double run(int tileRowMin, int tileRowMax) {
+				float[] halo = new float[(tileSize + 2 * SSAO.KERNEL) * (tileSize + 2 * SSAO.KERNEL)];
+				for (int tileRow = tileRowMin; tileRow < tileRowMax; tileRow++) {
+					for (int tileCol = 0; tileCol * tileSize < width; tileCol++) {
+						gatherHalo(tileRow, tileCol, halo);
+						shadeTile(tileRow, tileCol, halo, pixelData, pixelStride);
+					}
+				}
+				return Double.MAX_VALUE;
+			}
+		});
+	}
+
+	/**
+	 * Copies the depths of a tile and of the pixels within SSAO.KERNEL of it into a buffer, row by row. Each row of the buffer is at most three runs of
+	 * pixels which are next to each other in the G-buffer, so a pixel's index is only found once a run. Entries outside the frame are left as they are.
+	 *
+	 * @param tileRow
+	 *            The row of the tile
+	 * @param tileCol
+	 *            The column of the tile
+	 * @param halo
+	 *            The buffer to copy the depths into, tileSize + 2 * SSAO.KERNEL pixels wide and high
+	 */
+	private void gatherHalo(int tileRow, int tileCol, float[] halo) {
+		int haloSize = tileSize + 2 * SSAO.KERNEL;
+		int rowMin = tileRow * tileSize - SSAO.KERNEL;
+		int colMin = tileCol * tileSize - SSAO.KERNEL;
+		int colMax = Math.min(width, colMin + haloSize);
+		for (int row = Math.max(0, rowMin); row < Math.min(height, rowMin + haloSize); row++) {
+			int col = Math.max(0, colMin);
+			while (col < colMax) {
+				// copy the run of the row inside one tile
+				int runEnd = Math.min(colMax, (col / tileSize + 1) * tileSize);
+				int index = getIndex(row, col);
+				int haloIndex = (row - rowMin) * haloSize + col - colMin;
+				for (; col < runEnd; col++)
+					halo[haloIndex++] = getDepth(index++);
+			}
+		}
+	}
+
+	/**
+	 * Shades the pixels of a tile as SSAO.setOcclusion and ColorUtils.adjustLight do, leaving pixels at the edges of the frame without enough kernel space
+	 * unshadowed
+	 *
+	 * @param tileRow
+	 *            The row of the tile
+	 * @param tileCol
+	 *            The column of the tile
+	 * @param halo
+	 *            The depths of the tile and the kernel space around it, as gathered by gatherHalo
+	 * @param pixelData
+	 *            The array in which to store the final colors
+	 * @param pixelStride
+	 *            The width in pixels of a row of pixelData
+	 */
+	private void shadeTile(int tileRow, int tileCol, float[] halo, int[] pixelData, int pixelStride) {
+		int haloSize = tileSize + 2 * SSAO.KERNEL;
+		int rowMin = tileRow * tileSize;
+		int colMin = tileCol * tileSize;
+		int tileIndex = getIndex(rowMin, colMin);
+		for (int row = rowMin; row < Math.min(height, rowMin + tileSize); row++) {
+			for (int col = colMin; col < Math.min(width, colMin + tileSize); col++) {
+				// the pixel's index in the tile, and the index in the halo of the top left of its kernel
+				int index = tileIndex + (row - rowMin) * tileSize + col - colMin;
+				int kernelIndex = (row - rowMin) * haloSize + col - colMin;
+				float depth = halo[kernelIndex + SSAO.KERNEL * haloSize + SSAO.KERNEL];
+
+				// sum the differences in depth over the kernel for pixels which hit the fractal and have enough kernel space
+				int shadow = 0;
+				if (depth != Float.MAX_VALUE && row >= SSAO.KERNEL && row < height - SSAO.KERNEL && col >= SSAO.KERNEL && col < width - SSAO.KERNEL) {
+					double sumOfDifferences = 0;
+					for (int i = 0; i < 2 * SSAO.KERNEL + 1; i++) {
+						for (int j = 0; j < 2 * SSAO.KERNEL + 1; j++) {
+							float otherDepth = halo[kernelIndex + i * haloSize + j];
+							sumOfDifferences += SSAO.getDifference(depth, otherDepth == Float.MAX_VALUE ? Double.MAX_VALUE : otherDepth);
+						}
+					}
+					shadow = SSAO.getShadow(sumOfDifferences);
+				}
+
+				setOcclusion(index, shadow);
+				pixelData[row * pixelStride + col] = ColorUtils.adjustLight(getColor(index), shadow);
+			}
+		}
+	}
+
+	// ----------------------------------------------------------------------------
+	// Getters & Setters
+	// ----------------------------------------------------------------------------
+
+	@Override
+	public int getWidth() {
+		return width;
+	}
+
+	@Override
+	public int getHeight() {
+		return height;
+	}
+
+	public int getTileSize() {
+		return tileSize;
+	}
+}
@@ -0,0 +1,27 @@
+package com.erroll.renderer.recording;
+
+public interface FrameSinkInterface {
+
+	/**
+	 * Records a shaded frame. The pixels are copied or saved before this returns, so the caller can draw the next frame into them straight away.
+	 *
+	 * @param pixelData
+	 *            The final colors of the frame, in its top left
+	 * @param pixelStride
+	 *            The width in pixels of a row of pixelData
+	 * @param depth
+	 *            The depths of the frame, indexed row * height + col as in the renderer's depth buffer, which sinks may ignore, null if the frame has no depths
+	 * @param width
+	 *            The width of the frame in pixels
+	 * @param height
+	 *            The height of the frame in pixels
+	 * @param frameIndex
+	 *            The index of the frame among the frames rendered
+	 */
+	public void record(int[] pixelData, int pixelStride, double[] depth, int width, int height, int frameIndex);
+
+	/**
+	 * Finishes saving every frame recorded so far and releases the sink
+	 */
+	public void close();
+}
@@ -0,0 +1,360 @@
+package com.erroll.renderer.recording;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import com.erroll.renderer.WorkerPool;
+
+public class ParallelPngEncoder {
+
+	// the PNG file signature
+	private static final byte[] SIGNATURE = { (byte) 137, 80, 78, 71, 13, 10, 26, 10 };
+
+	// the largest modulus used by Adler-32 checksums
+	private static final int ADLER_BASE = 65521;
+
+	// the deflate compression level, which trades little compression for much more speed than the default level (ImageIO uses the same level)
+	private static final int DEFLATE_LEVEL = 4;
+
+	// the size of the window deflate can refer back into, primed from the end of the previous strip so that splitting the image costs little compression
+	private static final int WINDOW_SIZE = 32768;
+
+	// the least number of filtered bytes in a strip, so that small images are not split into strips too small to compress well
+	private static final int MIN_STRIP_SIZE = 65536;
+
+	// the number of strips to aim for for each thread, so that threads which finish early can take strips from those which have not
+	private static final int STRIPS_PER_THREAD = 4;
+
+	// pool of threads filtering and deflating strips, shared with the renderer
+	private ForkJoinPool pool;
+
+	/**
+	 * Creates a ParallelPngEncoder which writes 24 bit RGB PNG files using every core. The image is split into horizontal strips whose rows are filtered and
+	 * deflated in parallel. Every strip but the last is ended with a sync flush so that it finishes on a byte boundary, which lets the deflated strips be
+	 * joined into a single valid zlib stream, and each strip's deflater is primed with the end of the previous strip so that compression is almost as good as
+	 * deflating the whole image at once. The Adler-32 checksums of the strips are combined rather than recomputed.
+	 */
+	public ParallelPngEncoder() {
+		pool = WorkerPool.get();
+	}
+
+	/**
+	 * Encodes an image as a PNG file
+	 *
+	 * @param pixelData
+	 *            The colors of the image as 0xRRGGBB ints, in its top left
+	 * @param pixelStride
+	 *            The width in pixels of a row of pixelData
+	 * @param width
+	 *            The width of the image in pixels
+	 * @param height
+	 *            The height of the image in pixels
+	 * @param file
+	 *            The file to write the PNG to
+	 */
+	public void write(int[] pixelData, int pixelStride, int width, int height, File file) throws IOException {
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+		try {
+			write(pixelData, pixelStride, width, height, out);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Encodes an image as a PNG stream
+	 *
+	 * @param pixelData
+	 *            The colors of the image as 0xRRGGBB ints, in its top left
+	 * @param pixelStride
+	 *            The width in pixels of a row of pixelData
+	 * @param width
+	 *            The width of the image in pixels
+	 * @param height
+	 *            The height of the image in pixels
+	 * @param out
+	 *            The stream to write the PNG to
+	 */
+	public void write(final int[] pixelData, final int pixelStride, final int width, int height, OutputStream out) throws IOException {
+		// each filtered row is a filter type byte followed by 3 bytes a pixel
+		final int rowSize = 1 + 3 * width;
+		final byte[] filtered = new byte[rowSize * height];
+
+		// choose how many rows are in each strip
+		int strips = Math.max(1, Math.min(pool.getParallelism() * STRIPS_PER_THREAD, (rowSize * height) / MIN_STRIP_SIZE));
+		int rowsPerStrip = (height + strips - 1) / strips;
+		strips = (height + rowsPerStrip - 1) / rowsPerStrip;
+
+		// filter every strip's rows in parallel
+		List<Callable<Void>> filterTasks = new ArrayList<Callable<Void>>();
+		for (int i = 0; i < strips; i++) {
+			final int rowMin = i * rowsPerStrip;
+			final int rowMax = Math.min(height, rowMin + rowsPerStrip);
+			filterTasks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					filterRows(pixelData, pixelStride, width, rowMin, rowMax, filtered);
+					return null;
+				}
+			});
+		}
+		invokeAll(filterTasks);
+
+		// then deflate every strip in parallel, which needs the filtered end of the previous strip
+		List<Callable<byte[]>> deflateTasks = new ArrayList<Callable<byte[]>>();
+		final long[] adlers = new long[strips];
+		for (int i = 0; i < strips; i++) {
+			final int strip = i;
+			final int start = i * rowsPerStrip * rowSize;
+			final int end = Math.min(height, (i + 1) * rowsPerStrip) * rowSize;
+			final boolean last = i == strips - 1;
+			deflateTasks.add(new Callable<byte[]>() {
+				@Override
+				public byte[] call() {
+					Adler32 adler = new Adler32();
+					adler.update(filtered, start, end - start);
+					adlers[strip] = adler.getValue();
+					return deflate(filtered, start, end, last);
+				}
+			});
+		}
+		List<byte[]> deflated = invokeAll(deflateTasks);
+
+		// combine the checksums of the strips into the checksum of the whole stream
+		long adler = 1L;
+		for (int i = 0; i < strips; i++) {
+			int start = i * rowsPerStrip * rowSize;
+			int end = Math.min(height, (i + 1) * rowsPerStrip) * rowSize;
+			adler = combineAdler(adler, adlers[i], end - start);
+		}
+
+		// write the zlib stream: a header for deflate with a 32K window at a fast level, the strips and then the checksum
+		ByteArrayOutputStream idat = new ByteArrayOutputStream();
+		idat.write(0x78);
+		idat.write(0x5e);
+		for (byte[] strip : deflated)
+			idat.write(strip);
+		new DataOutputStream(idat).writeInt((int) adler);
+
+		// write the PNG: the signature, an IHDR for 8 bit RGB without interlacing, the zlib stream as one IDAT chunk and an IEND
+		DataOutputStream dataOut = new DataOutputStream(out);
+		dataOut.write(SIGNATURE);
+		ByteArrayOutputStream ihdr = new ByteArrayOutputStream();
+		DataOutputStream ihdrOut = new DataOutputStream(ihdr);
+		ihdrOut.writeInt(width);
+		ihdrOut.writeInt(height);
+		ihdrOut.writeByte(8);
+		ihdrOut.writeByte(2);
+		ihdrOut.writeByte(0);
+		ihdrOut.writeByte(0);
+		ihdrOut.writeByte(0);
+		writeChunk(dataOut, "IHDR", ihdr.toByteArray());
+		writeChunk(dataOut, "IDAT", idat.toByteArray());
+		writeChunk(dataOut, "IEND", new byte[0]);
+		dataOut.flush();
+	}
+
+	/**
+	 * Filters rows of an image, choosing the filter for each row which gives the smallest sum of absolute differences (as libpng does)
+	 *
+	 * @param rowMin
+	 *            The first row to filter
+	 * @param rowMax
+	 *            The row after the last row to filter
+	 * @param filtered
+	 *            The array to store the filtered rows of the whole image in
+	 */
+	private static void filterRows(int[] pixelData, int pixelStride, int width, int rowMin, int rowMax, byte[] filtered) {
+		int rowSize = 1 + 3 * width;
+		byte[] row = new byte[3 * width];
+		byte[] prior = new byte[3 * width];
+		byte[] candidate = new byte[3 * width];
+		byte[] best = new byte[3 * width];
+
+		// the row before the strip is needed to filter its first row, and rows before the image are all 0
+		if (rowMin > 0)
+			unpackRow(pixelData, (rowMin - 1) * pixelStride, width, prior);
+
+		for (int r = rowMin; r < rowMax; r++) {
+			unpackRow(pixelData, r * pixelStride, width, row);
+
+			// try every filter type, keeping the one with the smallest sum
+			long bestSum = Long.MAX_VALUE;
+			int bestType = 0;
+			for (int type = 0; type < 5; type++) {
+				long sum = filterRow(type, row, prior, candidate);
+				if (sum < bestSum) {
+					bestSum = sum;
+					bestType = type;
+					byte[] swap = best;
+					best = candidate;
+					candidate = swap;
+				}
+			}
+			filtered[r * rowSize] = (byte) bestType;
+			System.arraycopy(best, 0, filtered, r * rowSize + 1, 3 * width);
+
+			byte[] swap = prior;
+			prior = row;
+			row = swap;
+		}
+	}
+
+	/**
+	 * Unpacks a row of 0xRRGGBB ints into bytes
+	 */
+	private static void unpackRow(int[] pixelData, int offset, int width, byte[] row) {
+		for (int col = 0; col < width; col++) {
+			int color = pixelData[offset + col];
+			row[3 * col] = (byte) (color >> 16);
+			row[3 * col + 1] = (byte) (color >> 8);
+			row[3 * col + 2] = (byte) color;
+		}
+	}
+
+	/**
+	 * Filters a row with the given PNG filter type (0 none, 1 sub, 2 up, 3 average or 4 Paeth)
+	 *
+	 * @return The sum of the absolute values of the filtered bytes as signed bytes
+	 */
+	private static long filterRow(int type, byte[] row, byte[] prior, byte[] out) {
+		long sum = 0;
+		for (int i = 0; i < row.length; i++) {
+			int x = row[i] & 0xff;
+			int a = i >= 3 ? row[i - 3] & 0xff : 0;
+			int b = prior[i] & 0xff;
+			int c = i >= 3 ? prior[i - 3] & 0xff : 0;
+			int predictor;
+			switch (type) {
+			case 1:
+				predictor = a;
+				break;
+			case 2:
+				predictor = b;
+				break;
+			case 3:
+				predictor = (a + b) >> 1;
+				break;
+			case 4:
+				int p = a + b - c;
+				int pa = Math.abs(p - a);
+				int pb = Math.abs(p - b);
+				int pc = Math.abs(p - c);
+				predictor = (pa <= pb && pa <= pc) ? a : pb <= pc ? b : c;
+				break;
+			default:
+				predictor = 0;
+			}
+			byte value = (byte) (x - predictor);
+			out[i] = value;
+			sum += Math.abs(value);
+		}
+		return sum;
+	}
+
+	/**
+	 * Deflates a strip of filtered rows, priming the deflater with the window before the strip
+	 *
+	 * @param last
+	 *            Whether this is the last strip, which finishes the deflate stream rather than flushing to a byte boundary
+	 * @return The raw deflated strip
+	 */
+	private static byte[] deflate(byte[] filtered, int start, int end, boolean last) {
+		Deflater deflater = new Deflater(DEFLATE_LEVEL, true);
+		try {
+			if (start > 0) {
+				int windowStart = Math.max(0, start - WINDOW_SIZE);
+				deflater.setDictionary(filtered, windowStart, start - windowStart);
+			}
+			deflater.setInput(filtered, start, end - start);
+			if (last)
+				deflater.finish();
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream((end - start) / 4 + 64);
+			byte[] buffer = new byte[65536];
+			while (true) {
+				int length = deflater.deflate(buffer, 0, buffer.length, last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+				out.write(buffer, 0, length);
+
+				// a flush is complete once it leaves room in the buffer
+				if (last ? deflater.finished() : length < buffer.length)
+					break;
+			}
+			return out.toByteArray();
+		} finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Combines the Adler-32 checksum of one block of data with that of the block which follows it (as zlib's adler32_combine does)
+	 *
+	 * @param adler1
+	 *            The checksum of the first block
+	 * @param adler2
+	 *            The checksum of the second block
+	 * @param length2
+	 *            The length of the second block in bytes
+	 * @return The checksum of both blocks together
+	 */
+	static long combineAdler(long adler1, long adler2, long length2) {
+		long remainder = length2 % ADLER_BASE;
+		long sum1 = adler1 & 0xffff;
+		long sum2 = (remainder * sum1) % ADLER_BASE;
+		sum1 += (adler2 & 0xffff) + ADLER_BASE - 1;
+		sum2 += ((adler1 >> 16) & 0xffff) + ((adler2 >> 16) & 0xffff) + ADLER_BASE - remainder;
+		if (sum1 >= ADLER_BASE)
+			sum1 -= ADLER_BASE;
+		if (sum1 >= ADLER_BASE)
+			sum1 -= ADLER_BASE;
+		if (sum2 >= 2 * ADLER_BASE)
+			sum2 -= 2 * ADLER_BASE;
+		if (sum2 >= ADLER_BASE)
+			sum2 -= ADLER_BASE;
+		return sum1 | (sum2 << 16);
+	}
+
+	/**
+	 * Writes a PNG chunk: its length, type, data and the CRC of its type and data
+	 */
+	private static void writeChunk(DataOutputStream out, String type, byte[] data) throws IOException {
+		byte[] typeBytes = type.getBytes("US-ASCII");
+		CRC32 crc = new CRC32();
+		crc.update(typeBytes);
+		crc.update(data);
+		out.writeInt(data.length);
+		out.write(typeBytes);
+		out.write(data);
+		out.writeInt((int) crc.getValue());
+	}
+
+	/**
+	 * Runs tasks on the pool, returning their results in order
+	 */
+	private <T> List<T> invokeAll(List<Callable<T>> tasks) throws IOException {
+		List<T> results = new ArrayList<T>();
+		try {
+			for (Future<T> future : pool.invokeAll(tasks))
+				results.add(future.get());
+		} catch (InterruptedException e) {
+			throw new IOException("interrupted while encoding PNG", e);
+		} catch (ExecutionException e) {
+			throw new IOException("could not encode PNG", e.getCause());
+		}
+		return results;
+	}
+}
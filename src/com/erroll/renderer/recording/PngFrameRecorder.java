@@ -0,0 +1,163 @@
+package com.erroll.renderer.recording;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import com.erroll.metrics.Metrics;
+
+public class PngFrameRecorder implements FrameSinkInterface {
+
+	// the directory frames are saved in
+	private File outputDir;
+
+	// frame buffers free to copy a frame into, and frames copied and waiting to be encoded
+	private BlockingQueue<FrameBuffer> freeFrames;
+	private BlockingQueue<FrameBuffer> queuedFrames;
+
+	// the number of frame buffers, which is the most frames that can be waiting to be encoded at once
+	private int queueSize;
+
+	// whether a frame is dropped when every frame buffer is in use, rather than waiting for one to be encoded
+	private boolean dropFrames;
+
+	// the threads which encode and save queued frames
+	private Thread[] encoders;
+
+	// Metrics object to report the queue and encoding to
+	private Metrics metrics;
+
+	// the encoder shared by the encoder threads, which splits each frame across every core
+	private ParallelPngEncoder pngEncoder = new ParallelPngEncoder();
+
+	/**
+	 * Creates a PngFrameRecorder which saves frames as PNG files on background encoder threads. Each recorded frame is copied into one of a fixed number of
+	 * frame buffers and queued, so the renderer only pays for the copy. If every buffer is waiting to be encoded, the frame is either dropped or the renderer
+	 * stalls until a buffer is free.
+	 *
+	 * @param outputDir
+	 *            The directory to save frames in
+	 * @param bufferWidth
+	 *            The largest width of a recorded frame in pixels
+	 * @param bufferHeight
+	 *            The largest height of a recorded frame in pixels
+	 * @param queueSize
+	 *            The number of frame buffers
+	 * @param encoderThreads
+	 *            The number of threads encoding frames
+	 * @param dropFrames
+	 *            Whether to drop frames rather than stall when every frame buffer is in use
+	 * @param metrics
+	 *            The Metrics object to report the queue depth, dropped and stalled frames and encode times to
+	 */
+	public PngFrameRecorder(File outputDir, int bufferWidth, int bufferHeight, int queueSize, int encoderThreads, boolean dropFrames, Metrics metrics) {
+		this.outputDir = outputDir;
+		this.queueSize = queueSize < 1 ? 1 : queueSize;
+		this.dropFrames = dropFrames;
+		this.metrics = metrics;
+
+		freeFrames = new ArrayBlockingQueue<FrameBuffer>(this.queueSize);
+		queuedFrames = new ArrayBlockingQueue<FrameBuffer>(this.queueSize);
+		for (int i = 0; i < this.queueSize; i++)
+			freeFrames.add(new FrameBuffer(bufferWidth, bufferHeight));
+
+		encoders = new Thread[encoderThreads < 1 ? 1 : encoderThreads];
+		for (int i = 0; i < encoders.length; i++) {
+			encoders[i] = new Thread(new Encoder());
+			encoders[i].setDaemon(true);
+			encoders[i].start();
+		}
+	}
+
+	@Override
+	public void record(int[] pixelData, int pixelStride, double[] depth, int width, int height, int frameIndex) {
+		// take a free frame buffer, dropping the frame or waiting for one if there are none
+		FrameBuffer frame = freeFrames.poll();
+		if (frame == null) {
+			if (dropFrames) {
+				metrics.registerFrameDropped();
+				return;
+			}
+			metrics.registerFrameStalled();
+			try {
+				frame = freeFrames.take();
+			} catch (InterruptedException e) {
+				System.err.println("InterruptedException in recording frame");
+				return;
+			}
+		}
+
+		// copy the frame a row at a time, packing the rows together, so the caller can carry on drawing into its pixels
+		for (int row = 0; row < height; row++)
+			System.arraycopy(pixelData, row * pixelStride, frame.pixelData, row * width, width);
+		frame.width = width;
+		frame.height = height;
+		frame.frameIndex = frameIndex;
+
+		// there is always room in the queue as there are only queueSize frame buffers
+		queuedFrames.add(frame);
+		metrics.setRecordQueueDepth(queuedFrames.size());
+	}
+
+	@Override
+	public void close() {
+		// every frame has been saved once every frame buffer is free again, so take them all back
+		try {
+			for (int i = 0; i < queueSize; i++)
+				freeFrames.take();
+		} catch (InterruptedException e) {
+			System.err.println("InterruptedException in closing recorder");
+		}
+		for (Thread encoder : encoders)
+			encoder.interrupt();
+	}
+
+	/**
+	 * Holds a copy of a frame waiting to be encoded
+	 */
+	private static class FrameBuffer {
+
+		// the colors of the frame, which may be smaller than the buffer
+		private int[] pixelData;
+
+		// the size in pixels and index of the frame held
+		private int width;
+		private int height;
+		private int frameIndex;
+
+		private FrameBuffer(int bufferWidth, int bufferHeight) {
+			pixelData = new int[bufferHeight * bufferWidth];
+		}
+	}
+
+	/**
+	 * Encodes and saves queued frames until interrupted, freeing each frame buffer once its frame is saved
+	 */
+	private class Encoder implements Runnable {
+
+		@Override
+		public void run() {
+			while (true) {
+				FrameBuffer frame;
+				try {
+					frame = queuedFrames.take();
+				} catch (InterruptedException e) {
+					return;
+				}
+				metrics.setRecordQueueDepth(queuedFrames.size());
+
+				long encodeStart = System.nanoTime();
+				try {
+					File outputfile = new File(outputDir, "screenshot" + frame.frameIndex + ".png");
+					pngEncoder.write(frame.pixelData, frame.width, frame.width, frame.height, outputfile);
+				} catch (IOException e) {
+					System.err.println("file write IO exception");
+				}
+				metrics.registerFrameEncoded((System.nanoTime() - encodeStart) / 1000000d);
+
+				freeFrames.add(frame);
+			}
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package com.erroll.renderer.recording;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+public class RawFrameConverter {
+
+	/**
+	 * Converts every frame of a raw frame sequence written by RawFrameRecorder into a PNG file named as PngFrameRecorder would have named it. Depths are not
+	 * converted.
+	 *
+	 * @param inputFile
+	 *            The raw frame sequence
+	 * @param outputDir
+	 *            The directory to save PNG files in, created if it does not exist
+	 * @return The number of frames converted
+	 */
+	public static int convert(File inputFile, File outputDir) throws IOException {
+		outputDir.mkdirs();
+		RandomAccessFile file = new RandomAccessFile(inputFile, "r");
+		try {
+			FileChannel channel = file.getChannel();
+
+			// read the header, using the magic number to find which byte order it was written in
+			ByteBuffer header = ByteBuffer.allocate(RawFrameRecorder.FILE_HEADER_SIZE);
+			channel.read(header, 0);
+			if (header.getInt(0) != RawFrameRecorder.MAGIC)
+				header.order(ByteOrder.LITTLE_ENDIAN);
+			if (header.getInt(0) != RawFrameRecorder.MAGIC || header.getInt(4) != RawFrameRecorder.VERSION)
+				throw new IOException("not a raw frame sequence: " + inputFile);
+			int bufferWidth = header.getInt(8);
+			int bufferHeight = header.getInt(12);
+			boolean recordDepth = header.getInt(16) == 1;
+			int frameCount = header.getInt(24);
+			long recordSize = RawFrameRecorder.getRecordSize(bufferWidth, bufferHeight, recordDepth);
+
+			// read each frame's header and colors, whose rows are packed together, and encode them
+			ParallelPngEncoder pngEncoder = new ParallelPngEncoder();
+			ByteBuffer record = ByteBuffer.allocate(RawFrameRecorder.FRAME_HEADER_SIZE + bufferWidth * bufferHeight * 4).order(header.order());
+			int[] pixelData = new int[bufferHeight * bufferWidth];
+			for (int i = 0; i < frameCount; i++) {
+				record.clear();
+				long position = RawFrameRecorder.FILE_HEADER_SIZE + i * recordSize;
+				while (record.hasRemaining() && channel.read(record, position + record.position()) >= 0)
+					;
+				int frameIndex = record.getInt(0);
+				int width = record.getInt(4);
+				int height = record.getInt(8);
+
+				record.position(RawFrameRecorder.FRAME_HEADER_SIZE);
+				record.asIntBuffer().get(pixelData, 0, width * height);
+				pngEncoder.write(pixelData, width, width, height, new File(outputDir, "screenshot" + frameIndex + ".png"));
+			}
+			return frameCount;
+		} finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * Converts a raw frame sequence into PNG files
+	 *
+	 * @param args
+	 *            The raw frame sequence and the directory to save PNG files in
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("usage: RawFrameConverter <raw file> <output directory>");
+			System.exit(1);
+		}
+		System.out.println("Converted " + convert(new File(args[0]), new File(args[1])) + " frames");
+	}
+}
@@ -0,0 +1,161 @@
+package com.erroll.renderer.recording;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.erroll.metrics.Metrics;
+
+public class RawFrameRecorder implements FrameSinkInterface {
+
+	// identifies a raw frame sequence file, and also which byte order it was written in
+	public static final int MAGIC = 0x46585231;
+	public static final int VERSION = 1;
+
+	// the size in bytes of the header at the start of the file and at the start of each frame record
+	public static final int FILE_HEADER_SIZE = 32;
+	public static final int FRAME_HEADER_SIZE = 16;
+
+	// the most bytes mapped by a single buffer, as a MappedByteBuffer cannot be larger than 2GB
+	private static final long MAX_SEGMENT_SIZE = 1L << 30;
+
+	// the file recorded to and the segments of it mapped into memory, each holding a whole number of frame records
+	private RandomAccessFile file;
+	private MappedByteBuffer[] segments;
+	private int recordsPerSegment;
+
+	// the largest size of a frame in pixels, the size in bytes of a frame record and the number of frame records the file has room for
+	private int bufferWidth;
+	private int bufferHeight;
+	private long recordSize;
+	private int capacity;
+
+	// whether depths are recorded along with colors
+	private boolean recordDepth;
+
+	// the number of frames recorded so far
+	private int frameCount;
+
+	// Metrics object to report dropped frames and copy times to
+	private Metrics metrics;
+
+	/**
+	 * Creates a RawFrameRecorder which copies frames uncompressed into a file mapped into memory, so recording a frame costs no more than copying it. The
+	 * file is allocated up front with room for a fixed number of frames; once it is full further frames are dropped. A header at the start of the file gives
+	 * the buffer size, whether depths are included and the number of frames recorded, and every frame record is the same size: a header giving the frame's
+	 * index and size, its colors packed row by row, and then its depths if recorded. Everything is written in the native byte order, which the magic number
+	 * at the start of the file identifies. RawFrameConverter turns the file into PNGs afterwards.
+	 *
+	 * @param outputFile
+	 *            The file to record to, which is replaced if it exists
+	 * @param bufferWidth
+	 *            The largest width of a recorded frame in pixels
+	 * @param bufferHeight
+	 *            The largest height of a recorded frame in pixels
+	 * @param capacity
+	 *            The number of frames the file has room for
+	 * @param recordDepth
+	 *            Whether to record the depth of each pixel along with its color
+	 * @param metrics
+	 *            The Metrics object to report dropped frames and copy times to
+	 */
+	public RawFrameRecorder(File outputFile, int bufferWidth, int bufferHeight, int capacity, boolean recordDepth, Metrics metrics) throws IOException {
+		this.bufferWidth = bufferWidth;
+		this.bufferHeight = bufferHeight;
+		this.capacity = capacity;
+		this.recordDepth = recordDepth;
+		this.metrics = metrics;
+		recordSize = getRecordSize(bufferWidth, bufferHeight, recordDepth);
+
+		// allocate the whole file and map it in segments of whole frame records
+		outputFile.delete();
+		file = new RandomAccessFile(outputFile, "rw");
+		file.setLength(FILE_HEADER_SIZE + capacity * recordSize);
+		recordsPerSegment = (int) Math.max(1L, MAX_SEGMENT_SIZE / recordSize);
+		segments = new MappedByteBuffer[(capacity + recordsPerSegment - 1) / recordsPerSegment + 1];
+		FileChannel channel = file.getChannel();
+		segments[0] = channel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_HEADER_SIZE);
+		for (int i = 1; i < segments.length; i++) {
+			long start = FILE_HEADER_SIZE + (i - 1) * recordsPerSegment * recordSize;
+			segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, start, Math.min(recordsPerSegment * recordSize, file.length() - start));
+		}
+		for (MappedByteBuffer segment : segments)
+			segment.order(ByteOrder.nativeOrder());
+
+		writeFileHeader();
+	}
+
+	@Override
+	public void record(int[] pixelData, int pixelStride, double[] depth, int width, int height, int frameIndex) {
+		if (frameCount == capacity) {
+			metrics.registerFrameDropped();
+			return;
+		}
+		long copyStart = System.nanoTime();
+
+		// find the frame record in its segment
+		MappedByteBuffer segment = segments[frameCount / recordsPerSegment + 1];
+		int offset = (int) ((frameCount % recordsPerSegment) * recordSize);
+
+		segment.putInt(offset, frameIndex);
+		segment.putInt(offset + 4, width);
+		segment.putInt(offset + 8, height);
+		segment.putInt(offset + 12, 0);
+
+		// copy the colors a row at a time, packing the rows together
+		segment.position(offset + FRAME_HEADER_SIZE);
+		IntBuffer colors = segment.asIntBuffer();
+		for (int row = 0; row < height; row++)
+			colors.put(pixelData, row * pixelStride, width);
+
+		// depths are indexed the same way as the renderer's depth buffer so can be copied all at once, and left as they are for frames without depths
+		if (recordDepth && depth != null) {
+			segment.position(offset + FRAME_HEADER_SIZE + bufferWidth * bufferHeight * 4);
+			DoubleBuffer depths = segment.asDoubleBuffer();
+			depths.put(depth, 0, width * height);
+		}
+
+		frameCount++;
+		segments[0].putInt(24, frameCount);
+		metrics.registerFrameEncoded((System.nanoTime() - copyStart) / 1000000d);
+	}
+
+	@Override
+	public void close() {
+		try {
+			for (MappedByteBuffer segment : segments)
+				segment.force();
+			file.close();
+		} catch (IOException e) {
+			System.err.println("file write IO exception");
+		}
+	}
+
+	/**
+	 * Writes the header at the start of the file, which is all ints: the magic number, the version, the buffer width and height, 1 if depths are recorded or
+	 * 0 otherwise, the capacity and the number of frames recorded, followed by padding.
+	 */
+	private void writeFileHeader() {
+		MappedByteBuffer header = segments[0];
+		header.putInt(0, MAGIC);
+		header.putInt(4, VERSION);
+		header.putInt(8, bufferWidth);
+		header.putInt(12, bufferHeight);
+		header.putInt(16, recordDepth ? 1 : 0);
+		header.putInt(20, capacity);
+		header.putInt(24, frameCount);
+		header.putInt(28, 0);
+	}
+
+	/**
+	 * @return The size in bytes of a frame record in a file with the given buffer size and whether depths are recorded
+	 */
+	public static long getRecordSize(int bufferWidth, int bufferHeight, boolean recordDepth) {
+		return FRAME_HEADER_SIZE + (long) bufferWidth * bufferHeight * (recordDepth ? 12 : 4);
+	}
+}
@@ -0,0 +1,163 @@
+package com.erroll.renderer.temporal;
+
+import com.erroll.octree.OctreeNode;
+
+public class CheckerboardReconstructor {
+
+	// the relative difference in depth within which a reprojected pixel agrees with its traced neighbors, and neighbors are averaged together
+	private static final double DEPTH_TOLERANCE = 0.05d;
+
+	// screen size in pixels
+	private int screenWidth;
+	private int screenHeight;
+
+	// whether each pixel is traced this frame, and whether each pixel which is not was filled in by reprojection
+	private boolean[] traceMask;
+	private boolean[] reprojected;
+
+	/**
+	 * Creates a CheckerboardReconstructor which has each frame trace only the pixels of one color of a checkerboard, alternating between frames, and fills
+	 * in the other half. A pixel which is not traced keeps its reprojection from the previous frame if it has one whose depth agrees with its traced
+	 * neighbors, which it always has unless it is on the edge of a surface or the camera moved too far. Otherwise it is interpolated from the traced
+	 * neighbors closest to the camera, so silhouettes are not blended with what is behind them.
+	 *
+	 * @param screenWidth
+	 *            The largest width of the screen in pixels
+	 * @param screenHeight
+	 *            The largest height of the screen in pixels
+	 */
+	public CheckerboardReconstructor(int screenWidth, int screenHeight) {
+		this.screenWidth = screenWidth;
+		this.screenHeight = screenHeight;
+		traceMask = new boolean[screenHeight * screenWidth];
+		reprojected = new boolean[screenHeight * screenWidth];
+	}
+
+	/**
+	 * Chooses the pixels to trace in a frame
+	 *
+	 * @param reprojectionMask
+	 *            Whether each pixel could not be reprojected from the previous frame, as returned by Reprojector.reproject
+	 * @param frameIndex
+	 *            The index of the frame, whose parity chooses the half of the checkerboard traced
+	 * @return Whether each pixel needs to be traced
+	 */
+	public boolean[] select(boolean[] reprojectionMask, int frameIndex) {
+		for (int row = 0; row < screenHeight; row++) {
+			for (int col = 0; col < screenWidth; col++) {
+				int index = row * screenHeight + col;
+				boolean trace = ((row + col + frameIndex) & 1) == 0;
+				traceMask[index] = trace;
+				reprojected[index] = !trace && !reprojectionMask[index];
+			}
+		}
+		return traceMask;
+	}
+
+	/**
+	 * Fills in the pixels of a frame which were not traced, once the others have been
+	 *
+	 * @param imageColors
+	 *            The colors of the frame
+	 * @param imageDepth
+	 *            The depths of the frame
+	 * @param imageNodes
+	 *            The hit nodes of the frame, which are cleared for interpolated pixels as they are not the nodes at their depths
+	 */
+	public void reconstruct(int[] imageColors, double[] imageDepth, OctreeNode[] imageNodes) {
+		for (int row = 0; row < screenHeight; row++) {
+			for (int col = 0; col < screenWidth; col++) {
+				int index = row * screenHeight + col;
+				if (traceMask[index])
+					continue;
+
+				// find the closest and furthest traced neighbors which hit the fractal, and how many neighbors there are
+				int neighbors = 0;
+				int hits = 0;
+				double minDepth = Double.MAX_VALUE;
+				double maxDepth = 0d;
+				for (int i = 0; i < 4; i++) {
+					int neighbor = getNeighbor(row, col, i);
+					if (neighbor < 0)
+						continue;
+					neighbors++;
+					double depth = imageDepth[neighbor];
+					if (depth != Double.MAX_VALUE) {
+						hits++;
+						minDepth = Math.min(minDepth, depth);
+						maxDepth = Math.max(maxDepth, depth);
+					}
+				}
+
+				// keep a reprojected pixel which lies within the depths of its neighbors
+				double depth = imageDepth[index];
+				if (reprojected[index] && (hits == 0 ? depth == Double.MAX_VALUE : depth >= minDepth * (1d - DEPTH_TOLERANCE)
+						&& depth <= maxDepth * (1d + DEPTH_TOLERANCE)))
+					continue;
+
+				// a pixel whose neighbors mostly missed the fractal missed it too
+				imageNodes[index] = null;
+				if (hits * 2 < neighbors || hits == 0) {
+					imageColors[index] = 0;
+					imageDepth[index] = Double.MAX_VALUE;
+					continue;
+				}
+
+				// otherwise average the neighbors on the closest surface
+				int red = 0;
+				int green = 0;
+				int blue = 0;
+				double depthSum = 0d;
+				int count = 0;
+				for (int i = 0; i < 4; i++) {
+					int neighbor = getNeighbor(row, col, i);
+					if (neighbor < 0 || imageDepth[neighbor] > minDepth * (1d + DEPTH_TOLERANCE))
+						continue;
+					int rgb = imageColors[neighbor];
+					red += (rgb >> 16) & 0xFF;
+					green += (rgb >> 8) & 0xFF;
+					blue += rgb & 0xFF;
+					depthSum += imageDepth[neighbor];
+					count++;
+				}
+				imageColors[index] = ((red / count) << 16) + ((green / count) << 8) + blue / count;
+				imageDepth[index] = depthSum / count;
+			}
+		}
+	}
+
+	/**
+	 * @param row
+	 *            The row of a pixel
+	 * @param col
+	 *            The column of a pixel
+	 * @param i
+	 *            Which neighbor to get, 0 to 3 for left, right, up and down
+	 * @return The index of the neighbor, or -1 if it is off the screen
+	 */
+	private int getNeighbor(int row, int col, int i) {
+		switch (i) {
+		case 0:
+			return col > 0 ? row * screenHeight + col - 1 : -1;
+		case 1:
+			return col < screenWidth - 1 ? row * screenHeight + col + 1 : -1;
+		case 2:
+			return row > 0 ? (row - 1) * screenHeight + col : -1;
+		default:
+			return row < screenHeight - 1 ? (row + 1) * screenHeight + col : -1;
+		}
+	}
+
+	/**
+	 * Changes the size of the frames reconstructed
+	 *
+	 * @param screenWidth
+	 *            The new width of the screen in pixels, no larger than the width the CheckerboardReconstructor was created with
+	 * @param screenHeight
+	 *            The new height of the screen in pixels, no larger than the height the CheckerboardReconstructor was created with
+	 */
+	public void resize(int screenWidth, int screenHeight) {
+		this.screenWidth = screenWidth;
+		this.screenHeight = screenHeight;
+	}
+}
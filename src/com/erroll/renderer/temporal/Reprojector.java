@@ -0,0 +1,216 @@
+package com.erroll.renderer.temporal;
+
+import java.util.Arrays;
+
+import com.erroll.octree.OctreeNode;
+import com.erroll.renderer.LatticeRayCast;
+import com.erroll.renderer.RayGenerator;
+import com.erroll.renderer.RebasedFrame;
+
+public class Reprojector {
+
+	// the relative difference in depth to a neighboring pixel above which a reprojected pixel is assumed to be showing through a gap in a closer surface
+	private static final double DEPTH_TOLERANCE = 0.05d;
+
+	// screen size in pixels
+	private int screenWidth;
+	private int screenHeight;
+
+	// every pixel is traced again at least once in this many frames even if it could be reprojected, 1 to trace every pixel every frame
+	private int refreshPeriod;
+
+	// the number of frames reprojected, used to choose which pixels are refreshed
+	private int frameIndex;
+
+	// the rays, depths and nodes of the previous frame, no view if there is no previous frame to reproject
+	private RayGenerator previousView;
+	private double[] previousDepth;
+	private OctreeNode[] previousNodes;
+
+	// the depth, node and node position of the closest hit of the previous frame splatted onto each pixel of the current frame
+	private double[] splatDepth;
+	private OctreeNode[] splatNodes;
+	private double[] splatBoxMinX;
+	private double[] splatBoxMinY;
+	private double[] splatBoxMinZ;
+
+	// whether each pixel of the current frame needs to be traced
+	private boolean[] traceMask;
+
+	// reused for the point and screen position of each reprojected pixel
+	private double[] point = new double[3];
+	private double[] pixel = new double[3];
+
+	/**
+	 * Creates a Reprojector which warps each frame's hits into the next frame's view so that only pixels without a valid reprojection need to be traced
+	 * again. Every hit is splatted onto the pixel nearest its new position on the screen, keeping the closest where several land on the same pixel, and its
+	 * node is reused if the pixel's new ray still passes through the node. A pixel is traced again if no node can be reused, if a neighbor is much closer
+	 * (so a gap in a closer surface may be showing), if its node has been deleted or needs more detail at its new distance, or if it is its turn to be
+	 * refreshed.
+	 *
+	 * @param screenWidth
+	 *            The largest width of the screen in pixels
+	 * @param screenHeight
+	 *            The largest height of the screen in pixels
+	 * @param refreshPeriod
+	 *            The number of frames in which every pixel is traced again at least once
+	 */
+	public Reprojector(int screenWidth, int screenHeight, int refreshPeriod) {
+		this.screenWidth = screenWidth;
+		this.screenHeight = screenHeight;
+		this.refreshPeriod = refreshPeriod < 1 ? 1 : refreshPeriod;
+
+		previousDepth = new double[screenHeight * screenWidth];
+		previousNodes = new OctreeNode[screenHeight * screenWidth];
+		splatDepth = new double[screenHeight * screenWidth];
+		splatNodes = new OctreeNode[screenHeight * screenWidth];
+		splatBoxMinX = new double[screenHeight * screenWidth];
+		splatBoxMinY = new double[screenHeight * screenWidth];
+		splatBoxMinZ = new double[screenHeight * screenWidth];
+		traceMask = new boolean[screenHeight * screenWidth];
+	}
+
+	/**
+	 * Reprojects the previous frame into the view of the current frame, filling in the colors, depths and hit nodes of the pixels which can be reused
+	 *
+	 * @param view
+	 *            The primary rays of the current frame
+	 * @param imageColors
+	 *            The colors of the current frame
+	 * @param imageDepth
+	 *            The depths of the current frame
+	 * @param imageNodes
+	 *            The hit nodes of the current frame
+	 * @param voxelSizeConstantA
+	 *            The voxel size constant A of the current frame, used to check reused nodes still have enough detail
+	 * @param voxelSizeConstantB
+	 *            The voxel size constant B of the current frame
+	 * @return Whether each pixel needs to be traced, every pixel if there is no previous frame
+	 */
+	public boolean[] reproject(RayGenerator view, int[] imageColors, double[] imageDepth, OctreeNode[] imageNodes, double voxelSizeConstantA,
+			double voxelSizeConstantB) {
+		frameIndex++;
+
+		// if there is nothing to reproject, or the previous frame was traced in another coordinate frame, every pixel must be traced
+		if (previousView == null || previousView.getFrame() != view.getFrame()) {
+			Arrays.fill(traceMask, 0, screenHeight * screenWidth, true);
+			return traceMask;
+		}
+
+		// splat every hit of the previous frame onto the current frame, keeping the closest on each pixel
+		RebasedFrame frame = view.getFrame();
+		Arrays.fill(splatDepth, 0, screenHeight * screenWidth, Double.MAX_VALUE);
+		Arrays.fill(splatNodes, 0, screenHeight * screenWidth, null);
+		for (int row = 0; row < screenHeight; row++) {
+			for (int col = 0; col < screenWidth; col++) {
+				int index = row * screenHeight + col;
+				OctreeNode node = previousNodes[index];
+				if (node == null)
+					continue;
+
+				// find the position of the node from a point just inside it, by rounding the point down onto the node's lattice
+				long size = LatticeRayCast.getNodeSize(node.getDepth());
+				double boxDim = frame.getWidth(size);
+				previousView.getPoint(col, row, previousDepth[index] + 0.0001 * boxDim, point);
+				double boxMinX = frame.toLocal(frame.toLattice(point[0], 0) & -size, 0);
+				double boxMinY = frame.toLocal(frame.toLattice(point[1], 1) & -size, 1);
+				double boxMinZ = frame.toLocal(frame.toLattice(point[2], 2) & -size, 2);
+
+				if (!view.project(point[0], point[1], point[2], pixel))
+					continue;
+
+				// rays are cast through whole pixel positions so round to the nearest pixel
+				int newCol = (int) Math.floor(pixel[0] + 0.5d);
+				int newRow = (int) Math.floor(pixel[1] + 0.5d);
+				if (newCol < 0 || newCol >= screenWidth || newRow < 0 || newRow >= screenHeight)
+					continue;
+
+				int newIndex = newRow * screenHeight + newCol;
+				if (pixel[2] < splatDepth[newIndex]) {
+					splatDepth[newIndex] = pixel[2];
+					splatNodes[newIndex] = node;
+					splatBoxMinX[newIndex] = boxMinX;
+					splatBoxMinY[newIndex] = boxMinY;
+					splatBoxMinZ[newIndex] = boxMinZ;
+				}
+			}
+		}
+
+		// decide which pixels must be traced, and take the colors of the rest from their nodes
+		int refreshSlot = frameIndex % refreshPeriod;
+		for (int row = 0; row < screenHeight; row++) {
+			for (int col = 0; col < screenWidth; col++) {
+				int index = row * screenHeight + col;
+				OctreeNode node = splatNodes[index];
+				boolean trace = true;
+				double depth = Double.MAX_VALUE;
+
+				if (node != null && !node.isDeleted() && (col + row * 5) % refreshPeriod != refreshSlot) {
+					// the node can only be reused if the pixel's ray passes through it, in which case its depth is where the ray enters it
+					double boxDim = frame.getWidth(LatticeRayCast.getNodeSize(node.getDepth()));
+					depth = view.getEntryDistance(col, row, splatBoxMinX[index], splatBoxMinY[index], splatBoxMinZ[index], boxDim);
+
+					if (depth != Double.MAX_VALUE) {
+						// a node needs tracing if a ray would now descend into it or queue it for subdivision
+						boolean small = (boxDim * voxelSizeConstantA) < (depth * voxelSizeConstantB);
+						trace = node.isLeaf() ? !small && !node.isQueuedSubdiv() : !small;
+
+						// a pixel next to a much closer one may be showing through a gap left by splatting the closer surface
+						double minDepth = splatDepth[index] * (1d - DEPTH_TOLERANCE);
+						trace |= (col > 0 && splatDepth[index - 1] < minDepth) || (col < screenWidth - 1 && splatDepth[index + 1] < minDepth)
+								|| (row > 0 && splatDepth[index - screenHeight] < minDepth)
+								|| (row < screenHeight - 1 && splatDepth[index + screenHeight] < minDepth);
+					}
+				}
+
+				traceMask[index] = trace;
+				if (!trace) {
+					// mark node and its bricks as having been visited so they are kept by the brick manager
+					node.visit();
+					imageColors[index] = node.getColor();
+					imageDepth[index] = depth;
+					imageNodes[index] = node;
+				}
+			}
+		}
+
+		return traceMask;
+	}
+
+	/**
+	 * Changes the size of the frames reprojected, discarding the previous frame
+	 *
+	 * @param screenWidth
+	 *            The new width of the screen in pixels, no larger than the width the Reprojector was created with
+	 * @param screenHeight
+	 *            The new height of the screen in pixels, no larger than the height the Reprojector was created with
+	 */
+	public void resize(int screenWidth, int screenHeight) {
+		this.screenWidth = screenWidth;
+		this.screenHeight = screenHeight;
+		invalidate();
+	}
+
+	/**
+	 * Stores the finished current frame to be reprojected into the next frame
+	 *
+	 * @param view
+	 *            The primary rays of the current frame
+	 * @param imageDepth
+	 *            The depths of the current frame
+	 * @param imageNodes
+	 *            The hit nodes of the current frame
+	 */
+	public void store(RayGenerator view, double[] imageDepth, OctreeNode[] imageNodes) {
+		previousView = view;
+		System.arraycopy(imageDepth, 0, previousDepth, 0, screenHeight * screenWidth);
+		System.arraycopy(imageNodes, 0, previousNodes, 0, screenHeight * screenWidth);
+	}
+
+	/**
+	 * Discards the previous frame so that every pixel of the next frame is traced
+	 */
+	public void invalidate() {
+		previousView = null;
+	}
+}
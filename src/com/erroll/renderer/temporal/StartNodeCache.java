@@ -0,0 +1,101 @@
+package com.erroll.renderer.temporal;
+
+import java.util.Arrays;
+
+import com.erroll.octree.OctreeNode;
+import com.erroll.renderer.LatticeRayCast;
+
+public class StartNodeCache {
+
+	// the node each pixel's ray hit when it was last traced, null if it has not hit anything, and the minimum lattice coordinates of the node
+	private OctreeNode[] nodes;
+	private long[] nodeX;
+	private long[] nodeY;
+	private long[] nodeZ;
+
+	/**
+	 * Creates a StartNodeCache which remembers the node each pixel's ray hit so that its next ray can start from the deepest ancestor of that node which
+	 * contains where the ray starts, rather than descending to it from the start node. Neighboring frames' rays mostly hit near each other, so the ancestor
+	 * is usually much deeper than the start node and often the node hit itself. An entry stays correct however far the camera moves as nodes never move, so
+	 * it only needs discarding when its node is deleted, which is checked when it is used.
+	 *
+	 * @param bufferWidth
+	 *            The largest width of the screen in pixels
+	 * @param bufferHeight
+	 *            The largest height of the screen in pixels
+	 */
+	public StartNodeCache(int bufferWidth, int bufferHeight) {
+		nodes = new OctreeNode[bufferHeight * bufferWidth];
+		nodeX = new long[bufferHeight * bufferWidth];
+		nodeY = new long[bufferHeight * bufferWidth];
+		nodeZ = new long[bufferHeight * bufferWidth];
+	}
+
+	/**
+	 * Finds the deepest ancestor of the node last hit by a pixel's ray which contains a point. The ancestors containing the point are those whose lattice
+	 * coordinates agree with the point's in every bit above their width, so the deepest is found from the highest bit in which they differ.
+	 *
+	 * @param index
+	 *            The index of the pixel
+	 * @param x
+	 *            The x lattice coordinate of the point
+	 * @param y
+	 *            The y lattice coordinate of the point
+	 * @param z
+	 *            The z lattice coordinate of the point
+	 * @param minDepth
+	 *            The depth of the node rays start from otherwise
+	 * @return The ancestor, whose minimum lattice coordinates are those of the point rounded down to its width, or null if there is none deeper than
+	 *         minDepth or the node has been deleted
+	 */
+	public OctreeNode getStartNode(int index, long x, long y, long z, int minDepth) {
+		OctreeNode node = nodes[index];
+		if (node == null || node.isDeleted())
+			return null;
+
+		long difference = (x ^ nodeX[index]) | (y ^ nodeY[index]) | (z ^ nodeZ[index]);
+		int depth = LatticeRayCast.LATTICE_DEPTH - (64 - Long.numberOfLeadingZeros(difference));
+		if (depth <= minDepth || node.getDepth() <= minDepth)
+			return null;
+
+		// deleting a node deletes all its children, so the ancestors of a node which has not been deleted have not been either. The brick manager may
+		// still delete them while climbing, which clears their parents.
+		while (node.getDepth() > depth) {
+			node = node.getParent();
+			if (node == null)
+				return null;
+		}
+		return node;
+	}
+
+	/**
+	 * Remembers the node a pixel's ray hit. Each pixel is only stored by the tile tracing it, so tiles can store in parallel.
+	 *
+	 * @param index
+	 *            The index of the pixel
+	 * @param node
+	 *            The node hit, null if the ray missed the fractal in which case the last node hit is kept
+	 * @param x
+	 *            The minimum x lattice coordinate of the node
+	 * @param y
+	 *            The minimum y lattice coordinate of the node
+	 * @param z
+	 *            The minimum z lattice coordinate of the node
+	 */
+	public void store(int index, OctreeNode node, long x, long y, long z) {
+		if (node == null)
+			return;
+
+		nodes[index] = node;
+		nodeX[index] = x;
+		nodeY[index] = y;
+		nodeZ[index] = z;
+	}
+
+	/**
+	 * Forgets every node, for when the octree is replaced
+	 */
+	public void clear() {
+		Arrays.fill(nodes, null);
+	}
+}
@@ -150,6 +150,19 @@ public class CameraTest {
 		}
 	}
 
+	@Test
+	public void testMoveCameraByPrecisely() {
+		// move the camera by steps too small to change its position on their own
+		camera.initialise(new Vector3d(0.3d, 0d, 0d), new Vector3d(0.3d, 0d, -1d), startDistanceToViewplane, startViewplaneWidth, startViewplaneHeight);
+		double step = Math.scalb(1d, -60);
+		for (int i = 0; i < 1000; i++)
+			camera.moveCameraBy(new Vector3d(step, 0d, 0d));
+
+		// the position and its rounding error together have moved by every step exactly
+		assertTrue("camera not moved by the steps", (camera.getPosition().x - 0.3d) + camera.getPositionError().x == 1000 * step);
+		assertTrue("position not the nearest double", camera.getPosition().x == 0.3d + 1000 * step);
+	}
+
 	@Test
 	public void testRotateAxisDouble() {
 
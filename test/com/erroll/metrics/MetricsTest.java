@@ -38,4 +38,25 @@ public class MetricsTest {
 		assertTrue("iterations1 incremented wrong number of times", tester.getData("iterations1") == 4);
 		assertTrue("iterations2 incremented wrong number of times", tester.getData("iterations2") == 5);
 	}
+
+	@Test
+	public void testRegisterFrameEncoded() {
+		// test the first encode time is taken as it is and later ones are smoothed towards
+		tester.registerFrameEncoded(10d);
+		assertTrue("first encode time not recorded", tester.getEncodeTime() == 10d);
+		tester.registerFrameEncoded(20d);
+		assertTrue("encode time not smoothed", tester.getEncodeTime() > 10d && tester.getEncodeTime() < 20d);
+		assertTrue("encoded frames counted wrong", tester.getEncodedFrames() == 2);
+	}
+
+	@Test
+	public void testRegisterStageTime() {
+		// test stages are timed separately, the first time taken as it is and later ones smoothed towards
+		assertTrue("stage timed before it was done", tester.getStageTime("trace") == 0d);
+		tester.registerStageTime("trace", 10d);
+		tester.registerStageTime("shade", 4d);
+		assertTrue("first stage time not recorded", tester.getStageTime("trace") == 10d && tester.getStageTime("shade") == 4d);
+		tester.registerStageTime("trace", 20d);
+		assertTrue("stage time not smoothed", tester.getStageTime("trace") > 10d && tester.getStageTime("trace") < 20d);
+	}
 }
@@ -0,0 +1,92 @@
+package com.erroll.octree;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PackedOctreeTest {
+
+	@Test
+	public void testSubdivide() {
+		testSubdivide(new HeapPackedOctree(1));
+		testSubdivide(new DirectPackedOctree());
+	}
+
+	@Test
+	public void testUnify() {
+		testUnify(new HeapPackedOctree(1));
+		testUnify(new DirectPackedOctree());
+	}
+
+	@Test
+	public void testChunks() {
+		// fill more than one chunk with groups of 3, which do not divide a chunk evenly, subdividing nodes in the order they are added
+		PackedOctree octree = new DirectPackedOctree();
+		int[] nodes = new int[90001];
+		int[] groups = new int[30000];
+		int nodeCount = 1;
+		for (int i = 0; i < 30000; i++) {
+			groups[i] = octree.subdivide(nodes[i], 0x07);
+			for (int j = 0; j < 3; j++) {
+				octree.setColor(groups[i] + j, i * 3 + j);
+				nodes[nodeCount++] = groups[i] + j;
+			}
+		}
+		assertTrue(octree.getNodeCount() == 90001);
+
+		// test no group spans two chunks and every node is found with its color
+		for (int i = 0; i < 30000; i++) {
+			assertTrue((groups[i] >>> 16) == ((groups[i] + 2) >>> 16));
+			for (int j = 0; j < 3; j++)
+				assertTrue(octree.getChild(nodes[i], j) == groups[i] + j && octree.getColor(groups[i] + j) == i * 3 + j);
+		}
+	}
+
+	/**
+	 * Tests valid children are added next to each other, found by octant, and take the depth after their parent's and their parent's color
+	 */
+	private void testSubdivide(PackedOctree octree) {
+		octree.setColor(PackedOctree.ROOT, 0x123456);
+
+		// subdivide the root into 3 valid children, and then one of them
+		int child = octree.subdivide(PackedOctree.ROOT, 0x29);
+		int grandchild = octree.subdivide(child + 2, 0xFF);
+		assertTrue(octree.getNodeCount() == 12);
+		assertTrue(!octree.isLeaf(PackedOctree.ROOT) && octree.getValidMask(PackedOctree.ROOT) == 0x29);
+		assertTrue(octree.isLeaf(child) && !octree.isLeaf(child + 2));
+
+		// test valid children are found by octant, next to each other, and empty leaves are not stored
+		assertTrue(octree.getChild(PackedOctree.ROOT, 0) == child);
+		assertTrue(octree.getChild(PackedOctree.ROOT, 1) == -1 && octree.getChild(PackedOctree.ROOT, 2) == -1);
+		assertTrue(octree.getChild(PackedOctree.ROOT, 3) == child + 1);
+		assertTrue(octree.getChild(PackedOctree.ROOT, 5) == child + 2);
+		assertTrue(octree.getChild(child + 2, 7) == grandchild + 7);
+
+		// test children take the depth after their parent's and their parent's color
+		assertTrue(octree.getDepth(child + 1) == 1 && octree.getDepth(grandchild) == 2);
+		assertTrue(octree.getColor(grandchild + 3) == 0x123456 && octree.isLeaf(grandchild + 3));
+	}
+
+	/**
+	 * Tests unifying a node makes it a leaf and its descendants' groups are reused by later subdivisions of the same number of children
+	 */
+	private void testUnify(PackedOctree octree) {
+		int child = octree.subdivide(PackedOctree.ROOT, 0xFF);
+		int grandchild = octree.subdivide(child, 0x0F);
+		int greatGrandchild = octree.subdivide(grandchild + 3, 0x0F);
+		octree.setColor(child, 0xABCDEF);
+		assertTrue(octree.getNodeCount() == 17);
+
+		octree.unify(PackedOctree.ROOT, 0);
+		assertTrue(octree.isLeaf(child) && octree.getChild(PackedOctree.ROOT, 0) == child);
+		assertTrue(octree.getColor(child) == 0xABCDEF && octree.getDepth(child) == 1);
+		assertTrue(octree.getNodeCount() == 9);
+
+		// groups of 4 are taken from the free list, most recently freed first, before any more room is made
+		int first = octree.subdivide(child + 1, 0xF0);
+		int second = octree.subdivide(child + 2, 0x0F);
+		assertTrue(first == grandchild && second == greatGrandchild);
+		assertTrue(octree.subdivide(child + 3, 0x0F) == greatGrandchild + 4);
+		assertTrue(octree.getNodeCount() == 21);
+	}
+}
@@ -0,0 +1,52 @@
+package com.erroll.renderer;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.erroll.TestUtils;
+import com.erroll.octree.OctreeNode;
+
+public class LatticeRayCastTest {
+
+	@Test
+	public void testLattice() {
+		// test the root node covers the whole lattice and each depth halves the width of a node
+		assertTrue(LatticeRayCast.toLattice(-1d) == 0);
+		assertTrue(LatticeRayCast.getNodeSize(0) * LatticeRayCast.UNIT == 2d);
+		assertTrue(LatticeRayCast.getNodeSize(5) * 2 == LatticeRayCast.getNodeSize(4));
+
+		// test the bounds of nodes convert exactly both ways, even deep down
+		double boxMin = -1d + 3 * Math.pow(2d, 1d - 50);
+		assertTrue(LatticeRayCast.toSpace(LatticeRayCast.toLattice(boxMin)) == boxMin);
+		assertTrue(LatticeRayCast.toLattice(boxMin) == 3 * LatticeRayCast.getNodeSize(50));
+		assertTrue(LatticeRayCast.toSpace(LatticeRayCast.getNodeSize(1)) == 0d);
+	}
+
+	@Test
+	public void testCast() {
+		// a single non-empty root node
+		OctreeNode rootNode = new OctreeNode();
+		rootNode.setDepth(0);
+		rootNode.setBrick(rootNode);
+		rootNode.setLeaf(true);
+		rootNode.setEmpty(false);
+		rootNode.setColor(123);
+
+		// test a ray from outside hits the root node where it enters it, as a double traversal would (nothing is queued for subdivision as A is 0)
+		RayCast doubleCast = new RayCast(null, 0d, 1d);
+		LatticeRayCast latticeCast = new LatticeRayCast(null, 0d, 1d);
+		doubleCast.setRay(0.3d, -0.2d, 3d, 0d, 0.28d, -0.96d);
+		latticeCast.setRay(0.3d, -0.2d, 3d, 0d, 0.28d, -0.96d);
+		doubleCast.cast(rootNode, -1d, -1d, -1d, 2d);
+		latticeCast.cast(rootNode, -1d, -1d, -1d, 2d);
+		assertTrue(latticeCast.getColor() == 123 && latticeCast.getHitNode() == rootNode);
+		assertTrue(TestUtils.equals(latticeCast.getDepth(), 2d / 0.96d));
+		assertTrue(latticeCast.getDepth() == doubleCast.getDepth());
+
+		// test a ray which misses the root node is black
+		latticeCast.setRay(3d, 3d, 3d, 0d, 0d, 1d);
+		latticeCast.cast(rootNode, -1d, -1d, -1d, 2d);
+		assertTrue(latticeCast.getColor() == 0 && latticeCast.getDepth() == Double.MAX_VALUE && latticeCast.getHitNode() == null);
+	}
+}
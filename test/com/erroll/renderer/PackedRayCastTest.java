@@ -0,0 +1,176 @@
+package com.erroll.renderer;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ForkJoinPool;
+
+import javax.vecmath.Vector3d;
+
+import org.junit.Test;
+
+import com.erroll.camera.Camera;
+import com.erroll.math.fractal.FractalInterface;
+import com.erroll.math.fractal.MengerSponge;
+import com.erroll.octree.DirectPackedOctree;
+import com.erroll.octree.HeapPackedOctree;
+import com.erroll.octree.OctreeNode;
+import com.erroll.octree.PackedOctree;
+import com.erroll.octree.scaleadaptation.BrickManager;
+import com.erroll.octree.scaleadaptation.SubdivideNodeThread;
+import com.erroll.octree.scaleadaptation.Subdivider;
+
+public class PackedRayCastTest {
+
+	// the width and height in pixels of the frames compared
+	private static final int SCREEN_SIZE = 96;
+
+	@Test
+	public void testSameAsStack() {
+		// a menger sponge subdivided to depth 4, and packed copies of it on and off the heap
+		OctreeNode rootNode = createSponge();
+		PackedOctree[] octrees = { PackedOctree.pack(rootNode), PackedOctree.pack(rootNode, new DirectPackedOctree()) };
+		for (PackedOctree octree : octrees)
+			assertSameAsStack(rootNode, octree);
+	}
+
+	@Test
+	public void testSubdivideAfterUnify() {
+		OctreeNode rootNode = createSponge();
+		PackedOctree[] octrees = { PackedOctree.pack(rootNode), PackedOctree.pack(rootNode, new DirectPackedOctree()) };
+		for (PackedOctree octree : octrees) {
+			// unify every child of the root, leaving only the root and its children
+			int nodeCount = octree.getNodeCount();
+			for (int octant = 0; octant < 8; octant++)
+				octree.unify(PackedOctree.ROOT, octant);
+			assertTrue(octree.getNodeCount() == 1 + Integer.bitCount(octree.getValidMask(PackedOctree.ROOT)));
+
+			// test subdividing them again from the free list gives back the same octree
+			for (int octant = 0; octant < 8; octant++) {
+				int child = octree.getChild(PackedOctree.ROOT, octant);
+				if (child != -1)
+					subdivide(octree, child, rootNode.getChild(octant >> 2, (octant >> 1) & 1, octant & 1));
+			}
+			assertTrue(octree.getNodeCount() == nodeCount);
+			assertSameAsStack(rootNode, octree);
+		}
+	}
+
+	@Test
+	public void testFramesSameAsStack() {
+		// test frames traced with the packed traversal, packed into storage reused from frame to frame as the renderer does, are the frames traced through
+		// the OctreeNodes from outside the sponge, inside it and looking along its diagonal
+		OctreeNode rootNode = createSponge();
+		Subdivider subdivider = new Subdivider(new MengerSponge());
+		PackedOctree[] octrees = { new HeapPackedOctree(1), new DirectPackedOctree() };
+		double[][] views = { { 0.3d, 0.4d, 2.2d, 0.01d, 0.02d, 0d }, { 0.05d, -0.02d, 0.01d, 0.5d, 0.3d, -1d }, { 1.3d, 1.1d, 1.4d, 0d, 0d, 0d } };
+		for (PackedOctree octree : octrees) {
+			for (double[] view : views) {
+				Camera camera = new Camera();
+				camera.initialise(new Vector3d(view[0], view[1], view[2]), new Vector3d(view[3], view[4], view[5]), 3d, 1.5d, 1.5d);
+				int[] colors = new int[SCREEN_SIZE * SCREEN_SIZE];
+				double[] depth = new double[SCREEN_SIZE * SCREEN_SIZE];
+				OctreeNode[] nodes = new OctreeNode[SCREEN_SIZE * SCREEN_SIZE];
+				render(camera, rootNode, subdivider, "stack", null, colors, depth, nodes);
+
+				octree.clear();
+				PackedOctree.pack(rootNode, octree);
+				int[] packedColors = new int[SCREEN_SIZE * SCREEN_SIZE];
+				double[] packedDepth = new double[SCREEN_SIZE * SCREEN_SIZE];
+				OctreeNode[] packedNodes = new OctreeNode[SCREEN_SIZE * SCREEN_SIZE];
+				render(camera, rootNode, subdivider, "packed", octree, packedColors, packedDepth, packedNodes);
+				for (int i = 0; i < SCREEN_SIZE * SCREEN_SIZE; i++)
+					assertTrue(packedColors[i] == colors[i] && packedDepth[i] == depth[i] && packedNodes[i] == nodes[i]);
+			}
+		}
+	}
+
+	/**
+	 * Traces every pixel of the screen with a traversal, using the renderer's voxel size constants for the camera
+	 */
+	private void render(Camera camera, OctreeNode rootNode, Subdivider subdivider, String traversal, PackedOctree octree, int[] colors, double[] depth,
+			OctreeNode[] nodes) {
+		RayGenerator rayGenerator = new RayGenerator(camera, SCREEN_SIZE, SCREEN_SIZE);
+		double voxelSizeConstantA = camera.getDistanceToViewplane() * SCREEN_SIZE;
+		double voxelSizeConstantB = camera.getViewplaneTop().length() * 0.5d;
+		new ForkJoinPool().invoke(new RenderTile(rayGenerator, rootNode, rootNode, new Vector3d(-1d, -1d, -1d), 2d, SCREEN_SIZE, SCREEN_SIZE, colors, depth,
+				nodes, null, subdivider, voxelSizeConstantA, voxelSizeConstantB, 1, traversal, octree, RebasedFrame.SPACE, null, 1, 1, false, 0d, 0, 0L));
+	}
+
+	/**
+	 * Tests rays from outside and inside the sponge find the same colors at the same positions and depths in a packed octree as StackRayCast does in the
+	 * octree it was packed from, with and without terminating early, and the same nodes where they were packed rather than subdivided
+	 */
+	private void assertSameAsStack(OctreeNode rootNode, PackedOctree octree) {
+		Subdivider subdivider = new Subdivider(new MengerSponge());
+		double[] voxelSizeConstantsA = { 1e9d, 60d };
+		for (double voxelSizeConstantA : voxelSizeConstantsA) {
+			StackRayCast stackCast = new StackRayCast(subdivider, voxelSizeConstantA, 1d);
+			PackedRayCast packedCast = new PackedRayCast(octree, subdivider, voxelSizeConstantA, 1d);
+			for (int i = 0; i < 400; i++) {
+				double originX = i % 2 == 0 ? 0.1d : 2.5d;
+				double originY = i % 2 == 0 ? -0.05d : 1.7d;
+				double originZ = i % 2 == 0 ? 0.02d : 3.1d;
+				Vector3d dir = new Vector3d(Math.sin(i * 0.37d) - originX * 0.3d, Math.cos(i * 0.61d) - originY * 0.3d, Math.sin(i * 0.83d) - originZ * 0.3d);
+				dir.normalize();
+				stackCast.setRay(originX, originY, originZ, dir.x, dir.y, dir.z);
+				packedCast.setRay(originX, originY, originZ, dir.x, dir.y, dir.z);
+				stackCast.cast(rootNode, -1d, -1d, -1d, 2d);
+				packedCast.cast(PackedOctree.ROOT, -1d, -1d, -1d, 2d);
+				assertTrue(packedCast.getColor() == stackCast.getColor() && packedCast.getDepth() == stackCast.getDepth());
+				assertTrue((packedCast.getHitIndex() == -1) == (stackCast.getHitNode() == null));
+				assertTrue(packedCast.getHitNode() == null || packedCast.getHitNode() == stackCast.getHitNode());
+				assertTrue(stackCast.getHitNode() == null || (packedCast.getHitX() == stackCast.getHitX() && packedCast.getHitY() == stackCast.getHitY()
+						&& packedCast.getHitZ() == stackCast.getHitZ() && octree.getDepth(packedCast.getHitIndex()) == stackCast.getHitNode().getDepth()));
+			}
+		}
+	}
+
+	/**
+	 * Subdivides a leaf of a packed octree as the node it was packed from is subdivided, all the way down
+	 */
+	private void subdivide(PackedOctree octree, int index, OctreeNode node) {
+		if (node.isLeaf())
+			return;
+		int validMask = 0;
+		for (int octant = 0; octant < 8; octant++) {
+			OctreeNode child = node.getChild(octant >> 2, (octant >> 1) & 1, octant & 1);
+			if (!(child.isLeaf() && child.isEmpty()))
+				validMask |= 1 << octant;
+		}
+		int child = octree.subdivide(index, validMask);
+		for (int octant = 0; octant < 8; octant++) {
+			if ((validMask & (1 << octant)) == 0)
+				continue;
+			OctreeNode childNode = node.getChild(octant >> 2, (octant >> 1) & 1, octant & 1);
+			octree.setColor(child, childNode.getColor());
+			subdivide(octree, child++, childNode);
+		}
+	}
+
+	/**
+	 * @return The root node of a menger sponge subdivided to depth 4
+	 */
+	private OctreeNode createSponge() {
+		BrickManager bm = new BrickManager();
+		OctreeNode rootNode = new OctreeNode();
+		rootNode.setDepth(0);
+		rootNode.setBrick(rootNode);
+		rootNode.setLeaf(true);
+		rootNode.setEmpty(false);
+		subdivide(bm, new MengerSponge(), rootNode, -1d, -1d, -1d, 2d, 4);
+		return rootNode;
+	}
+
+	private void subdivide(BrickManager bm, FractalInterface f, OctreeNode node, double x, double y, double z, double dim, int maxDepth) {
+		if (node.getDepth() >= maxDepth || node.isEmpty())
+			return;
+		new SubdivideNodeThread(bm, f, node, new Vector3d(x, y, z), dim).run();
+		if (node.isLeaf())
+			return;
+		double half = dim / 2d;
+		for (int i = 0; i < 2; i++)
+			for (int j = 0; j < 2; j++)
+				for (int k = 0; k < 2; k++)
+					subdivide(bm, f, node.getChild(i, j, k), x + i * half, y + j * half, z + k * half, half, maxDepth);
+	}
+}
@@ -0,0 +1,91 @@
+package com.erroll.renderer;
+
+import static org.junit.Assert.assertTrue;
+
+import javax.vecmath.Vector3d;
+
+import org.junit.Test;
+
+import com.erroll.camera.Camera;
+import com.erroll.math.fractal.FractalInterface;
+import com.erroll.math.fractal.MengerSponge;
+import com.erroll.octree.OctreeNode;
+import com.erroll.octree.scaleadaptation.BrickManager;
+import com.erroll.octree.scaleadaptation.SubdivideNodeThread;
+import com.erroll.octree.scaleadaptation.Subdivider;
+
+public class RayCastTest {
+
+	// the width and height in pixels of the screen rays are cast across
+	private static final int SCREEN_SIZE = 64;
+
+	@Test
+	public void testSameAsReference() {
+		OctreeNode rootNode = createSponge(4);
+		Subdivider subdivider = new Subdivider(new MengerSponge());
+		Camera camera = new Camera();
+		camera.initialise(new Vector3d(0.3d, 0.4d, 2.2d), new Vector3d(0.01d, 0.02d, 0d), 3d, 1.5d, 1.5d);
+		RayGenerator rayGenerator = new RayGenerator(camera, SCREEN_SIZE, SCREEN_SIZE);
+
+		// test every pixel finds the same color as the traversal did before it kept its ray in primitives, with and without terminating early. Dividing by
+		// the direction was replaced by multiplying by its reciprocal, so depths may differ by rounding.
+		int[] referenceColors = new int[SCREEN_SIZE * SCREEN_SIZE];
+		double[] referenceDepth = new double[SCREEN_SIZE * SCREEN_SIZE];
+		double[] voxelSizeConstantsA = { 1e9d, 60d };
+		for (double voxelSizeConstantA : voxelSizeConstantsA) {
+			RayCast rc = new RayCast(subdivider, voxelSizeConstantA, 1d);
+			for (int row = 0; row < SCREEN_SIZE; row++) {
+				for (int col = 0; col < SCREEN_SIZE; col++) {
+					int index = row * SCREEN_SIZE + col;
+					Ray ray = new Ray(camera.getPosition(), camera.getVectorToPixel(col, row, SCREEN_SIZE, SCREEN_SIZE));
+					new ReferenceRayCast(rootNode, new Vector3d(-1d, -1d, -1d), 2d, ray, index, referenceColors, referenceDepth, subdivider,
+							voxelSizeConstantA, 1d).run();
+
+					// the same ray as the reference
+					rc.setRay(ray.getStart().x, ray.getStart().y, ray.getStart().z, ray.getDir().x, ray.getDir().y, ray.getDir().z);
+					rc.cast(rootNode, -1d, -1d, -1d, 2d);
+					assertTrue(rc.getColor() == referenceColors[index]);
+					assertTrue(equalsRounded(rc.getDepth(), referenceDepth[index]));
+
+					// the ray built by the ray generator instead of the camera
+					rayGenerator.setPixelRay(rc, col, row);
+					rc.cast(rootNode, -1d, -1d, -1d, 2d);
+					assertTrue(rc.getColor() == referenceColors[index]);
+					assertTrue(equalsRounded(rc.getDepth(), referenceDepth[index]));
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return True if both depths are misses or they are equal to within rounding
+	 */
+	private boolean equalsRounded(double depth, double referenceDepth) {
+		if (depth == Double.MAX_VALUE || referenceDepth == Double.MAX_VALUE)
+			return depth == referenceDepth;
+		return Math.abs(depth - referenceDepth) <= 1e-12d * Math.max(1d, referenceDepth);
+	}
+
+	private OctreeNode createSponge(int maxDepth) {
+		OctreeNode rootNode = new OctreeNode();
+		rootNode.setDepth(0);
+		rootNode.setBrick(rootNode);
+		rootNode.setLeaf(true);
+		rootNode.setEmpty(false);
+		subdivide(new BrickManager(), new MengerSponge(), rootNode, -1d, -1d, -1d, 2d, maxDepth);
+		return rootNode;
+	}
+
+	private void subdivide(BrickManager bm, FractalInterface f, OctreeNode node, double x, double y, double z, double dim, int maxDepth) {
+		if (node.getDepth() >= maxDepth || node.isEmpty())
+			return;
+		new SubdivideNodeThread(bm, f, node, new Vector3d(x, y, z), dim).run();
+		if (node.isLeaf())
+			return;
+		double half = dim / 2d;
+		for (int i = 0; i < 2; i++)
+			for (int j = 0; j < 2; j++)
+				for (int k = 0; k < 2; k++)
+					subdivide(bm, f, node.getChild(i, j, k), x + i * half, y + j * half, z + k * half, half, maxDepth);
+	}
+}
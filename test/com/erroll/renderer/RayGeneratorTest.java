@@ -0,0 +1,75 @@
+package com.erroll.renderer;
+
+import static org.junit.Assert.assertTrue;
+
+import javax.vecmath.Vector3d;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.erroll.TestUtils;
+import com.erroll.camera.Camera;
+
+public class RayGeneratorTest {
+
+	// the object to be tested on
+	private RayGenerator rayGenerator;
+
+	// the camera the rays are generated from, looking slightly down at the origin
+	private Camera camera;
+
+	@Before
+	public void setUp() throws Exception {
+		camera = new Camera();
+		camera.initialise(new Vector3d(0.3d, 0.4d, 2.2d), new Vector3d(0d, 0d, 0d), 3d, 1.5d, 1.5d);
+		rayGenerator = new RayGenerator(camera, 256, 256);
+	}
+
+	@Test
+	public void testGetPoint() {
+		// test the point at distance 0 is the camera position
+		double[] point = new double[3];
+		rayGenerator.getPoint(10d, 20d, 0d, point);
+		assertTrue(new Vector3d(point).epsilonEquals(camera.getPosition(), TestUtils.EPSILON));
+
+		// test the point is the given distance from the camera
+		rayGenerator.getPoint(10d, 20d, 2d, point);
+		Vector3d offset = new Vector3d(point);
+		offset.sub(camera.getPosition());
+		assertTrue(TestUtils.equals(offset.length(), 2d));
+	}
+
+	@Test
+	public void testProject() {
+		// test projecting points along pixel rays gives back their pixels and distances
+		double[] point = new double[3];
+		double[] pixel = new double[3];
+		for (int col = 0; col < 256; col += 51) {
+			rayGenerator.getPoint(col, 255 - col, 1.7d, point);
+			assertTrue(rayGenerator.project(point[0], point[1], point[2], pixel));
+			assertTrue(TestUtils.equals(pixel[0], col));
+			assertTrue(TestUtils.equals(pixel[1], 255 - col));
+			assertTrue(TestUtils.equals(pixel[2], 1.7d));
+		}
+
+		// test a point behind the camera cannot be projected
+		rayGenerator.getPoint(128d, 128d, -1d, point);
+		assertTrue(!rayGenerator.project(point[0], point[1], point[2], pixel));
+	}
+
+	@Test
+	public void testGetEntryDistance() {
+		// test the ray through a point enters a small box around it just before the point
+		double[] point = new double[3];
+		rayGenerator.getPoint(100d, 150d, 2d, point);
+		double t = rayGenerator.getEntryDistance(100d, 150d, point[0] - 0.01d, point[1] - 0.01d, point[2] - 0.01d, 0.02d);
+		assertTrue(t < 2d && t > 1.95d);
+
+		// test a ray through a different part of the screen misses the box
+		assertTrue(rayGenerator.getEntryDistance(0d, 0d, point[0] - 0.01d, point[1] - 0.01d, point[2] - 0.01d, 0.02d) == Double.MAX_VALUE);
+
+		// test the distance is 0 when the camera is inside the box
+		Vector3d position = camera.getPosition();
+		assertTrue(rayGenerator.getEntryDistance(100d, 150d, position.x - 0.5d, position.y - 0.5d, position.z - 0.5d, 1d) == 0d);
+	}
+}
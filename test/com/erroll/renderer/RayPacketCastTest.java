@@ -0,0 +1,118 @@
+package com.erroll.renderer;
+
+import static org.junit.Assert.assertTrue;
+
+import javax.vecmath.Vector3d;
+
+import org.junit.Test;
+
+import com.erroll.math.fractal.FractalInterface;
+import com.erroll.math.fractal.MengerSponge;
+import com.erroll.octree.OctreeNode;
+import com.erroll.octree.scaleadaptation.BrickManager;
+import com.erroll.octree.scaleadaptation.SubdivideNodeThread;
+import com.erroll.octree.scaleadaptation.Subdivider;
+
+public class RayPacketCastTest {
+
+	// the width and height in pixels of the screen the packets are cast across
+	private static final int SCREEN_SIZE = 48;
+
+	@Test
+	public void testSameAsRayCast() {
+		// a menger sponge subdivided to depth 4
+		FractalInterface f = new MengerSponge();
+		BrickManager bm = new BrickManager();
+		OctreeNode rootNode = new OctreeNode();
+		rootNode.setDepth(0);
+		rootNode.setBrick(rootNode);
+		rootNode.setLeaf(true);
+		rootNode.setEmpty(false);
+		subdivide(bm, f, rootNode, -1d, -1d, -1d, 2d, 4);
+
+		// test packets of 2x2 and 4x4 rays from outside and inside the sponge find what each ray finds by itself, with and without terminating early
+		Subdivider subdivider = new Subdivider(f);
+		double[] voxelSizeConstantsA = { 1e9d, 60d };
+		int[] packetSizes = { 2, 4 };
+		double[][] origins = { { 0.3d, 0.4d, 2.2d }, { 0.05d, -0.02d, 0.01d } };
+		for (double voxelSizeConstantA : voxelSizeConstantsA) {
+			for (int packetSize : packetSizes) {
+				for (double[] origin : origins) {
+					int divergentPackets = testPackets(rootNode, subdivider, voxelSizeConstantA, packetSize, origin);
+
+					// the screen crosses the edges of the sponge and its holes, so some packets must have rays which hit different nodes or miss
+					assertTrue(divergentPackets > 0);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Casts packets of packetSize x packetSize rays across the screen, testing each ray finds the same color, depth and node as RayCast does for it
+	 *
+	 * @return The number of packets whose rays did not all hit the same node
+	 */
+	private int testPackets(OctreeNode rootNode, Subdivider subdivider, double voxelSizeConstantA, int packetSize, double[] origin) {
+		RayPacketCast packet = new RayPacketCast(packetSize * packetSize, subdivider, voxelSizeConstantA, 1d);
+		RayCast rayCast = new RayCast(subdivider, voxelSizeConstantA, 1d);
+		int divergentPackets = 0;
+		for (int packetRow = 0; packetRow < SCREEN_SIZE; packetRow += packetSize) {
+			for (int packetCol = 0; packetCol < SCREEN_SIZE; packetCol += packetSize) {
+				packet.clear();
+				for (int row = packetRow; row < packetRow + packetSize; row++) {
+					for (int col = packetCol; col < packetCol + packetSize; col++) {
+						Vector3d dir = getDirection(row, col);
+						packet.addRay(origin[0], origin[1], origin[2], dir.x, dir.y, dir.z);
+					}
+				}
+				packet.cast(rootNode, -1d, -1d, -1d, 2d);
+
+				// rays were added to the packet in row order
+				int i = 0;
+				boolean divergent = false;
+				for (int row = packetRow; row < packetRow + packetSize; row++) {
+					for (int col = packetCol; col < packetCol + packetSize; col++) {
+						Vector3d dir = getDirection(row, col);
+						rayCast.setRay(origin[0], origin[1], origin[2], dir.x, dir.y, dir.z);
+						rayCast.cast(rootNode, -1d, -1d, -1d, 2d);
+						assertTrue(packet.getColor(i) == rayCast.getColor());
+						assertTrue(packet.getDepth(i) == rayCast.getDepth());
+						assertTrue(packet.getHitNode(i) == rayCast.getHitNode());
+						if (rayCast.getHitNode() != null) {
+							assertTrue(packet.getHitX(i) == rayCast.getHitX());
+							assertTrue(packet.getHitY(i) == rayCast.getHitY());
+							assertTrue(packet.getHitZ(i) == rayCast.getHitZ());
+						}
+						divergent |= packet.getHitNode(i) != packet.getHitNode(0);
+						i++;
+					}
+				}
+				if (divergent)
+					divergentPackets++;
+			}
+		}
+		return divergentPackets;
+	}
+
+	/**
+	 * @return The normalized direction of the ray through a pixel of a screen looking down the negative z axis
+	 */
+	private Vector3d getDirection(int row, int col) {
+		Vector3d dir = new Vector3d((col + 0.5d) / SCREEN_SIZE * 1.6d - 0.8d, (row + 0.5d) / SCREEN_SIZE * 1.6d - 0.8d, -1d);
+		dir.normalize();
+		return dir;
+	}
+
+	private void subdivide(BrickManager bm, FractalInterface f, OctreeNode node, double x, double y, double z, double dim, int maxDepth) {
+		if (node.getDepth() >= maxDepth || node.isEmpty())
+			return;
+		new SubdivideNodeThread(bm, f, node, new Vector3d(x, y, z), dim).run();
+		if (node.isLeaf())
+			return;
+		double half = dim / 2d;
+		for (int i = 0; i < 2; i++)
+			for (int j = 0; j < 2; j++)
+				for (int k = 0; k < 2; k++)
+					subdivide(bm, f, node.getChild(i, j, k), x + i * half, y + j * half, z + k * half, half, maxDepth);
+	}
+}
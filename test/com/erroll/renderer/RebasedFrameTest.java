@@ -0,0 +1,45 @@
+package com.erroll.renderer;
+
+import static org.junit.Assert.assertTrue;
+
+import javax.vecmath.Vector3d;
+
+import org.junit.Test;
+
+public class RebasedFrameTest {
+
+	@Test
+	public void testSpace() {
+		// test the space frame gives positions in space
+		assertTrue(RebasedFrame.SPACE.getScale() == 1d);
+		assertTrue(RebasedFrame.SPACE.toLocal(LatticeRayCast.toLattice(0.375d), 0) == 0.375d);
+		assertTrue(RebasedFrame.SPACE.toLocal(0.3d, 0d, 1) == 0.3d);
+		assertTrue(RebasedFrame.SPACE.toSpace(0.25d, -0.5d, 0.3d).epsilonEquals(new Vector3d(0.25d, -0.5d, 0.3d), 0d));
+		assertTrue(RebasedFrame.SPACE.getWidth(LatticeRayCast.getNodeSize(0)) == 2d);
+	}
+
+	@Test
+	public void testDeepFrame() {
+		// a frame anchored at a node of depth 50, whose children are only a few bits wider than the precision of positions in space near it
+		long anchorSize = LatticeRayCast.getNodeSize(50);
+		long anchor = LatticeRayCast.toLattice(0.3d) & -anchorSize;
+		RebasedFrame frame = new RebasedFrame(anchor, anchor, anchor, 50);
+		assertTrue(frame.getScale() == Math.scalb(1d, 49));
+		assertTrue(frame.toLocal(anchor, 0) == 0d && frame.getWidth(anchorSize) == 1d);
+		assertTrue(frame.contains(anchor, anchor + anchorSize - 1, anchor) && !frame.contains(anchor, anchor, anchor + anchorSize));
+
+		// test the lattice coordinates of the deepest nodes convert exactly both ways, inside and outside the anchor node
+		long unitsInside = anchor + 3 * LatticeRayCast.getNodeSize(60);
+		long unitsOutside = anchor - 5 * LatticeRayCast.getNodeSize(60);
+		assertTrue(frame.toLocal(unitsInside, 1) == 3 * Math.scalb(1d, -10));
+		assertTrue(frame.toLattice(frame.toLocal(unitsInside, 1), 1) == unitsInside);
+		assertTrue(frame.toLattice(frame.toLocal(unitsOutside, 2), 2) == unitsOutside);
+
+		// test a position in space whose rounding error is lost when added to it is still placed exactly in the frame
+		double position = LatticeRayCast.toSpace(anchor);
+		double positionError = 3 * LatticeRayCast.UNIT;
+		assertTrue(position + positionError == position);
+		assertTrue(frame.toLocal(position, positionError, 0) == 3 * Math.scalb(1d, -10));
+		assertTrue(LatticeRayCast.toLattice(position, positionError) == unitsInside);
+	}
+}
@@ -0,0 +1,167 @@
+package com.erroll.renderer;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.vecmath.Vector3d;
+
+import org.junit.Test;
+
+import com.erroll.camera.Camera;
+import com.erroll.math.fractal.FractalInterface;
+import com.erroll.math.fractal.MengerSponge;
+import com.erroll.math.fractal.SierpinskiGasket;
+import com.erroll.octree.OctreeNode;
+import com.erroll.octree.scaleadaptation.BrickManager;
+import com.erroll.octree.scaleadaptation.SubdivideNodeThread;
+import com.erroll.octree.scaleadaptation.Subdivider;
+import com.erroll.renderer.temporal.StartNodeCache;
+
+public class RenderTileTest {
+
+	// the beam sizes tested against tracing every pixel from the root node
+	private static final int[] BEAM_SIZES = { 2, 4, 8 };
+
+	// the traversals tested
+	private static final String[] TRAVERSALS = { "double", "lattice", "stack" };
+
+	@Test
+	public void testBeamsSameAsPixels() {
+		FractalInterface f = new MengerSponge();
+		OctreeNode rootNode = createOctree(f, 5);
+		Subdivider subdivider = new Subdivider(f);
+
+		// test starting rays near the surface finds the same colors, depths and nodes as casting every ray from the root node, from outside the sponge,
+		// inside it and looking along its diagonal
+		double[][] views = { { 0.3d, 0.4d, 2.2d, 0.01d, 0.02d, 0d }, { 0.05d, -0.02d, 0.01d, 0.5d, 0.3d, -1d }, { 1.3d, 1.1d, 1.4d, 0d, 0d, 0d } };
+		for (double[] view : views) {
+			Camera camera = new Camera();
+			camera.initialise(new Vector3d(view[0], view[1], view[2]), new Vector3d(view[3], view[4], view[5]), 3d, 1.5d, 1.5d);
+			assertBeamsSameAsPixels(camera, rootNode, subdivider, 128);
+		}
+	}
+
+	@Test
+	public void testBeamsSameAsPixelsOnGasket() {
+		FractalInterface f = new SierpinskiGasket();
+		OctreeNode rootNode = createOctree(f, 7);
+		Subdivider subdivider = new Subdivider(f);
+
+		// test from random views in and around the gasket, whose thin struts fall between the corners of blocks
+		Random random = new Random(0);
+		for (int i = 0; i < 20; i++) {
+			Vector3d position = new Vector3d(random.nextDouble() * 4d - 2d, random.nextDouble() * 4d - 2d, random.nextDouble() * 4d - 2d);
+			Vector3d lookPoint = new Vector3d(random.nextDouble() * 2d - 1d, random.nextDouble() * 2d - 1d, random.nextDouble() * 2d - 1d);
+			Camera camera = new Camera();
+			camera.initialise(position, lookPoint, 3d, 1.5d, 1.5d);
+			assertBeamsSameAsPixels(camera, rootNode, subdivider, 256);
+		}
+	}
+
+	@Test
+	public void testPacketsTraceOnlyMaskedPixels() {
+		FractalInterface f = new MengerSponge();
+		OctreeNode rootNode = createOctree(f, 5);
+		Subdivider subdivider = new Subdivider(f);
+		int screenSize = 128;
+		Camera camera = new Camera();
+		camera.initialise(new Vector3d(0.3d, 0.4d, 2.2d), new Vector3d(0.01d, 0.02d, 0d), 3d, 1.5d, 1.5d);
+		RayGenerator rayGenerator = new RayGenerator(camera, screenSize, screenSize);
+		double voxelSizeConstantA = camera.getDistanceToViewplane() * screenSize;
+		double voxelSizeConstantB = camera.getViewplaneTop().length() * 0.5d;
+
+		// trace a checkerboard of pixels in packets, leaving a marker in the others, and remember the nodes hit
+		boolean[] traceMask = new boolean[screenSize * screenSize];
+		int[] colors = new int[screenSize * screenSize];
+		for (int i = 0; i < screenSize * screenSize; i++) {
+			traceMask[i] = (i % screenSize + i / screenSize) % 2 == 0;
+			colors[i] = 1;
+		}
+		double[] depth = new double[screenSize * screenSize];
+		OctreeNode[] nodes = new OctreeNode[screenSize * screenSize];
+		StartNodeCache startNodeCache = new StartNodeCache(screenSize, screenSize);
+		new ForkJoinPool(1).invoke(new RenderTile(rayGenerator, rootNode, rootNode, new Vector3d(-1d, -1d, -1d), 2d, screenSize, screenSize, colors, depth,
+				nodes, traceMask, subdivider, voxelSizeConstantA, voxelSizeConstantB, 4, "double", null, RebasedFrame.SPACE, startNodeCache, 1, 1, false, 0d, 0,
+				0L));
+
+		// test pixels in the mask have what a ray cast by itself finds, with its node in the start node cache, and the others are untouched
+		RayCast rc = new RayCast(subdivider, voxelSizeConstantA, voxelSizeConstantB);
+		for (int row = 0; row < screenSize; row++) {
+			for (int col = 0; col < screenSize; col++) {
+				int index = row * screenSize + col;
+				rayGenerator.setPixelRay(rc, col, row);
+				rc.cast(rootNode, -1d, -1d, -1d, 2d);
+				OctreeNode cached = startNodeCache.getStartNode(index, rc.getHitX(), rc.getHitY(), rc.getHitZ(), 0);
+				if (traceMask[index]) {
+					assertTrue(colors[index] == rc.getColor() && depth[index] == rc.getDepth() && nodes[index] == rc.getHitNode());
+					assertTrue(rc.getHitNode() == null || rc.getHitNode().getDepth() == 0 || cached == rc.getHitNode());
+				} else {
+					assertTrue(colors[index] == 1 && depth[index] == 0d && nodes[index] == null && cached == null);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Tests rendering with each beam size and traversal finds exactly the colors, depths and nodes found by tracing every pixel from the root node
+	 */
+	private void assertBeamsSameAsPixels(Camera camera, OctreeNode rootNode, Subdivider subdivider, int screenSize) {
+		for (String traversal : TRAVERSALS) {
+			int[] colors = new int[screenSize * screenSize];
+			double[] depth = new double[screenSize * screenSize];
+			OctreeNode[] nodes = new OctreeNode[screenSize * screenSize];
+
+			// RayCast nudges the point it descends by a fraction of the node it steps into, so until the neighbor pointers it follows are refined from
+			// coarser nodes it can step past where a ray clips the corner of a node. Render once first so both renders follow the same pointers.
+			render(camera, rootNode, subdivider, screenSize, 1, traversal, colors, depth, nodes);
+			render(camera, rootNode, subdivider, screenSize, 1, traversal, colors, depth, nodes);
+
+			for (int beamSize : BEAM_SIZES) {
+				int[] beamColors = new int[screenSize * screenSize];
+				double[] beamDepth = new double[screenSize * screenSize];
+				OctreeNode[] beamNodes = new OctreeNode[screenSize * screenSize];
+				render(camera, rootNode, subdivider, screenSize, beamSize, traversal, beamColors, beamDepth, beamNodes);
+				for (int i = 0; i < screenSize * screenSize; i++)
+					assertTrue(beamColors[i] == colors[i] && beamDepth[i] == depth[i] && beamNodes[i] == nodes[i]);
+			}
+		}
+	}
+
+	/**
+	 * Traces every pixel of the screen, with rays starting near the surface if beamSize is above 1, using the renderer's voxel size constants for the camera.
+	 * Tiles are traced by a single worker so neighbor pointers are refined in the same order each run.
+	 */
+	private void render(Camera camera, OctreeNode rootNode, Subdivider subdivider, int screenSize, int beamSize, String traversal, int[] colors,
+			double[] depth, OctreeNode[] nodes) {
+		RayGenerator rayGenerator = new RayGenerator(camera, screenSize, screenSize);
+		double voxelSizeConstantA = camera.getDistanceToViewplane() * screenSize;
+		double voxelSizeConstantB = camera.getViewplaneTop().length() * 0.5d;
+		new ForkJoinPool(1).invoke(new RenderTile(rayGenerator, rootNode, rootNode, new Vector3d(-1d, -1d, -1d), 2d, screenSize, screenSize, colors, depth,
+				nodes, null, subdivider, voxelSizeConstantA, voxelSizeConstantB, 1, traversal, null, RebasedFrame.SPACE, null, beamSize, 1, false, 0d, 0, 0L));
+	}
+
+	private OctreeNode createOctree(FractalInterface f, int maxDepth) {
+		OctreeNode rootNode = new OctreeNode();
+		rootNode.setDepth(0);
+		rootNode.setBrick(rootNode);
+		rootNode.setLeaf(true);
+		rootNode.setEmpty(false);
+		subdivide(new BrickManager(), f, rootNode, -1d, -1d, -1d, 2d, maxDepth);
+		return rootNode;
+	}
+
+	private void subdivide(BrickManager bm, FractalInterface f, OctreeNode node, double x, double y, double z, double dim, int maxDepth) {
+		if (node.getDepth() >= maxDepth || node.isEmpty())
+			return;
+		new SubdivideNodeThread(bm, f, node, new Vector3d(x, y, z), dim).run();
+		if (node.isLeaf())
+			return;
+		double half = dim / 2d;
+		for (int i = 0; i < 2; i++)
+			for (int j = 0; j < 2; j++)
+				for (int k = 0; k < 2; k++)
+					subdivide(bm, f, node.getChild(i, j, k), x + i * half, y + j * half, z + k * half, half, maxDepth);
+	}
+}
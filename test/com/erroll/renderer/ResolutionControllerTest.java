@@ -0,0 +1,52 @@
+package com.erroll.renderer;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ResolutionControllerTest {
+
+	// the object to be tested on, aiming for 25 frames per second (40ms a frame)
+	private ResolutionController controller;
+
+	@Before
+	public void setUp() throws Exception {
+		controller = new ResolutionController(25d, 64, 512);
+	}
+
+	@Test
+	public void testStartsAtMaximum() {
+		assertTrue(controller.getResolution() == 512);
+
+		// test no frame time measured yet leaves the resolution alone
+		for (int i = 0; i < 20; i++)
+			assertTrue(controller.update(0d) == 512);
+	}
+
+	@Test
+	public void testConverges() {
+		// simulate a frame time proportional to the number of pixels, taking 40ms at a resolution of 256
+		for (int i = 0; i < 200; i++) {
+			double resolution = controller.getResolution();
+			controller.update(40d * (resolution / 256d) * (resolution / 256d));
+		}
+		assertTrue(Math.abs(controller.getResolution() - 256) <= 16);
+
+		// test the resolution is a multiple of 8
+		assertTrue(controller.getResolution() % 8 == 0);
+	}
+
+	@Test
+	public void testStaysInRange() {
+		// test very slow frames never go below the minimum
+		for (int i = 0; i < 200; i++)
+			controller.update(1000d);
+		assertTrue(controller.getResolution() == 64);
+
+		// test very fast frames never go above the maximum
+		for (int i = 0; i < 200; i++)
+			controller.update(1d);
+		assertTrue(controller.getResolution() == 512);
+	}
+}
@@ -0,0 +1,82 @@
+package com.erroll.renderer;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SlabKernelTest {
+
+	// the number of rays tested together by each kernel call
+	private static final int LANES = 16;
+
+	// the number of different ray sets and boxes tested
+	private static final int SETS = 1024;
+
+	@Test
+	public void testSameAsRayCast() {
+		Random random = new Random(0);
+		SlabKernel kernel = new SlabKernel();
+		RayCast rayCast = new RayCast(null, 1d, 1d);
+		double[] tmin = new double[LANES];
+		double[] tmax = new double[LANES];
+		double[] exitTmax = new double[LANES];
+		int[] neighborIds = new int[LANES];
+		double[] pX = new double[LANES];
+		double[] pY = new double[LANES];
+		double[] pZ = new double[LANES];
+		int[] children = new int[LANES];
+
+		// test packets of nearly coherent rays from a common origin, spread over a small cone, against a box for each packet
+		for (int s = 0; s < SETS; s++) {
+			RayLanes rays = new RayLanes(LANES);
+			double dirX = random.nextDouble() - 0.5d;
+			double dirY = random.nextDouble() - 0.5d;
+			double dirZ = -1d;
+			for (int i = 0; i < LANES; i++) {
+				double x = dirX + random.nextDouble() * 0.01d;
+				double y = dirY + random.nextDouble() * 0.01d;
+				double invLength = 1d / Math.sqrt(x * x + y * y + dirZ * dirZ);
+				rays.add(0d, 0d, 5d, x * invLength, y * invLength, dirZ * invLength);
+			}
+			double boxDim = Math.pow(2d, -random.nextInt(8));
+			double boxMinX = random.nextDouble() * 2d - 1d;
+			double boxMinY = random.nextDouble() * 2d - 1d;
+			double boxMinZ = random.nextDouble() * 2d - 1d;
+
+			kernel.intersect(rays, boxMinX, boxMinY, boxMinZ, boxDim, tmin, tmax);
+			kernel.exit(rays, boxMinX, boxMinY, boxMinZ, boxDim, exitTmax, neighborIds);
+			for (int i = 0; i < LANES; i++) {
+				// test each ray enters the box where it does when cast by itself, and leaves it where intersect found
+				rayCast.setRay(rays.originX[i], rays.originY[i], rays.originZ[i], rays.dirX[i], rays.dirY[i], rays.dirZ[i]);
+				double entry = rayCast.getEntryDistance(boxMinX, boxMinY, boxMinZ, boxDim);
+				assertTrue(tmin[i] > tmax[i] ? entry == Double.MAX_VALUE : entry == tmin[i]);
+				assertTrue(exitTmax[i] == tmax[i]);
+
+				// test each ray leaves towards the neighbor across the face it exits through
+				double exitX = tmax[i] * rays.dirX[i] + rays.originX[i];
+				double exitY = tmax[i] * rays.dirY[i] + rays.originY[i];
+				double exitZ = tmax[i] * rays.dirZ[i] + rays.originZ[i];
+				double[] distances = { Math.abs(exitX - boxMinX), Math.abs(exitX - boxMinX - boxDim), Math.abs(exitY - boxMinY),
+						Math.abs(exitY - boxMinY - boxDim), Math.abs(exitZ - boxMinZ), Math.abs(exitZ - boxMinZ - boxDim) };
+				for (int id = 0; id < 6; id++)
+					assertTrue(distances[neighborIds[i]] <= distances[id] + 1e-12d);
+
+				// a point on each ray at which to select a child
+				double t = random.nextDouble() * 8d;
+				pX[i] = t * rays.dirX[i] + rays.originX[i];
+				pY[i] = t * rays.dirY[i] + rays.originY[i];
+				pZ[i] = t * rays.dirZ[i] + rays.originZ[i];
+			}
+
+			// test the octant selected for each point is the one containing it
+			double half = boxDim / 2d;
+			kernel.selectChildren(rays, pX, pY, pZ, boxMinX + half, boxMinY + half, boxMinZ + half, children);
+			for (int i = 0; i < LANES; i++) {
+				int octant = (pX[i] >= boxMinX + half ? 4 : 0) | (pY[i] >= boxMinY + half ? 2 : 0) | (pZ[i] >= boxMinZ + half ? 1 : 0);
+				assertTrue(children[i] == octant);
+			}
+		}
+	}
+}
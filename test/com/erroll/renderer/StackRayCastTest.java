@@ -0,0 +1,64 @@
+package com.erroll.renderer;
+
+import static org.junit.Assert.assertTrue;
+
+import javax.vecmath.Vector3d;
+
+import org.junit.Test;
+
+import com.erroll.math.fractal.FractalInterface;
+import com.erroll.math.fractal.MengerSponge;
+import com.erroll.octree.OctreeNode;
+import com.erroll.octree.scaleadaptation.BrickManager;
+import com.erroll.octree.scaleadaptation.SubdivideNodeThread;
+import com.erroll.octree.scaleadaptation.Subdivider;
+
+public class StackRayCastTest {
+
+	@Test
+	public void testSameAsLattice() {
+		// a menger sponge subdivided to depth 4
+		FractalInterface f = new MengerSponge();
+		BrickManager bm = new BrickManager();
+		OctreeNode rootNode = new OctreeNode();
+		rootNode.setDepth(0);
+		rootNode.setBrick(rootNode);
+		rootNode.setLeaf(true);
+		rootNode.setEmpty(false);
+		subdivide(bm, f, rootNode, -1d, -1d, -1d, 2d, 4);
+
+		// test rays from outside and inside the sponge find the same nodes at the same depths as neighbor pointers do, with and without terminating early
+		Subdivider subdivider = new Subdivider(f);
+		double[] voxelSizeConstantsA = { 1e9d, 60d };
+		for (double voxelSizeConstantA : voxelSizeConstantsA) {
+			LatticeRayCast latticeCast = new LatticeRayCast(subdivider, voxelSizeConstantA, 1d);
+			StackRayCast stackCast = new StackRayCast(subdivider, voxelSizeConstantA, 1d);
+			for (int i = 0; i < 400; i++) {
+				double originX = i % 2 == 0 ? 0.1d : 2.5d;
+				double originY = i % 2 == 0 ? -0.05d : 1.7d;
+				double originZ = i % 2 == 0 ? 0.02d : 3.1d;
+				Vector3d dir = new Vector3d(Math.sin(i * 0.37d) - originX * 0.3d, Math.cos(i * 0.61d) - originY * 0.3d, Math.sin(i * 0.83d) - originZ * 0.3d);
+				dir.normalize();
+				latticeCast.setRay(originX, originY, originZ, dir.x, dir.y, dir.z);
+				stackCast.setRay(originX, originY, originZ, dir.x, dir.y, dir.z);
+				latticeCast.cast(rootNode, -1d, -1d, -1d, 2d);
+				stackCast.cast(rootNode, -1d, -1d, -1d, 2d);
+				assertTrue(stackCast.getHitNode() == latticeCast.getHitNode() && stackCast.getDepth() == latticeCast.getDepth());
+				assertTrue(stackCast.getHitNode() == null || stackCast.getHitX() == latticeCast.getHitX());
+			}
+		}
+	}
+
+	private void subdivide(BrickManager bm, FractalInterface f, OctreeNode node, double x, double y, double z, double dim, int maxDepth) {
+		if (node.getDepth() >= maxDepth || node.isEmpty())
+			return;
+		new SubdivideNodeThread(bm, f, node, new Vector3d(x, y, z), dim).run();
+		if (node.isLeaf())
+			return;
+		double half = dim / 2d;
+		for (int i = 0; i < 2; i++)
+			for (int j = 0; j < 2; j++)
+				for (int k = 0; k < 2; k++)
+					subdivide(bm, f, node.getChild(i, j, k), x + i * half, y + j * half, z + k * half, half, maxDepth);
+	}
+}
@@ -0,0 +1,42 @@
+package com.erroll.renderer.effects;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class HalfResolutionSSAOTest {
+
+	@Test
+	public void testSilhouettes() {
+		int screenHeight = 64;
+		int screenWidth = 64;
+		double[] imageDepth = new double[screenWidth * screenHeight];
+		int[] occlusion = new int[screenWidth * screenHeight];
+
+		// a curved floor which occludes itself, a flat box standing on it closer to the camera and a hole through which rays miss
+		for (int row = 0; row < screenHeight; row++) {
+			for (int col = 0; col < screenWidth; col++) {
+				double depth = 10d - 0.002d * (row - 32) * (row - 32);
+				if (row >= 20 && row < 40 && col >= 10 && col < 30)
+					depth = 4d;
+				if (row >= 45 && row < 52 && col >= 40 && col < 60)
+					depth = Double.MAX_VALUE;
+				imageDepth[row * screenHeight + col] = depth;
+			}
+		}
+		HalfResolutionSSAO.setOcclusion(imageDepth, screenHeight, screenWidth, occlusion);
+
+		// test the box is not shadowed by the floor behind it, even at its edges, while the floor is shadowed right up to the box
+		for (int row = 20; row < 40; row++)
+			for (int col = 10; col < 30; col++)
+				assertTrue(occlusion[row * screenHeight + col] == 0);
+		for (int row = 20; row < 40; row++)
+			assertTrue(occlusion[row * screenHeight + 9] > 0 && occlusion[row * screenHeight + 30] > 0);
+		assertTrue(occlusion[32 * screenHeight + 50] > 0);
+
+		// test pixels whose rays missed are not shadowed
+		for (int row = 45; row < 52; row++)
+			for (int col = 40; col < 60; col++)
+				assertTrue(occlusion[row * screenHeight + col] == 0);
+	}
+}
@@ -0,0 +1,65 @@
+package com.erroll.renderer.effects;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ParallelSSAOTest {
+
+	@Test
+	public void testSameAsSSAO() {
+		int screenHeight = 64;
+		int screenWidth = 64;
+		double[] imageDepth = new double[screenWidth * screenHeight];
+
+		// a sloped floor, a box standing on it closer to the camera and a hole through which rays miss
+		for (int row = 0; row < screenHeight; row++) {
+			for (int col = 0; col < screenWidth; col++) {
+				double depth = 10d - row * 0.1d + Math.sin(col * 0.3d) * 0.05d;
+				if (row >= 20 && row < 40 && col >= 10 && col < 30)
+					depth = 4d + col * 0.01d;
+				if (row >= 45 && row < 52 && col >= 40 && col < 60)
+					depth = Double.MAX_VALUE;
+				imageDepth[row * screenHeight + col] = depth;
+			}
+		}
+
+		// test the occlusion and minimum depth are the same as SSAO's, at the screen size and at a smaller render size
+		int[] sizes = { 64, 50 };
+		for (int size : sizes) {
+			int[] occlusion = new int[screenWidth * screenHeight];
+			int[] parallelOcclusion = new int[screenWidth * screenHeight];
+			double minTmin = SSAO.setOcclusion(imageDepth, size, size, occlusion);
+			double parallelMinTmin = ParallelSSAO.setOcclusion(imageDepth, size, size, parallelOcclusion);
+			assertTrue(parallelMinTmin == minTmin && ParallelSSAO.getMinDepth(imageDepth, size, size) == SSAO.getMinDepth(imageDepth, size, size));
+			for (int i = 0; i < occlusion.length; i++)
+				assertTrue(parallelOcclusion[i] == occlusion[i]);
+		}
+	}
+
+	@Test
+	public void testWholeNumbers() {
+		int screenSize = 16;
+		double[] imageDepth = new double[screenSize * screenSize];
+
+		// checkerboards whose dark squares each have 24 light squares in their window, 4/3072 and 2/3072 further away, so that the sum of differences of a
+		// dark square is exactly -2 or -1 before rounding, and the sum of depths in its window is rounded differently from the differences
+		double[] ratios = { 4d / 3072d, 2d / 3072d };
+		double[] depths = { 0.3d, 0.7d, 1.1d, 3.7d, 5.3d, 7.1d, 13.3d };
+		for (double ratio : ratios) {
+			for (double depth : depths) {
+				for (int row = 0; row < screenSize; row++)
+					for (int col = 0; col < screenSize; col++)
+						imageDepth[row * screenSize + col] = (row + col) % 2 == 0 ? depth : depth * (1d + ratio);
+
+				// test the occlusion is still truncated to the same whole number as SSAO's
+				int[] occlusion = new int[screenSize * screenSize];
+				int[] parallelOcclusion = new int[screenSize * screenSize];
+				SSAO.setOcclusion(imageDepth, screenSize, screenSize, occlusion);
+				ParallelSSAO.setOcclusion(imageDepth, screenSize, screenSize, parallelOcclusion);
+				for (int i = 0; i < occlusion.length; i++)
+					assertTrue(parallelOcclusion[i] == occlusion[i]);
+			}
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package com.erroll.renderer.effects;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PostProcessPipelineTest {
+
+	@Test
+	public void testSchedule() {
+		// test SSAO and the composite which reads only each pixel's own shadow are fused into one pass
+		PostProcessPipeline pipeline = new PostProcessPipeline(new SSAOEffect(), new CompositeEffect());
+		assertTrue(pipeline.getPassCount() == 1);
+
+		// test an effect which reads the neighbors of shadows written in the pass needs another pass, and a composite after it is fused into that pass
+		pipeline = new PostProcessPipeline(new SSAOEffect(), new ShadowBlurEffect(), new CompositeEffect());
+		assertTrue(pipeline.getPassCount() == 2);
+
+		// test an effect which writes depths read around each pixel by SSAO in the pass needs another pass
+		pipeline = new PostProcessPipeline(new SSAOEffect(), new DepthFogEffect());
+		assertTrue(pipeline.getPassCount() == 2);
+		pipeline = new PostProcessPipeline(new DepthFogEffect(), new SSAOEffect());
+		assertTrue(pipeline.getPassCount() == 2);
+	}
+
+	@Test
+	public void testRun() {
+		int screenHeight = 64;
+		int screenWidth = 64;
+		int[] imageColors = new int[screenWidth * screenHeight];
+		double[] imageDepth = new double[screenWidth * screenHeight];
+
+		// a sloped floor with a box standing on it closer to the camera
+		for (int row = 0; row < screenHeight; row++) {
+			for (int col = 0; col < screenWidth; col++) {
+				imageColors[row * screenHeight + col] = ColorUtils.getColor(row * 4, col * 4, 128);
+				imageDepth[row * screenHeight + col] = row >= 20 && row < 40 && col >= 10 && col < 30 ? 4d : 10d - 0.002d * (row - 32) * (row - 32);
+			}
+		}
+
+		// test the fused pass shades the frame as SSAO followed by the composite does
+		int[] shadows = new int[screenWidth * screenHeight];
+		SSAO.setOcclusion(imageDepth, screenHeight, screenWidth, shadows);
+		int[] pixelData = new int[screenWidth * screenHeight];
+		new PostProcessPipeline(new SSAOEffect(), new CompositeEffect()).run(new PostProcessFrame(imageColors, imageDepth,
+				new int[screenWidth * screenHeight], screenWidth, screenHeight, pixelData, screenWidth));
+		for (int i = 0; i < pixelData.length; i++)
+			assertTrue(pixelData[i] == ColorUtils.adjustLight(imageColors[i], shadows[i]));
+	}
+
+	/**
+	 * Blurs shadows vertically, reading the shadows of the pixels above and below
+	 */
+	private static class ShadowBlurEffect implements PostProcessEffectInterface {
+
+		@Override
+		public int getInputs() {
+			return PostProcessFrame.SHADOWS;
+		}
+
+		@Override
+		public int getOutputs() {
+			return PostProcessFrame.SHADOWS;
+		}
+
+		@Override
+		public int getRadius() {
+			return 1;
+		}
+
+		@Override
+		public void begin(PostProcessFrame frame) {
+		}
+
+		@Override
+		public void apply(PostProcessFrame frame, int rowMin, int rowMax) {
+		}
+	}
+
+	/**
+	 * Pushes the depths of distant pixels further away
+	 */
+	private static class DepthFogEffect implements PostProcessEffectInterface {
+
+		@Override
+		public int getInputs() {
+			return PostProcessFrame.DEPTH;
+		}
+
+		@Override
+		public int getOutputs() {
+			return PostProcessFrame.DEPTH;
+		}
+
+		@Override
+		public int getRadius() {
+			return 0;
+		}
+
+		@Override
+		public void begin(PostProcessFrame frame) {
+		}
+
+		@Override
+		public void apply(PostProcessFrame frame, int rowMin, int rowMax) {
+		}
+	}
+}
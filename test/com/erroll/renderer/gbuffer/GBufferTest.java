@@ -0,0 +1,104 @@
+package com.erroll.renderer.gbuffer;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.erroll.renderer.effects.ColorUtils;
+import com.erroll.renderer.effects.SSAO;
+
+public class GBufferTest {
+
+	// a frame which is not a whole number of tiles, smaller than the buffer
+	private static final int SIZE = 40;
+
+	@Test
+	public void testStore() {
+		testStore(new HeapGBuffer(48, 48, 16));
+		testStore(new DirectGBuffer(48, 48, 16));
+	}
+
+	@Test
+	public void testTiles() {
+		GBufferInterface gBuffer = new HeapGBuffer(48, 48, 16);
+
+		// test every pixel of a tile is next to the others in the buffer and no two pixels share an index
+		boolean[] used = new boolean[48 * 48];
+		for (int row = 0; row < 48; row++) {
+			for (int col = 0; col < 48; col++) {
+				int index = gBuffer.getIndex(row, col);
+				assertTrue(!used[index]);
+				used[index] = true;
+				assertTrue(index - gBuffer.getIndex(row / 16 * 16, col / 16 * 16) == (row % 16) * 16 + col % 16);
+			}
+		}
+	}
+
+	@Test
+	public void testShade() {
+		testShade(new HeapGBuffer(48, 48, 16));
+		testShade(new DirectGBuffer(48, 48, 16));
+	}
+
+	/**
+	 * Tests the colors and depths of a frame are read back from the G-buffer as they were traced
+	 */
+	private void testStore(GBufferInterface gBuffer) {
+		int[] colors = new int[SIZE * SIZE];
+		double[] depth = new double[SIZE * SIZE];
+		createFrame(colors, depth);
+		gBuffer.store(colors, depth, SIZE, SIZE);
+
+		assertTrue(gBuffer.getWidth() == SIZE && gBuffer.getHeight() == SIZE);
+		for (int row = 0; row < SIZE; row++) {
+			for (int col = 0; col < SIZE; col++) {
+				int index = gBuffer.getIndex(row, col);
+				assertTrue(gBuffer.getColor(index) == colors[row * SIZE + col]);
+				if (depth[row * SIZE + col] == Double.MAX_VALUE)
+					assertTrue(gBuffer.getDepth(index) == Float.MAX_VALUE);
+				else
+					assertTrue(gBuffer.getDepth(index) == (float) depth[row * SIZE + col]);
+			}
+		}
+	}
+
+	/**
+	 * Tests the occlusion of each pixel in the G-buffer is within rounding of SSAO's on double depths, and each pixel is darkened by it
+	 */
+	private void testShade(GBufferInterface gBuffer) {
+		int[] colors = new int[SIZE * SIZE];
+		double[] depth = new double[SIZE * SIZE];
+		createFrame(colors, depth);
+		int[] occlusion = new int[SIZE * SIZE];
+		SSAO.setOcclusion(depth, SIZE, SIZE, occlusion);
+
+		gBuffer.store(colors, depth, SIZE, SIZE);
+		int[] pixelData = new int[64 * 64];
+		gBuffer.shade(pixelData, 64);
+
+		for (int row = 0; row < SIZE; row++) {
+			for (int col = 0; col < SIZE; col++) {
+				int index = gBuffer.getIndex(row, col);
+				assertTrue(Math.abs(gBuffer.getOcclusion(index) - occlusion[row * SIZE + col]) <= 1);
+				assertTrue(pixelData[row * 64 + col] == ColorUtils.adjustLight(colors[row * SIZE + col], gBuffer.getOcclusion(index)));
+			}
+		}
+	}
+
+	/**
+	 * Fills a frame with a curved floor, a box standing on it and a hole through which rays miss
+	 */
+	private void createFrame(int[] colors, double[] depth) {
+		for (int row = 0; row < SIZE; row++) {
+			for (int col = 0; col < SIZE; col++) {
+				double d = 10d - 0.003d * (row - 20) * (row - 20);
+				if (row >= 10 && row < 24 && col >= 6 && col < 18)
+					d = 4d;
+				if (row >= 28 && row < 34 && col >= 24 && col < 36)
+					d = Double.MAX_VALUE;
+				depth[row * SIZE + col] = d;
+				colors[row * SIZE + col] = ColorUtils.getColor(row * 6, col * 6, 128);
+			}
+		}
+	}
+}
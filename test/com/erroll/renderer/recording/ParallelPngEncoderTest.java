@@ -0,0 +1,64 @@
+package com.erroll.renderer.recording;
+
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import java.util.zip.Adler32;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParallelPngEncoderTest {
+
+	// the object to be tested on
+	private ParallelPngEncoder encoder;
+
+	@Before
+	public void setUp() throws Exception {
+		encoder = new ParallelPngEncoder();
+	}
+
+	@Test
+	public void testWrite() throws Exception {
+		// test images both smaller and larger than a strip decode to the pixels encoded, including from the middle of wider pixel data
+		Random random = new Random(1);
+		int[][] sizes = { { 1, 1 }, { 7, 3 }, { 300, 257 }, { 512, 511 } };
+		for (int[] size : sizes) {
+			int width = size[0];
+			int height = size[1];
+			int stride = width + 5;
+			int[] pixelData = new int[stride * height];
+			for (int row = 0; row < height; row++)
+				for (int col = 0; col < width; col++)
+					pixelData[row * stride + col] = random.nextInt(4) == 0 ? random.nextInt(0x1000000) : (row * 3 + col * 5) & 0xffffff;
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			encoder.write(pixelData, stride, width, height, out);
+			BufferedImage image = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+
+			assertTrue(image.getWidth() == width && image.getHeight() == height);
+			for (int row = 0; row < height; row++)
+				for (int col = 0; col < width; col++)
+					assertTrue((image.getRGB(col, row) & 0xffffff) == pixelData[row * stride + col]);
+		}
+	}
+
+	@Test
+	public void testCombineAdler() {
+		// test combining the checksums of two blocks gives the checksum of both
+		byte[] data = new byte[200000];
+		new Random(2).nextBytes(data);
+		Adler32 whole = new Adler32();
+		whole.update(data);
+		Adler32 first = new Adler32();
+		first.update(data, 0, 70001);
+		Adler32 second = new Adler32();
+		second.update(data, 70001, data.length - 70001);
+		assertTrue(ParallelPngEncoder.combineAdler(first.getValue(), second.getValue(), data.length - 70001) == whole.getValue());
+	}
+}
@@ -0,0 +1,75 @@
+package com.erroll.renderer.recording;
+
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+import javax.imageio.ImageIO;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.erroll.metrics.Metrics;
+
+public class PngFrameRecorderTest {
+
+	// the directory frames are saved in
+	private File outputDir;
+
+	// Metrics object the recorder reports to
+	private Metrics metrics;
+
+	@Before
+	public void setUp() throws Exception {
+		outputDir = File.createTempFile("frames", "");
+		outputDir.delete();
+		outputDir.mkdir();
+		metrics = new Metrics();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		for (File file : outputDir.listFiles())
+			file.delete();
+		outputDir.delete();
+	}
+
+	@Test
+	public void testRecord() throws Exception {
+		// record frames smaller than the buffers, changing the pixels straight after each is recorded
+		PngFrameRecorder recorder = new PngFrameRecorder(outputDir, 16, 16, 2, 1, false, metrics);
+		int[] pixelData = new int[16 * 16];
+		for (int i = 0; i < 5; i++) {
+			pixelData[16 + 1] = i;
+			recorder.record(pixelData, 16, null, 8, 4, i);
+			pixelData[16 + 1] = -1;
+		}
+		recorder.close();
+
+		// test every frame was saved at its own size with the pixels it had when recorded
+		assertTrue(metrics.getEncodedFrames() == 5);
+		assertTrue(metrics.getDroppedFrames() == 0);
+		for (int i = 0; i < 5; i++) {
+			BufferedImage image = ImageIO.read(new File(outputDir, "screenshot" + i + ".png"));
+			assertTrue(image.getWidth() == 8 && image.getHeight() == 4);
+			assertTrue((image.getRGB(1, 1) & 0xffffff) == i);
+		}
+	}
+
+	@Test
+	public void testDropFrames() throws Exception {
+		// record many more frames than the queue can hold without waiting for them to be encoded
+		PngFrameRecorder recorder = new PngFrameRecorder(outputDir, 256, 256, 1, 1, true, metrics);
+		int[] pixelData = new int[256 * 256];
+		for (int i = 0; i < 100; i++)
+			recorder.record(pixelData, 256, null, 256, 256, i);
+		recorder.close();
+
+		// test every frame was either saved or dropped, never stalled on
+		assertTrue(metrics.getStalledFrames() == 0);
+		assertTrue(metrics.getEncodedFrames() + metrics.getDroppedFrames() == 100);
+		assertTrue(outputDir.listFiles().length == metrics.getEncodedFrames());
+	}
+}
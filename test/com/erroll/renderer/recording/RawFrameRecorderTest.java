@@ -0,0 +1,63 @@
+package com.erroll.renderer.recording;
+
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+import javax.imageio.ImageIO;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.erroll.metrics.Metrics;
+
+public class RawFrameRecorderTest {
+
+	// the directory the raw file and converted frames are saved in
+	private File outputDir;
+
+	@Before
+	public void setUp() throws Exception {
+		outputDir = File.createTempFile("frames", "");
+		outputDir.delete();
+		outputDir.mkdir();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		for (File file : outputDir.listFiles())
+			file.delete();
+		outputDir.delete();
+	}
+
+	@Test
+	public void testRecordAndConvert() throws Exception {
+		// record more frames than there is room for, with depths, at a smaller size than the buffers
+		Metrics metrics = new Metrics();
+		File rawFile = new File(outputDir, "recording.raw");
+		RawFrameRecorder recorder = new RawFrameRecorder(rawFile, 16, 16, 2, true, metrics);
+		int[] pixelData = new int[16 * 16];
+		double[] depth = new double[16 * 16];
+		for (int i = 0; i < 3; i++) {
+			pixelData[2 * 16 + 5] = 100 + i;
+			recorder.record(pixelData, 16, depth, 8, 4, 10 + i);
+		}
+		recorder.close();
+
+		// test the frame which did not fit was dropped
+		assertTrue(metrics.getEncodedFrames() == 2);
+		assertTrue(metrics.getDroppedFrames() == 1);
+
+		// test converting gives back each recorded frame at its own size
+		assertTrue(RawFrameConverter.convert(rawFile, outputDir) == 2);
+		for (int i = 0; i < 2; i++) {
+			BufferedImage image = ImageIO.read(new File(outputDir, "screenshot" + (10 + i) + ".png"));
+			assertTrue(image.getWidth() == 8 && image.getHeight() == 4);
+			assertTrue((image.getRGB(5, 2) & 0xffffff) == 100 + i);
+			assertTrue((image.getRGB(4, 2) & 0xffffff) == 0);
+		}
+		assertTrue(!new File(outputDir, "screenshot12.png").exists());
+	}
+}
@@ -0,0 +1,54 @@
+package com.erroll.renderer.temporal;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.erroll.octree.OctreeNode;
+
+public class CheckerboardReconstructorTest {
+
+	@Test
+	public void testReconstruct() {
+		CheckerboardReconstructor reconstructor = new CheckerboardReconstructor(4, 4);
+		int[] colors = new int[16];
+		double[] depth = new double[16];
+		OctreeNode[] nodes = new OctreeNode[16];
+
+		// test half of the pixels are traced in a checkerboard, alternating between frames
+		boolean[] reprojectionMask = new boolean[16];
+		Arrays.fill(reprojectionMask, true);
+		boolean[] traceMask = reconstructor.select(reprojectionMask, 0);
+		assertTrue(traceMask[0] && !traceMask[1] && !traceMask[4] && traceMask[5]);
+		traceMask = reconstructor.select(reprojectionMask, 1);
+		assertTrue(!traceMask[0] && traceMask[1]);
+
+		// trace a surface at depth 2 whose rows alternate between 30 and 10 blue, and which the top row misses
+		traceMask = reconstructor.select(reprojectionMask, 0);
+		for (int i = 0; i < 16; i++) {
+			if (!traceMask[i])
+				continue;
+			colors[i] = i < 4 ? 0 : (i / 4) % 2 == 0 ? 10 : 30;
+			depth[i] = i < 4 ? Double.MAX_VALUE : 2d;
+		}
+
+		// test a pixel surrounded by the surface is interpolated from it, and one whose neighbors mostly missed misses
+		reconstructor.reconstruct(colors, depth, nodes);
+		assertTrue(colors[9] == 20 && depth[9] == 2d);
+		assertTrue(depth[1] == Double.MAX_VALUE && colors[1] == 0);
+
+		// test a reprojected pixel is kept if its depth agrees with its neighbors, and interpolated if it does not
+		reprojectionMask[9] = false;
+		reprojectionMask[11] = false;
+		reconstructor.select(reprojectionMask, 0);
+		colors[9] = 123;
+		depth[9] = 2.01d;
+		colors[11] = 123;
+		depth[11] = 5d;
+		reconstructor.reconstruct(colors, depth, nodes);
+		assertTrue(colors[9] == 123 && depth[9] == 2.01d);
+		assertTrue(colors[11] != 123 && depth[11] == 2d);
+	}
+}
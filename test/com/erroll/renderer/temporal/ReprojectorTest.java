@@ -0,0 +1,217 @@
+package com.erroll.renderer.temporal;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.vecmath.Vector3d;
+
+import org.junit.Test;
+
+import com.erroll.camera.Camera;
+import com.erroll.math.fractal.FractalInterface;
+import com.erroll.octree.OctreeNode;
+import com.erroll.octree.scaleadaptation.BrickManager;
+import com.erroll.octree.scaleadaptation.SubdivideNodeThread;
+import com.erroll.octree.scaleadaptation.Subdivider;
+import com.erroll.renderer.RayGenerator;
+import com.erroll.renderer.RebasedFrame;
+import com.erroll.renderer.RenderTile;
+
+public class ReprojectorTest {
+
+	// the width and height in pixels of the screen
+	private static final int SCREEN_SIZE = 64;
+
+	// the number of frames in which every pixel is traced again
+	private static final int REFRESH_PERIOD = 8;
+
+	/**
+	 * A floor filling the bottom half of the root node, with a pillar standing on it from (0, 0) to (0.25, 0.25) and up to 0.25. A node has detail if its
+	 * box overlaps either, so no node above their surfaces is drawn.
+	 */
+	private static final FractalInterface FLOOR_AND_PILLAR = new FractalInterface() {
+		@Override
+		public boolean isInFractal(double x, double y, double z, double d) {
+			// the half width of the node whose centre is (x, y, z), less a little for rounding
+			double half = d / Math.sqrt(3d) * (1d - 1e-9d);
+			boolean floor = z - half < 0d;
+			boolean pillar = x - half < 0.25d && x + half > 0d && y - half < 0.25d && y + half > 0d && z - half < 0.25d;
+			return floor || pillar;
+		}
+	};
+
+	@Test
+	public void testStaticCameraReusesEveryPixel() {
+		OctreeNode rootNode = createOctree(5);
+		Subdivider subdivider = new Subdivider(FLOOR_AND_PILLAR);
+		Reprojector reprojector = new Reprojector(SCREEN_SIZE, SCREEN_SIZE, REFRESH_PERIOD);
+		Camera camera = createCamera(-0.5d, -0.5d, 0.8d);
+		int[] colors = new int[SCREEN_SIZE * SCREEN_SIZE];
+		double[] depth = new double[SCREEN_SIZE * SCREEN_SIZE];
+		OctreeNode[] nodes = new OctreeNode[SCREEN_SIZE * SCREEN_SIZE];
+		renderFrame(camera, rootNode, subdivider, reprojector, colors, depth, nodes);
+		int[] tracedColors = colors.clone();
+		double[] tracedDepth = depth.clone();
+		OctreeNode[] tracedNodes = nodes.clone();
+
+		// test every pixel of the second frame of the floor is reused from the first, with the same color, node and depth, except those in its refresh slot
+		RayGenerator view = new RayGenerator(camera, SCREEN_SIZE, SCREEN_SIZE);
+		boolean[] traceMask = reproject(reprojector, view, camera, colors, depth, nodes);
+		for (int row = 0; row < SCREEN_SIZE; row++) {
+			for (int col = 0; col < SCREEN_SIZE; col++) {
+				int index = row * SCREEN_SIZE + col;
+				assertTrue(traceMask[index] == ((col + row * 5) % REFRESH_PERIOD == 2 % REFRESH_PERIOD));
+				if (!traceMask[index]) {
+					assertTrue(nodes[index] == tracedNodes[index] && colors[index] == tracedColors[index]);
+					assertTrue(Math.abs(depth[index] - tracedDepth[index]) <= 1e-12d * tracedDepth[index]);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testTranslatedCameraTracesDisoccludedPixels() {
+		OctreeNode rootNode = createOctree(5);
+		Subdivider subdivider = new Subdivider(FLOOR_AND_PILLAR);
+		Reprojector reprojector = new Reprojector(SCREEN_SIZE, SCREEN_SIZE, REFRESH_PERIOD);
+		int[] colors = new int[SCREEN_SIZE * SCREEN_SIZE];
+		double[] depth = new double[SCREEN_SIZE * SCREEN_SIZE];
+		OctreeNode[] nodes = new OctreeNode[SCREEN_SIZE * SCREEN_SIZE];
+		renderFrame(createCamera(0.125d, 0.125d, 1.2d), rootNode, subdivider, reprojector, colors, depth, nodes);
+		Set<OctreeNode> visible = new HashSet<OctreeNode>(Arrays.asList(nodes));
+
+		// move the camera a step, keeping the pillar in view, so that the pillar uncovers floor it hid, and find what each pixel of the new view hits
+		Camera camera = createCamera(0.15d, 0.125d, 1.2d);
+		int[] tracedColors = new int[SCREEN_SIZE * SCREEN_SIZE];
+		double[] tracedDepth = new double[SCREEN_SIZE * SCREEN_SIZE];
+		OctreeNode[] tracedNodes = new OctreeNode[SCREEN_SIZE * SCREEN_SIZE];
+		trace(new RayGenerator(camera, SCREEN_SIZE, SCREEN_SIZE), camera, rootNode, subdivider, null, tracedColors, tracedDepth, tracedNodes);
+
+		// test every pixel hitting a node no pixel of the previous frame hit is traced, and that the camera uncovered some
+		boolean[] traceMask = reproject(reprojector, new RayGenerator(camera, SCREEN_SIZE, SCREEN_SIZE), camera, colors, depth, nodes);
+		int disoccluded = 0;
+		for (int i = 0; i < SCREEN_SIZE * SCREEN_SIZE; i++) {
+			if (tracedNodes[i] != null && !visible.contains(tracedNodes[i])) {
+				assertTrue(traceMask[i]);
+				disoccluded++;
+			}
+		}
+		assertTrue(disoccluded > 0);
+	}
+
+	@Test
+	public void testEveryPixelRefreshed() {
+		OctreeNode rootNode = createOctree(5);
+		Subdivider subdivider = new Subdivider(FLOOR_AND_PILLAR);
+		Reprojector reprojector = new Reprojector(SCREEN_SIZE, SCREEN_SIZE, REFRESH_PERIOD);
+		Camera camera = createCamera(-0.5d, -0.5d, 0.8d);
+		int[] colors = new int[SCREEN_SIZE * SCREEN_SIZE];
+		double[] depth = new double[SCREEN_SIZE * SCREEN_SIZE];
+		OctreeNode[] nodes = new OctreeNode[SCREEN_SIZE * SCREEN_SIZE];
+		renderFrame(camera, rootNode, subdivider, reprojector, colors, depth, nodes);
+
+		// test a static camera over the floor traces an even share of the pixels each frame, and every pixel within the refresh period
+		boolean[] refreshed = new boolean[SCREEN_SIZE * SCREEN_SIZE];
+		for (int frame = 0; frame < REFRESH_PERIOD; frame++) {
+			boolean[] traceMask = renderFrame(camera, rootNode, subdivider, reprojector, colors, depth, nodes);
+			int traced = 0;
+			for (int i = 0; i < SCREEN_SIZE * SCREEN_SIZE; i++) {
+				refreshed[i] |= traceMask[i];
+				traced += traceMask[i] ? 1 : 0;
+			}
+			assertTrue(traced == SCREEN_SIZE * SCREEN_SIZE / REFRESH_PERIOD);
+		}
+		for (int i = 0; i < SCREEN_SIZE * SCREEN_SIZE; i++)
+			assertTrue(refreshed[i]);
+	}
+
+	@Test
+	public void testDeletedNodeTraced() {
+		OctreeNode rootNode = createOctree(5);
+		Subdivider subdivider = new Subdivider(FLOOR_AND_PILLAR);
+		Reprojector reprojector = new Reprojector(SCREEN_SIZE, SCREEN_SIZE, REFRESH_PERIOD);
+		Camera camera = createCamera(0.3d, 0.3d, 0.8d);
+		int[] colors = new int[SCREEN_SIZE * SCREEN_SIZE];
+		double[] depth = new double[SCREEN_SIZE * SCREEN_SIZE];
+		OctreeNode[] nodes = new OctreeNode[SCREEN_SIZE * SCREEN_SIZE];
+		renderFrame(camera, rootNode, subdivider, reprojector, colors, depth, nodes);
+
+		// test the pixels of a node deleted by unification are traced again
+		OctreeNode deleted = nodes[SCREEN_SIZE * SCREEN_SIZE / 2 + SCREEN_SIZE / 2];
+		deleted.delete(deleted.getBrick());
+		boolean[] deletedPixels = new boolean[SCREEN_SIZE * SCREEN_SIZE];
+		for (int i = 0; i < SCREEN_SIZE * SCREEN_SIZE; i++)
+			deletedPixels[i] = nodes[i] == deleted;
+		boolean[] traceMask = reproject(reprojector, new RayGenerator(camera, SCREEN_SIZE, SCREEN_SIZE), camera, colors, depth, nodes);
+		for (int i = 0; i < SCREEN_SIZE * SCREEN_SIZE; i++)
+			assertTrue(!deletedPixels[i] || traceMask[i]);
+	}
+
+	/**
+	 * Renders a frame as the renderer does with reprojection, reprojecting the previous frame, tracing the pixels which need it and storing the result
+	 *
+	 * @return Which pixels were traced
+	 */
+	private boolean[] renderFrame(Camera camera, OctreeNode rootNode, Subdivider subdivider, Reprojector reprojector, int[] colors, double[] depth,
+			OctreeNode[] nodes) {
+		RayGenerator view = new RayGenerator(camera, SCREEN_SIZE, SCREEN_SIZE);
+		boolean[] traceMask = reproject(reprojector, view, camera, colors, depth, nodes);
+		trace(view, camera, rootNode, subdivider, traceMask, colors, depth, nodes);
+		reprojector.store(view, depth, nodes);
+		return traceMask.clone();
+	}
+
+	/**
+	 * Reprojects the previous frame using the renderer's voxel size constants for the camera
+	 */
+	private boolean[] reproject(Reprojector reprojector, RayGenerator view, Camera camera, int[] colors, double[] depth, OctreeNode[] nodes) {
+		return reprojector.reproject(view, colors, depth, nodes, camera.getDistanceToViewplane() * SCREEN_SIZE, camera.getViewplaneTop().length() * 0.5d);
+	}
+
+	/**
+	 * Traces the pixels of a frame in the trace mask, or all of them if it is null, using the renderer's voxel size constants for the camera
+	 */
+	private void trace(RayGenerator view, Camera camera, OctreeNode rootNode, Subdivider subdivider, boolean[] traceMask, int[] colors, double[] depth,
+			OctreeNode[] nodes) {
+		double voxelSizeConstantA = camera.getDistanceToViewplane() * SCREEN_SIZE;
+		double voxelSizeConstantB = camera.getViewplaneTop().length() * 0.5d;
+		new ForkJoinPool(1).invoke(new RenderTile(view, rootNode, rootNode, new Vector3d(-1d, -1d, -1d), 2d, SCREEN_SIZE, SCREEN_SIZE, colors, depth, nodes,
+				traceMask, subdivider, voxelSizeConstantA, voxelSizeConstantB, 1, "lattice", null, RebasedFrame.SPACE, null, 1, 1, false, 0d, 0, 0L));
+	}
+
+	/**
+	 * @return A camera looking straight down onto the floor from a position
+	 */
+	private Camera createCamera(double x, double y, double z) {
+		Camera camera = new Camera();
+		camera.initialise(new Vector3d(x, y, z), new Vector3d(x, y, -1d), 3d, 1.5d, 1.5d);
+		return camera;
+	}
+
+	private OctreeNode createOctree(int maxDepth) {
+		OctreeNode rootNode = new OctreeNode();
+		rootNode.setDepth(0);
+		rootNode.setBrick(rootNode);
+		rootNode.setLeaf(true);
+		rootNode.setEmpty(false);
+		subdivide(new BrickManager(), rootNode, -1d, -1d, -1d, 2d, maxDepth);
+		return rootNode;
+	}
+
+	private void subdivide(BrickManager bm, OctreeNode node, double x, double y, double z, double dim, int maxDepth) {
+		if (node.getDepth() >= maxDepth || node.isEmpty())
+			return;
+		new SubdivideNodeThread(bm, FLOOR_AND_PILLAR, node, new Vector3d(x, y, z), dim).run();
+		if (node.isLeaf())
+			return;
+		double half = dim / 2d;
+		for (int i = 0; i < 2; i++)
+			for (int j = 0; j < 2; j++)
+				for (int k = 0; k < 2; k++)
+					subdivide(bm, node.getChild(i, j, k), x + i * half, y + j * half, z + k * half, half, maxDepth);
+	}
+}
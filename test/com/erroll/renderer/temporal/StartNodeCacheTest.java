@@ -0,0 +1,59 @@
+package com.erroll.renderer.temporal;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.erroll.octree.OctreeNode;
+import com.erroll.renderer.LatticeRayCast;
+
+public class StartNodeCacheTest {
+
+	@Test
+	public void testGetStartNode() {
+		// a root node with a chain of children down to depth 3, always in the child at (1, 0, 0)
+		OctreeNode rootNode = new OctreeNode();
+		rootNode.setDepth(0);
+		rootNode.setBrick(rootNode);
+		OctreeNode node = rootNode;
+		for (int depth = 1; depth <= 3; depth++) {
+			OctreeNode child = new OctreeNode();
+			child.setDepth(depth);
+			child.setBrick(rootNode);
+			child.setParent(node);
+			node.getChildren()[1][0][0] = child;
+			node.setLeaf(false);
+			node = child;
+		}
+		OctreeNode hitNode = node;
+		OctreeNode depth1 = hitNode.getParent().getParent();
+
+		// the deepest node's minimum lattice coordinates
+		long x = LatticeRayCast.getNodeSize(1) + LatticeRayCast.getNodeSize(2) + LatticeRayCast.getNodeSize(3);
+		long y = 0;
+		long z = 0;
+
+		StartNodeCache cache = new StartNodeCache(4, 4);
+		assertTrue(cache.getStartNode(5, x, y, z, 0) == null);
+		cache.store(5, hitNode, x, y, z);
+
+		// test a point inside the node hit starts at the node hit, and nothing is found for other pixels
+		assertTrue(cache.getStartNode(5, x + 7, y + 3, z, 0) == hitNode);
+		assertTrue(cache.getStartNode(6, x, y, z, 0) == null);
+
+		// test a point in another child of the node at depth 1 starts at that node, unless rays already start at that depth
+		long otherY = LatticeRayCast.getNodeSize(2);
+		assertTrue(cache.getStartNode(5, x, otherY, z, 0) == depth1);
+		assertTrue(cache.getStartNode(5, x, otherY, z, 1) == null);
+
+		// test a point outside the node at depth 1 or outside the root node finds nothing
+		assertTrue(cache.getStartNode(5, 0, y, z, 0) == null);
+		assertTrue(cache.getStartNode(5, -1, y, z, 0) == null);
+
+		// test a miss keeps the node hit, but a deleted node is discarded
+		cache.store(5, null, 0, 0, 0);
+		assertTrue(cache.getStartNode(5, x, y, z, 0) == hitNode);
+		hitNode.delete(depth1);
+		assertTrue(cache.getStartNode(5, x, y, z, 0) == null);
+	}
+}